@@ -41,6 +41,12 @@ public class PersistentCacheTest extends AbstractTest {
 
     private static final String CACHE_OPTIONS = System.getProperty("cacheOptions", "size=100,+compact,-async");
 
+    /**
+     * The persistent cache engine, "mvstore" or "segment". Run the benchmark
+     * once with each engine to compare them.
+     */
+    private static final String CACHE_ENGINE = System.getProperty("cacheEngine", "mvstore");
+
     private final StatisticsProvider statsProvider;
 
     private Cache<PathRev, DocumentNodeState> nodesCache;
@@ -62,7 +68,8 @@ public class PersistentCacheTest extends AbstractTest {
                 OakFixture.MongoFixture mongoFixture = (OakFixture.MongoFixture) oakFixture;
                 DocumentNodeStoreBuilder<?> builder = mongoFixture.getBuilder(1);
                 builder.setStatisticsProvider(statsProvider);
-                builder.setPersistentCache("target/persistentCache,time," + CACHE_OPTIONS);
+                builder.setPersistentCache("target/persistentCache,time," + CACHE_OPTIONS
+                        + ",engine=" + CACHE_ENGINE);
                 dns = builder.build();
                 nodesCache = DocumentNodeStoreHelper.getNodesCache(dns);
                 Oak oak = new Oak(dns);
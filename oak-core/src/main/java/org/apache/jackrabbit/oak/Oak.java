@@ -572,6 +572,9 @@ public class Oak {
             newSettings.setFullTextComparisonWithoutIndex(this.queryEngineSettings.settings.getFullTextComparisonWithoutIndex());
             newSettings.setFailTraversal(this.queryEngineSettings.getFailTraversal());
             newSettings.setFastQuerySize(this.queryEngineSettings.isFastQuerySize());
+            newSettings.setHashAndMergeJoin(this.queryEngineSettings.settings.isHashAndMergeJoin());
+            newSettings.setSpillToDiskThreshold(this.queryEngineSettings.settings.getSpillToDiskThreshold());
+            newSettings.setUnionThreads(this.queryEngineSettings.settings.getUnionThreads());
             newSettings.setLimitInMemory(this.queryEngineSettings.getLimitInMemory());
             newSettings.setLimitReads(this.queryEngineSettings.getLimitReads());
             this.queryEngineSettings = new AnnotatedQueryEngineSettings(newSettings);
@@ -25,19 +25,31 @@ import static com.google.common.collect.Sets.newHashSet;
 import static org.apache.jackrabbit.oak.api.jmx.IndexStatsMBean.STATUS_DONE;
 import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_DISABLED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
@@ -59,6 +71,7 @@ import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
 import org.apache.jackrabbit.oak.plugins.commit.AnnotatingConflictHandler;
 import org.apache.jackrabbit.oak.plugins.commit.ConflictHook;
 import org.apache.jackrabbit.oak.plugins.commit.ConflictValidatorProvider;
+import org.apache.jackrabbit.oak.plugins.index.IndexCommitCallback.IndexProgress;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdate.MissingIndexProviderStrategy;
 import org.apache.jackrabbit.oak.plugins.index.TrackingCorruptIndexHandler.CorruptIndexInfo;
 import org.apache.jackrabbit.oak.plugins.index.progress.MetricRateEstimator;
@@ -70,6 +83,7 @@ import org.apache.jackrabbit.oak.spi.commit.CommitHook;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.CompositeEditorProvider;
 import org.apache.jackrabbit.oak.spi.commit.CompositeHook;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
 import org.apache.jackrabbit.oak.spi.commit.EditorDiff;
 import org.apache.jackrabbit.oak.spi.commit.EditorHook;
 import org.apache.jackrabbit.oak.spi.commit.EditorProvider;
@@ -97,6 +111,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Objects;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 
 public class AsyncIndexUpdate implements Runnable, Closeable {
@@ -118,6 +133,9 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
     private static final CommitFailedException INTERRUPTED = new CommitFailedException(
             "Async", 1, "Indexing stopped forcefully");
 
+    private static final CommitFailedException STOPPED = new CommitFailedException(
+            "Async", 3, "Indexing stopped as the update of another index failed");
+
     /**
      * Timeout in milliseconds after which an async job would be considered as
      * timed out. Another node in cluster would wait for timeout before
@@ -205,6 +223,15 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
     private final StatisticsProvider statisticsProvider;
 
+    /**
+     * The number of threads to update the indexes of this lane concurrently,
+     * with one diff of the checkpoints per thread. 0 (the default) or 1 to
+     * update all indexes in one diff.
+     */
+    private int indexThreads = Integer.getInteger("oak.async.indexThreads", 0);
+
+    private volatile ThreadPoolExecutor indexExecutor;
+
     public AsyncIndexUpdate(@NotNull String name, @NotNull NodeStore store,
                             @NotNull IndexEditorProvider provider, boolean switchOnSync) {
         this(name, store, provider, StatisticsProvider.NOOP, switchOnSync);
@@ -470,6 +497,10 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         } else {
             log.info("[{}] Closed", name);
         }
+        ThreadPoolExecutor executor = indexExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
         closed = true;
     }
 
@@ -612,8 +643,11 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         }
     }
 
-    private void markFailingIndexesAsCorrupt(NodeBuilder builder) {
+    private void markFailingIndexesAsCorrupt(NodeBuilder builder, Predicate<String> indexFilter) {
         for (Map.Entry<String, CorruptIndexInfo> index : corruptIndexHandler.getCorruptIndexData(name).entrySet()){
+            if (!indexFilter.test(index.getKey())) {
+                continue;
+            }
             NodeBuilder indexBuilder = childBuilder(builder, index.getKey());
             CorruptIndexInfo info = index.getValue();
             if (!indexBuilder.hasProperty(IndexConstants.CORRUPT_PROPERTY_NAME)){
@@ -715,23 +749,26 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         // sure to not delete the reference checkpoint, as the other index
         // task will take care of it
         taskSplitter.maybeSplit(beforeCheckpoint, callback.lease);
-        IndexUpdate indexUpdate = null;
+        IndexUpdates indexUpdate = new IndexUpdates();
         boolean indexingFailed = true;
         try {
             NodeBuilder builder = store.getRoot().builder();
 
-            markFailingIndexesAsCorrupt(builder);
-
             CommitInfo info = new CommitInfo(CommitInfo.OAK_UNKNOWN, CommitInfo.OAK_UNKNOWN,
                     ImmutableMap.of(IndexConstants.CHECKPOINT_CREATION_TIME, afterTime));
-            indexUpdate =
-                    new IndexUpdate(provider, name, after, builder, callback, callback, info, corruptIndexHandler)
-                    .withMissingProviderStrategy(missingStrategy);
-            configureRateEstimator(indexUpdate);
-            CommitFailedException exception =
-                    EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
-            if (exception != null) {
-                throw exception;
+            List<String> indexPaths = getConcurrentIndexPaths(builder);
+            if (indexPaths.size() > 1) {
+                updateConcurrently(indexUpdate, indexPaths, before, beforeCheckpoint,
+                        after, callback, info);
+            } else {
+                markFailingIndexesAsCorrupt(builder, path -> true);
+                IndexUpdate update = newIndexUpdate(provider, after, builder, callback, callback, info);
+                indexUpdate.add(update);
+                CommitFailedException exception =
+                        EditorDiff.process(VisibleEditor.wrap(update), before, after);
+                if (exception != null) {
+                    throw exception;
+                }
             }
 
             builder.child(ASYNC).setProperty(name, afterCheckpoint);
@@ -783,12 +820,10 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
             corruptIndexHandler.markWorkingIndexes(indexUpdate.getUpdatedIndexPaths());
         } finally {
-            if (indexUpdate != null) {
-                if ( !indexingFailed ) {
-                    indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_SUCCEDED);
-                } else {
-                    indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_FAILED);
-                }
+            if ( !indexingFailed ) {
+                indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_SUCCEDED);
+            } else {
+                indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_FAILED);
             }
             callback.close();
         }
@@ -806,6 +841,146 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         return updatePostRunStatus;
     }
 
+    private IndexUpdate newIndexUpdate(IndexEditorProvider provider,
+            NodeState after, NodeBuilder builder, IndexUpdateCallback updateCallback,
+            NodeTraversalCallback traversalCallback, CommitInfo info) {
+        IndexUpdate indexUpdate = new IndexUpdate(provider, name, after, builder,
+                updateCallback, traversalCallback, info, corruptIndexHandler)
+                .withMissingProviderStrategy(missingStrategy);
+        configureRateEstimator(indexUpdate);
+        return indexUpdate;
+    }
+
+    /**
+     * Get the paths of the index definitions of this lane directly below the
+     * root node, if the indexes are updated concurrently.
+     *
+     * @param builder the root builder
+     * @return the index paths, or an empty list if disabled
+     */
+    private List<String> getConcurrentIndexPaths(NodeBuilder builder) {
+        List<String> paths = new ArrayList<String>();
+        if (indexThreads <= 1) {
+            return paths;
+        }
+        NodeBuilder definitions = builder.getChildNode(INDEX_DEFINITIONS_NAME);
+        for (String indexName : definitions.getChildNodeNames()) {
+            NodeBuilder definition = definitions.getChildNode(indexName);
+            String type = definition.getString(TYPE_PROPERTY_NAME);
+            if (type != null && !TYPE_DISABLED.equals(type)
+                    && IndexUpdate.isIncluded(name, definition)) {
+                paths.add(PathUtils.concat("/", INDEX_DEFINITIONS_NAME, indexName));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Update the indexes concurrently, in at most {@link #indexThreads}
+     * tasks. Each task updates a group of indexes with its own diff of the
+     * checkpoints, on its own builder of the persisted root, so that the node
+     * store can persist the changes while the task runs. The first task also
+     * updates the indexes that are not directly below the root node. If the
+     * update of an index fails, the other tasks are stopped, and nothing is
+     * merged.
+     * <p>
+     * Once all tasks succeeded, their builders are merged one after the
+     * other. The new checkpoint is merged last, with the root builder. If a
+     * merge fails, the indexes that were already merged are updated again
+     * from the previous checkpoint by the next run.
+     */
+    private void updateConcurrently(IndexUpdates indexUpdates, List<String> indexPaths,
+            NodeState before, String beforeCheckpoint, NodeState after,
+            AsyncUpdateCallback callback, CommitInfo info) throws CommitFailedException {
+        Stopwatch watch = Stopwatch.createStarted();
+        Set<String> paths = new HashSet<String>(indexPaths);
+        int taskCount = Math.min(indexThreads, indexPaths.size());
+        List<Set<String>> groups = new ArrayList<Set<String>>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            groups.add(new HashSet<String>());
+        }
+        for (int i = 0; i < indexPaths.size(); i++) {
+            groups.get(i % taskCount).add(indexPaths.get(i));
+        }
+        ConcurrentCallback concurrentCallback = new ConcurrentCallback(callback);
+        List<IndexTask> tasks = new ArrayList<IndexTask>(taskCount);
+        for (Set<String> group : groups) {
+            Predicate<String> filter;
+            if (tasks.isEmpty()) {
+                filter = path -> group.contains(path) || !paths.contains(path);
+            } else {
+                filter = group::contains;
+            }
+            NodeBuilder taskBuilder = store.getRoot().builder();
+            markFailingIndexesAsCorrupt(taskBuilder, filter);
+            FailureTrackingProvider tracker = new FailureTrackingProvider(provider);
+            IndexUpdate update = newIndexUpdate(tracker, after, taskBuilder,
+                    concurrentCallback, concurrentCallback, info).withIndexFilter(filter);
+            indexUpdates.add(update);
+            tasks.add(new IndexTask(group, update, tracker, taskBuilder, before, after,
+                    concurrentCallback));
+        }
+
+        List<Future<Void>> futures;
+        try {
+            futures = getIndexExecutor().invokeAll(tasks);
+        } catch (InterruptedException e) {
+            concurrentCallback.stop();
+            Thread.currentThread().interrupt();
+            throw INTERRUPTED;
+        }
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null || failure == STOPPED) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw INTERRUPTED;
+            }
+        }
+        if (failure != null) {
+            Throwables.propagateIfPossible(failure, CommitFailedException.class);
+            throw new IllegalStateException(failure);
+        }
+
+        for (IndexTask task : tasks) {
+            mergeWithConcurrencyCheck(store, validatorProviders, task.builder,
+                    beforeCheckpoint, callback.lease, name);
+        }
+        log.debug("[{}] Updated {} indexes concurrently in {} tasks in {}",
+                name, indexPaths.size(), tasks.size(), watch);
+    }
+
+    private ThreadPoolExecutor getIndexExecutor() {
+        ThreadPoolExecutor executor = indexExecutor;
+        if (executor != null && executor.getMaximumPoolSize() != indexThreads) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(
+                    indexThreads, indexThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "async-index-update-" + name
+                            + "-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            indexExecutor = executor;
+        }
+        return executor;
+    }
+
     private void configureRateEstimator(IndexUpdate indexUpdate) {
         //As metrics is an optional library guard the access with the check
         if (statisticsProvider.getClass().getSimpleName().equals("MetricStatisticsProvider")){
@@ -898,6 +1073,19 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         this.validatorProviders = checkNotNull(validatorProviders);
     }
 
+    /**
+     * Set the number of threads to update the indexes of this lane
+     * concurrently. The indexes are split into one group per thread, and each
+     * group is updated with its own diff of the checkpoints, so that a slow
+     * index does not delay the others.
+     *
+     * @param indexThreads the number of threads, or 0 or 1 to update all
+     *            indexes in one diff
+     */
+    public void setIndexThreads(int indexThreads) {
+        this.indexThreads = indexThreads;
+    }
+
     public void setCorruptIndexHandler(TrackingCorruptIndexHandler corruptIndexHandler) {
         this.corruptIndexHandler = checkNotNull(corruptIndexHandler);
     }
@@ -1360,6 +1548,323 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         return name.charAt(0) == ':';
     }
 
+    /**
+     * The index updates of one run: one update, or one per index if the
+     * indexes are updated concurrently.
+     */
+    private static class IndexUpdates {
+
+        private final List<IndexUpdate> updates = new ArrayList<IndexUpdate>();
+
+        void add(IndexUpdate update) {
+            updates.add(update);
+        }
+
+        boolean isReindexingPerformed() {
+            for (IndexUpdate update : updates) {
+                if (update.isReindexingPerformed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<String> getReindexStats() {
+            List<String> stats = new ArrayList<String>();
+            for (IndexUpdate update : updates) {
+                stats.addAll(update.getReindexStats());
+            }
+            return stats;
+        }
+
+        Set<String> getReindexedDefinitions() {
+            Set<String> paths = new HashSet<String>();
+            for (IndexUpdate update : updates) {
+                paths.addAll(update.getReindexedDefinitions());
+            }
+            return paths;
+        }
+
+        Set<String> getUpdatedIndexPaths() {
+            Set<String> paths = new HashSet<String>();
+            for (IndexUpdate update : updates) {
+                paths.addAll(update.getUpdatedIndexPaths());
+            }
+            return paths;
+        }
+
+        void commitProgress(IndexProgress indexProgress) {
+            for (IndexUpdate update : updates) {
+                update.commitProgress(indexProgress);
+            }
+        }
+
+        String getIndexingStats() {
+            StringBuilder buff = new StringBuilder();
+            for (IndexUpdate update : updates) {
+                if (buff.length() > 0) {
+                    buff.append("; ");
+                }
+                buff.append(update.getIndexingStats());
+            }
+            return buff.toString();
+        }
+
+    }
+
+    /**
+     * Updates a group of indexes concurrently with the other indexes of the
+     * lane.
+     */
+    private class IndexTask implements Callable<Void> {
+
+        private final Set<String> indexPaths;
+        private final IndexUpdate update;
+        private final FailureTrackingProvider tracker;
+        final NodeBuilder builder;
+        private final NodeState before;
+        private final NodeState after;
+        private final ConcurrentCallback callback;
+
+        IndexTask(Set<String> indexPaths, IndexUpdate update, FailureTrackingProvider tracker,
+                NodeBuilder builder, NodeState before, NodeState after,
+                ConcurrentCallback callback) {
+            this.indexPaths = indexPaths;
+            this.update = update;
+            this.tracker = tracker;
+            this.builder = builder;
+            this.before = before;
+            this.after = after;
+            this.callback = callback;
+        }
+
+        @Override
+        public Void call() throws CommitFailedException {
+            Stopwatch watch = Stopwatch.createStarted();
+            try {
+                CommitFailedException exception =
+                        EditorDiff.process(VisibleEditor.wrap(update), before, after);
+                if (exception != null) {
+                    throw exception;
+                }
+            } catch (CommitFailedException | RuntimeException e) {
+                callback.stop();
+                if (e != STOPPED) {
+                    log.info("[{}] Update of indexes {} failed after {}: {}",
+                            name, indexPaths, watch, e.toString());
+                    // only failures of an index editor are tracked; the
+                    // editors report their own commit failures, and other
+                    // failures (for example while reading the diff) are
+                    // not specific to an index
+                    String failedIndexPath = tracker.getFailedIndexPath(e);
+                    if (failedIndexPath != null && e instanceof RuntimeException) {
+                        corruptIndexHandler.indexUpdateFailed(name, failedIndexPath, (RuntimeException) e);
+                    }
+                }
+                throw e;
+            }
+            log.debug("[{}] Updated indexes {} in {}", name, indexPaths, watch);
+            return null;
+        }
+
+    }
+
+    /**
+     * Remembers the index whose editor failed first, so that only failures
+     * of an index editor are reported to the corrupt index handler.
+     */
+    private static class FailureTrackingProvider implements IndexEditorProvider {
+
+        private final IndexEditorProvider provider;
+        private Exception failure;
+        private String failedIndexPath;
+
+        FailureTrackingProvider(IndexEditorProvider provider) {
+            this.provider = provider;
+        }
+
+        @Override
+        @Nullable
+        public Editor getIndexEditor(@NotNull String type, @NotNull NodeBuilder definition,
+                @NotNull NodeState root, @NotNull IndexUpdateCallback callback)
+                throws CommitFailedException {
+            Editor editor = provider.getIndexEditor(type, definition, root, callback);
+            if (editor == null || !(callback instanceof ContextAwareCallback)) {
+                return editor;
+            }
+            String indexPath = ((ContextAwareCallback) callback)
+                    .getIndexingContext().getIndexPath();
+            return new FailureTrackingEditor(this, indexPath, editor);
+        }
+
+        void failed(String indexPath, RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+                failedIndexPath = indexPath;
+            }
+        }
+
+        /**
+         * Get the path of the index whose editor threw the given exception.
+         *
+         * @param e the exception
+         * @return the index path, or null if the exception was not thrown by
+         *         an index editor
+         */
+        @Nullable
+        String getFailedIndexPath(Exception e) {
+            return e == failure ? failedIndexPath : null;
+        }
+
+    }
+
+    /**
+     * An editor wrapper that reports runtime exceptions of the editor to the
+     * tracking provider.
+     */
+    private static class FailureTrackingEditor implements Editor {
+
+        private final FailureTrackingProvider tracker;
+        private final String indexPath;
+        private final Editor editor;
+
+        FailureTrackingEditor(FailureTrackingProvider tracker, String indexPath, Editor editor) {
+            this.tracker = tracker;
+            this.indexPath = indexPath;
+            this.editor = editor;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) throws CommitFailedException {
+            try {
+                editor.enter(before, after);
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after) throws CommitFailedException {
+            try {
+                editor.leave(before, after);
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) throws CommitFailedException {
+            try {
+                editor.propertyAdded(after);
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after)
+                throws CommitFailedException {
+            try {
+                editor.propertyChanged(before, after);
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) throws CommitFailedException {
+            try {
+                editor.propertyDeleted(before);
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Editor childNodeAdded(String name, NodeState after)
+                throws CommitFailedException {
+            try {
+                return wrap(editor.childNodeAdded(name, after));
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Editor childNodeChanged(String name, NodeState before, NodeState after)
+                throws CommitFailedException {
+            try {
+                return wrap(editor.childNodeChanged(name, before, after));
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Editor childNodeDeleted(String name, NodeState before)
+                throws CommitFailedException {
+            try {
+                return wrap(editor.childNodeDeleted(name, before));
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+        }
+
+        private Editor wrap(Editor child) {
+            return child == null ? null : new FailureTrackingEditor(tracker, indexPath, child);
+        }
+
+        private RuntimeException failed(RuntimeException e) {
+            tracker.failed(indexPath, e);
+            return e;
+        }
+
+    }
+
+    /**
+     * Makes the callback usable by index updates that run concurrently. Once
+     * one of them failed, the others are stopped.
+     */
+    private static class ConcurrentCallback implements IndexUpdateCallback, NodeTraversalCallback {
+
+        private final AsyncUpdateCallback callback;
+        private volatile boolean stopped;
+
+        ConcurrentCallback(AsyncUpdateCallback callback) {
+            this.callback = callback;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void indexUpdate() throws CommitFailedException {
+            checkIfStopped();
+            synchronized (callback) {
+                callback.indexUpdate();
+            }
+        }
+
+        @Override
+        public void traversedNode(PathSource pathSource) throws CommitFailedException {
+            checkIfStopped();
+            synchronized (callback) {
+                callback.traversedNode(pathSource);
+            }
+        }
+
+        private void checkIfStopped() throws CommitFailedException {
+            if (stopped) {
+                throw STOPPED;
+            }
+        }
+
+    }
+
     static class DefaultMissingIndexProviderStrategy extends
             MissingIndexProviderStrategy {
 
@@ -43,6 +43,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import com.google.common.collect.Iterables;
 
@@ -269,8 +270,13 @@ public class IndexUpdate implements Editor, PathSource {
                     continue;
                 }
 
-                boolean shouldReindex = shouldReindex(definition, before, name);
                 String indexPath = getIndexPath(getPath(), name);
+                if (!rootState.indexFilter.test(indexPath)) {
+                    // updated by another index update
+                    continue;
+                }
+
+                boolean shouldReindex = shouldReindex(definition, before, name);
                 if (definition.hasProperty(IndexConstants.CORRUPT_PROPERTY_NAME) && !shouldReindex){
                     String corruptSince = definition.getProperty(IndexConstants.CORRUPT_PROPERTY_NAME).getValue(Type.DATE);
                     rootState.corruptIndexHandler.skippingCorruptIndex(rootState.async, indexPath, ISO8601.parse(corruptSince));
@@ -568,6 +574,19 @@ public class IndexUpdate implements Editor, PathSource {
         return this;
     }
 
+    /**
+     * Only update the indexes with a path that matches the given filter.
+     * Other indexes are neither updated nor reindexed, so that they can be
+     * updated concurrently by another index update.
+     *
+     * @param indexFilter the filter on the index path
+     * @return this
+     */
+    IndexUpdate withIndexFilter(Predicate<String> indexFilter) {
+        rootState.indexFilter = checkNotNull(indexFilter);
+        return this;
+    }
+
     private static final class IndexUpdateRootState {
         final IndexEditorProvider provider;
         final String async;
@@ -581,6 +600,7 @@ public class IndexUpdate implements Editor, PathSource {
         private int changedNodeCount;
         private int changedPropertyCount;
         private MissingIndexProviderStrategy missingProvider = new MissingIndexProviderStrategy();
+        private Predicate<String> indexFilter = path -> true;
 
         private IndexUpdateRootState(IndexEditorProvider provider, String async, NodeState root,
                                      NodeBuilder builder, IndexUpdateCallback updateCallback,
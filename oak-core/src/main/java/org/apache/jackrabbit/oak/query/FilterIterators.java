@@ -13,11 +13,24 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
@@ -78,15 +91,39 @@ public class FilterIterators {
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null, 0);
+    }
+
+    /**
+     * Combine the filters. If a codec and a spill threshold are set, sorting
+     * and distinct write entries to temporary files once more than the given
+     * number of entries would need to be kept in memory.
+     *
+     * @param it the source
+     * @param distinct whether to filter duplicate entries
+     * @param limit the maximum number of entries
+     * @param offset the number of entries to skip
+     * @param orderBy the sort order, or null
+     * @param settings the query limits
+     * @param codec the codec to convert entries to text, or null
+     * @param spillThreshold the number of entries to keep in memory before
+     *            writing to temporary files, 0 to always keep all entries
+     *            in memory
+     * @return the filtered iterator
+     */
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset, 
+            Comparator<K> orderBy, QueryLimits settings,
+            LineCodec<K> codec, long spillThreshold) {
         if (distinct) {
-            it = FilterIterators.newDistinct(it, settings);
+            it = new DistinctIterator<K>(it, settings, codec, spillThreshold);
         }
         if (orderBy != null) {
             // avoid overflow (both offset and limit could be Long.MAX_VALUE)
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            it = new SortIterator<K>(it, orderBy, max, settings, codec, spillThreshold);
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -98,7 +135,7 @@ public class FilterIterators {
     }
     
     public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings) {
-        return new DistinctIterator<K>(it, settings);
+        return new DistinctIterator<K>(it, settings, null, 0);
     }
     
     public static <K> Iterator<K> newLimit(Iterator<K> it, long limit) {
@@ -110,27 +147,106 @@ public class FilterIterators {
     }
     
     public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings) {
-        return new SortIterator<K>(it, orderBy, max, settings);
+        return new SortIterator<K>(it, orderBy, max, settings, null, 0);
+    }
+
+    /**
+     * Converts entries to and from a line of text, so that they can be
+     * written to temporary files.
+     *
+     * @param <K> the entry type
+     */
+    public interface LineCodec<K> {
+
+        /**
+         * Convert an entry to text. The text must not contain line breaks
+         * or tabs.
+         *
+         * @param entry the entry
+         * @return the text
+         */
+        String toLine(K entry);
+
+        /**
+         * Convert text back to an entry.
+         *
+         * @param line the text
+         * @return the entry
+         */
+        K fromLine(String line);
+
+        /**
+         * Get a key that is the same for two entries if and only if the
+         * entries are equal. The key must not contain line breaks or tabs.
+         *
+         * @param entry the entry
+         * @return the key
+         */
+        String getKey(K entry);
+
+    }
+
+    /**
+     * Whether entries should be written to temporary files, because the
+     * given number of entries is kept in memory.
+     *
+     * @param codec the codec, or null
+     * @param spillThreshold the threshold, or 0
+     * @param count the number of entries in memory
+     * @return true if the entries should be written to temporary files
+     */
+    static boolean isSpillNeeded(LineCodec<?> codec, long spillThreshold, long count) {
+        return codec != null && spillThreshold > 0 && count >= spillThreshold;
+    }
+
+    /**
+     * Close the iterator if it holds resources, for example temporary files.
+     *
+     * @param it the iterator
+     */
+    static void close(Iterator<?> it) {
+        if (it instanceof Closeable) {
+            try {
+                ((Closeable) it).close();
+            } catch (IOException e) {
+                LOG.debug("Could not close {}", it, e);
+            }
+        }
     }
 
     /**
      * An iterator that filters duplicate entries, that is, it only returns each
      * unique entry once. The internal set of unique entries is filled only when
      * needed (on demand).
+     * <p>
+     * If a codec and a spill threshold are set, only that many entries are
+     * kept in memory. Once the threshold is reached, the keys of the returned
+     * entries are stored in a sorted temporary file, and the source is read
+     * in batches of that size: duplicates within a batch are removed in
+     * memory, and the remaining entries are compared with the file while
+     * the file is merged with the keys of the batch. So the entries are still
+     * read on demand, one batch at a time, in the order of the source.
      * 
      * @param <K> the entry type
      */
-    static class DistinctIterator<K> implements Iterator<K> {
+    static class DistinctIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
-        private final HashSet<K> distinctSet;
+        private final LineCodec<K> codec;
+        private final long spillThreshold;
+        private HashSet<K> distinctSet;
+        private SortedKeys spilled;
+        private Iterator<K> batch;
         private K current;
         private boolean end;
 
-        DistinctIterator(Iterator<K> source, QueryLimits settings) {
+        DistinctIterator(Iterator<K> source, QueryLimits settings,
+                LineCodec<K> codec, long spillThreshold) {
             this.source = source;
             this.settings = settings;
+            this.codec = codec;
+            this.spillThreshold = spillThreshold;
             distinctSet = new HashSet<K>();
         }
 
@@ -138,6 +254,21 @@ public class FilterIterators {
             if (end) {
                 return;
             }
+            if (spilled == null && 
+                    isSpillNeeded(codec, spillThreshold, distinctSet.size())) {
+                spill();
+            }
+            if (spilled != null) {
+                while (batch == null || !batch.hasNext()) {
+                    if (!source.hasNext()) {
+                        close();
+                        return;
+                    }
+                    batch = readBatch();
+                }
+                current = batch.next();
+                return;
+            }
             while (source.hasNext()) {
                 current = source.next();
                 if (distinctSet.add(current)) {
@@ -149,6 +280,41 @@ public class FilterIterators {
             end = true;
         }
 
+        /**
+         * Write the keys of the entries that were returned so far to a
+         * temporary file.
+         */
+        private void spill() {
+            LOG.debug("Distinct: more than {} entries, using temporary files", spillThreshold);
+            ArrayList<String> keys = new ArrayList<String>(distinctSet.size());
+            for (K k : distinctSet) {
+                keys.add(codec.getKey(k));
+            }
+            // no longer needed
+            distinctSet = null;
+            spilled = new SortedKeys();
+            Collections.sort(keys);
+            spilled.addAll(keys);
+        }
+
+        /**
+         * Read the next batch of entries from the source, and remove the
+         * entries that were returned already.
+         *
+         * @return the new entries of the batch, in the order of the source
+         */
+        private Iterator<K> readBatch() {
+            LinkedHashMap<String, K> map = new LinkedHashMap<String, K>();
+            while (map.size() < spillThreshold && source.hasNext()) {
+                K k = source.next();
+                map.putIfAbsent(codec.getKey(k), k);
+            }
+            ArrayList<String> keys = new ArrayList<String>(map.keySet());
+            Collections.sort(keys);
+            map.keySet().removeAll(spilled.addAll(keys));
+            return map.values().iterator();
+        }
+
         @Override
         public boolean hasNext() {
             if (current == null) {
@@ -175,6 +341,87 @@ public class FilterIterators {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void close() {
+            current = null;
+            end = true;
+            batch = null;
+            distinctSet = null;
+            if (spilled != null) {
+                spilled.close();
+            }
+            FilterIterators.close(source);
+        }
+
+    }
+
+    /**
+     * A set of keys that is stored in a sorted temporary file.
+     */
+    static class SortedKeys implements Closeable {
+
+        private File file;
+
+        /**
+         * Add keys to the set. This merges the keys into a new file.
+         *
+         * @param keys the keys to add, sorted, without duplicates
+         * @return the keys that were in the set already
+         */
+        HashSet<String> addAll(List<String> keys) {
+            HashSet<String> existing = new HashSet<String>();
+            File old = file;
+            try {
+                File f = SortedRuns.createTempFile(this);
+                try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(f), UTF_8))) {
+                    Iterator<String> it = keys.iterator();
+                    String key = it.hasNext() ? it.next() : null;
+                    if (old != null) {
+                        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                                new FileInputStream(old), UTF_8))) {
+                            for (String line; (line = r.readLine()) != null;) {
+                                while (key != null && key.compareTo(line) < 0) {
+                                    write(w, key);
+                                    key = it.hasNext() ? it.next() : null;
+                                }
+                                if (line.equals(key)) {
+                                    existing.add(key);
+                                    key = it.hasNext() ? it.next() : null;
+                                }
+                                write(w, line);
+                            }
+                        }
+                    }
+                    while (key != null) {
+                        write(w, key);
+                        key = it.hasNext() ? it.next() : null;
+                    }
+                }
+                file = f;
+            } catch (IOException e) {
+                close();
+                throw new IllegalStateException("Could not write temporary file", e);
+            }
+            if (old != null) {
+                old.delete();
+            }
+            return existing;
+        }
+
+        private static void write(BufferedWriter w, String key) throws IOException {
+            w.write(key);
+            w.newLine();
+        }
+
+        @Override
+        public void close() {
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+        }
+
     }
     
     /**
@@ -184,19 +431,25 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class SortIterator<K> implements Iterator<K> {
+    static class SortIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
         private final Comparator<K> orderBy;
+        private final LineCodec<K> codec;
+        private final long spillThreshold;
+        private SortedRuns<K> runs;
         private Iterator<K> result;
         private final int max;
 
-        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                LineCodec<K> codec, long spillThreshold) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.codec = codec;
+            this.spillThreshold = spillThreshold;
         }
         
         private void init() {
@@ -216,10 +469,24 @@ public class FilterIterators {
                     Collections.sort(list, orderBy);
                     keepFirst(list, max);
                 }
+                if (isSpillNeeded(codec, spillThreshold, list.size())) {
+                    // each run only needs the first entries as well
+                    Collections.sort(list, orderBy);
+                    keepFirst(list, max);
+                    if (runs == null) {
+                        LOG.debug("Sort: more than {} entries, using temporary files", spillThreshold);
+                        runs = new SortedRuns<K>(orderBy, codec::toLine, codec::fromLine);
+                    }
+                    runs.spill(list);
+                }
             }
             Collections.sort(list, orderBy);
             keepFirst(list, max);
-            result = list.iterator();
+            if (runs == null) {
+                result = list.iterator();
+            } else {
+                result = runs.merge(list, max);
+            }
         }
         
         /**
@@ -252,6 +519,15 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            result = Collections.emptyIterator();
+            if (runs != null) {
+                runs.close();
+            }
+            FilterIterators.close(source);
+        }
         
     }
     
@@ -261,7 +537,7 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class OffsetIterator<K> implements Iterator<K> {
+    static class OffsetIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long offset;
@@ -298,16 +574,22 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
         
     }
     
     /**
      * An iterator that limits the number of returned entries. Entries are only
-     * read when needed (on demand).
+     * read when needed (on demand). The source is closed once the limit is
+     * reached.
      * 
      * @param <K> the entry type
      */
-    static class LimitIterator<K> implements Iterator<K> {
+    static class LimitIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long limit;
@@ -328,14 +610,22 @@ public class FilterIterators {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            count++;
-            return source.next();
+            K k = source.next();
+            if (++count >= limit) {
+                close();
+            }
+            return k;
         }
 
         @Override
         public void remove() {
             throw new UnsupportedOperationException();
         }
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
         
     }
 
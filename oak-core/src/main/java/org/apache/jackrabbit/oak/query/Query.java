@@ -123,6 +123,15 @@ public interface Query {
 
     void setInternal(boolean internal);
 
+    /**
+     * Read the index rows of this query ahead, in the threads of the union
+     * executor, once the rows are requested. The result rows, and so the
+     * trees, are still read by the thread that reads the result.
+     *
+     * @param readAhead whether to read the index rows ahead
+     */
+    void setReadAhead(boolean readAhead);
+
     /**
      * Returns whether the results will be sorted by index. The query must already be prepared.
      *
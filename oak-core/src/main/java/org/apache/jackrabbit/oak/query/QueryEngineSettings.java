@@ -18,6 +18,13 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.jackrabbit.oak.api.StrictPathRestriction;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsMBean;
@@ -60,6 +67,15 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private static final boolean DEFAULT_FULL_TEXT_COMPARISON_WITHOUT_INDEX =
             Boolean.getBoolean("oak.queryFullTextComparisonWithoutIndex");
+
+    private static final boolean DEFAULT_HASH_AND_MERGE_JOIN =
+            Boolean.getBoolean("oak.query.hashAndMergeJoin");
+
+    private static final long DEFAULT_SPILL_TO_DISK_THRESHOLD =
+            Long.getLong("oak.query.spillToDiskThreshold", 0);
+
+    private static final int DEFAULT_UNION_THREADS =
+            Integer.getInteger("oak.query.unionThreads", 0);
     
     private long limitInMemory = DEFAULT_QUERY_LIMIT_IN_MEMORY;
     
@@ -70,6 +86,14 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
     private boolean fullTextComparisonWithoutIndex = 
             DEFAULT_FULL_TEXT_COMPARISON_WITHOUT_INDEX;
     
+    private boolean hashAndMergeJoin = DEFAULT_HASH_AND_MERGE_JOIN;
+
+    private long spillToDiskThreshold = DEFAULT_SPILL_TO_DISK_THRESHOLD;
+
+    private int unionThreads = DEFAULT_UNION_THREADS;
+
+    private ExecutorService unionExecutor;
+
     private boolean sql2Optimisation = 
             Boolean.parseBoolean(System.getProperty(SQL2_OPTIMISATION_FLAG, "true"));
 
@@ -88,6 +112,8 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryValidator queryValidator = new QueryValidator();
 
+    private volatile QueryPlanCache planCache = new QueryPlanCache(QueryPlanCache.DEFAULT_SIZE);
+
     public QueryEngineSettings() {
         statisticsProvider = StatisticsProvider.NOOP;
     }
@@ -153,6 +179,94 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return fullTextComparisonWithoutIndex;
     }
     
+    /**
+     * Whether joins may read the right hand side only once, and use a hash
+     * or merge join instead of a nested loop join if that is cheaper.
+     *
+     * @return true if hash and merge joins may be used
+     */
+    public boolean isHashAndMergeJoin() {
+        return hashAndMergeJoin;
+    }
+
+    public void setHashAndMergeJoin(boolean hashAndMergeJoin) {
+        this.hashAndMergeJoin = hashAndMergeJoin;
+    }
+
+    /**
+     * The number of result rows that sorting and distinct keep in memory
+     * before they write rows to temporary files. If 0, all rows are kept in
+     * memory, up to the in-memory limit.
+     *
+     * @return the threshold, or 0 if disabled
+     */
+    public long getSpillToDiskThreshold() {
+        return spillToDiskThreshold;
+    }
+
+    public void setSpillToDiskThreshold(long spillToDiskThreshold) {
+        this.spillToDiskThreshold = spillToDiskThreshold;
+    }
+
+    /**
+     * The number of threads used to read the index rows of the subqueries of
+     * union queries concurrently. The threads are shared by all queries. The
+     * result rows are always read by the thread that reads the result. If 0,
+     * the subqueries are run one after the other.
+     *
+     * @return the number of threads, or 0 if disabled
+     */
+    public int getUnionThreads() {
+        return unionThreads;
+    }
+
+    public synchronized void setUnionThreads(int unionThreads) {
+        if (unionThreads == this.unionThreads) {
+            return;
+        }
+        this.unionThreads = unionThreads;
+        ExecutorService old = unionExecutor;
+        // swap in the new executor first: running queries look up the
+        // executor for each batch they read
+        unionExecutor = unionThreads > 0 ? newUnionExecutor(unionThreads) : null;
+        if (old != null) {
+            // queued and running tasks are completed
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Get the executor to read the index rows of union queries.
+     *
+     * @return the executor, or null if disabled
+     */
+    public synchronized ExecutorService getUnionExecutor() {
+        if (unionThreads <= 0) {
+            return null;
+        }
+        if (unionExecutor == null) {
+            unionExecutor = newUnionExecutor(unionThreads);
+        }
+        return unionExecutor;
+    }
+
+    private static ExecutorService newUnionExecutor(int unionThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                unionThreads, unionThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "oak-query-union-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     public boolean isSql2Optimisation() {
         return sql2Optimisation;
     }
@@ -183,6 +297,19 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return queryValidator;
     }
 
+    public QueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Replace the query plan cache with a new, empty cache of the given size.
+     *
+     * @param size the maximum number of entries, 0 to disable the cache
+     */
+    public void setPlanCacheSize(int size) {
+        planCache = new QueryPlanCache(size);
+    }
+
     @Override
     public String toString() {
         return "QueryEngineSettings{" +
@@ -192,6 +319,9 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
                 ", fullTextComparisonWithoutIndex=" + fullTextComparisonWithoutIndex +
                 ", sql2Optimisation=" + sql2Optimisation +
                 ", fastQuerySize=" + fastQuerySize +
+                ", hashAndMergeJoin=" + hashAndMergeJoin +
+                ", spillToDiskThreshold=" + spillToDiskThreshold +
+                ", unionThreads=" + unionThreads +
                 '}';
     }
     
@@ -153,6 +153,11 @@ public class QueryImpl implements Query {
      * purposes.
      */
     private boolean traversalEnabled = true;
+
+    /**
+     * Whether the index rows are read ahead by the union executor.
+     */
+    private boolean readAhead;
     
     /**
      * The query option to be used for this query.
@@ -561,6 +566,10 @@ public class QueryImpl implements Query {
             logDebug("query plan " + getPlan());
         }
         final RowIterator rowIt = new RowIterator(context.getBaseState());
+        if (isReadAhead()) {
+            // open the cursor now, so that it starts reading ahead
+            rowIt.start();
+        }
         Comparator<ResultRowImpl> orderBy;
         if (isSortedByIndex) {
             orderBy = null;
@@ -568,7 +577,8 @@ public class QueryImpl implements Query {
             orderBy = ResultRowImpl.getComparator(orderings);
         }
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings,
+                        ResultRowImpl.newCodec(), settings.getSpillToDiskThreshold());
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -862,16 +872,20 @@ public class QueryImpl implements Query {
             return rowIndex;
         }
 
+        void start() {
+            if (!started) {
+                source.execute(rootState);
+                started = true;
+            }
+        }
+
         private void fetchNext() {
             if (end) {
                 return;
             }
             long nanos = System.nanoTime();
             long oldIndex = rowIndex;
-            if (!started) {
-                source.execute(rootState);
-                started = true;
-            }
+            start();
             while (true) {
                 if (source.next()) {
                     if (constraint == null || constraint.evaluate()) {
@@ -1019,6 +1033,49 @@ public class QueryImpl implements Query {
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
             NodeState rootState, FilterImpl filter,
             QueryIndexProvider indexProvider, boolean traversalEnabled) {
+        // Sort the indexes according to their minimum cost to be able to skip the remaining indexes if the cost of the
+        // current index is below the minimum cost of the next index.
+        List<? extends QueryIndex> queryIndexes = MINIMAL_COST_ORDERING
+                .sortedCopy(indexProvider.getQueryIndexes(rootState));
+        QueryPlanCache planCache = getSettings().getPlanCache();
+        if (!planCache.isEnabled()) {
+            return getBestSelectorExecutionPlan(rootState, filter, queryIndexes, traversalEnabled);
+        }
+        long start = System.nanoTime();
+        String key = QueryPlanCache.getKey(filter, getSortOrder(filter),
+                limit != Long.MAX_VALUE || offset > 0);
+        String indexName = planCache.getIndexName(key, rootState);
+        if (indexName != null) {
+            // only ask the index that was selected the last time
+            // (an empty list means traversal was selected)
+            List<QueryIndex> cached = new ArrayList<QueryIndex>();
+            for (QueryIndex index : queryIndexes) {
+                if (indexName.equals(index.getIndexName())) {
+                    cached.add(index);
+                }
+            }
+            SelectorExecutionPlan plan = getBestSelectorExecutionPlan(
+                    rootState, filter, cached, traversalEnabled);
+            if (plan.getIndex() != null
+                    && plan.getEstimatedCost() != Double.POSITIVE_INFINITY) {
+                planCache.planned(true, System.nanoTime() - start);
+                return plan;
+            }
+            LOG.debug("cached index {} not usable anymore for filter {}", indexName, filter);
+            planCache.remove(key);
+        }
+        SelectorExecutionPlan plan = getBestSelectorExecutionPlan(
+                rootState, filter, queryIndexes, traversalEnabled);
+        if (plan.getIndex() != null) {
+            planCache.putIndexName(key, plan.getIndex().getIndexName());
+        }
+        planCache.planned(false, System.nanoTime() - start);
+        return plan;
+    }
+
+    private SelectorExecutionPlan getBestSelectorExecutionPlan(
+            NodeState rootState, FilterImpl filter,
+            List<? extends QueryIndex> queryIndexes, boolean traversalEnabled) {
         QueryIndex bestIndex = null;
         if (LOG.isDebugEnabled()) {
             logDebug("cost using filter " + filter);
@@ -1032,10 +1089,6 @@ public class QueryImpl implements Query {
         double almostBestCost = Double.POSITIVE_INFINITY;
         IndexPlan almostBestPlan = null;
 
-        // Sort the indexes according to their minimum cost to be able to skip the remaining indexes if the cost of the
-        // current index is below the minimum cost of the next index.
-        List<? extends QueryIndex> queryIndexes = MINIMAL_COST_ORDERING
-                .sortedCopy(indexProvider.getQueryIndexes(rootState));
         List<OrderEntry> sortOrder = getSortOrder(filter); 
         for (int i = 0; i < queryIndexes.size(); i++) {
             QueryIndex index = queryIndexes.get(i);
@@ -1369,6 +1422,22 @@ public class QueryImpl implements Query {
         this.isInternal = isInternal;
     }
 
+    @Override
+    public void setReadAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Whether the index rows of the selector are read ahead. Joins are not
+     * read ahead, as the selectors on the right hand side are executed once
+     * per row of the left hand side.
+     *
+     * @return true if the index rows are read ahead
+     */
+    public boolean isReadAhead() {
+        return readAhead && selectors.size() == 1;
+    }
+
     public ExecutionContext getExecutionContext() {
         return context;
     }
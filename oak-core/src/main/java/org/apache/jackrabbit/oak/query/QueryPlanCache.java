@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.spi.nodetype.NodeTypeConstants.JCR_NODE_TYPES;
+import static org.apache.jackrabbit.oak.spi.state.NodeStateUtils.isHidden;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.query.xpath.XPathToSQL2Converter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded cache of query planning results. For each selector of a query
+ * the name of the index that was selected is remembered. The key of an entry
+ * consists of the statement, the selector and the shape of the filter
+ * (which restrictions exist, but not their values). When the same statement
+ * is executed again, possibly with different bind variable values, only the
+ * remembered index (and traversal) is asked for a plan instead of all
+ * available indexes. If that index does not provide a plan anymore, the
+ * query is planned as usual.
+ * <p>
+ * The cache is cleared when node types change or when an index definition
+ * is added or changed, including nested index definitions. This is checked
+ * once per root state, by comparing it against the root state the plans
+ * were last validated for. The comparison does not lock, and below
+ * {@code /jcr:system} only the node types are compared.
+ * <p>
+ * In addition, the conversion of XPath statements to SQL-2 is cached, as it
+ * does not depend on the repository content.
+ */
+public class QueryPlanCache {
+
+    /**
+     * The default number of entries, zero means the cache is disabled.
+     */
+    public static final int DEFAULT_SIZE = Integer.getInteger("oak.query.planCacheSize", 0);
+
+    private final int size;
+
+    private final Cache<String, String> plans;
+
+    private final Cache<String, String> xpath;
+
+    /**
+     * The root state the cached plans are valid for.
+     */
+    private final AtomicReference<NodeState> validRoot = new AtomicReference<NodeState>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong invalidateCount = new AtomicLong();
+
+    private final AtomicLong hitTimeNanos = new AtomicLong();
+
+    private final AtomicLong missTimeNanos = new AtomicLong();
+
+    public QueryPlanCache(int size) {
+        this.size = size;
+        int max = Math.max(size, 0);
+        this.plans = CacheBuilder.newBuilder().maximumSize(max).build();
+        this.xpath = CacheBuilder.newBuilder().maximumSize(max).build();
+    }
+
+    /**
+     * @return whether the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Get the key of a cache entry for the given filter.
+     *
+     * @param filter the filter of a selector
+     * @param sortOrder the sort order, or null
+     * @param limited whether the query has a limit or offset
+     * @return the key
+     */
+    @NotNull
+    static String getKey(@NotNull FilterImpl filter,
+                         @Nullable List<OrderEntry> sortOrder,
+                         boolean limited) {
+        StringBuilder buff = new StringBuilder();
+        buff.append(filter.getQueryStatement());
+        buff.append('\n').append(filter.getSelector().getSelectorName());
+        buff.append(' ').append(filter.getNodeType());
+        buff.append(' ').append(filter.getPathRestriction());
+        buff.append(' ').append(filter.getPath());
+        buff.append(' ').append(filter.isAlwaysFalse());
+        buff.append(' ').append(filter.getFullTextConstraint() != null);
+        buff.append(' ').append(limited);
+        for (PropertyRestriction r : filter.getPropertyRestrictions()) {
+            buff.append('\n').append(r.propertyName);
+            buff.append(' ').append(r.propertyType);
+            buff.append(' ').append(r.first != null).append(r.firstIncluding);
+            buff.append(' ').append(r.last != null).append(r.lastIncluding);
+            buff.append(' ').append(r.isLike);
+            buff.append(' ').append(r.list == null ? -1 : r.list.size());
+        }
+        if (sortOrder != null) {
+            buff.append('\n').append(sortOrder);
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the name of the index that was selected for a key.
+     *
+     * @param key the key
+     * @param rootState the root state the query is run against
+     * @return the index name, or null if not cached
+     */
+    @Nullable
+    String getIndexName(@NotNull String key, @NotNull NodeState rootState) {
+        validate(rootState);
+        return plans.getIfPresent(key);
+    }
+
+    /**
+     * Remember the index that was selected for a key.
+     *
+     * @param key the key
+     * @param indexName the name of the selected index
+     */
+    void putIndexName(@NotNull String key, @NotNull String indexName) {
+        plans.put(key, indexName);
+    }
+
+    /**
+     * Remove an entry, for example because the index does not provide a
+     * plan anymore.
+     *
+     * @param key the key
+     */
+    void remove(@NotNull String key) {
+        plans.invalidate(key);
+    }
+
+    /**
+     * Record the time used to plan a selector.
+     *
+     * @param hit whether the plan was found in the cache
+     * @param nanos the time in nanoseconds
+     */
+    void planned(boolean hit, long nanos) {
+        if (hit) {
+            hitCount.incrementAndGet();
+            hitTimeNanos.addAndGet(nanos);
+        } else {
+            missCount.incrementAndGet();
+            missTimeNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * Convert an XPath statement to SQL-2, using the cache if enabled.
+     *
+     * @param statement the XPath statement
+     * @return the SQL-2 statement
+     */
+    @NotNull
+    String convertXPath(@NotNull final String statement) throws ParseException {
+        if (!isEnabled()) {
+            return new XPathToSQL2Converter().convert(statement);
+        }
+        try {
+            return xpath.get(statement, new Callable<String>() {
+                @Override
+                public String call() throws ParseException {
+                    return new XPathToSQL2Converter().convert(statement);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        plans.invalidateAll();
+        xpath.invalidateAll();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getEntryCount() {
+        return plans.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getInvalidateCount() {
+        return invalidateCount.get();
+    }
+
+    /**
+     * Estimate the planning time saved by the cache, based on the average
+     * planning time of cache misses and cache hits.
+     *
+     * @return the estimated time saved, in milliseconds
+     */
+    public long getPlanningTimeSavedMillis() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        if (hits == 0 || misses == 0) {
+            return 0;
+        }
+        double saved = (double) missTimeNanos.get() / misses
+                - (double) hitTimeNanos.get() / hits;
+        return Math.max(0, (long) (saved * hits / 1000000));
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlanCache{" +
+                "size=" + size +
+                ", entries=" + getEntryCount() +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", invalidations=" + getInvalidateCount() +
+                ", savedMillis=" + getPlanningTimeSavedMillis() +
+                '}';
+    }
+
+    /**
+     * Clear the cached plans if node types or index definitions changed
+     * between the root state the plans were validated for and the given root
+     * state. This is only checked once per root state, unless concurrent
+     * queries run against different root states; the diff is then run by
+     * each of them, as the result does not depend on the order.
+     */
+    private void validate(NodeState rootState) {
+        NodeState base = validRoot.get();
+        if (base == rootState) {
+            return;
+        }
+        if (base != null && !rootState.compareAgainstBaseState(base, new RootDiff())) {
+            invalidateCount.incrementAndGet();
+            plans.invalidateAll();
+        }
+        // if another query already validated a different root state, the
+        // next query compares against that one
+        validRoot.compareAndSet(base, rootState);
+    }
+
+    /**
+     * Checks whether node types or index definitions changed, like
+     * {@link DefinitionDiff}, but only compares the node types below
+     * {@code /jcr:system}, so that for example changes of the version
+     * storage are not compared.
+     */
+    private static class RootDiff extends DefinitionDiff {
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            if (JCR_SYSTEM.equals(name)) {
+                return after.getChildNode(JCR_NODE_TYPES).compareAgainstBaseState(
+                        before.getChildNode(JCR_NODE_TYPES), new VisibleDiff());
+            }
+            return super.childNodeChanged(name, before, after);
+        }
+
+    }
+
+    /**
+     * Checks whether node types or index definitions changed. The diff is
+     * aborted on the first such change. Index definitions can be nested,
+     * that is, below any {@code oak:index} node.
+     */
+    private static class DefinitionDiff extends DefaultNodeStateDiff {
+
+        private static final DefinitionDiff INSTANCE = new DefinitionDiff();
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            if (isHidden(name)) {
+                return true;
+            } else if (INDEX_DEFINITIONS_NAME.equals(name)) {
+                return false;
+            }
+            return EmptyNodeState.compareAgainstEmptyState(after, INSTANCE);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            if (isHidden(name)) {
+                return true;
+            } else if (JCR_NODE_TYPES.equals(name)) {
+                return false;
+            } else if (INDEX_DEFINITIONS_NAME.equals(name)) {
+                // the index data is hidden, other changes are changes
+                // of the definitions
+                return after.compareAgainstBaseState(before, new VisibleDiff());
+            }
+            return after.compareAgainstBaseState(before, INSTANCE);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            // plans that use an index that was removed are not used, as the
+            // index doesn't provide a plan anymore
+            return !INDEX_DEFINITIONS_NAME.equals(name);
+        }
+
+    }
+
+    /**
+     * Aborts on the first change of a node or property that is not hidden.
+     */
+    private static class VisibleDiff extends DefaultNodeStateDiff {
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return isHidden(before.getName());
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return isHidden(name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return isHidden(name) || after.compareAgainstBaseState(before, this);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return isHidden(name);
+        }
+
+    }
+}
@@ -16,16 +16,30 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.ResultRow;
 import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.query.FilterIterators.LineCodec;
 import org.apache.jackrabbit.oak.query.ast.ColumnImpl;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
+import org.apache.jackrabbit.oak.plugins.memory.AbstractBlob;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
 
@@ -277,4 +291,214 @@ public class ResultRowImpl implements ResultRow {
         return new ResultRowImpl(delegate.query, delegate.trees, mappedVals,
                 delegate.distinctValues, delegate.orderValues);
     }
+
+    /**
+     * Create a codec to write rows to temporary files. The trees are stored
+     * as paths, and read again from the query when the row is read.
+     * Binary values are kept in memory by reference, so that their content
+     * is not read.
+     *
+     * @return a new codec
+     */
+    static LineCodec<ResultRowImpl> newCodec() {
+        return new Codec();
+    }
+
+    /**
+     * Converts rows to and from JSON arrays. The query and the distinct
+     * columns are the same for many rows, so they are kept in memory, and
+     * only their index is written. Binary values are kept in memory as well,
+     * as reading and writing their content could be expensive, and the
+     * content is not necessarily text.
+     */
+    private static class Codec implements LineCodec<ResultRowImpl> {
+
+        private final List<ResultRowImpl> templates = new ArrayList<ResultRowImpl>();
+
+        private final List<Blob> blobs = new ArrayList<Blob>();
+
+        @Override
+        public synchronized String toLine(ResultRowImpl row) {
+            int template = -1;
+            for (int i = 0; i < templates.size(); i++) {
+                ResultRowImpl t = templates.get(i);
+                if (t.query == row.query && t.distinctValues == row.distinctValues) {
+                    template = i;
+                    break;
+                }
+            }
+            if (template < 0) {
+                template = templates.size();
+                templates.add(row);
+            }
+            JsopBuilder buff = new JsopBuilder();
+            buff.array().value(template);
+            writePaths(buff, row);
+            writeValues(buff, row.values, false);
+            writeValues(buff, row.orderValues, false);
+            return buff.endArray().toString();
+        }
+
+        @Override
+        public synchronized ResultRowImpl fromLine(String line) {
+            JsopTokenizer t = new JsopTokenizer(line);
+            t.read('[');
+            ResultRowImpl template = templates.get(Integer.parseInt(t.read(JsopReader.NUMBER)));
+            t.read(',');
+            String[] paths = readStrings(t);
+            Tree[] trees = new Tree[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                trees[i] = paths[i] == null ? null : template.query.getTree(paths[i]);
+            }
+            t.read(',');
+            PropertyValue[] values = readValues(t);
+            t.read(',');
+            PropertyValue[] orderValues = readValues(t);
+            t.read(']');
+            return new ResultRowImpl(template.query, trees, values,
+                    template.distinctValues, orderValues);
+        }
+
+        @Override
+        public String getKey(ResultRowImpl row) {
+            JsopBuilder buff = new JsopBuilder();
+            buff.array();
+            writePaths(buff, row);
+            if (row.distinctValues == null) {
+                writeValues(buff, row.values, true);
+            } else {
+                buff.array();
+                for (int i = 0; i < row.values.length; i++) {
+                    if (row.distinctValues[i]) {
+                        writeValue(buff, row.values[i], true);
+                    } else {
+                        buff.value(false);
+                    }
+                }
+                buff.endArray();
+            }
+            return buff.endArray().toString();
+        }
+
+        private static void writePaths(JsopBuilder buff, ResultRowImpl row) {
+            buff.array();
+            for (String p : row.getPaths()) {
+                buff.value(p);
+            }
+            buff.endArray();
+        }
+
+        private void writeValues(JsopBuilder buff, PropertyValue[] values, boolean key) {
+            if (values == null) {
+                buff.value(null);
+                return;
+            }
+            buff.array();
+            for (PropertyValue v : values) {
+                writeValue(buff, v, key);
+            }
+            buff.endArray();
+        }
+
+        /**
+         * Write a value as an array of the type, whether it is multi-valued,
+         * and the values as text. Binary values are written as the index in
+         * the list of binaries, or as the content hash for a key.
+         *
+         * @param buff the target
+         * @param v the value, or null
+         * @param key whether to write a key (where equal decimals need to
+         *            be written in the same way)
+         */
+        private void writeValue(JsopBuilder buff, PropertyValue v, boolean key) {
+            if (v == null) {
+                buff.value(null);
+                return;
+            }
+            int tag = v.getType().tag();
+            buff.array().value(tag).value(v.isArray());
+            if (tag == PropertyType.BINARY) {
+                for (Blob b : v.getValue(Type.BINARIES)) {
+                    if (key) {
+                        buff.value(AbstractBlob.calculateSha256(b).toString());
+                    } else {
+                        buff.value(Integer.toString(blobs.size()));
+                        blobs.add(b);
+                    }
+                }
+                buff.endArray();
+                return;
+            }
+            for (String s : v.getValue(Type.STRINGS)) {
+                if (key && tag == PropertyType.DECIMAL) {
+                    s = new BigDecimal(s).stripTrailingZeros().toPlainString();
+                }
+                buff.value(s);
+            }
+            buff.endArray();
+        }
+
+        private static String[] readStrings(JsopTokenizer t) {
+            ArrayList<String> list = new ArrayList<String>();
+            t.read('[');
+            if (!t.matches(']')) {
+                do {
+                    list.add(t.matches(JsopReader.NULL) ? null : t.read(JsopReader.STRING));
+                } while (t.matches(','));
+                t.read(']');
+            }
+            return list.toArray(new String[0]);
+        }
+
+        private PropertyValue[] readValues(JsopTokenizer t) {
+            if (t.matches(JsopReader.NULL)) {
+                return null;
+            }
+            ArrayList<PropertyValue> list = new ArrayList<PropertyValue>();
+            t.read('[');
+            if (!t.matches(']')) {
+                do {
+                    list.add(readValue(t));
+                } while (t.matches(','));
+                t.read(']');
+            }
+            return list.toArray(new PropertyValue[0]);
+        }
+
+        private PropertyValue readValue(JsopTokenizer t) {
+            if (t.matches(JsopReader.NULL)) {
+                return null;
+            }
+            t.read('[');
+            int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+            t.read(',');
+            boolean array = t.matches(JsopReader.TRUE);
+            if (!array) {
+                t.read(JsopReader.FALSE);
+            }
+            ArrayList<String> strings = new ArrayList<String>();
+            while (t.matches(',')) {
+                strings.add(t.read(JsopReader.STRING));
+            }
+            t.read(']');
+            PropertyState p;
+            if (tag == PropertyType.BINARY) {
+                List<Blob> values = new ArrayList<Blob>(strings.size());
+                for (String s : strings) {
+                    values.add(blobs.get(Integer.parseInt(s)));
+                }
+                p = array ? PropertyStates.createProperty("", values, Type.BINARIES)
+                        : PropertyStates.createProperty("", values.get(0), Type.BINARY);
+            } else if (array) {
+                p = PropertyStates.convert(
+                        PropertyStates.createProperty("", strings, Type.STRINGS),
+                        Type.fromTag(tag, true));
+            } else {
+                p = PropertyStates.createProperty("", strings.get(0), tag);
+            }
+            return PropertyValues.create(p);
+        }
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+import org.apache.commons.io.FileCleaningTracker;
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Sorted runs of entries that are stored in temporary files, so that more
+ * entries can be sorted than fit in memory. Each run is sorted in memory and
+ * then written to a file, one line per entry. The runs are then merged
+ * lazily: only the current entry of each run is kept in memory. A file is
+ * deleted as soon as it was read. To limit the number of open files, the
+ * runs are merged into one file when there are too many.
+ * <p>
+ * The remaining files are deleted when the runs are closed. If the runs are
+ * not closed, for example because a query result is not read to the end, the
+ * files are deleted once the runs are garbage collected.
+ *
+ * @param <T> the entry type
+ */
+class SortedRuns<T> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SortedRuns.class);
+
+    /**
+     * The maximum number of temporary files.
+     */
+    static final int MAX_FILES = 64;
+
+    /**
+     * Deletes the temporary files of runs that were not closed.
+     */
+    private static final FileCleaningTracker TRACKER = new FileCleaningTracker();
+
+    private final Comparator<T> comparator;
+    private final Function<T, String> toLine;
+    private final Function<String, T> fromLine;
+    private final ArrayList<File> files = new ArrayList<File>();
+    private final ArrayList<Run> open = new ArrayList<Run>();
+
+    SortedRuns(Comparator<T> comparator, Function<T, String> toLine,
+            Function<String, T> fromLine) {
+        this.comparator = comparator;
+        this.toLine = toLine;
+        this.fromLine = fromLine;
+    }
+
+    /**
+     * Sort the entries, write them to a new temporary file, and clear the
+     * list. The sort is stable.
+     *
+     * @param list the entries
+     */
+    void spill(List<T> list) {
+        try {
+            File f = ExternalSort.sortAndSave(list, comparator, UTF_8, null,
+                    false, false, toLine);
+            track(f, this);
+            files.add(f);
+            LOG.debug("Wrote {} entries to {}", list.size(), f);
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not write temporary file", e);
+        }
+        list.clear();
+        if (files.size() >= MAX_FILES) {
+            mergeFiles();
+        }
+    }
+
+    /**
+     * Merge all temporary files into one.
+     */
+    private void mergeFiles() {
+        int count = files.size();
+        Iterator<T> it = merge(Collections.<T>emptyList(), Long.MAX_VALUE);
+        try {
+            File f = createTempFile(this);
+            files.add(f);
+            try (BufferedWriter w = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(f), UTF_8))) {
+                while (it.hasNext()) {
+                    w.write(toLine.apply(it.next()));
+                    w.newLine();
+                }
+            }
+            LOG.debug("Merged {} files into {}", count, f);
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not write temporary file", e);
+        }
+    }
+
+    /**
+     * Create a temporary file that is deleted once the owner is garbage
+     * collected, or when the JVM exits.
+     *
+     * @param owner the object that uses the file
+     * @return the file
+     */
+    static File createTempFile(Object owner) throws IOException {
+        File f = File.createTempFile("sortInBatch", "flatfile");
+        track(f, owner);
+        return f;
+    }
+
+    private static void track(File f, Object owner) {
+        f.deleteOnExit();
+        TRACKER.track(f, owner);
+    }
+
+    /**
+     * Merge the runs and the given list. Entries that compare equal are
+     * returned in the order they were added, the entries of the list last.
+     * The temporary files are deleted once they were read, or once the given
+     * number of entries was returned.
+     *
+     * @param sorted the last run, already sorted
+     * @param max the maximum number of entries to return
+     * @return the iterator over all entries
+     */
+    Iterator<T> merge(List<T> sorted, long max) {
+        final ArrayList<Run> runs = new ArrayList<Run>(files.size() + 1);
+        try {
+            for (File f : files) {
+                Run r = new FileRun(runs.size(), f);
+                runs.add(r);
+                open.add(r);
+            }
+        } catch (IOException e) {
+            close();
+            throw new IllegalStateException("Could not read temporary file", e);
+        }
+        files.clear();
+        runs.add(new Run(runs.size(), sorted.iterator()));
+        return new MergeIterator(runs, max);
+    }
+
+    /**
+     * Close the runs that are being read, and delete all temporary files.
+     */
+    @Override
+    public void close() {
+        for (Run r : new ArrayList<Run>(open)) {
+            r.close();
+        }
+        for (File f : files) {
+            f.delete();
+        }
+        files.clear();
+    }
+
+    /**
+     * A sorted run, with the current entry.
+     */
+    private class Run {
+
+        final int index;
+        private final Iterator<T> it;
+        T current;
+
+        Run(int index, Iterator<T> it) {
+            this.index = index;
+            this.it = it;
+        }
+
+        boolean next() {
+            current = read();
+            return current != null;
+        }
+
+        T read() {
+            return it.hasNext() ? it.next() : null;
+        }
+
+        void close() {
+            // nothing to do
+        }
+
+    }
+
+    /**
+     * A sorted run that is read from a temporary file.
+     */
+    private class FileRun extends Run {
+
+        private final File file;
+        private final BufferedReader reader;
+
+        FileRun(int index, File file) throws IOException {
+            super(index, null);
+            this.file = file;
+            this.reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), UTF_8));
+        }
+
+        @Override
+        T read() {
+            String line;
+            try {
+                line = reader.readLine();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read temporary file", e);
+            }
+            return line == null ? null : fromLine.apply(line);
+        }
+
+        @Override
+        void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close {}", file, e);
+            }
+            file.delete();
+            open.remove(this);
+        }
+
+    }
+
+    /**
+     * A k-way merge of sorted runs.
+     */
+    private class MergeIterator extends AbstractIterator<T> {
+
+        private final ArrayList<Run> runs;
+        private final PriorityQueue<Run> queue;
+        private long remaining;
+        private boolean init;
+
+        MergeIterator(ArrayList<Run> runs, long max) {
+            this.runs = runs;
+            this.remaining = max;
+            queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+                @Override
+                public int compare(Run a, Run b) {
+                    int comp = comparator.compare(a.current, b.current);
+                    return comp != 0 ? comp : Integer.compare(a.index, b.index);
+                }
+            });
+        }
+
+        @Override
+        protected T computeNext() {
+            if (!init) {
+                init = true;
+                for (Run r : runs) {
+                    if (r.next()) {
+                        queue.add(r);
+                    } else {
+                        r.close();
+                    }
+                }
+            }
+            if (remaining <= 0 || queue.isEmpty()) {
+                for (Run r : queue) {
+                    r.close();
+                }
+                queue.clear();
+                return endOfData();
+            }
+            remaining--;
+            Run r = queue.poll();
+            T result = r.current;
+            if (r.next()) {
+                queue.add(r);
+            } else {
+                r.close();
+            }
+            return result;
+        }
+
+    }
+
+}
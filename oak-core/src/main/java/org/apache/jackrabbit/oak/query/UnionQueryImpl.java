@@ -308,6 +308,10 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
+        if (settings.getUnionExecutor() != null && !measure && !hasFacets()) {
+            return getRowsConcurrently(distinct, orderBy);
+        }
+
         FacetMerger facetMerger = new FacetMerger(left, right);
 
         Iterator<ResultRowImpl> it;
@@ -329,7 +333,8 @@ public class UnionQueryImpl implements Query {
             it = Iterators.mergeSorted(ImmutableList.of(leftIter, rightIter), orderBy);
         }
 
-        it = FilterIterators.newCombinedFilter(it, distinct, limit, offset, null, settings);
+        it = FilterIterators.newCombinedFilter(it, distinct, limit, offset, null, settings,
+                ResultRowImpl.newCodec(), settings.getSpillToDiskThreshold());
 
         if (measure) {
             // return the measuring iterator for the union
@@ -370,11 +375,80 @@ public class UnionQueryImpl implements Query {
         return it;     
     }
 
+    /**
+     * Run the subqueries, reading their index rows concurrently, and merge the
+     * result. All subqueries are opened first, so that their index rows are
+     * read ahead while the rows of the first subquery are read.
+     *
+     * @param distinct whether to remove duplicate rows
+     * @param orderBy the sort order, or null
+     * @return the rows
+     */
+    private Iterator<ResultRowImpl> getRowsConcurrently(boolean distinct,
+            Comparator<ResultRowImpl> orderBy) {
+        ArrayList<Query> queries = new ArrayList<Query>();
+        addSubqueries(queries, distinct);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("query union: {} subqueries read ahead concurrently", queries.size());
+        }
+        ArrayList<Iterator<ResultRowImpl>> iterators = new ArrayList<Iterator<ResultRowImpl>>();
+        for (Query q : queries) {
+            q.setReadAhead(true);
+            iterators.add(q.getRows());
+        }
+        Iterator<ResultRowImpl> it;
+        if (orderBy == null) {
+            it = Iterators.concat(iterators.iterator());
+        } else {
+            // the subqueries are sorted
+            it = Iterators.mergeSorted(iterators, orderBy);
+        }
+        return FilterIterators.newCombinedFilter(it, distinct, limit, offset, null, settings,
+                ResultRowImpl.newCodec(), settings.getSpillToDiskThreshold());
+    }
+
+    /**
+     * Add the subqueries of this union, in order. Nested unions are added as
+     * well, if that doesn't change the result: if this or an outer union
+     * removes duplicates, or if the nested union doesn't.
+     *
+     * @param target the list of subqueries
+     * @param distinct whether this or an outer union removes duplicates
+     */
+    private void addSubqueries(List<Query> target, boolean distinct) {
+        for (Query q : getChildren()) {
+            if (q instanceof UnionQueryImpl) {
+                UnionQueryImpl u = (UnionQueryImpl) q;
+                if (distinct || u.unionAll) {
+                    u.addSubqueries(target, distinct);
+                    continue;
+                }
+            }
+            target.add(q);
+        }
+    }
+
+    private boolean hasFacets() {
+        for (ColumnImpl c : getColumns()) {
+            String name = c.getColumnName();
+            if (name != null && name.startsWith(QueryConstants.REP_FACET + "(")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
     }
 
+    @Override
+    public void setReadAhead(boolean readAhead) {
+        left.setReadAhead(readAhead);
+        right.setReadAhead(readAhead);
+    }
+
     @Override
     public boolean isSortedByIndex() {
         return left.isSortedByIndex() && right.isSortedByIndex();
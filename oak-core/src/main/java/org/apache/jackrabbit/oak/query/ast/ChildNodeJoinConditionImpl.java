@@ -93,6 +93,59 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
         // nothing to do
     }
 
+    @Override
+    JoinTable createJoinTable(SelectorImpl s) {
+        if (childSelector.equals(parentSelector)) {
+            return null;
+        }
+        if (s.equals(childSelector)) {
+            // look up the children by the path of the parent
+            return new JoinTable.PathTable() {
+
+                @Override
+                void index(int row) {
+                    String c = childSelector.currentPath();
+                    if (c != null && !PathUtils.denotesRoot(c)) {
+                        put(map, PathUtils.getParentPath(c), row);
+                    }
+                }
+
+                @Override
+                boolean collectCandidates(Set<Integer> target) {
+                    String p = parentSelector.currentPath();
+                    if (p != null) {
+                        get(map, p, target);
+                    }
+                    return true;
+                }
+
+            };
+        } else if (s.equals(parentSelector)) {
+            // look up the parent by the parent path of the child
+            return new JoinTable.PathTable() {
+
+                @Override
+                void index(int row) {
+                    String p = parentSelector.currentPath();
+                    if (p != null) {
+                        put(map, p, row);
+                    }
+                }
+
+                @Override
+                boolean collectCandidates(Set<Integer> target) {
+                    String c = childSelector.currentPath();
+                    if (c != null && !PathUtils.denotesRoot(c)) {
+                        get(map, PathUtils.getParentPath(c), target);
+                    }
+                    return true;
+                }
+
+            };
+        }
+        return null;
+    }
+
     @Override
     public boolean isParent(SourceImpl source) {
         return source.equals(parentSelector);
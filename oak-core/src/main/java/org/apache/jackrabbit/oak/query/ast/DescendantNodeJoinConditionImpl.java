@@ -18,10 +18,14 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Method;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 
 /**
@@ -87,6 +91,42 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
         // nothing to do
     }
 
+    @Override
+    JoinTable createJoinTable(SelectorImpl s) {
+        if (descendantSelector.equals(ancestorSelector)) {
+            return null;
+        }
+        if (s.equals(descendantSelector)) {
+            return new DescendantTable();
+        } else if (s.equals(ancestorSelector)) {
+            // look up each ancestor of the descendant by path
+            return new JoinTable.PathTable() {
+
+                @Override
+                void index(int row) {
+                    String a = ancestorSelector.currentPath();
+                    if (a != null) {
+                        put(map, a, row);
+                    }
+                }
+
+                @Override
+                boolean collectCandidates(Set<Integer> target) {
+                    String d = descendantSelector.currentPath();
+                    if (d != null) {
+                        while (!PathUtils.denotesRoot(d)) {
+                            d = PathUtils.getParentPath(d);
+                            get(map, d, target);
+                        }
+                    }
+                    return true;
+                }
+
+            };
+        }
+        return null;
+    }
+
     @Override
     public boolean isParent(SourceImpl source) {
         return source.equals(ancestorSelector);
@@ -102,4 +142,74 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
         return new DescendantNodeJoinConditionImpl(descendantSelectorName, ancestorSelectorName);
     }
 
+    /**
+     * The descendants, sorted by path. All descendants of a node are then
+     * stored next to each other, and are found with a binary search.
+     */
+    private class DescendantTable extends JoinTable {
+
+        private final ArrayList<String> paths = new ArrayList<String>();
+
+        private final ArrayList<Integer> rows = new ArrayList<Integer>();
+
+        private Integer[] sorted;
+
+        @Override
+        Method getMethod() {
+            return Method.MERGE;
+        }
+
+        @Override
+        void index(int row) {
+            String d = descendantSelector.currentPath();
+            if (d != null) {
+                paths.add(d);
+                rows.add(row);
+                sorted = null;
+            }
+        }
+
+        @Override
+        boolean collectCandidates(Set<Integer> target) {
+            String a = ancestorSelector.currentPath();
+            if (a == null) {
+                return true;
+            }
+            if (sorted == null) {
+                sorted = new Integer[paths.size()];
+                for (int i = 0; i < sorted.length; i++) {
+                    sorted[i] = i;
+                }
+                Arrays.sort(sorted, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer o1, Integer o2) {
+                        return paths.get(o1).compareTo(paths.get(o2));
+                    }
+                });
+            }
+            String prefix = PathUtils.denotesRoot(a) ? a : a + "/";
+            // find the first path that is larger or equal to the prefix
+            int low = 0, high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (paths.get(sorted[mid]).compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < sorted.length; i++) {
+                String d = paths.get(sorted[i]);
+                if (!d.startsWith(prefix)) {
+                    break;
+                }
+                if (!d.equals(a)) {
+                    target.add(rows.get(sorted[i]));
+                }
+            }
+            return true;
+        }
+
+    }
+
 }
@@ -18,11 +18,21 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Method;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.plugins.value.Conversions;
 
 /**
  * The "a.x = b.y" join condition.
@@ -166,6 +176,19 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
     public boolean isParent(SourceImpl source) {
         return false;
     }
+
+    @Override
+    JoinTable createJoinTable(SelectorImpl s) {
+        if (selector1.equals(selector2)) {
+            return null;
+        }
+        if (s.equals(selector1)) {
+            return new EquiJoinTable(selector1, property1Name, selector2, property2Name, true);
+        } else if (s.equals(selector2)) {
+            return new EquiJoinTable(selector2, property2Name, selector1, property1Name, false);
+        }
+        return null;
+    }
     
     @Override
     public boolean canEvaluate(Set<SourceImpl> available) {
@@ -176,4 +199,162 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
     public AstElement copyOf() {
         return new EquiJoinConditionImpl(selector1Name, property1Name, selector2Name, property2Name);
     }
+
+    /**
+     * Get the key of a value for a hash join. Values of the same type that
+     * match have the same key.
+     * 
+     * @param v the value
+     * @return the key
+     */
+    static String getKey(PropertyValue v) {
+        switch (v.getType().tag()) {
+        case PropertyType.BINARY:
+            // all binaries have the same key
+            return "";
+        case PropertyType.DATE:
+            // the same point in time, possibly in a different time zone
+            try {
+                return Long.toString(Conversions.convert(
+                        v.getValue(Type.DATE)).toCalendar().getTimeInMillis());
+            } catch (IllegalArgumentException e) {
+                return "";
+            }
+        case PropertyType.DOUBLE:
+            double d = v.getValue(Type.DOUBLE);
+            return d == 0 ? "0" : Double.toString(d);
+        case PropertyType.DECIMAL:
+            BigDecimal x = v.getValue(Type.DECIMAL);
+            return x.signum() == 0 ? "0" : x.stripTrailingZeros().toPlainString();
+        default:
+            return v.getValue(Type.STRING);
+        }
+    }
+
+    /**
+     * The rows of one selector, looked up by the value of the join property
+     * of the other selector. As in {@link #evaluate()}, the value of the
+     * second selector is converted to the type of the value of the first
+     * selector before comparing. Rows with a multi-valued property are
+     * always returned.
+     */
+    private class EquiJoinTable extends JoinTable {
+
+        private final SelectorImpl selector;
+        private final String propertyName;
+        private final SelectorImpl other;
+        private final String otherPropertyName;
+
+        /**
+         * Whether the value of the other selector is converted (if this is
+         * the table of the first selector).
+         */
+        private final boolean convertOther;
+
+        /**
+         * The single values, by row number.
+         */
+        private final ArrayList<PropertyValue> values = new ArrayList<PropertyValue>();
+
+        /**
+         * The row numbers of the rows with a multi-valued property. These
+         * rows are not hashed; they are candidates for every row of the other
+         * selector, and the join condition decides whether they match, the
+         * same way as for a nested loop join.
+         */
+        private final ArrayList<Integer> multiValued = new ArrayList<Integer>();
+
+        /**
+         * A value for each property type of the single values.
+         */
+        private final Map<Integer, PropertyValue> types = new HashMap<Integer, PropertyValue>();
+
+        /**
+         * The row numbers by key, for each property type the values were
+         * converted to.
+         */
+        private final Map<Integer, Map<String, List<Integer>>> maps =
+                new HashMap<Integer, Map<String, List<Integer>>>();
+
+        EquiJoinTable(SelectorImpl selector, String propertyName,
+                SelectorImpl other, String otherPropertyName, boolean convertOther) {
+            this.selector = selector;
+            this.propertyName = propertyName;
+            this.other = other;
+            this.otherPropertyName = otherPropertyName;
+            this.convertOther = convertOther;
+        }
+
+        @Override
+        Method getMethod() {
+            return Method.HASH;
+        }
+
+        @Override
+        void index(int row) {
+            PropertyValue v = selector.currentProperty(propertyName);
+            if (v != null && v.isArray()) {
+                multiValued.add(row);
+                v = null;
+            }
+            values.add(v);
+            if (v != null && !types.containsKey(v.getType().tag())) {
+                types.put(v.getType().tag(), v);
+            }
+            maps.clear();
+        }
+
+        @Override
+        boolean collectCandidates(Set<Integer> target) {
+            PropertyValue v = other.currentProperty(otherPropertyName);
+            if (v == null) {
+                return true;
+            }
+            if (v.isArray()) {
+                return false;
+            }
+            target.addAll(multiValued);
+            if (convertOther) {
+                for (PropertyValue t : types.values()) {
+                    PropertyValue c = convertValueToType(v, t);
+                    if (c.getType().tag() == t.getType().tag()) {
+                        get(getMap(t), getKey(c), target);
+                    }
+                }
+            } else {
+                get(getMap(v), getKey(v), target);
+            }
+            return true;
+        }
+
+        /**
+         * Get the row numbers by key, with the values converted to the type
+         * of the given value.
+         * 
+         * @param type the value with the target type
+         * @return the map
+         */
+        private Map<String, List<Integer>> getMap(PropertyValue type) {
+            int tag = type.getType().tag();
+            Map<String, List<Integer>> map = maps.get(tag);
+            if (map == null) {
+                map = new HashMap<String, List<Integer>>();
+                for (int i = 0; i < values.size(); i++) {
+                    PropertyValue v = values.get(i);
+                    if (v == null) {
+                        continue;
+                    }
+                    v = convertValueToType(v, type);
+                    // skip values that can not be converted
+                    if (v.getType().tag() == tag) {
+                        put(map, getKey(v), i);
+                    }
+                }
+                maps.put(tag, map);
+            }
+            return map;
+        }
+
+    }
+
 }
@@ -81,4 +81,15 @@ public abstract class JoinConditionImpl extends AstElement {
      */
     public abstract boolean canEvaluate(Set<SourceImpl> available);
 
+    /**
+     * Create the table for a hash or merge join, where the given selector is
+     * the right hand side of the join and is read only once.
+     * 
+     * @param s the selector
+     * @return the table, or null if only a nested loop join is supported
+     */
+    JoinTable createJoinTable(SelectorImpl s) {
+        return null;
+    }
+
 }
@@ -19,16 +19,30 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Method;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A join. This object contains the left hand side source, the right hand side
  * source, the join type, and the join condition.
  */
 public class JoinImpl extends SourceImpl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JoinImpl.class);
+
+    /**
+     * The cost to look up the rows of the right hand side of a hash or merge
+     * join for one row of the left hand side.
+     */
+    private static final double JOIN_TABLE_LOOKUP_COST = 1;
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +56,11 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    /**
+     * The rows of the right hand side, for a hash or merge join.
+     */
+    private JoinTable table;
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +126,9 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (plan != null && plan.getMethod() != Method.NESTED_LOOP) {
+            buff.append(" /* ").append(plan.getMethod()).append(" */");
+        }
         return buff.toString();
     }
 
@@ -133,6 +155,7 @@ public class JoinImpl extends SourceImpl {
         left.unprepare();
         right.unprepare();
         plan = null;
+        table = null;
     }
     
     private void applyJoinConditions() {
@@ -175,7 +198,12 @@ public class JoinImpl extends SourceImpl {
         this.plan = joinPlan;
         applyJoinConditions();
         left.prepare(joinPlan.getLeftPlan());
-        right.prepare(joinPlan.getRightPlan());
+        if (joinPlan.getMethod() == Method.NESTED_LOOP) {
+            right.prepare(joinPlan.getRightPlan());
+        } else {
+            ((SelectorImpl) right).prepareWithoutJoinCondition(
+                    (SelectorExecutionPlan) joinPlan.getRightPlan());
+        }
     }
 
     @Override
@@ -191,10 +219,81 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan leftPlan = left.prepare();
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
-        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        Method method = Method.NESTED_LOOP;
+        JoinTable t = createJoinTable();
+        if (t != null) {
+            // a nested loop join executes the right selector once for each
+            // row of the left selector, while a hash or merge join reads
+            // all rows of the right selector once (without the join condition)
+            SelectorImpl s = (SelectorImpl) right;
+            SelectorExecutionPlan readOncePlan = s.getPlanWithoutJoinCondition();
+            double leftRows = getEstimatedRowCount(leftPlan);
+            double nestedLoopCost = leftPlan.getEstimatedCost() + 
+                    leftRows * rightPlan.getEstimatedCost();
+            double tableCost = leftPlan.getEstimatedCost() + 
+                    readOncePlan.getEstimatedCost() + 
+                    leftRows * JOIN_TABLE_LOOKUP_COST;
+            long limit = s.getQuery().getSettings().getLimitInMemory();
+            if (tableCost < nestedLoopCost && 
+                    getEstimatedRowCount(readOncePlan) <= limit) {
+                method = t.getMethod();
+                rightPlan = readOncePlan;
+                cost = tableCost;
+                s.prepareWithoutJoinCondition(readOncePlan);
+            }
+        }
+        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost, method);
         return plan;
     }
 
+    private JoinTable createJoinTable() {
+        if (!(right instanceof SelectorImpl)) {
+            return null;
+        }
+        SelectorImpl s = (SelectorImpl) right;
+        QueryEngineSettings settings = s.getQuery().getSettings();
+        if (!settings.isHashAndMergeJoin()) {
+            return null;
+        }
+        return joinCondition.createJoinTable(s);
+    }
+
+    private static double getEstimatedRowCount(ExecutionPlan p) {
+        if (p instanceof SelectorExecutionPlan) {
+            SelectorExecutionPlan sp = (SelectorExecutionPlan) p;
+            if (sp.getIndexPlan() != null) {
+                return sp.getIndexPlan().getEstimatedEntryCount();
+            }
+        }
+        // for most indexes, the cost is about the number of rows
+        return p.getEstimatedCost();
+    }
+
+    /**
+     * Read all rows of the right selector, for a hash or merge join. If there
+     * are more rows than the in-memory limit (the estimated row count was too
+     * low), a nested loop join is used instead.
+     */
+    private void readJoinTable() {
+        SelectorImpl s = (SelectorImpl) right;
+        long limit = s.getQuery().getSettings().getLimitInMemory();
+        JoinTable t = joinCondition.createJoinTable(s);
+        s.execute(rootState);
+        while (s.next()) {
+            t.add(s.getCurrentRow());
+            if (t.size() > limit) {
+                LOG.info("The {} of {} read more than {} nodes in memory, using a nested loop join",
+                        plan.getMethod(), this, limit);
+                table = null;
+                s.prepareWithJoinCondition(joinCondition);
+                plan = new JoinExecutionPlan(this, plan.getLeftPlan(), s.getExecutionPlan(),
+                        plan.getEstimatedCost(), Method.NESTED_LOOP);
+                return;
+            }
+        }
+        table = t;
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -241,6 +340,9 @@ public class JoinImpl extends SourceImpl {
             return false;
         }
         if (leftNeedExecute) {
+            if (plan != null && plan.getMethod() != Method.NESTED_LOOP) {
+                readJoinTable();
+            }
             left.execute(rootState);
             leftNeedExecute = false;
             leftNeedNext = true;
@@ -255,7 +357,11 @@ public class JoinImpl extends SourceImpl {
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                if (table != null) {
+                    ((SelectorImpl) right).execute(table.getCandidates());
+                } else {
+                    right.execute(rootState);
+                }
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
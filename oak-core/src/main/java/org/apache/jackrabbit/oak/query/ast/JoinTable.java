@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan.Method;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+
+/**
+ * The rows of the right hand side selector of a hash or merge join. The
+ * selector is read once, and the rows are then looked up for each row of the
+ * left hand side. The lookup may return rows that don't match; the join
+ * condition is evaluated for each row that is returned.
+ */
+abstract class JoinTable {
+
+    private final ArrayList<IndexRow> rows = new ArrayList<IndexRow>();
+
+    /**
+     * Get the join method.
+     *
+     * @return the method
+     */
+    abstract Method getMethod();
+
+    /**
+     * Add a row. The selector is positioned on that row.
+     *
+     * @param row the row
+     */
+    void add(IndexRow row) {
+        int index = rows.size();
+        rows.add(row);
+        index(index);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Get the rows that may match the current rows of the left hand side, in
+     * the order they were added.
+     *
+     * @return the rows
+     */
+    List<IndexRow> getCandidates() {
+        TreeSet<Integer> candidates = new TreeSet<Integer>();
+        if (!collectCandidates(candidates)) {
+            return rows;
+        }
+        ArrayList<IndexRow> list = new ArrayList<IndexRow>(candidates.size());
+        for (int i : candidates) {
+            list.add(rows.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * Remember the row with the given number. The selector is positioned on
+     * that row.
+     *
+     * @param row the row number
+     */
+    abstract void index(int row);
+
+    /**
+     * Collect the numbers of the rows that may match the current rows of the
+     * left hand side.
+     *
+     * @param target the set to add the row numbers to
+     * @return false if all rows may match
+     */
+    abstract boolean collectCandidates(Set<Integer> target);
+
+    /**
+     * Add a row number to the list of the given key.
+     *
+     * @param map the map
+     * @param key the key
+     * @param row the row number
+     */
+    static void put(Map<String, List<Integer>> map, String key, int row) {
+        List<Integer> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Integer>(1);
+            map.put(key, list);
+        }
+        list.add(row);
+    }
+
+    /**
+     * Add the row numbers of the given key, if any.
+     *
+     * @param map the map
+     * @param key the key
+     * @param target the set to add the row numbers to
+     */
+    static void get(Map<String, List<Integer>> map, String key, Set<Integer> target) {
+        List<Integer> list = map.get(key);
+        if (list != null) {
+            target.addAll(list);
+        }
+    }
+
+    /**
+     * A table where the rows are looked up by path.
+     */
+    abstract static class PathTable extends JoinTable {
+
+        protected final HashMap<String, List<Integer>> map =
+                new HashMap<String, List<Integer>>();
+
+        @Override
+        Method getMethod() {
+            return Method.HASH;
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.apache.jackrabbit.oak.api.Result.SizePrecision;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.slf4j.MDC;
+
+/**
+ * A cursor that reads the rows of an index cursor ahead, in batches, in
+ * tasks of an executor. Only the index rows are read by the executor: index
+ * cursors read node states, which are immutable. The trees of the result
+ * rows are read by the thread that reads the result, because trees are not
+ * thread-safe when the session changes them.
+ * <p>
+ * There is at most one task at a time, so that the index cursor is never
+ * read concurrently. If there is no executor, or it was shut down, the rows
+ * are read by the calling thread.
+ */
+class ReadAheadCursor implements Cursor {
+
+    /**
+     * The number of rows read in one task.
+     */
+    static final int BATCH_SIZE = 100;
+
+    private final Cursor cursor;
+    private final Supplier<ExecutorService> executor;
+    private final Map<String, String> mdc;
+    private final ArrayDeque<IndexRow> buffer = new ArrayDeque<IndexRow>();
+    private Future<List<IndexRow>> pending;
+    private boolean last;
+
+    /**
+     * Create the cursor, and start reading the first batch.
+     *
+     * @param cursor the index cursor
+     * @param executor the executor to use, looked up for each batch
+     */
+    ReadAheadCursor(Cursor cursor, Supplier<ExecutorService> executor) {
+        this.cursor = cursor;
+        this.executor = executor;
+        this.mdc = MDC.getCopyOfContextMap();
+        readAhead();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (buffer.isEmpty() && !last) {
+            readAhead();
+            if (pending != null) {
+                awaitPending();
+            } else {
+                addBatch(read());
+            }
+        }
+        return !buffer.isEmpty();
+    }
+
+    @Override
+    public IndexRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        IndexRow r = buffer.poll();
+        if (buffer.size() <= BATCH_SIZE / 2) {
+            readAhead();
+        }
+        return r;
+    }
+
+    @Override
+    public long getSize(SizePrecision precision, long max) {
+        // the index cursor must not be used concurrently
+        awaitPending();
+        return cursor.getSize(precision, max);
+    }
+
+    private void readAhead() {
+        if (pending != null || last) {
+            return;
+        }
+        ExecutorService e = executor.get();
+        if (e == null) {
+            return;
+        }
+        try {
+            pending = e.submit(this::readBatch);
+        } catch (RejectedExecutionException ex) {
+            // the executor was replaced: read in the calling thread
+        }
+    }
+
+    private List<IndexRow> readBatch() {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        try {
+            return read();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private List<IndexRow> read() {
+        ArrayList<IndexRow> list = new ArrayList<IndexRow>(BATCH_SIZE);
+        while (list.size() < BATCH_SIZE && cursor.hasNext()) {
+            list.add(cursor.next());
+        }
+        return list;
+    }
+
+    private void awaitPending() {
+        if (pending != null) {
+            List<IndexRow> list = get(pending);
+            pending = null;
+            addBatch(list);
+        }
+    }
+
+    private void addBatch(List<IndexRow> list) {
+        if (list.size() < BATCH_SIZE) {
+            last = true;
+        }
+        buffer.addAll(list);
+    }
+
+    private static List<IndexRow> get(Future<List<IndexRow>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading an index", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+}
@@ -23,6 +23,7 @@ import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -312,6 +313,51 @@ public class SelectorImpl extends SourceImpl {
     public SelectorExecutionPlan getExecutionPlan() {
         return plan;
     }
+
+    /**
+     * Get the plan to read all rows of this selector once, that is, without
+     * the restriction of the join condition. This is used for hash and merge
+     * joins.
+     * 
+     * @return the plan
+     */
+    public SelectorExecutionPlan getPlanWithoutJoinCondition() {
+        JoinConditionImpl c = joinCondition;
+        joinCondition = null;
+        try {
+            return query.getBestSelectorExecutionPlan(createFilter(true));
+        } finally {
+            joinCondition = c;
+        }
+    }
+
+    /**
+     * Use a plan that was created without the join condition. The join
+     * condition is then evaluated by the join.
+     * 
+     * @param p the plan
+     */
+    public void prepareWithoutJoinCondition(SelectorExecutionPlan p) {
+        if (p.getSelector() != this) {
+            throw new IllegalArgumentException("Not a plan for this selector");
+        }
+        if (plan == null) {
+            pushDown();
+        }
+        joinCondition = null;
+        plan = p;
+    }
+
+    /**
+     * Use the join condition again, after the join read too many rows
+     * without it. The best plan with the join condition is used.
+     *
+     * @param c the join condition
+     */
+    void prepareWithJoinCondition(JoinConditionImpl c) {
+        joinCondition = c;
+        plan = query.getBestSelectorExecutionPlan(createFilter(true));
+    }
     
     @Override
     public void setQueryConstraint(ConstraintImpl queryConstraint) {
@@ -345,6 +391,29 @@ public class SelectorImpl extends SourceImpl {
         }
     }
     
+    /**
+     * Execute the query by reading the given rows, which were read before,
+     * instead of using the index. This is used for hash and merge joins.
+     * 
+     * @param rows the rows
+     */
+    void execute(List<IndexRow> rows) {
+        final Iterator<IndexRow> it = rows.iterator();
+        cursor = new Cursors.AbstractCursor() {
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public IndexRow next() {
+                return it.next();
+            }
+
+        };
+    }
+
     private void executeInternal(NodeState rootState) {
         QueryIndex index = plan.getIndex();
         timerDuration = null;
@@ -364,6 +433,26 @@ public class SelectorImpl extends SourceImpl {
             planIndexName = index.getIndexName(f, rootState);
             cursor = index.query(f, rootState);
         }
+        if (query.isReadAhead() && canReadAhead()) {
+            cursor = new ReadAheadCursor(cursor, query.getSettings()::getUnionExecutor);
+        }
+    }
+
+    /**
+     * Whether the index rows can be read by another thread. This is not the
+     * case for native queries, as the index may check access rights while
+     * reading the rows, and the permission provider is not thread-safe.
+     *
+     * @return true if the rows can be read ahead
+     */
+    private boolean canReadAhead() {
+        for (ConstraintImpl c : selectorConstraints) {
+            if (c instanceof NativeFunctionImpl || c instanceof SimilarImpl
+                    || c instanceof SpellcheckImpl || c instanceof SuggestImpl) {
+                return false;
+            }
+        }
+        return true;
     }
     
     private long startTimer() {
@@ -850,6 +939,11 @@ public class SelectorImpl extends SourceImpl {
         }
     }
 
+    @Nullable
+    IndexRow getCurrentRow() {
+        return currentRow;
+    }
+
     public boolean isVirtualRow() {
         return currentRow != null && currentRow.isVirtualRow();
     }
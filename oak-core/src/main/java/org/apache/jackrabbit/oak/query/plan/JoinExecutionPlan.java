@@ -24,15 +24,58 @@ import org.apache.jackrabbit.oak.query.ast.JoinImpl;
  */
 public class JoinExecutionPlan implements ExecutionPlan {
 
+    /**
+     * The method used to combine the rows of both sides of a join.
+     */
+    public enum Method {
+
+        /**
+         * The right hand side is executed once for each row of the left hand
+         * side.
+         */
+        NESTED_LOOP("nested loop"),
+
+        /**
+         * The right hand side is read once, and its rows are looked up by the
+         * value of the join condition.
+         */
+        HASH("hash join"),
+
+        /**
+         * The right hand side is read once and sorted by path, and its rows
+         * are looked up by path prefix.
+         */
+        MERGE("merge join");
+
+        private final String name;
+
+        Method(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
     private final JoinImpl join;
     private final ExecutionPlan leftPlan, rightPlan;
     private final double estimatedCost;
+    private final Method method;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, estimatedCost, Method.NESTED_LOOP);
+    }
+
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost,
+            Method method) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
         this.estimatedCost = estimatedCost;
+        this.method = method;
     }
     
     @Override
@@ -52,4 +95,8 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    public Method getMethod() {
+        return method;
+    }
+
 }
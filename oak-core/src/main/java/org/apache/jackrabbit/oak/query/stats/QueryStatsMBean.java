@@ -54,5 +54,25 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    @Description("The maximum number of entries in the query plan cache " +
+            "(0 if the cache is disabled).")
+    int getPlanCacheSize();
+
+    @Description("The number of times a cached query plan was used.")
+    long getPlanCacheHitCount();
+
+    @Description("The number of times a query was planned without a cached plan.")
+    long getPlanCacheMissCount();
+
+    @Description("The number of times the query plan cache was cleared " +
+            "because node types or index definitions changed.")
+    long getPlanCacheInvalidateCount();
+
+    @Description("The estimated planning time saved by the query plan cache, in milliseconds.")
+    long getPlanningTimeSavedMillis();
+
+    @Description("Clear the query plan cache.")
+    void clearPlanCache();
     
 }
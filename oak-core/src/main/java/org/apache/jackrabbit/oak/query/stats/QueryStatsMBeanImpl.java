@@ -105,6 +105,36 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         return captureStackTraces;
     }
     
+    @Override
+    public int getPlanCacheSize() {
+        return settings.getPlanCache().getSize();
+    }
+
+    @Override
+    public long getPlanCacheHitCount() {
+        return settings.getPlanCache().getHitCount();
+    }
+
+    @Override
+    public long getPlanCacheMissCount() {
+        return settings.getPlanCache().getMissCount();
+    }
+
+    @Override
+    public long getPlanCacheInvalidateCount() {
+        return settings.getPlanCache().getInvalidateCount();
+    }
+
+    @Override
+    public long getPlanningTimeSavedMillis() {
+        return settings.getPlanCache().getPlanningTimeSavedMillis();
+    }
+
+    @Override
+    public void clearPlanCache() {
+        settings.getPlanCache().clear();
+    }
+
     @Override
     public String asJson() {
         ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>(statistics.values());
@@ -269,6 +269,197 @@ public class AsyncIndexUpdateTest {
                 find(lookupChild, "foo", "abc"));
     }
 
+    @Test
+    public void concurrentIndexUpdate() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider();
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndexSecond", true, false, ImmutableSet.of("bar"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        createIndexDefinition(
+                builder.child("newchild").child("other")
+                        .child(INDEX_DEFINITIONS_NAME), "subIndex", true,
+                false, ImmutableSet.of("foo"), null).setProperty(
+                ASYNC_PROPERTY_NAME, "async");
+
+        builder.child("testRoot").setProperty("foo", "abc")
+                .setProperty("bar", "def");
+        builder.child("newchild").child("other").child("testChild")
+                .setProperty("foo", "xyz");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider);
+        async.setIndexThreads(2);
+        async.run();
+        assertFalse(async.isFailing());
+
+        builder = store.getRoot().builder();
+        builder.child("testSecond").setProperty("foo", "ghi")
+                .setProperty("bar", "ghi");
+        builder.child("newchild").child("other").child("testChild2")
+                .setProperty("foo", "xyz");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        async.run();
+        assertFalse(async.isFailing());
+        async.close();
+
+        NodeState root = store.getRoot();
+        PropertyIndexLookup lookup = new PropertyIndexLookup(root);
+        assertEquals(ImmutableSet.of("testRoot"), find(lookup, "foo", "abc"));
+        assertEquals(ImmutableSet.of("testSecond"), find(lookup, "foo", "ghi"));
+        assertEquals(ImmutableSet.of("testRoot"), find(lookup, "bar", "def"));
+        assertEquals(ImmutableSet.of("testSecond"), find(lookup, "bar", "ghi"));
+
+        PropertyIndexLookup lookupChild = new PropertyIndexLookup(root
+                .getChildNode("newchild").getChildNode("other"));
+        assertEquals(ImmutableSet.of("testChild", "testChild2"),
+                find(lookupChild, "foo", "xyz"));
+        assertEquals(ImmutableSet.<String> of(),
+                find(lookupChild, "foo", "ghi"));
+    }
+
+    @Test
+    public void concurrentIndexUpdateFailure() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        final IndexEditorProvider properties = new PropertyIndexEditorProvider();
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        IndexEditorProvider provider = new IndexEditorProvider() {
+            @Override
+            public Editor getIndexEditor(@NotNull String type, @NotNull NodeBuilder definition,
+                    @NotNull NodeState root, @NotNull IndexUpdateCallback callback)
+                    throws CommitFailedException {
+                if ("failing".equals(type)) {
+                    return new DefaultEditor() {
+                        @Override
+                        public void enter(NodeState before, NodeState after) {
+                            if (fail.get()) {
+                                throw new IllegalStateException("Testing failures");
+                            }
+                        }
+                    };
+                }
+                return properties.getIndexEditor(type, definition, root, callback);
+            }
+        };
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "failing", true, false, ImmutableSet.of("bar"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async")
+                .setProperty(IndexConstants.TYPE_PROPERTY_NAME, "failing");
+        builder.child("testRoot").setProperty("foo", "abc");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider);
+        async.setIndexThreads(2);
+        async.run();
+        assertTrue(async.isFailing());
+        // the lane stays at the same checkpoint, and the failing index is tracked
+        assertNull(store.getRoot().getChildNode(ASYNC).getString("async"));
+        assertFalse(store.getRoot().getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("rootIndex").hasChildNode(INDEX_CONTENT_NODE_NAME));
+        assertEquals(ImmutableSet.of("/oak:index/failing"), async.getCorruptIndexHandler()
+                .getFailingIndexData("async").keySet());
+
+        // once the index editor works again, the index is no longer failing
+        fail.set(false);
+        async.run();
+        assertFalse(async.isFailing());
+        assertTrue(async.getCorruptIndexHandler().getFailingIndexData("async").isEmpty());
+        async.close();
+        assertEquals(ImmutableSet.of("testRoot"),
+                find(new PropertyIndexLookup(store.getRoot()), "foo", "abc"));
+    }
+
+    @Test
+    public void concurrentIndexUpdateInGroups() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        final AtomicBoolean fail = new AtomicBoolean(false);
+        final IndexEditorProvider properties = new PropertyIndexEditorProvider();
+        IndexEditorProvider provider = new IndexEditorProvider() {
+            @Override
+            public Editor getIndexEditor(@NotNull String type, @NotNull NodeBuilder definition,
+                    @NotNull NodeState root, @NotNull IndexUpdateCallback callback)
+                    throws CommitFailedException {
+                if ("failing".equals(type)) {
+                    return new DefaultEditor() {
+                        @Override
+                        public void enter(NodeState before, NodeState after) {
+                            if (fail.get()) {
+                                throw new IllegalStateException("Testing failures");
+                            }
+                        }
+                    };
+                }
+                return properties.getIndexEditor(type, definition, root, callback);
+            }
+        };
+
+        NodeBuilder builder = store.getRoot().builder();
+        for (String p : new String[] {"foo", "bar", "baz"}) {
+            createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                    p + "Index", true, false, ImmutableSet.of(p), null)
+                    .setProperty(ASYNC_PROPERTY_NAME, "async");
+        }
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "failing", true, false, ImmutableSet.of("x"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async")
+                .setProperty(IndexConstants.TYPE_PROPERTY_NAME, "failing");
+        createIndexDefinition(
+                builder.child("newchild").child("other")
+                        .child(INDEX_DEFINITIONS_NAME), "subIndex", true,
+                false, ImmutableSet.of("foo"), null).setProperty(
+                ASYNC_PROPERTY_NAME, "async");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        // five indexes, updated in two groups
+        Clock clock = new Clock.Virtual();
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider);
+        async.getCorruptIndexHandler().setClock(clock);
+        async.setIndexThreads(2);
+        async.run();
+        assertFalse(async.isFailing());
+        String checkpoint = store.getRoot().getChildNode(ASYNC).getString("async");
+        assertNotNull(checkpoint);
+
+        builder = store.getRoot().builder();
+        builder.child("testRoot").setProperty("foo", "abc")
+                .setProperty("bar", "def").setProperty("baz", "ghi");
+        builder.child("newchild").child("other").child("testChild")
+                .setProperty("foo", "xyz");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        fail.set(true);
+        async.run();
+        assertTrue(async.isFailing());
+        assertEquals(checkpoint, store.getRoot().getChildNode(ASYNC).getString("async"));
+
+        // the failing index is marked as corrupt by the task that updates it,
+        // and skipped, so that the other indexes are updated
+        clock.waitUntil(clock.getTime() + async.getCorruptIndexHandler().getCorruptIntervalMillis() + 1);
+        async.run();
+        async.close();
+
+        NodeState root = store.getRoot();
+        assertNotEquals(checkpoint, root.getChildNode(ASYNC).getString("async"));
+        assertTrue(root.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("failing")
+                .hasProperty(IndexConstants.CORRUPT_PROPERTY_NAME));
+        PropertyIndexLookup lookup = new PropertyIndexLookup(root);
+        assertEquals(ImmutableSet.of("testRoot"), find(lookup, "foo", "abc"));
+        assertEquals(ImmutableSet.of("testRoot"), find(lookup, "bar", "def"));
+        assertEquals(ImmutableSet.of("testRoot"), find(lookup, "baz", "ghi"));
+        assertEquals(ImmutableSet.of("testChild"), find(new PropertyIndexLookup(root
+                .getChildNode("newchild").getChildNode("other")), "foo", "xyz"));
+    }
+
     @Test
     public void testAsyncPause() throws Exception {
         NodeStore store = new MemoryNodeStore();
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+/**
+ * Tests running the subqueries of union queries concurrently.
+ */
+public class ConcurrentUnionTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        // register the settings as a service, so that they can be changed
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree content = root.getTree("/").addChild("content");
+        for (int i = 0; i < 500; i++) {
+            content.addChild("n" + i).setProperty("x", (long) (i * 7 % 101));
+        }
+        root.commit();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertEquals(0, new QueryEngineSettings().getUnionThreads());
+    }
+
+    @Test
+    public void union() throws Exception {
+        // the ranges overlap, so that there are duplicates
+        String query = union(" union ");
+        List<String> expected = executeQuery(query, SQL2, true, true);
+        assertEquals(325, expected.size());
+
+        settings.setUnionThreads(3);
+        // the same rows, in the same order
+        assertEquals(expected, executeQuery(query, SQL2, true, true));
+        assertEquals(expected.subList(7, 17), query(query, 10, 7));
+        assertEquals(expected.subList(0, 1), query(query, 1, 0));
+    }
+
+    @Test
+    public void unionAll() throws Exception {
+        String query = union(" union all ");
+        List<String> expected = executeQuery(query, SQL2, true, true);
+        settings.setUnionThreads(2);
+        assertEquals(expected, executeQuery(query, SQL2, true, true));
+
+        // nested unions that remove duplicates
+        query = "select [jcr:path] from [nt:base] where isdescendantnode('/content') and [x] < 20 " +
+                "union all " + union(" union ");
+        settings.setUnionThreads(0);
+        expected = executeQuery(query, SQL2, true, true);
+        settings.setUnionThreads(2);
+        assertEquals(expected, executeQuery(query, SQL2, true, true));
+    }
+
+    @Test
+    public void orderBy() throws Exception {
+        String query = union(" union ") + " order by [x] desc, [jcr:path]";
+        List<String> expected = executeQuery(query, SQL2, true);
+
+        settings.setUnionThreads(4);
+        assertEquals(expected, executeQuery(query, SQL2, true));
+        assertEquals(expected.subList(20, 50), query(query, 30, 20));
+    }
+
+    @Test
+    public void changeWhileReading() throws Exception {
+        String query = union(" union all ");
+        List<String> expected = executeQuery(query, SQL2, true, true);
+
+        settings.setUnionThreads(3);
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(query, SQL2, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            String path = row.getPath();
+            paths.add(path);
+            // the session changes the content while the result is read
+            root.getTree(path).setProperty("y", 1L);
+        }
+        assertEquals(expected, paths);
+    }
+
+    @Test
+    public void changeThreadsWhileReading() throws Exception {
+        String query = union(" union all ");
+        List<String> expected = executeQuery(query, SQL2, true, true);
+
+        settings.setUnionThreads(2);
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(query, SQL2, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            paths.add(row.getPath());
+            if (paths.size() == 10) {
+                settings.setUnionThreads(4);
+            } else if (paths.size() == 120) {
+                settings.setUnionThreads(0);
+            }
+        }
+        assertEquals(expected, paths);
+    }
+
+    private static String union(String op) {
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) {
+                buff.append(op);
+            }
+            buff.append("select [jcr:path] from [nt:base] " +
+                    "where isdescendantnode('/content') " +
+                    "and [x] >= " + (i * 10) + " and [x] < " + (i * 10 + 15));
+        }
+        return buff.toString();
+    }
+
+    private List<String> query(String query, long limit, long offset) throws Exception {
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(query, SQL2, limit, offset,
+                NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            paths.add(row.getPath());
+        }
+        return paths;
+    }
+
+}
@@ -21,13 +21,17 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.jackrabbit.oak.query.FilterIterators.LineCodec;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
@@ -48,6 +52,25 @@ public class IteratorsTest {
         
     };
 
+    private static final LineCodec<Integer> INT_CODEC = new LineCodec<Integer>() {
+
+        @Override
+        public String toLine(Integer entry) {
+            return entry.toString();
+        }
+
+        @Override
+        public Integer fromLine(String line) {
+            return Integer.valueOf(line);
+        }
+
+        @Override
+        public String getKey(Integer entry) {
+            return entry.toString();
+        }
+
+    };
+
     @Test
     public void distinct() {
         assertEquals("", toString(FilterIterators.newDistinct(it(), settings)));
@@ -194,6 +217,66 @@ public class IteratorsTest {
 
 }
 
+    @Test
+    public void spillToDisk() {
+        Random r = new Random(1);
+        Integer[] data = new Integer[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = r.nextInt(300);
+        }
+        List<Integer> sorted = Lists.newArrayList(data);
+        Collections.sort(sorted);
+        List<Integer> distinct = new ArrayList<Integer>(new LinkedHashSet<Integer>(sorted));
+        List<Integer> distinctInOrder = new ArrayList<Integer>(
+                new LinkedHashSet<Integer>(Lists.newArrayList(data)));
+        // the in-memory limit would be exceeded without temporary files
+        settings.setLimitInMemory(100);
+        for (int threshold : new int[] {1, 7, 50, 100}) {
+            // order by
+            assertEquals(sorted, Lists.newArrayList(FilterIterators.newCombinedFilter(
+                    it(data), false, Long.MAX_VALUE, 0, INT_COMP, settings, INT_CODEC, threshold)));
+            // order by & limit & offset
+            assertEquals(sorted.subList(10, 30), Lists.newArrayList(FilterIterators.newCombinedFilter(
+                    it(data), false, 20, 10, INT_COMP, settings, INT_CODEC, threshold)));
+            // distinct, the order of the source is kept
+            assertEquals(distinctInOrder, Lists.newArrayList(FilterIterators.newCombinedFilter(
+                    it(data), true, Long.MAX_VALUE, 0, null, settings, INT_CODEC, threshold)));
+            // distinct & order by
+            assertEquals(distinct, Lists.newArrayList(FilterIterators.newCombinedFilter(
+                    it(data), true, Long.MAX_VALUE, 0, INT_COMP, settings, INT_CODEC, threshold)));
+        }
+        try {
+            Lists.newArrayList(FilterIterators.newCombinedFilter(
+                    it(data), false, Long.MAX_VALUE, 0, INT_COMP, settings, INT_CODEC, 0));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void spillToDiskDistinctIsLazy() {
+        final AtomicInteger read = new AtomicInteger();
+        Iterator<Integer> source = new Iterator<Integer>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                return read.incrementAndGet() % 500;
+            }
+
+        };
+        // the first 20 entries are in memory, the next ones read in batches
+        assertEquals("1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, " +
+                "21, 22, 23, 24, 25", toString(FilterIterators.newCombinedFilter(
+                source, true, 25, 0, null, settings, INT_CODEC, 20)));
+        assertEquals(40, read.get());
+    }
+
     private static <K> Iterator<K> it(K... x) {
         return Collections.unmodifiableCollection(Lists.newArrayList(x)).iterator();
     }
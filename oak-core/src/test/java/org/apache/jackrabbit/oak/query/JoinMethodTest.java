@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+/**
+ * Tests hash and merge joins.
+ */
+public class JoinMethodTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new PropertyIndexEditorProvider())
+                .with(new PropertyIndexProvider())
+                .with(whiteboard)
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        IndexUtils.createIndexDefinition(root.getTree("/oak:index"), "type",
+                false, new String[]{"type"});
+        Tree content = root.getTree("/").addChild("content");
+        for (int i = 0; i < 5; i++) {
+            Tree p = content.addChild("p" + i);
+            p.setProperty("type", "parent");
+            p.setProperty("id", "" + i);
+            for (int j = 0; j < 20; j++) {
+                Tree c = p.addChild("c" + j);
+                c.setProperty("type", "child");
+                // the children of p4 point to a parent that doesn't exist
+                c.setProperty("p", i == 4 ? 99L : i);
+            }
+        }
+        Tree other = root.getTree("/").addChild("other");
+        for (int i = 0; i < 10; i++) {
+            Tree c = other.addChild("c" + i);
+            c.setProperty("type", "child");
+            c.setProperty("p", "" + (i % 3));
+        }
+        root.commit();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(new QueryEngineSettings().isHashAndMergeJoin());
+    }
+
+    @Test
+    public void equiJoin() throws Exception {
+        String query = "select p.[jcr:path], c.[jcr:path] from [nt:base] as p " +
+                "inner join [nt:base] as c on p.id = c.p " +
+                "where p.type = 'parent' and c.type = 'child'";
+        List<String> expected = executeQuery(query, SQL2);
+        // 4 * 20 children below the parents, and all of the others
+        assertEquals(90, expected.size());
+        assertTrue(expected.contains("/content/p2, /other/c2"));
+        assertFalse(explain(query).contains("hash join"));
+
+        settings.setHashAndMergeJoin(true);
+        assertTrue(explain(query), explain(query).contains("hash join"));
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void outerJoin() throws Exception {
+        String query = "select c.[jcr:path], p.[jcr:path] from [nt:base] as c " +
+                "left outer join [nt:base] as p on p.id = c.p " +
+                "where c.type = 'child' and isdescendantnode(c, '/other')";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(10, expected.size());
+        settings.setHashAndMergeJoin(true);
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void childNodeJoin() throws Exception {
+        String query = "select p.[jcr:path], c.[jcr:path] from [nt:base] as p " +
+                "inner join [nt:base] as c on ischildnode(c, p) " +
+                "where p.type = 'parent' and c.type = 'child'";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(100, expected.size());
+        settings.setHashAndMergeJoin(true);
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void descendantNodeJoin() throws Exception {
+        String query = "select a.[jcr:path], b.[jcr:path] from [nt:base] as a " +
+                "inner join [nt:base] as b on isdescendantnode(b, a) " +
+                "where a.type = 'parent' and b.type = 'child'";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(100, expected.size());
+        assertTrue(expected.contains("/content/p1, /content/p1/c7"));
+
+        settings.setHashAndMergeJoin(true);
+        assertTrue(explain(query), explain(query).contains("merge join"));
+        assertEquals(expected, executeQuery(query, SQL2));
+
+        // the ancestor is on the right hand side
+        query = "select a.[jcr:path], b.[jcr:path] from [nt:base] as b " +
+                "inner join [nt:base] as a on isdescendantnode(b, a) " +
+                "where a.type = 'parent' and b.type = 'child'";
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void tooManyRows() throws Exception {
+        // the right hand side is traversed, so that its rows are not
+        // limited by the index cursor
+        String query = "select p.[jcr:path], c.[jcr:path] from [nt:base] as p " +
+                "inner join [nt:base] as c on p.id = c.p " +
+                "where p.type = 'parent' and isdescendantnode(c, '/content')";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(80, expected.size());
+
+        settings.setHashAndMergeJoin(true);
+        settings.setLimitInMemory(Long.MAX_VALUE);
+        assertTrue(explain(query), explain(query).contains("hash join"));
+        Result result = executeQuery(query, SQL2, NO_BINDINGS);
+        // the estimate was too low: more rows than the limit are read,
+        // so that a nested loop join is used instead
+        settings.setLimitInMemory(50);
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : result.getRows()) {
+            paths.add(readRow(row, false));
+        }
+        Collections.sort(paths);
+        assertEquals(expected, paths);
+    }
+
+    private String explain(String query) {
+        return executeQuery("explain " + query, SQL2).get(0);
+    }
+
+}
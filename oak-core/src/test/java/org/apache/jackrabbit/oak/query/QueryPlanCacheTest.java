@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+public class QueryPlanCacheTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        settings.setPlanCacheSize(100);
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new PropertyIndexEditorProvider())
+                .with(new PropertyIndexProvider())
+                .with(whiteboard)
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        IndexUtils.createIndexDefinition(root.getTree("/oak:index"), "foo",
+                false, new String[]{"foo"});
+        Tree content = root.getTree("/").addChild("content");
+        for (int i = 0; i < 10; i++) {
+            content.addChild("n" + i).setProperty("foo", "v" + i);
+        }
+        root.commit();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(new QueryEngineSettings().getPlanCache().isEnabled());
+    }
+
+    @Test
+    public void bindVariables() throws Exception {
+        QueryPlanCache cache = settings.getPlanCache();
+        String statement = "select [jcr:path] from [nt:base] where [foo] = $v";
+        for (int i = 0; i < 3; i++) {
+            assertEquals(singletonList("/content/n" + i), query(statement, "v" + i));
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getEntryCount());
+
+        // a different shape of the filter is a different entry
+        assertEquals(singletonList("/content/n1"), query(
+                "select [jcr:path] from [nt:base] where [foo] = $v and isdescendantnode('/content')", "v1"));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void invalidateOnReindex() throws Exception {
+        QueryPlanCache cache = settings.getPlanCache();
+        String statement = "select [jcr:path] from [nt:base] where [foo] = $v";
+        assertEquals(singletonList("/content/n1"), query(statement, "v1"));
+        assertEquals(singletonList("/content/n2"), query(statement, "v2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getInvalidateCount());
+
+        root.getTree("/oak:index/foo").setProperty(REINDEX_PROPERTY_NAME, true);
+        root.commit();
+
+        assertEquals(singletonList("/content/n3"), query(statement, "v3"));
+        assertEquals(1, cache.getInvalidateCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void invalidateOnNestedIndex() throws Exception {
+        QueryPlanCache cache = settings.getPlanCache();
+        String statement = "select [jcr:path] from [nt:base] where [foo] = $v";
+        assertEquals(singletonList("/content/n1"), query(statement, "v1"));
+
+        // changes of the content don't invalidate the cache
+        root.getTree("/content").addChild("n10").setProperty("foo", "v10");
+        root.commit();
+        assertEquals(singletonList("/content/n10"), query(statement, "v10"));
+        assertEquals(0, cache.getInvalidateCount());
+        assertEquals(1, cache.getHitCount());
+
+        IndexUtils.createIndexDefinition(root.getTree("/content").addChild("oak:index"),
+                "nested", false, new String[]{"foo"});
+        root.commit();
+        assertEquals(singletonList("/content/n2"), query(statement, "v2"));
+        assertEquals(1, cache.getInvalidateCount());
+
+        root.getTree("/content/oak:index/nested").setProperty(REINDEX_PROPERTY_NAME, true);
+        root.commit();
+        assertEquals(singletonList("/content/n3"), query(statement, "v3"));
+        assertEquals(2, cache.getInvalidateCount());
+    }
+
+    @Test
+    public void invalidateOnNodeTypes() throws Exception {
+        QueryPlanCache cache = settings.getPlanCache();
+        String statement = "select [jcr:path] from [nt:base] where [foo] = $v";
+        assertEquals(singletonList("/content/n1"), query(statement, "v1"));
+
+        // only the node types are compared below /jcr:system
+        root.getTree("/jcr:system").addChild("test").setProperty("bar", "x");
+        root.commit();
+        assertEquals(singletonList("/content/n2"), query(statement, "v2"));
+        assertEquals(0, cache.getInvalidateCount());
+        assertEquals(1, cache.getHitCount());
+
+        root.getTree("/jcr:system/jcr:nodeTypes").addChild("test:type");
+        root.commit();
+        assertEquals(singletonList("/content/n3"), query(statement, "v3"));
+        assertEquals(1, cache.getInvalidateCount());
+    }
+
+    @Test
+    public void removedIndex() throws Exception {
+        String statement = "select [jcr:path] from [nt:base] where [foo] = $v";
+        assertEquals(singletonList("/content/n1"), query(statement, "v1"));
+
+        root.getTree("/oak:index/foo").remove();
+        root.commit();
+
+        // falls back to traversal
+        assertEquals(singletonList("/content/n2"), query(statement, "v2"));
+    }
+
+    @Test
+    public void xpath() throws Exception {
+        QueryPlanCache cache = settings.getPlanCache();
+        String statement = "/jcr:root/content//*[@foo = 'v1']";
+        String sql2 = cache.convertXPath(statement);
+        assertTrue(sql2, sql2.startsWith("select"));
+        assertEquals(singletonList("/content/n1"), executeQuery(statement, XPATH));
+        try {
+            cache.convertXPath("/jcr:root/content[");
+            fail("ParseException expected");
+        } catch (ParseException e) {
+            // expected
+        }
+    }
+
+    private List<String> query(String statement, String value) throws ParseException {
+        Map<String, PropertyValue> bindings = singletonMap("v", PropertyValues.newString(value));
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : executeQuery(statement, SQL2, bindings).getRows()) {
+            paths.add(row.getPath());
+        }
+        return paths;
+    }
+}
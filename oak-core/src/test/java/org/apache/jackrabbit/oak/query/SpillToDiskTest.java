@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.AbstractBlob;
+import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Test;
+
+/**
+ * Tests sorting and distinct with temporary files.
+ */
+public class SpillToDiskTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        // register the settings as a service, so that they can be changed
+        Whiteboard whiteboard = new DefaultWhiteboard();
+        whiteboard.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak()
+                .with(whiteboard)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree content = root.getTree("/").addChild("content");
+        for (int i = 0; i < 300; i++) {
+            Tree n = content.addChild("n" + i);
+            n.setProperty("x", (long) (i * 7 % 101));
+            n.setProperty("d", "2020-01-" + (10 + i % 20) + "T00:00:00.000Z", Type.DATE);
+            if (i % 3 == 0) {
+                n.setProperty("tags", asList("a\tb", "c\nd", "e" + i % 5), Type.STRINGS);
+            }
+            // binaries that are not valid UTF-8
+            byte[] data = {(byte) 0xff, (byte) 0xfe, (byte) (i % 10)};
+            n.setProperty("b", new ArrayBasedBlob(data), Type.BINARY);
+        }
+        root.commit();
+    }
+
+    @Test
+    public void orderBy() throws Exception {
+        String query = "select [jcr:path], [x], [d], [tags] from [nt:base] " +
+                "where isdescendantnode('/content') order by [x] desc, [d]";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(300, expected.size());
+
+        settings.setLimitInMemory(100);
+        try {
+            executeQuery(query, SQL2);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        settings.setSpillToDiskThreshold(50);
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+    @Test
+    public void binary() throws Exception {
+        String query = "select [jcr:path], [b] from [nt:base] " +
+                "where isdescendantnode('/content') order by [x], [jcr:path]";
+        // distinct, with keys that contain the binaries
+        String distinct = "select distinct [b] from [nt:base] where isdescendantnode('/content')";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(300, expected.size());
+        List<Blob> expectedBlobs = getBinaries(distinct);
+        assertEquals(300, expectedBlobs.size());
+
+        settings.setLimitInMemory(100);
+        settings.setSpillToDiskThreshold(5);
+        assertEquals(expected, executeQuery(query, SQL2));
+        List<Blob> blobs = getBinaries(distinct);
+        assertEquals(expectedBlobs.size(), blobs.size());
+        for (int i = 0; i < blobs.size(); i++) {
+            assertTrue(AbstractBlob.equal(expectedBlobs.get(i), blobs.get(i)));
+        }
+    }
+
+    private List<Blob> getBinaries(String query) throws ParseException {
+        Result result = executeQuery(query, SQL2, Collections.<String, PropertyValue>emptyMap());
+        List<Blob> blobs = new ArrayList<Blob>();
+        for (ResultRow row : result.getRows()) {
+            blobs.add(row.getValue("b").getValue(Type.BINARY));
+        }
+        return blobs;
+    }
+
+    @Test
+    public void union() throws Exception {
+        // the rows with 40 < x < 60 are returned by both subqueries
+        String query = "select [jcr:path], [x] from [nt:base] " +
+                "where isdescendantnode('/content') and [x] < 60 " +
+                "union select [jcr:path], [x] from [nt:base] " +
+                "where isdescendantnode('/content') and [x] > 40";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(300, expected.size());
+
+        settings.setLimitInMemory(100);
+        settings.setSpillToDiskThreshold(50);
+        assertEquals(expected, executeQuery(query, SQL2));
+
+        query += " order by [x], [jcr:path]";
+        settings.setLimitInMemory(Long.MAX_VALUE);
+        settings.setSpillToDiskThreshold(0);
+        expected = executeQuery(query, SQL2);
+        assertEquals(300, expected.size());
+        settings.setLimitInMemory(100);
+        settings.setSpillToDiskThreshold(50);
+        assertEquals(expected, executeQuery(query, SQL2));
+    }
+
+}
@@ -61,16 +61,16 @@ public class Compactor {
             Integer.getInteger("compaction.update.limit", 10000);
 
     @NotNull
-    private final SegmentWriter writer;
+    final SegmentWriter writer;
 
     @NotNull
-    private final SegmentReader reader;
+    final SegmentReader reader;
 
     @Nullable
-    private final BlobStore blobStore;
+    final BlobStore blobStore;
 
     @NotNull
-    private final GCNodeWriteMonitor compactionMonitor;
+    final GCNodeWriteMonitor compactionMonitor;
 
     /**
      * Create a new instance based on the passed arguments.
@@ -120,11 +120,27 @@ public class Compactor {
         checkNotNull(before);
         checkNotNull(after);
         checkNotNull(onto);
+        return compactDown(before, after, onto, canceller);
+    }
+
+    /**
+     * Sequentially compact the differences between {@code after} and {@code before}
+     * on top of {@code onto}. All recursive calls for child nodes go through this
+     * method such that sub classes overriding {@link #compact(NodeState, NodeState, NodeState, Canceller)}
+     * are not re-entered.
+     */
+    @Nullable
+    SegmentNodeState compactDown(
+        @NotNull NodeState before,
+        @NotNull NodeState after,
+        @NotNull NodeState onto,
+        Canceller canceller
+    ) throws IOException {
         return new CompactDiff(onto, canceller).diff(before, after);
     }
 
     @Nullable
-    private static Buffer getStableIdBytes(NodeState state) {
+    static Buffer getStableIdBytes(NodeState state) {
         if (state instanceof SegmentNodeState) {
             return ((SegmentNodeState) state).getStableIdBytes();
         } else {
@@ -197,7 +213,7 @@ public class Compactor {
         @Override
         public boolean childNodeAdded(@NotNull String name, @NotNull NodeState after) {
             try {
-                SegmentNodeState compacted = compact(after, canceller);
+                SegmentNodeState compacted = compactDown(EMPTY_NODE, after, EMPTY_NODE, canceller);
                 if (compacted != null) {
                     updated();
                     builder.setChildNode(name, compacted);
@@ -214,7 +230,7 @@ public class Compactor {
         @Override
         public boolean childNodeChanged(@NotNull String name, @NotNull NodeState before, @NotNull NodeState after) {
             try {
-                SegmentNodeState compacted = compact(before, after, base.getChildNode(name), canceller);
+                SegmentNodeState compacted = compactDown(before, after, base.getChildNode(name), canceller);
                 if (compacted != null) {
                     updated();
                     builder.setChildNode(name, compacted);
@@ -242,7 +258,7 @@ public class Compactor {
     }
 
     @NotNull
-    private  PropertyState compact(@NotNull PropertyState property) {
+    PropertyState compact(@NotNull PropertyState property) {
         compactionMonitor.onProperty();
         String name = property.getName();
         Type<?> type = property.getType();
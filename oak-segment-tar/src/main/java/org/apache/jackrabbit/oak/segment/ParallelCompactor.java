@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeBuilder;
+import org.apache.jackrabbit.oak.segment.file.GCNodeWriteMonitor;
+import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
+import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This compactor partitions the content tree into sub-trees and compacts these
+ * in parallel. The top {@link #PARALLEL_DEPTH} levels of the tree are diffed
+ * by the calling thread, each changed or added child node is then handed to a
+ * {@link ForkJoinPool} of {@code concurrency} workers. Below that depth and for
+ * nodes with {@link Compactor#UPDATE_LIMIT} or more children, sub-trees are
+ * compacted sequentially by the worker which picked them up.
+ * <p>
+ * The passed {@link SegmentWriter} must be safe for concurrent use, i.e.
+ * be backed by a writer pool such that each worker writes into its own
+ * segment buffer.
+ */
+public class ParallelCompactor extends Compactor {
+
+    /**
+     * Depth up to which the content tree is partitioned into parallel tasks.
+     */
+    static final int PARALLEL_DEPTH =
+            Integer.getInteger("oak.segment.compaction.parallelDepth", 2);
+
+    private final int concurrency;
+
+    /**
+     * Create a new instance based on the passed arguments.
+     * @param reader     segment reader used to read from the segments
+     * @param writer     segment writer used to serialise to segments. Must be
+     *                   safe for concurrent use.
+     * @param blobStore  the blob store or {@code null} if none
+     * @param compactionMonitor   notification call back for each compacted nodes,
+     *                            properties, and binaries
+     * @param concurrency  number of threads used for compaction
+     */
+    public ParallelCompactor(
+            @NotNull SegmentReader reader,
+            @NotNull SegmentWriter writer,
+            @Nullable BlobStore blobStore,
+            @NotNull GCNodeWriteMonitor compactionMonitor,
+            int concurrency) {
+        super(reader, writer, blobStore, compactionMonitor);
+        checkArgument(concurrency > 0, "concurrency must be positive");
+        this.concurrency = concurrency;
+    }
+
+    @Nullable
+    @Override
+    public SegmentNodeState compact(
+        @NotNull NodeState before,
+        @NotNull NodeState after,
+        @NotNull NodeState onto,
+        Canceller canceller
+    ) throws IOException {
+        checkNotNull(before);
+        checkNotNull(after);
+        checkNotNull(onto);
+        if (concurrency == 1) {
+            return compactDown(before, after, onto, canceller);
+        }
+
+        AtomicBoolean failed = new AtomicBoolean();
+        Canceller taskCanceller = canceller.withCondition("parallel compaction failed", failed::get);
+        ForkJoinPool pool = new ForkJoinPool(concurrency);
+        try {
+            return pool.invoke(new CompactionTask(before, after, onto, taskCanceller, failed, 0));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private class CompactionTask extends RecursiveTask<SegmentNodeState> {
+
+        @NotNull
+        private final NodeState before;
+
+        @NotNull
+        private final NodeState after;
+
+        @NotNull
+        private final NodeState onto;
+
+        private final Canceller canceller;
+
+        @NotNull
+        private final AtomicBoolean failed;
+
+        private final int depth;
+
+        CompactionTask(
+            @NotNull NodeState before,
+            @NotNull NodeState after,
+            @NotNull NodeState onto,
+            Canceller canceller,
+            @NotNull AtomicBoolean failed,
+            int depth
+        ) {
+            this.before = before;
+            this.after = after;
+            this.onto = onto;
+            this.canceller = canceller;
+            this.failed = failed;
+            this.depth = depth;
+        }
+
+        @Override
+        protected SegmentNodeState compute() {
+            try {
+                if (depth >= PARALLEL_DEPTH || after.getChildNodeCount(UPDATE_LIMIT) >= UPDATE_LIMIT) {
+                    return compactDown(before, after, onto, canceller);
+                } else {
+                    return compactSplit();
+                }
+            } catch (IOException e) {
+                failed.set(true);
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException e) {
+                failed.set(true);
+                throw e;
+            }
+        }
+
+        @Nullable
+        private SegmentNodeState compactSplit() throws IOException {
+            MemoryNodeBuilder builder = new MemoryNodeBuilder(onto);
+            List<String> names = newArrayList();
+            List<CompactionTask> tasks = newArrayList();
+
+            boolean success = after.compareAgainstBaseState(before, new CancelableDiff(new NodeStateDiff() {
+                @Override
+                public boolean propertyAdded(PropertyState after) {
+                    builder.setProperty(compact(after));
+                    return true;
+                }
+
+                @Override
+                public boolean propertyChanged(PropertyState before, PropertyState after) {
+                    builder.setProperty(compact(after));
+                    return true;
+                }
+
+                @Override
+                public boolean propertyDeleted(PropertyState before) {
+                    builder.removeProperty(before.getName());
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeAdded(String name, NodeState after) {
+                    names.add(name);
+                    tasks.add(new CompactionTask(EMPTY_NODE, after, EMPTY_NODE, canceller, failed, depth + 1));
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+                    names.add(name);
+                    tasks.add(new CompactionTask(before, after, onto.getChildNode(name), canceller, failed, depth + 1));
+                    return true;
+                }
+
+                @Override
+                public boolean childNodeDeleted(String name, NodeState before) {
+                    builder.getChildNode(name).remove();
+                    return true;
+                }
+            }, () -> canceller.check().isCancelled()));
+
+            if (!success) {
+                return null;
+            }
+
+            invokeAll(tasks);
+            for (int i = 0; i < tasks.size(); i++) {
+                SegmentNodeState compacted = tasks.get(i).join();
+                if (compacted == null) {
+                    return null;
+                }
+                builder.setChildNode(names.get(i), compacted);
+            }
+
+            RecordId nodeId = writer.writeNode(builder.getNodeState(), getStableIdBytes(after));
+            compactionMonitor.onNode();
+            return new SegmentNodeState(reader, writer, blobStore, nodeId);
+        }
+    }
+
+}
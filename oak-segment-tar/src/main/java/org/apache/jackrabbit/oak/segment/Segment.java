@@ -39,6 +39,7 @@ import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.UUID;
+import java.util.function.IntFunction;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.AbstractIterator;
@@ -217,6 +218,20 @@ public class Segment {
         }
     }
 
+    private Segment(@NotNull Segment segment, @NotNull Buffer data) {
+        this.reader = segment.reader;
+        this.id = segment.id;
+        this.info = segment.info;
+        this.version = segment.version;
+        this.recordNumbers = segment.recordNumbers;
+        this.segmentReferences = segment.segmentReferences;
+        if (id.isDataSegmentId()) {
+            this.data = newSegmentData(data);
+        } else {
+            this.data = newRawSegmentData(data);
+        }
+    }
+
     private static String toHex(byte[] bytes) {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
@@ -566,6 +581,42 @@ public class Segment {
         data.binDump(stream);
     }
 
+    /**
+     * @return {@code true} if the data of this segment is held outside of the
+     * Java heap, e.g. because it is memory mapped.
+     */
+    boolean isDirect() {
+        return data.isDirect();
+    }
+
+    /**
+     * Create a copy of this segment backed by a buffer obtained from {@code
+     * allocator}. The copy shares the record number and segment reference
+     * tables with this instance.
+     *
+     * @param allocator allocates a buffer of the requested capacity
+     * @return a copy of this segment
+     */
+    @NotNull
+    Segment copy(@NotNull IntFunction<Buffer> allocator) throws IOException {
+        Buffer buffer = allocator.apply(data.size());
+        data.binDump(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+                buffer.put((byte) b);
+            }
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) {
+                buffer.put(b, off, len);
+            }
+
+        });
+        buffer.flip();
+        return new Segment(this, buffer);
+    }
+
     /**
      * Convert an offset into an address.
      * @param offset
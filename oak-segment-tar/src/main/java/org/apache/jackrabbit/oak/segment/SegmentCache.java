@@ -20,21 +20,35 @@
 package org.apache.jackrabbit.oak.segment;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.jackrabbit.oak.segment.CacheWeights.segmentWeight;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.RemovalNotification;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
 import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.CacheWeights.SegmentCacheWeigher;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A cache for {@link SegmentId#isDataSegmentId() data} {@link Segment}
@@ -45,6 +59,13 @@ import org.jetbrains.annotations.NotNull;
  * level cache is implemented by memoising the segment in its id (see {@code
  * SegmentId#segment}. Every time an segment is evicted from this cache the
  * memoised segment is discarded (see {@code SegmentId#onAccess}.
+ * <p>
+ * Optionally segments evicted from this cache are retained in an off-heap
+ * cache of a separately configured size. Segments in the off-heap cache keep
+ * their data in direct memory, which is allocated up front, so they do not
+ * add to the heap occupancy and to the garbage collection cost. On a miss in
+ * this cache the off-heap cache is consulted before the segment is read from
+ * the underlying store.
  */
 public abstract class SegmentCache {
 
@@ -53,8 +74,15 @@ public abstract class SegmentCache {
      */
     public static final int DEFAULT_SEGMENT_CACHE_MB = 256;
 
+    /**
+     * Default maximum weight of the off-heap cache in MB
+     */
+    public static final int DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB = 0;
+
     private static final String NAME = "Segment Cache";
 
+    private static final String OFF_HEAP_NAME = "Segment Off-Heap Cache";
+
     /**
      * Create a new segment cache of the given size. Returns an always empty
      * cache for {@code cacheSizeMB <= 0}.
@@ -63,8 +91,35 @@ public abstract class SegmentCache {
      */
     @NotNull
     public static SegmentCache newSegmentCache(long cacheSizeMB) {
+        return newSegmentCache(cacheSizeMB, 0);
+    }
+
+    /**
+     * Create a new segment cache of the given size backed by an off-heap
+     * cache of the given size. Returns an always empty cache for {@code
+     * cacheSizeMB <= 0}. No off-heap cache is used for {@code offHeapCacheSizeMB
+     * <= 0}.
+     *
+     * @param cacheSizeMB        size of the cache in megabytes.
+     * @param offHeapCacheSizeMB size of the off-heap cache in megabytes.
+     */
+    @NotNull
+    public static SegmentCache newSegmentCache(long cacheSizeMB, long offHeapCacheSizeMB) {
+        return newSegmentCache(cacheSizeMB, offHeapCacheSizeMB, OffHeapCache.SLAB_SIZE);
+    }
+
+    /**
+     * Create a new segment cache like {@link #newSegmentCache(long, long)},
+     * allocating the off-heap memory in slabs of the given size.
+     *
+     * @param cacheSizeMB        size of the cache in megabytes.
+     * @param offHeapCacheSizeMB size of the off-heap cache in megabytes.
+     * @param slabSize           maximum size of a slab of direct memory.
+     */
+    @NotNull
+    static SegmentCache newSegmentCache(long cacheSizeMB, long offHeapCacheSizeMB, int slabSize) {
         if (cacheSizeMB > 0) {
-            return new NonEmptyCache(cacheSizeMB);
+            return new NonEmptyCache(cacheSizeMB, offHeapCacheSizeMB, slabSize);
         } else {
             return new EmptyCache();
         }
@@ -102,6 +157,13 @@ public abstract class SegmentCache {
     @NotNull
     public abstract AbstractCacheStats getCacheStats();
 
+    /**
+     * @return Statistics for the off-heap cache backing this cache or {@code
+     * null} if there is none.
+     */
+    @Nullable
+    public abstract AbstractCacheStats getOffHeapCacheStats();
+
     /**
      * Record a hit in this cache's underlying statistics.
      *
@@ -124,12 +186,21 @@ public abstract class SegmentCache {
         @NotNull
         private final Stats stats;
 
+        /**
+         * Off-heap cache of segments evicted from {@link #cache} or {@code
+         * null} if disabled.
+         */
+        @Nullable
+        private final OffHeapCache offHeapCache;
+
         /**
          * Create a new cache of the given size.
          *
-         * @param cacheSizeMB size of the cache in megabytes.
+         * @param cacheSizeMB        size of the cache in megabytes.
+         * @param offHeapCacheSizeMB size of the off-heap cache in megabytes.
+         * @param slabSize           maximum size of a slab of direct memory.
          */
-        private NonEmptyCache(long cacheSizeMB) {
+        private NonEmptyCache(long cacheSizeMB, long offHeapCacheSizeMB, int slabSize) {
             long maximumWeight = cacheSizeMB * 1024 * 1024;
             this.cache = CacheBuilder.newBuilder()
                     .concurrencyLevel(16)
@@ -138,6 +209,11 @@ public abstract class SegmentCache {
                     .removalListener(this::onRemove)
                     .build();
             this.stats = new Stats(NAME, maximumWeight, cache::size);
+            if (offHeapCacheSizeMB > 0) {
+                this.offHeapCache = new OffHeapCache(offHeapCacheSizeMB, slabSize);
+            } else {
+                this.offHeapCache = null;
+            }
         }
 
         /**
@@ -151,6 +227,9 @@ public abstract class SegmentCache {
             if (notification.getKey() != null) {
                 notification.getKey().unloaded();
             }
+            if (offHeapCache != null && notification.wasEvicted() && notification.getValue() != null) {
+                offHeapCache.putSegment(notification.getValue());
+            }
         }
 
         @Override
@@ -160,7 +239,9 @@ public abstract class SegmentCache {
                 return cache.get(id, () -> {
                     try {
                         long t0 = System.nanoTime();
-                        Segment segment = loader.call();
+                        Segment segment = offHeapCache != null
+                                ? offHeapCache.getSegment(id, loader)
+                                : loader.call();
                         stats.loadSuccessCount.incrementAndGet();
                         stats.loadTime.addAndGet(System.nanoTime() - t0);
                         stats.missCount.incrementAndGet();
@@ -201,6 +282,9 @@ public abstract class SegmentCache {
         @Override
         public void clear() {
             cache.invalidateAll();
+            if (offHeapCache != null) {
+                offHeapCache.clear();
+            }
         }
 
         @Override
@@ -209,6 +293,12 @@ public abstract class SegmentCache {
             return stats;
         }
 
+        @Override
+        @Nullable
+        public AbstractCacheStats getOffHeapCacheStats() {
+            return offHeapCache != null ? offHeapCache.stats : null;
+        }
+
         @Override
         public void recordHit() {
             stats.hitCount.incrementAndGet();
@@ -251,12 +341,255 @@ public abstract class SegmentCache {
             return stats;
         }
 
+        @Nullable
+        @Override
+        public AbstractCacheStats getOffHeapCacheStats() {
+            return null;
+        }
+
         @Override
         public void recordHit() {
             stats.hitCount.incrementAndGet();
         }
     }
 
+    /**
+     * Cache of segments whose data is held in direct memory. Segments are
+     * copied into this cache when they are evicted from the on-heap cache and
+     * copied back to the heap when they are requested again. Segments whose
+     * data already lives outside the heap (i.e. memory mapped segments) are
+     * not cached here.
+     * <p>
+     * The direct memory is allocated once, in slabs of at most {@link
+     * #slabSize} bytes, so the size of this cache is a hard bound. Segments
+     * are written to the slabs one after the other, wrapping around at the
+     * end, and the segments whose memory is overwritten are evicted: the
+     * oldest segment is evicted first.
+     * <p>
+     * Segments are copied into the slabs by a background thread, so that
+     * readers evicting segments from the on-heap cache are not slowed down.
+     * Segments are dropped if the copying thread falls behind.
+     */
+    private static class OffHeapCache {
+
+        /**
+         * Default maximum size of a slab of direct memory
+         */
+        private static final int SLAB_SIZE = 1 << 30;
+
+        /**
+         * Maximum size of a slab of direct memory
+         */
+        private final int slabSize;
+
+        /**
+         * Maximum number of segments waiting to be copied into this cache
+         */
+        private static final int QUEUE_SIZE = 64;
+
+        @NotNull
+        private final Buffer[] slabs;
+
+        @NotNull
+        private final Map<SegmentId, Entry> index = new ConcurrentHashMap<>();
+
+        /**
+         * Entries in the order they were written to the slabs, guarded by
+         * the write lock of {@link #lock}.
+         */
+        @NotNull
+        private final Deque<Entry> entries = new ArrayDeque<>();
+
+        /**
+         * Readers of entries hold the read lock, so that the memory of an
+         * entry is not overwritten while it is read.
+         */
+        @NotNull
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        @NotNull
+        private final ThreadPoolExecutor executor;
+
+        @NotNull
+        private final Stats stats;
+
+        /**
+         * Position of the next segment in the slabs. Only accessed by the
+         * copying thread.
+         */
+        private long position;
+
+        OffHeapCache(long cacheSizeMB, int slabSize) {
+            long maximumWeight = cacheSizeMB * 1024 * 1024;
+            this.slabSize = slabSize;
+            this.slabs = new Buffer[(int) ((maximumWeight + slabSize - 1) / slabSize)];
+            for (int k = 0; k < slabs.length; k++) {
+                slabs[k] = Buffer.allocateDirect((int) Math.min(slabSize, maximumWeight - (long) k * slabSize));
+            }
+            this.executor = new ThreadPoolExecutor(
+                1,
+                1,
+                60,
+                SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_SIZE),
+                new NamedThreadFactory("segment-off-heap-cache")
+            );
+            this.executor.allowCoreThreadTimeOut(true);
+            this.stats = new Stats(OFF_HEAP_NAME, maximumWeight, () -> (long) index.size());
+        }
+
+        /**
+         * Retrieve a heap copy of a segment from this cache or load it
+         * through {@code loader} if not in this cache.
+         */
+        @NotNull
+        Segment getSegment(@NotNull SegmentId id, @NotNull Callable<Segment> loader) throws Exception {
+            Entry entry = index.get(id);
+            if (entry != null) {
+                long t0 = System.nanoTime();
+                Segment copy = null;
+                lock.readLock().lock();
+                try {
+                    // The entry might have been evicted in the meantime
+                    if (index.get(id) == entry) {
+                        copy = entry.segment.copy(Buffer::allocate);
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (copy != null) {
+                    stats.hitCount.incrementAndGet();
+                    stats.loadSuccessCount.incrementAndGet();
+                    stats.loadTime.addAndGet(System.nanoTime() - t0);
+                    return copy;
+                }
+            }
+            stats.missCount.incrementAndGet();
+            return loader.call();
+        }
+
+        /**
+         * Schedule {@code segment} to be copied into this cache unless it is
+         * already cached or its data does not live on the heap.
+         */
+        void putSegment(@NotNull Segment segment) {
+            if (segment.isDirect() || index.containsKey(segment.getSegmentId())) {
+                return;
+            }
+            try {
+                executor.execute(() -> write(segment));
+            } catch (RejectedExecutionException e) {
+                // Caching is best effort, the segment can always be read again
+                stats.loadExceptionCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Copy {@code segment} into the slabs, evicting the segments whose
+         * memory is needed.
+         */
+        private void write(@NotNull Segment segment) {
+            SegmentId id = segment.getSegmentId();
+            int size = segment.size();
+            if (index.containsKey(id)) {
+                return;
+            }
+
+            if (position == (long) slabs.length * slabSize) {
+                // The previous segment ended exactly at the end of the last slab
+                position = 0;
+            }
+            int slab = (int) (position / slabSize);
+            int offset = (int) (position % slabSize);
+            if (offset + size > slabs[slab].capacity()) {
+                // Skip the rest of the slab
+                evict(position, (slab + 1L) * slabSize);
+                slab = (slab + 1) % slabs.length;
+                offset = 0;
+                if (size > slabs[slab].capacity()) {
+                    return;
+                }
+            }
+            long start = (long) slab * slabSize + offset;
+            evict(start, start + size);
+
+            Buffer buffer = slabs[slab].duplicate();
+            buffer.position(offset);
+            buffer.limit(offset + size);
+            Segment copy;
+            try {
+                copy = segment.copy(capacity -> buffer.slice());
+            } catch (IOException e) {
+                stats.loadExceptionCount.incrementAndGet();
+                return;
+            }
+
+            Entry entry = new Entry(id, start, size, copy);
+            lock.writeLock().lock();
+            try {
+                entries.addLast(entry);
+                index.put(id, entry);
+                stats.currentWeight.addAndGet(size);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            position = start + size;
+        }
+
+        /**
+         * Evict the oldest entries as long as they start within the given
+         * range of positions.
+         */
+        private void evict(long from, long to) {
+            lock.writeLock().lock();
+            try {
+                for (Entry entry = entries.peekFirst(); entry != null && entry.position >= from && entry.position < to; entry = entries.peekFirst()) {
+                    entries.removeFirst();
+                    index.remove(entry.id, entry);
+                    stats.evictionCount.incrementAndGet();
+                    stats.currentWeight.addAndGet(-entry.size);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void clear() {
+            lock.writeLock().lock();
+            try {
+                entries.clear();
+                index.clear();
+                stats.currentWeight.set(0);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * A segment backed by a region of a slab.
+         */
+        private static class Entry {
+
+            @NotNull
+            final SegmentId id;
+
+            final long position;
+
+            final int size;
+
+            @NotNull
+            final Segment segment;
+
+            Entry(@NotNull SegmentId id, long position, int size, @NotNull Segment segment) {
+                this.id = id;
+                this.position = position;
+                this.size = size;
+                this.segment = segment;
+            }
+
+        }
+    }
+
     /**
      * We cannot rely on the statistics of the underlying Guava cache as all
      * cache hits are taken by {@link SegmentId#getSegment()} and thus never
@@ -192,6 +192,15 @@ public class SegmentId implements Comparable<SegmentId> {
         this.gcInfo = gcInfo;
     }
 
+    /**
+     * @return  {@code true} iff the segment identified by this instance is
+     *          currently memoised, i.e. {@link #getSegment()} would not need
+     *          to load it.
+     */
+    public boolean isLoaded() {
+        return segment != null;
+    }
+
     /**
      * This method should only be called from lower level caches to notify this instance that the
      * passed {@code segment} has been loaded and should be memoised.
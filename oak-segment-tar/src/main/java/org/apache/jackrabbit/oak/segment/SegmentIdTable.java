@@ -18,9 +18,7 @@
  */
 package org.apache.jackrabbit.oak.segment;
 
-import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
-import static java.util.Collections.nCopies;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -29,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -36,6 +35,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Hash table of weak references to segment identifiers.
+ * <p>
+ * Lookups of already tracked identifiers do not acquire any lock: they probe
+ * the currently published table and only fall back to the synchronized
+ * insertion path if no matching identifier was found. Insertions, rebuilds
+ * and GC related operations are still serialized on this instance.
  */
 public class SegmentIdTable {
 
@@ -58,9 +62,14 @@ public class SegmentIdTable {
      * <p>
      * The array is not sorted (we could; lookup might be faster, but adding
      * entries would be slower).
+     * <p>
+     * The array is only ever modified while holding the monitor of this
+     * instance. A rebuild creates a new array which is fully populated before
+     * it is published, so that concurrent lock-free readers either see the
+     * old or the new table, but never a partially built one.
      */
-    private final ArrayList<WeakReference<SegmentId>> references =
-            newArrayList(nCopies(1024, (WeakReference<SegmentId>) null));
+    private volatile AtomicReferenceArray<WeakReference<SegmentId>> references =
+            new AtomicReferenceArray<WeakReference<SegmentId>>(1024);
 
     private static final Logger LOG = LoggerFactory.getLogger(SegmentIdTable.class);
 
@@ -68,12 +77,12 @@ public class SegmentIdTable {
     /**
      * The refresh count (for diagnostics and testing).
      */
-    private int rebuildCount;
+    private volatile int rebuildCount;
     
     /**
      * The number of used entries (WeakReferences) in this table.
      */
-    private int entryCount;
+    private volatile int entryCount;
 
     /**
      * Get the segment id, and reference it in the weak references map. If the
@@ -87,8 +96,45 @@ public class SegmentIdTable {
      * @return the segment id
      */
     @NotNull
-    synchronized SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
-        int index = getIndex(lsb);
+    SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
+        SegmentId id = findSegmentId(references, msb, lsb);
+        if (id != null) {
+            return id;
+        }
+        return findOrAddSegmentId(msb, lsb, maker);
+    }
+
+    /**
+     * Lock-free lookup of a segment id in the given table. A miss is not
+     * authoritative, as the entry might be concurrently added or moved by a
+     * rebuild. Callers need to fall back to {@link #findOrAddSegmentId}.
+     *
+     * @return the matching segment id or {@code null} if it was not found.
+     */
+    private static SegmentId findSegmentId(AtomicReferenceArray<WeakReference<SegmentId>> table, long msb, long lsb) {
+        int size = table.length();
+        int index = getIndex(lsb, size);
+        for (int probes = 0; probes < size; probes++) {
+            WeakReference<SegmentId> reference = table.get(index);
+            if (reference == null) {
+                return null;
+            }
+            SegmentId id = reference.get();
+            if (id != null
+                    && id.getMostSignificantBits() == msb
+                    && id.getLeastSignificantBits() == lsb) {
+                return id;
+            }
+            index = (index + 1) & (size - 1);
+        }
+        return null;
+    }
+
+    @NotNull
+    private synchronized SegmentId findOrAddSegmentId(long msb, long lsb, SegmentIdFactory maker) {
+        AtomicReferenceArray<WeakReference<SegmentId>> references = this.references;
+        int size = references.length();
+        int index = getIndex(lsb, size);
         boolean shouldRefresh = false;
 
         WeakReference<SegmentId> reference = references.get(index);
@@ -102,14 +148,14 @@ public class SegmentIdTable {
             // shouldRefresh if we have a garbage collected entry
             shouldRefresh = shouldRefresh || id == null;
             // open addressing / linear probing
-            index = (index + 1) % references.size();
+            index = (index + 1) & (size - 1);
             reference = references.get(index);
         }
 
         SegmentId id = maker.newSegmentId(msb, lsb);
         references.set(index, new WeakReference<SegmentId>(id));
         entryCount++;
-        if (entryCount > references.size() * 0.75) {
+        if (entryCount > size * 0.75) {
             // more than 75% full            
             shouldRefresh = true;
         }
@@ -129,7 +175,8 @@ public class SegmentIdTable {
     }
 
     private synchronized Collection<SegmentId> refresh() {
-        int size = references.size();
+        AtomicReferenceArray<WeakReference<SegmentId>> references = this.references;
+        int size = references.length();
         Map<SegmentId, WeakReference<SegmentId>> ids =
                 newHashMapWithExpectedSize(size);
 
@@ -141,7 +188,7 @@ public class SegmentIdTable {
                 SegmentId id = reference.get();
                 if (id != null) {
                     ids.put(id, reference);
-                    hashCollisions = hashCollisions || (i != getIndex(id));
+                    hashCollisions = hashCollisions || (i != getIndex(id.getLeastSignificantBits(), size));
                 } else {
                     references.set(i, null);
                     entryCount--;
@@ -168,34 +215,35 @@ public class SegmentIdTable {
         // but also if we removed some of the entries (because an entry was
         // garbage collected) and there is at least one entry at the "wrong"
         // location (due to open addressing)
-        if ((hashCollisions && emptyReferences) || size != references.size()) {
+        if ((hashCollisions && emptyReferences) || size != references.length()) {
             rebuildCount++;
-            references.clear();
-            references.addAll(nCopies(size, (WeakReference<SegmentId>) null));
+            AtomicReferenceArray<WeakReference<SegmentId>> rebuilt =
+                    new AtomicReferenceArray<WeakReference<SegmentId>>(size);
 
             for (Map.Entry<SegmentId, WeakReference<SegmentId>> entry
                     : ids.entrySet()) {
-                int index = getIndex(entry.getKey());
-                while (references.get(index) != null) {
-                    index = (index + 1) % size;
+                int index = getIndex(entry.getKey().getLeastSignificantBits(), size);
+                while (rebuilt.get(index) != null) {
+                    index = (index + 1) & (size - 1);
                 }
-                references.set(index, entry.getValue());
+                rebuilt.set(index, entry.getValue());
             }
+
+            // publish the fully populated table to lock-free readers
+            this.references = rebuilt;
         }
 
         return ids.keySet();
     }
 
-    private int getIndex(SegmentId id) {
-        return getIndex(id.getLeastSignificantBits());
-    }
-
-    private int getIndex(long lsb) {
-        return ((int) lsb) & (references.size() - 1);
+    private static int getIndex(long lsb, int size) {
+        return ((int) lsb) & (size - 1);
     }
 
     synchronized void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
-        for (WeakReference<SegmentId> reference : references) {
+        AtomicReferenceArray<WeakReference<SegmentId>> references = this.references;
+        for (int i = 0; i < references.length(); i++) {
+            WeakReference<SegmentId> reference = references.get(i);
             if (reference != null) {
                 SegmentId id = reference.get();
                 if (id != null && reclaimed.contains(id.asUUID())) {
@@ -229,7 +277,7 @@ public class SegmentIdTable {
      * @return the map size
      */
     int getMapSize() {
-        return references.size();
+        return references.length();
     }
     
     /**
@@ -238,8 +286,10 @@ public class SegmentIdTable {
      * @return the raw list
      */
     List<SegmentId> getRawSegmentIdList() {
+        AtomicReferenceArray<WeakReference<SegmentId>> references = this.references;
         ArrayList<SegmentId> list = new ArrayList<SegmentId>();
-        for (WeakReference<SegmentId> ref : references) {
+        for (int i = 0; i < references.length(); i++) {
+            WeakReference<SegmentId> ref = references.get(i);
             if (ref != null) {
                 SegmentId id = ref.get();
                 if (id != null) {
@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.oak.osgi.OsgiUtil.lookupConfigurationThenFra
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_STRING_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_TEMPLATE_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
+import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_NODE_CACHE_SIZE_OSGi;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_STRING_CACHE_SIZE_OSGi;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_TEMPLATE_CACHE_SIZE_OSGi;
@@ -125,6 +126,14 @@ public class SegmentNodeStoreFactory {
         )
         int segmentCache_size() default DEFAULT_SEGMENT_CACHE_MB;
 
+        @AttributeDefinition(
+            name = "Segment off-heap cache size (MB)",
+            description = "Size of the off-heap cache retaining segments evicted from the segment cache " +
+                "in megabytes. The off-heap cache is disabled when set to 0. " +
+                "Default value is '" + DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB + "'."
+        )
+        int segmentCache_offHeapSize() default DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB;
+
         @AttributeDefinition(
             name = "String cache size (MB)",
             description = "Cache size for storing most recently used strings in megabytes. " +
@@ -488,6 +497,11 @@ public class SegmentNodeStoreFactory {
                 return getCacheSize("segmentCache.size", configuration.segmentCache_size());
             }
 
+            @Override
+            public int getSegmentOffHeapCacheSize() {
+                return getCacheSize("segmentCache.offHeapSize", configuration.segmentCache_offHeapSize());
+            }
+
             @Override
             public int getStringCacheSize() {
                 return getCacheSize("stringCache.size", configuration.stringCache_size());
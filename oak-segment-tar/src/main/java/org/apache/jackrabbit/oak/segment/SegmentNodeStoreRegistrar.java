@@ -118,6 +118,8 @@ class SegmentNodeStoreRegistrar {
 
         int getSegmentCacheSize();
 
+        int getSegmentOffHeapCacheSize();
+
         int getStringCacheSize();
 
         int getTemplateCacheSize();
@@ -214,6 +216,7 @@ class SegmentNodeStoreRegistrar {
         // Build the FileStore
         FileStoreBuilder builder = fileStoreBuilder(cfg.getSegmentDirectory())
             .withSegmentCacheSize(cfg.getSegmentCacheSize())
+            .withSegmentOffHeapCacheSize(cfg.getSegmentOffHeapCacheSize())
             .withStringCacheSize(cfg.getStringCacheSize())
             .withTemplateCacheSize(cfg.getTemplateCacheSize())
             .withStringDeduplicationCacheSize(cfg.getStringDeduplicationCacheSize())
@@ -276,6 +279,16 @@ class SegmentNodeStoreRegistrar {
             segmentCacheStats.getName()
         ));
 
+        CacheStatsMBean segmentOffHeapCacheStats = store.getSegmentOffHeapCacheStats();
+        if (segmentOffHeapCacheStats != null) {
+            registerCloseable(registerMBean(
+                CacheStatsMBean.class,
+                segmentOffHeapCacheStats,
+                CacheStats.TYPE,
+                segmentOffHeapCacheStats.getName()
+            ));
+        }
+
         // Expose stats about the string and template caches
 
         CacheStatsMBean stringCacheStats = store.getStringCacheStats();
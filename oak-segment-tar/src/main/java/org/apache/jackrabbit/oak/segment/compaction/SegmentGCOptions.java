@@ -83,6 +83,11 @@ public class SegmentGCOptions {
      */
     public static final int MEMORY_THRESHOLD_DEFAULT = 15;
 
+    /**
+     * Default value for {@link #getConcurrency()}
+     */
+    public static final int CONCURRENCY_DEFAULT = 1;
+
     private boolean paused = PAUSE_DEFAULT;
 
     /**
@@ -113,6 +118,13 @@ public class SegmentGCOptions {
      */
     private long gcLogInterval = -1;
 
+    /**
+     * Number of threads used to compact the repository content.
+     */
+    private int concurrency = Integer.getInteger(
+            "oak.segment.compaction.concurrency",
+            CONCURRENCY_DEFAULT);
+
     public SegmentGCOptions(boolean paused, int retryCount, int forceTimeout) {
         this.paused = paused;
         this.retryCount = retryCount;
@@ -244,7 +256,8 @@ public class SegmentGCOptions {
                     ", retryCount=" + retryCount +
                     ", forceTimeout=" + forceTimeout +
                     ", retainedGenerations=" + retainedGenerations +
-                    ", gcType=" + gcType + "}";
+                    ", gcType=" + gcType +
+                    ", concurrency=" + concurrency + "}";
         }
     }
 
@@ -341,4 +354,23 @@ public class SegmentGCOptions {
         return gcLogInterval;
     }
 
+    /**
+     * @return the number of threads used to compact the repository content.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Set the number of threads used to compact the repository content.
+     * A value of {@code 1} compacts sequentially. Values less than {@code 1}
+     * are treated as {@code 1}.
+     * @param concurrency  number of compaction threads
+     * @return this instance
+     */
+    public SegmentGCOptions setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        return this;
+    }
+
 }
@@ -119,4 +119,10 @@ public interface SegmentData {
 
     int estimateMemoryUsage();
 
+    /**
+     * @return {@code true} if the data is held outside of the Java heap, e.g.
+     * because it is memory mapped.
+     */
+    boolean isDirect();
+
 }
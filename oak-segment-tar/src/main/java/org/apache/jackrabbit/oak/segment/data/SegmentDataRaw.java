@@ -59,6 +59,11 @@ class SegmentDataRaw implements SegmentData {
         return SegmentDataUtils.estimateMemoryUsage(buffer);
     }
 
+    @Override
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
     @Override
     public byte getVersion() {
         throw new IllegalStateException("invalid operation");
@@ -256,4 +256,9 @@ class SegmentDataV12 implements SegmentData {
         return SegmentDataUtils.estimateMemoryUsage(buffer);
     }
 
+    @Override
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
 }
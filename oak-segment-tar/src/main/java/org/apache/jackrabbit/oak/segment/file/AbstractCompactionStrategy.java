@@ -143,7 +143,8 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
                 context.getSegmentReader(),
                 writer,
                 context.getBlobStore(),
-                context.getCompactionMonitor()
+                context.getCompactionMonitor(),
+                context.getGCOptions().getConcurrency()
             );
 
             SegmentNodeState head = getHead(context);
@@ -28,6 +28,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
 import org.apache.jackrabbit.oak.commons.Buffer;
@@ -140,7 +141,7 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
             }
         });
         this.blobStore = builder.getBlobStore();
-        this.segmentCache = newSegmentCache(builder.getSegmentCacheSize());
+        this.segmentCache = newSegmentCache(builder.getSegmentCacheSize(), builder.getSegmentOffHeapCacheSize());
         this.segmentReader = new CachingSegmentReader(
             this::getWriter,
             blobStore,
@@ -155,6 +156,29 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         this.segmentBufferMonitor = new SegmentBufferMonitor(builder.getStatsProvider());
     }
 
+    /**
+     * Create a {@link SegmentPrefetcher} loading segments through {@code
+     * loader} if prefetching is enabled in {@code builder}.
+     *
+     * @return  a new prefetcher or {@code null} if prefetching is disabled.
+     */
+    @Nullable
+    SegmentPrefetcher newSegmentPrefetcher(FileStoreBuilder builder, Function<SegmentId, Segment> loader) {
+        if (builder.getPrefetchThreads() <= 0) {
+            return null;
+        }
+        return new SegmentPrefetcher(
+            builder.getPrefetchThreads(),
+            builder.getPrefetchCapacity(),
+            builder.getPrefetchCacheSize() * 1024L * 1024L,
+            builder.getPrefetchMaxDepth(),
+            builder.getPrefetchMaxBreadth(),
+            tracker,
+            loader,
+            builder.getStatsProvider()
+        );
+    }
+
     static SegmentNotFoundException asSegmentNotFoundException(Exception e, SegmentId id) {
         if (e.getCause() instanceof SegmentNotFoundException) {
             return (SegmentNotFoundException) e.getCause();
@@ -167,6 +191,11 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         return segmentCache.getCacheStats();
     }
 
+    @Nullable
+    public CacheStatsMBean getSegmentOffHeapCacheStats() {
+        return segmentCache.getOffHeapCacheStats();
+    }
+
     @NotNull
     public CacheStatsMBean getStringCacheStats() {
         return segmentReader.getStringCacheStats();
@@ -265,6 +265,11 @@ abstract class AbstractGarbageCollectionStrategy implements GarbageCollectionStr
                 return context.getSegmentCache();
             }
 
+            @Override
+            public SegmentPrefetcher getSegmentPrefetcher() {
+                return context.getSegmentPrefetcher();
+            }
+
             @Override
             public SegmentTracker getSegmentTracker() {
                 return context.getSegmentTracker();
@@ -28,6 +28,7 @@ import org.apache.jackrabbit.oak.segment.SegmentCache;
 import org.apache.jackrabbit.oak.segment.SegmentTracker;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
+import org.jetbrains.annotations.Nullable;
 
 interface CleanupStrategy {
 
@@ -37,6 +38,9 @@ interface CleanupStrategy {
 
         SegmentCache getSegmentCache();
 
+        @Nullable
+        SegmentPrefetcher getSegmentPrefetcher();
+
         SegmentTracker getSegmentTracker();
 
         FileStoreStats getFileStoreStats();
@@ -47,6 +47,10 @@ class DefaultCleanupStrategy implements CleanupStrategy {
         context.getGCListener().info("cleanup started using reclaimer {}", context.getReclaimer());
         context.getGCListener().updateStatus(CLEANUP.message());
         context.getSegmentCache().clear();
+        SegmentPrefetcher prefetcher = context.getSegmentPrefetcher();
+        if (prefetcher != null) {
+            prefetcher.invalidate();
+        }
 
         // Suggest to the JVM that now would be a good time
         // to clear stale weak references in the SegmentTracker
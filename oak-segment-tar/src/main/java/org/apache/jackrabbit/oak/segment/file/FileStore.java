@@ -29,17 +29,21 @@ import static org.apache.jackrabbit.oak.stats.StatsOptions.DEFAULT;
 import static org.apache.jackrabbit.oak.stats.StatsOptions.METRICS_ONLY;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.io.Closer;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.DefaultSegmentWriterBuilder;
 import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.Segment;
 import org.apache.jackrabbit.oak.segment.SegmentId;
@@ -61,6 +65,7 @@ import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.apache.jackrabbit.oak.stats.TimerStats.Context;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -137,6 +142,18 @@ public class FileStore extends AbstractFileStore {
 
     private final boolean eagerSegmentCaching;
 
+    /**
+     * Prefetcher for referenced segments or {@code null} if disabled.
+     */
+    @Nullable
+    private final SegmentPrefetcher prefetcher;
+
+    /**
+     * Coalesces concurrent flush requests or {@code null} if disabled.
+     */
+    @Nullable
+    private final GroupCommit groupCommit;
+
     FileStore(final FileStoreBuilder builder) throws InvalidFileStoreVersionException, IOException {
         super(builder);
 
@@ -174,6 +191,7 @@ public class FileStore extends AbstractFileStore {
         this.stats.init(size);
 
         this.fileReaper = this.tarFiles.createFileReaper();
+        this.prefetcher = newSegmentPrefetcher(builder, id -> readSegmentUncached(tarFiles, id));
 
         this.garbageCollector = new GarbageCollector(
             builder.getGcOptions(),
@@ -187,6 +205,7 @@ public class FileStore extends AbstractFileStore {
             () -> revisions,
             getBlobStore(),
             segmentCache,
+            prefetcher,
             segmentWriter,
             stats,
             Canceller.newCanceller()
@@ -194,17 +213,29 @@ public class FileStore extends AbstractFileStore {
                 .withCondition("not enough memory", () -> !sufficientMemory.get())
                 .withCondition("FileStore is shutting down", shutDown::isShutDown),
             this::flush,
-            generation ->
-                defaultSegmentWriterBuilder("c")
+            generation -> {
+                DefaultSegmentWriterBuilder compactionWriterBuilder = defaultSegmentWriterBuilder("c")
                     .with(builder.getCacheManager().withAccessTracking("COMPACT", statsProvider))
-                    .withGeneration(generation)
-                    .withoutWriterPool()
-                    .build(this)
+                    .withGeneration(generation);
+                // Parallel compaction requires one segment buffer per compacting thread
+                if (builder.getGcOptions().getConcurrency() > 1) {
+                    compactionWriterBuilder.withWriterPool();
+                } else {
+                    compactionWriterBuilder.withoutWriterPool();
+                }
+                return compactionWriterBuilder.build(this);
+            }
         );
 
         this.snfeListener = builder.getSnfeListener();
         this.eagerSegmentCaching = builder.getEagerSegmentCaching();
 
+        // Group commits run without keeping the store alive. This is safe as
+        // close() waits for pending group commits before shutting down.
+        this.groupCommit = builder.getGroupCommitMaxLatency() >= 0
+            ? new GroupCommit(this::doFlush, builder.getGroupCommitMaxLatency(), statsProvider)
+            : null;
+
         TimerStats flushTimer = statsProvider.getTimer("oak.segment.flush", METRICS_ONLY);
         fileStoreScheduler.scheduleWithFixedDelay(format("TarMK flush [%s]", directory), 5, SECONDS, () -> {
             Context timer = flushTimer.time();
@@ -320,7 +351,8 @@ public class FileStore extends AbstractFileStore {
     }
 
     /*
-     * Callers of this method must hold the shutdown lock
+     * Callers of this method must hold the shutdown lock. The only exception
+     * is the group commit, which is closed before the store shuts down.
      */
     private void doFlush() throws IOException {
         if (revisions == null) {
@@ -335,11 +367,55 @@ public class FileStore extends AbstractFileStore {
     }
 
     /**
-     * Flush all pending changes
+     * Flush all pending changes. If group commit is enabled, this call is
+     * coalesced with concurrent calls into a single flush and blocks until
+     * that flush completed.
+     *
+     * @see FileStoreBuilder#withGroupCommit(long)
      */
     public void flush() throws IOException {
         try (ShutDownCloser ignored = shutDown.keepAlive()) {
-            doFlush();
+            if (groupCommit == null) {
+                doFlush();
+            } else {
+                awaitFlush(groupCommit.flush());
+            }
+        }
+    }
+
+    /**
+     * Flush all pending changes asynchronously. If group commit is enabled,
+     * this call is coalesced with concurrent calls into a single flush.
+     * Otherwise the flush is performed before this method returns.
+     *
+     * @return a future completing once all changes pending at the time of
+     * this call are persisted.
+     * @see FileStoreBuilder#withGroupCommit(long)
+     */
+    @NotNull
+    public CompletableFuture<Void> flushAsync() {
+        if (groupCommit != null) {
+            return groupCommit.flush();
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            flush();
+            future.complete(null);
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static void awaitFlush(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for flush");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
         }
     }
 
@@ -465,11 +541,24 @@ public class FileStore extends AbstractFileStore {
 
     @Override
     public void close() {
-        try (ShutDownCloser ignored = shutDown.shutDown()) {
-            // avoid deadlocks by closing (and joining) the background
-            // thread before acquiring the synchronization lock
-            fileStoreScheduler.close();
+        // stop prefetching before the shutdown lock is acquired as prefetch
+        // threads read segments without keeping the store alive
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+
+        // avoid deadlocks by closing (and joining) the background
+        // thread before acquiring the synchronization lock. This is done
+        // before closing the group commit, so that background tasks can't
+        // request flushes afterwards
+        fileStoreScheduler.close();
 
+        // complete pending group commits while the store is still open
+        if (groupCommit != null) {
+            groupCommit.close();
+        }
+
+        try (ShutDownCloser ignored = shutDown.shutDown()) {
             try {
                 doFlush();
             } catch (IOException e) {
@@ -502,7 +591,9 @@ public class FileStore extends AbstractFileStore {
     @NotNull
     public Segment readSegment(final SegmentId id) {
         try (ShutDownCloser ignored = shutDown.keepAlive()) {
-            return segmentCache.getSegment(id, () -> readSegmentUncached(tarFiles, id));
+            return segmentCache.getSegment(id, () -> prefetcher != null
+                ? prefetcher.load(id)
+                : readSegmentUncached(tarFiles, id));
         } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof RepositoryNotReachableException) {
                 RepositoryNotReachableException re = (RepositoryNotReachableException) e.getCause();
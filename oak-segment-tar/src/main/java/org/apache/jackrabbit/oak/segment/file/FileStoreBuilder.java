@@ -26,6 +26,7 @@ import static java.lang.Boolean.getBoolean;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_STRING_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_TEMPLATE_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
+import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentNotFoundExceptionListener.LOG_SNFE;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_NODE_CACHE_SIZE;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_STRING_CACHE_SIZE;
@@ -82,6 +83,8 @@ public class FileStoreBuilder {
 
     private int segmentCacheSize = DEFAULT_SEGMENT_CACHE_MB;
 
+    private int segmentOffHeapCacheSize = DEFAULT_SEGMENT_OFF_HEAP_CACHE_MB;
+
     private int stringCacheSize = DEFAULT_STRING_CACHE_MB;
 
     private int templateCacheSize = DEFAULT_TEMPLATE_CACHE_MB;
@@ -140,6 +143,18 @@ public class FileStoreBuilder {
 
     private boolean eagerSegmentCaching;
 
+    private int prefetchThreads = Integer.getInteger("oak.segment.prefetch.threads", 0);
+
+    private int prefetchMaxDepth = Integer.getInteger("oak.segment.prefetch.maxDepth", 3);
+
+    private int prefetchMaxBreadth = Integer.getInteger("oak.segment.prefetch.maxBreadth", 16);
+
+    private int prefetchCapacity = Integer.getInteger("oak.segment.prefetch.capacity", 256);
+
+    private int prefetchCacheSize = Integer.getInteger("oak.segment.prefetch.cacheSize", 16);
+
+    private long groupCommitMaxLatency = Long.getLong("oak.segment.groupCommit.maxLatency", -1);
+
     private boolean built;
 
     /**
@@ -195,6 +210,22 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Size of the off-heap segment cache in MB. Segments evicted from the
+     * segment cache are retained in direct memory up to this size. The
+     * direct memory is allocated when the store is opened, so it must not
+     * exceed {@code -XX:MaxDirectMemorySize}. A value of {@code 0} disables
+     * the off-heap segment cache.
+     *
+     * @param segmentOffHeapCacheSize None negative cache size
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentOffHeapCacheSize(int segmentOffHeapCacheSize) {
+        this.segmentOffHeapCacheSize = segmentOffHeapCacheSize;
+        return this;
+    }
+
     /**
      * Size of the string cache in MB.
      *
@@ -397,6 +428,48 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Enable prefetching of referenced segments. Whenever a segment is
+     * loaded from the underlying persistence, the segments it references
+     * are loaded asynchronously by {@code threads} background threads. The
+     * number of references followed per segment and the number of levels of
+     * references followed adapt to the ratio of prefetched segments actually
+     * being used, up to {@code maxBreadth} and {@code maxDepth} respectively.
+     * This proves useful with remote persistence implementations where each
+     * segment load implies a round trip.
+     *
+     * @param threads     number of prefetch threads. {@code 0} disables prefetching.
+     * @param maxDepth    maximum number of levels of references followed
+     * @param maxBreadth  maximum number of references followed per segment
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentPrefetch(int threads, int maxDepth, int maxBreadth) {
+        this.prefetchThreads = threads;
+        this.prefetchMaxDepth = maxDepth;
+        this.prefetchMaxBreadth = maxBreadth;
+        return this;
+    }
+
+    /**
+     * Enable group commit. Concurrent calls to {@link FileStore#flush()} and
+     * {@link FileStore#flushAsync()} are coalesced into a single flush of the
+     * TAR files and the journal, which is performed by a background thread at
+     * most {@code maxLatency} milliseconds after the first of these calls.
+     * This trades a bit of latency for a considerably lower number of syncs
+     * to disk under bursty write load.
+     *
+     * @param maxLatency  maximum number of milliseconds a flush is delayed to
+     *                    coalesce it with further flushes. A negative value
+     *                    disables group commit.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withGroupCommit(long maxLatency) {
+        this.groupCommitMaxLatency = maxLatency;
+        return this;
+    }
+
     public Backend buildProcBackend(AbstractFileStore fileStore) throws IOException {
         return new FileStoreProcBackend(fileStore, persistence);
     }
@@ -498,6 +571,34 @@ public class FileStoreBuilder {
         return segmentCacheSize;
     }
 
+    int getSegmentOffHeapCacheSize() {
+        return segmentOffHeapCacheSize;
+    }
+
+    int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    int getPrefetchMaxDepth() {
+        return prefetchMaxDepth;
+    }
+
+    int getPrefetchMaxBreadth() {
+        return prefetchMaxBreadth;
+    }
+
+    int getPrefetchCapacity() {
+        return prefetchCapacity;
+    }
+
+    int getPrefetchCacheSize() {
+        return prefetchCacheSize;
+    }
+
+    long getGroupCommitMaxLatency() {
+        return groupCommitMaxLatency;
+    }
+
     int getStringCacheSize() {
         return stringCacheSize;
     }
@@ -583,6 +684,7 @@ public class FileStoreBuilder {
                 ", blobStore=" + blobStore +
                 ", maxFileSize=" + maxFileSize +
                 ", segmentCacheSize=" + segmentCacheSize +
+                ", segmentOffHeapCacheSize=" + segmentOffHeapCacheSize +
                 ", stringCacheSize=" + stringCacheSize +
                 ", templateCacheSize=" + templateCacheSize +
                 ", stringDeduplicationCacheSize=" + stringDeduplicationCacheSize +
@@ -591,6 +693,8 @@ public class FileStoreBuilder {
                 ", memoryMapping=" + memoryMapping +
                 ", offHeapAccess=" + offHeapAccess +
                 ", gcOptions=" + gcOptions +
+                ", prefetchThreads=" + prefetchThreads +
+                ", groupCommitMaxLatency=" + groupCommitMaxLatency +
                 '}';
     }
 
@@ -31,6 +31,7 @@ import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions;
 import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.jetbrains.annotations.Nullable;
 
 interface GarbageCollectionStrategy {
 
@@ -82,6 +83,9 @@ interface GarbageCollectionStrategy {
 
         SegmentCache getSegmentCache();
 
+        @Nullable
+        SegmentPrefetcher getSegmentPrefetcher();
+
         FileStoreStats getFileStoreStats();
 
         SegmentReader getSegmentReader();
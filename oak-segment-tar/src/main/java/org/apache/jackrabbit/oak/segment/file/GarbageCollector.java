@@ -42,6 +42,7 @@ import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 class GarbageCollector {
 
@@ -86,6 +87,9 @@ class GarbageCollector {
 
     private final SegmentCache segmentCache;
 
+    @Nullable
+    private final SegmentPrefetcher segmentPrefetcher;
+
     private final SegmentWriter segmentWriter;
 
     private final FileStoreStats stats;
@@ -127,6 +131,7 @@ class GarbageCollector {
         Supplier<Revisions> revisionsSupplier,
         BlobStore blobStore,
         SegmentCache segmentCache,
+        @Nullable SegmentPrefetcher segmentPrefetcher,
         SegmentWriter segmentWriter,
         FileStoreStats stats,
         Canceller canceller,
@@ -144,6 +149,7 @@ class GarbageCollector {
         this.revisionsSupplier = revisionsSupplier;
         this.blobStore = blobStore;
         this.segmentCache = segmentCache;
+        this.segmentPrefetcher = segmentPrefetcher;
         this.segmentWriter = segmentWriter;
         this.stats = stats;
         this.cancel = canceller.withCondition("cancelled by user", () -> cancelRequested);
@@ -263,6 +269,11 @@ class GarbageCollector {
                 return segmentCache;
             }
 
+            @Override
+            public SegmentPrefetcher getSegmentPrefetcher() {
+                return segmentPrefetcher;
+            }
+
             @Override
             public FileStoreStats getFileStoreStats() {
                 return stats;
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.apache.jackrabbit.oak.stats.MeterStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent flush requests into a single flush. The first request
+ * of a batch schedules a flush to run after at most {@code maxLatency}
+ * milliseconds. All requests issued until that flush starts share its
+ * outcome. Requests issued while a flush is running form the next batch.
+ * <p>
+ * Flushes are executed one after the other by a single background thread,
+ * so the order in which the TAR files and the journal are synced to disk is
+ * the same as with synchronous flushes.
+ */
+class GroupCommit implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupCommit.class);
+
+    static final String GROUP_COMMIT_REQUESTS = "SEGMENT_GROUP_COMMIT_REQUESTS";
+
+    static final String GROUP_COMMIT_FLUSHES = "SEGMENT_GROUP_COMMIT_FLUSHES";
+
+    @NotNull
+    private final Flusher flusher;
+
+    private final long maxLatency;
+
+    @NotNull
+    private final ScheduledThreadPoolExecutor executor;
+
+    @NotNull
+    private final MeterStats requests;
+
+    @NotNull
+    private final MeterStats flushes;
+
+    /**
+     * The batch collecting flush requests or {@code null} if none. Guarded
+     * by {@code this}.
+     */
+    private CompletableFuture<Void> pending;
+
+    private boolean closed;
+
+    /**
+     * Create a new instance.
+     *
+     * @param flusher        performs the actual flush
+     * @param maxLatency     maximum number of milliseconds a flush request
+     *                       waits for further requests to join its batch
+     * @param statsProvider  provider for the group commit metrics
+     */
+    GroupCommit(@NotNull Flusher flusher, long maxLatency, @NotNull StatisticsProvider statsProvider) {
+        checkArgument(maxLatency >= 0, "maxLatency must not be negative");
+        this.flusher = checkNotNull(flusher);
+        this.maxLatency = maxLatency;
+        this.executor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("segment-group-commit"));
+        this.requests = statsProvider.getMeter(GROUP_COMMIT_REQUESTS, StatsOptions.DEFAULT);
+        this.flushes = statsProvider.getMeter(GROUP_COMMIT_FLUSHES, StatsOptions.DEFAULT);
+    }
+
+    /**
+     * Request a flush.
+     *
+     * @return a future completing once a flush started after this call
+     * completed, or completing exceptionally if that flush failed or if this
+     * instance is already closed.
+     */
+    @NotNull
+    synchronized CompletableFuture<Void> flush() {
+        requests.mark();
+        if (closed) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Group commit already closed"));
+            return failed;
+        }
+        if (pending == null) {
+            pending = new CompletableFuture<>();
+            executor.schedule(this::commit, maxLatency, MILLISECONDS);
+        }
+        return pending;
+    }
+
+    private void commit() {
+        CompletableFuture<Void> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        if (batch == null) {
+            return;
+        }
+        try {
+            flusher.flush();
+            flushes.mark();
+            batch.complete(null);
+        } catch (Exception e) {
+            log.warn("Group commit failed", e);
+            batch.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Reject further flush requests and wait for the pending ones to complete.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(60, SECONDS)) {
+                log.warn("Timed out waiting for pending group commits");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
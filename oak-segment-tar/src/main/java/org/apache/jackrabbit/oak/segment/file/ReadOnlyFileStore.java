@@ -40,6 +40,7 @@ import org.apache.jackrabbit.oak.segment.SegmentWriter;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +63,12 @@ public class ReadOnlyFileStore extends AbstractFileStore {
 
     private ReadOnlyRevisions revisions;
 
+    /**
+     * Prefetcher for referenced segments or {@code null} if disabled.
+     */
+    @Nullable
+    private final SegmentPrefetcher prefetcher;
+
     private RecordId currentHead;
 
     ReadOnlyFileStore(FileStoreBuilder builder) throws InvalidFileStoreVersionException, IOException {
@@ -81,6 +88,7 @@ public class ReadOnlyFileStore extends AbstractFileStore {
 
         writer = defaultSegmentWriterBuilder("read-only").withoutCache().build(this);
         gcRetainedGenerations = builder.getGcOptions().getRetainedGenerations();
+        prefetcher = newSegmentPrefetcher(builder, id -> readSegmentUncached(tarFiles, id));
 
         log.info("TarMK ReadOnly opened: {} (mmap={})", directory,
                 memoryMapping);
@@ -122,6 +130,9 @@ public class ReadOnlyFileStore extends AbstractFileStore {
             return segmentCache.getSegment(id, new Callable<Segment>() {
                 @Override
                 public Segment call() throws Exception {
+                    if (prefetcher != null) {
+                        return prefetcher.load(id);
+                    }
                     return readSegmentUncached(tarFiles, id);
                 }
             });
@@ -132,6 +143,9 @@ public class ReadOnlyFileStore extends AbstractFileStore {
 
     @Override
     public void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
         Closer closer = Closer.create();
         closer.register(tarFiles);
         closer.register(revisions);
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
+import org.apache.jackrabbit.oak.stats.MeterStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronously loads the segments referenced by a segment as soon as
+ * that segment is loaded from the underlying persistence. This hides the
+ * latency of the round trip to remote persistence implementations when
+ * traversing content spread across many segments.
+ * <p>
+ * Prefetched segments are kept in a staging area until they are requested,
+ * at which point they are handed to the segment cache through its regular
+ * loading path. The staging area is bounded by the size of the segments it
+ * holds, and segments expire from it if they are not requested within
+ * {@link #PENDING_EXPIRY_SECONDS}. Prefetched segments that are evicted from
+ * the staging area without having been requested count as wasted. A segment
+ * that is requested while its prefetch is still queued is loaded directly,
+ * so that requests never wait behind the prefetch queue.
+ * <p>
+ * The number of referenced segments prefetched per segment (breadth) and
+ * the number of levels of references followed (depth) adapt to the ratio
+ * of prefetched segments that are actually requested: both grow while the
+ * hit ratio is high and shrink while it is low.
+ */
+class SegmentPrefetcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentPrefetcher.class);
+
+    static final String PREFETCH_REQUESTS = "SEGMENT_PREFETCH_REQUESTS";
+
+    static final String PREFETCH_HITS = "SEGMENT_PREFETCH_HITS";
+
+    static final String PREFETCH_WASTED = "SEGMENT_PREFETCH_WASTED";
+
+    static final String PREFETCH_DROPPED = "SEGMENT_PREFETCH_DROPPED";
+
+    /**
+     * Number of prefetch outcomes (hit or wasted) after which the depth and
+     * breadth of prefetching are re-evaluated.
+     */
+    static final int ADAPT_WINDOW = 64;
+
+    /**
+     * Hit ratio above which prefetching is widened.
+     */
+    static final double HIGH_HIT_RATIO = 0.75;
+
+    /**
+     * Hit ratio below which prefetching is narrowed.
+     */
+    static final double LOW_HIT_RATIO = 0.25;
+
+    /**
+     * Number of seconds after which a prefetched segment that has not been
+     * requested is dropped.
+     */
+    static final long PENDING_EXPIRY_SECONDS = 60;
+
+    @NotNull
+    private final SegmentIdProvider idProvider;
+
+    @NotNull
+    private final Function<SegmentId, Segment> loader;
+
+    private final int maxDepth;
+
+    private final int maxBreadth;
+
+    @NotNull
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Prefetched (or in flight) segments which have not been requested yet,
+     * weighed by the size of the prefetched segment.
+     */
+    @NotNull
+    private final Cache<SegmentId, Prefetch> pending;
+
+    /**
+     * Prefetches which have not completed yet, including those already
+     * taken from {@link #pending} by a request waiting for them.
+     */
+    @NotNull
+    private final Set<Prefetch> running = ConcurrentHashMap.newKeySet();
+
+    @NotNull
+    private final MeterStats requests;
+
+    @NotNull
+    private final MeterStats hits;
+
+    @NotNull
+    private final MeterStats wasted;
+
+    @NotNull
+    private final MeterStats dropped;
+
+    private volatile int depth;
+
+    private volatile int breadth;
+
+    private int windowHits;
+
+    private int windowCount;
+
+    private volatile double hitRatio = 1;
+
+    /**
+     * Create a new instance.
+     *
+     * @param threads     number of threads loading segments
+     * @param capacity    maximum number of queued prefetches
+     * @param maxWeight   maximum size in bytes of the prefetched segments
+     *                    kept until requested
+     * @param maxDepth    maximum number of levels of references followed
+     * @param maxBreadth  maximum number of references followed per segment
+     * @param idProvider  provider for the ids of referenced segments
+     * @param loader      loads a segment from the underlying persistence
+     * @param statsProvider  provider for the prefetch metrics
+     */
+    SegmentPrefetcher(
+        int threads,
+        int capacity,
+        long maxWeight,
+        int maxDepth,
+        int maxBreadth,
+        @NotNull SegmentIdProvider idProvider,
+        @NotNull Function<SegmentId, Segment> loader,
+        @NotNull StatisticsProvider statsProvider
+    ) {
+        checkArgument(threads > 0, "threads must be positive");
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(maxWeight > 0, "maxWeight must be positive");
+        checkArgument(maxDepth > 0, "maxDepth must be positive");
+        checkArgument(maxBreadth > 0, "maxBreadth must be positive");
+        this.idProvider = checkNotNull(idProvider);
+        this.loader = checkNotNull(loader);
+        this.maxDepth = maxDepth;
+        this.maxBreadth = maxBreadth;
+        this.depth = 1;
+        this.breadth = maxBreadth;
+        this.executor = new ThreadPoolExecutor(
+            threads,
+            threads,
+            60,
+            SECONDS,
+            new LinkedBlockingQueue<>(capacity),
+            new NamedThreadFactory("segment-prefetch")
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.pending = CacheBuilder.newBuilder()
+            .maximumWeight(maxWeight)
+            .weigher((SegmentId id, Prefetch prefetch) -> prefetch.weight())
+            .expireAfterWrite(PENDING_EXPIRY_SECONDS, SECONDS)
+            .removalListener(this::onRemove)
+            .build();
+        this.requests = statsProvider.getMeter(PREFETCH_REQUESTS, StatsOptions.DEFAULT);
+        this.hits = statsProvider.getMeter(PREFETCH_HITS, StatsOptions.DEFAULT);
+        this.wasted = statsProvider.getMeter(PREFETCH_WASTED, StatsOptions.DEFAULT);
+        this.dropped = statsProvider.getMeter(PREFETCH_DROPPED, StatsOptions.DEFAULT);
+    }
+
+    private void onRemove(RemovalNotification<SegmentId, Prefetch> notification) {
+        Prefetch prefetch = notification.getValue();
+        if (notification.wasEvicted() && prefetch != null && !prefetch.cancel()
+                && !prefetch.future.isCompletedExceptionally()) {
+            wasted.mark();
+            adapt(false);
+        }
+    }
+
+    /**
+     * Load the segment with the given {@code id}, either by taking it from
+     * the prefetched segments or by loading it from the underlying
+     * persistence. In either case the referenced segments of the returned
+     * segment are scheduled for prefetching.
+     *
+     * @param id  id of the segment to load
+     * @return  the segment with the given {@code id}
+     */
+    @NotNull
+    Segment load(@NotNull SegmentId id) {
+        Segment segment = null;
+        Prefetch prefetch = pending.asMap().remove(id);
+        if (prefetch != null && !prefetch.cancel()) {
+            try {
+                segment = prefetch.future.get();
+                hits.mark();
+                adapt(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                log.debug("Prefetching segment {} failed", id, e.getCause());
+            }
+        }
+        if (segment == null) {
+            segment = loader.apply(id);
+        }
+        prefetchReferences(segment, depth);
+        return segment;
+    }
+
+    private void prefetchReferences(Segment segment, int depth) {
+        if (depth <= 0 || executor.isShutdown() || !segment.getSegmentId().isDataSegmentId()) {
+            return;
+        }
+
+        int count = segment.getReferencedSegmentIdCount();
+        int scheduled = 0;
+        for (int i = 0; i < count && scheduled < breadth; i++) {
+            UUID uuid = segment.getReferencedSegmentId(i);
+            SegmentId id = idProvider.newSegmentId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (id.isDataSegmentId() && !id.isLoaded() && prefetch(id, depth - 1)) {
+                scheduled++;
+            }
+        }
+    }
+
+    private boolean prefetch(SegmentId id, int depth) {
+        Prefetch prefetch = new Prefetch(id, depth);
+        if (pending.asMap().putIfAbsent(id, prefetch) != null) {
+            return false;
+        }
+        running.add(prefetch);
+        try {
+            executor.execute(prefetch);
+            requests.mark();
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.remove(prefetch);
+            pending.asMap().remove(id, prefetch);
+            dropped.mark();
+            return false;
+        }
+    }
+
+    /**
+     * Record the outcome of a prefetch and adapt depth and breadth whenever
+     * {@link #ADAPT_WINDOW} outcomes have been recorded.
+     */
+    private synchronized void adapt(boolean hit) {
+        if (hit) {
+            windowHits++;
+        }
+        if (++windowCount < ADAPT_WINDOW) {
+            return;
+        }
+
+        hitRatio = (double) windowHits / windowCount;
+        if (hitRatio >= HIGH_HIT_RATIO) {
+            depth = Math.min(depth + 1, maxDepth);
+            breadth = Math.min(breadth * 2, maxBreadth);
+        } else if (hitRatio < LOW_HIT_RATIO) {
+            depth = Math.max(depth - 1, 1);
+            breadth = Math.max(breadth / 2, 1);
+        }
+        log.debug("Prefetch hit ratio {}, depth {}, breadth {}", hitRatio, depth, breadth);
+        windowHits = 0;
+        windowCount = 0;
+    }
+
+    /**
+     * @return  current number of levels of references followed
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return  current number of references followed per segment
+     */
+    int getBreadth() {
+        return breadth;
+    }
+
+    /**
+     * @return  hit ratio of the last completed adaptation window
+     */
+    double getHitRatio() {
+        return hitRatio;
+    }
+
+    /**
+     * @return  number of prefetched segments not requested yet
+     */
+    long getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Drop all prefetched segments which have not been requested yet and
+     * cancel the prefetches which have not started yet. Called on cleanup,
+     * as the dropped segments might have been reclaimed.
+     */
+    void invalidate() {
+        for (Prefetch prefetch : pending.asMap().values()) {
+            prefetch.cancel();
+        }
+        pending.invalidateAll();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        // Release the requests waiting for prefetches which are still queued
+        // or which do not complete in time
+        IllegalStateException closed = new IllegalStateException("Segment prefetcher closed");
+        for (Prefetch prefetch : running) {
+            prefetch.future.completeExceptionally(closed);
+        }
+        try {
+            if (!executor.awaitTermination(10, SECONDS)) {
+                log.warn("Timed out waiting for segment prefetch threads to terminate");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pending.invalidateAll();
+        running.clear();
+    }
+
+    /**
+     * Loads a segment and schedules its references for prefetching.
+     */
+    private class Prefetch implements Runnable {
+
+        @NotNull
+        private final SegmentId id;
+
+        private final int depth;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        @NotNull
+        final CompletableFuture<Segment> future = new CompletableFuture<>();
+
+        Prefetch(@NotNull SegmentId id, int depth) {
+            this.id = id;
+            this.depth = depth;
+        }
+
+        /**
+         * @return  the size of the prefetched segment or {@code 0} while it is
+         *          not loaded
+         */
+        int weight() {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                return future.join().size();
+            }
+            return 0;
+        }
+
+        /**
+         * Cancel this prefetch unless it has already started.
+         *
+         * @return  {@code true} if this prefetch will not run
+         */
+        boolean cancel() {
+            if (started.compareAndSet(false, true)) {
+                executor.remove(this);
+                running.remove(this);
+                future.cancel(false);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Segment segment = loader.apply(id);
+                future.complete(segment);
+                // Weigh the staged entry again now that its segment is loaded
+                pending.asMap().replace(id, this, this);
+                prefetchReferences(segment, depth);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                pending.asMap().remove(id, this);
+            } finally {
+                running.remove(this);
+            }
+        }
+
+    }
+
+}
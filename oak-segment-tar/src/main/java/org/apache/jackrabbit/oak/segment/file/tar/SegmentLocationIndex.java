@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveEntry;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable index mapping segment ids to the {@link TarReader} containing
+ * them, across all the TAR readers it was built from. This allows to locate
+ * a segment by probing a single hash table instead of probing the index of
+ * every TAR file in turn.
+ * <p>
+ * The index is an open addressing hash table with linear probing. It is held
+ * in a direct buffer to keep it out of the Java heap. Each slot stores the
+ * most and least significant bits of a segment id and the (one based)
+ * position of the TAR reader containing it. A position of {@code 0} marks an
+ * empty slot.
+ */
+class SegmentLocationIndex {
+
+    private static final int SLOT_SIZE = 8 + 8 + 4;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final TarReader[] readers;
+
+    private final ByteBuffer table;
+
+    private final int mask;
+
+    private final int size;
+
+    private SegmentLocationIndex(TarReader[] readers, ByteBuffer table, int mask, int size) {
+        this.readers = readers;
+        this.table = table;
+        this.mask = mask;
+        this.size = size;
+    }
+
+    /**
+     * Build an index for the given TAR readers. Should a segment be contained
+     * in more than one TAR reader, the index refers to the first of them
+     * in iteration order.
+     *
+     * @param readers the TAR readers to index, newest first.
+     * @return a new index.
+     */
+    static SegmentLocationIndex build(Iterable<TarReader> readers) {
+        List<TarReader> list = new ArrayList<>();
+        List<SegmentArchiveEntry[]> entries = new ArrayList<>();
+        long count = 0;
+        for (TarReader reader : readers) {
+            SegmentArchiveEntry[] e = reader.getEntries();
+            list.add(reader);
+            entries.add(e);
+            count += e.length;
+        }
+
+        int capacity = tableSizeFor((long) (count / LOAD_FACTOR) + 1);
+        ByteBuffer table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        int mask = capacity - 1;
+        int size = 0;
+
+        for (int i = 0; i < list.size(); i++) {
+            for (SegmentArchiveEntry entry : entries.get(i)) {
+                if (insert(table, mask, entry.getMsb(), entry.getLsb(), i + 1)) {
+                    size++;
+                }
+            }
+        }
+
+        return new SegmentLocationIndex(list.toArray(new TarReader[0]), table, mask, size);
+    }
+
+    private static int tableSizeFor(long n) {
+        int capacity = 1;
+        while (capacity < n) {
+            if (capacity >= Integer.MAX_VALUE / SLOT_SIZE / 2) {
+                throw new IllegalStateException("Too many segments to index: " + n);
+            }
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static boolean insert(ByteBuffer table, int mask, long msb, long lsb, int position) {
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int offset = slot * SLOT_SIZE;
+            int p = table.getInt(offset + 16);
+            if (p == 0) {
+                table.putLong(offset, msb);
+                table.putLong(offset + 8, lsb);
+                table.putInt(offset + 16, position);
+                return true;
+            }
+            if (table.getLong(offset) == msb && table.getLong(offset + 8) == lsb) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Locate the TAR reader containing a segment.
+     *
+     * @param msb the most significant bits of the segment id
+     * @param lsb the least significant bits of the segment id
+     * @return the TAR reader containing the segment or {@code null} if none
+     * of the indexed TAR readers contains it.
+     */
+    @Nullable
+    TarReader find(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int offset = slot * SLOT_SIZE;
+            int p = table.getInt(offset + 16);
+            if (p == 0) {
+                return null;
+            }
+            if (table.getLong(offset) == msb && table.getLong(offset + 8) == lsb) {
+                return readers[p - 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the number of segments in this index.
+     */
+    int size() {
+        return size;
+    }
+
+}
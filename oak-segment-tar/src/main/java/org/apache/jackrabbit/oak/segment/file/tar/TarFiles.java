@@ -40,8 +40,8 @@ import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -78,6 +78,42 @@ public class TarFiles implements Closeable {
 
     }
 
+    /**
+     * An immutable pair of the current TAR writer and the head of the linked
+     * list of TAR readers. A new instance is published whenever either of them
+     * changes, so that readers always observe a consistent pair without
+     * locking.
+     */
+    private static class Snapshot {
+
+        final TarWriter writer;
+
+        final Node readers;
+
+        Snapshot(TarWriter writer, Node readers) {
+            this.writer = writer;
+            this.readers = readers;
+        }
+
+    }
+
+    /**
+     * A {@link SegmentLocationIndex} together with the head of the linked
+     * list of TAR readers it was built from.
+     */
+    private static class IndexedReaders {
+
+        final Node head;
+
+        final SegmentLocationIndex index;
+
+        IndexedReaders(Node head, SegmentLocationIndex index) {
+            this.head = head;
+            this.index = index;
+        }
+
+    }
+
     public static class CleanupResult {
 
         private boolean interrupted;
@@ -253,6 +289,13 @@ public class TarFiles implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(TarFiles.class);
 
+    /**
+     * Number of TAR readers not covered by the segment location index above
+     * which the index is rebuilt on {@link #flush()}.
+     */
+    private static final int LOCATION_INDEX_REBUILD_THRESHOLD =
+            Integer.getInteger("oak.segment.locationIndexRebuildThreshold", 4);
+
     private static final Pattern FILE_NAME_PATTERN = Pattern.compile("(data)((0|[1-9][0-9]*)[0-9]{4})([a-z])?.tar");
 
     private static Node reverse(Node n) {
@@ -330,27 +373,34 @@ public class TarFiles implements Closeable {
     private SegmentArchiveManager archiveManager;
 
     /**
-     * Guards access to the {@link #readers} and {@link #writer} references.
+     * Serializes the operations replacing {@link #snapshot}, i.e. writing
+     * segments (which might rotate the TAR writer), creating a new TAR writer
+     * and cleanup. Reading from {@link #snapshot} doesn't require this lock.
      */
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock lock = new ReentrantLock();
 
     /**
-     * Points to the first node of the linked list of TAR readers. Every node in
-     * the linked list is immutable. Thus, you need to to hold {@link #lock}
-     * while reading the value of the reference, but you can release it before
-     * iterating through the list.
+     * The current TAR writer and the first node of the linked list of TAR
+     * readers. Every node in the linked list is immutable and so is the
+     * snapshot itself. Thus, reading this reference once gives a consistent
+     * view of the writer and the readers without holding any lock.
      * <p>
-     * Please note that while the linked list is immutable, the pointer to it
-     * (namely this instance variable) is not itself immutable. This reference
-     * must be kept consistent with {@link #writer}, and this is the reason why
-     * it's necessary to hold a lock while accessing this variable.
+     * The reference is only replaced while holding {@link #lock}. A reader
+     * working with a stale snapshot might find its TAR writer closed by a
+     * concurrent rotation. See {@link #readSegment(long, long)} for how this
+     * is handled.
      */
-    private Node readers;
+    private volatile Snapshot snapshot;
 
     /**
-     * The currently used TAR writer. Its access is protected by {@link #lock}.
+     * Index locating segments across the TAR readers starting at
+     * {@link IndexedReaders#head}. Lookups probe the TAR readers prepended to
+     * the list after the index has been built one by one and then consult the
+     * index. If {@link IndexedReaders#head} is no longer part of the list
+     * (e.g. after a cleanup) lookups fall back to probing all TAR readers
+     * until the index is rebuilt.
      */
-    private TarWriter writer;
+    private volatile IndexedReaders indexedReaders;
 
     /**
      * If {@code true}, a user requested this instance to close. This flag is
@@ -379,6 +429,8 @@ public class TarFiles implements Closeable {
         readerCount = builder.readerCountStats;
         segmentCount = builder.segmentCountStats;
 
+        Node readers = null;
+
         Map<Integer, Map<Character, String>> map = collectFiles(archiveManager);
         Integer[] indices = map.keySet().toArray(new Integer[map.size()]);
         Arrays.sort(indices);
@@ -399,31 +451,34 @@ public class TarFiles implements Closeable {
             readers = new Node(r, readers);
             readerCount.inc();
         }
+        indexedReaders = new IndexedReaders(readers, SegmentLocationIndex.build(iterable(readers)));
         if (builder.readOnly) {
+            snapshot = new Snapshot(null, readers);
             return;
         }
         int writeNumber = 0;
         if (indices.length > 0) {
             writeNumber = indices[indices.length - 1] + 1;
         }
-        writer = new TarWriter(archiveManager, writeNumber, segmentCount);
+        snapshot = new Snapshot(new TarWriter(archiveManager, writeNumber, segmentCount), readers);
     }
 
     @Override
     public void close() throws IOException {
         shutdown = true;
 
-        TarWriter w;
-        Node head;
+        Snapshot s;
 
-        lock.writeLock().lock();
+        lock.lock();
         try {
-            w = writer;
-            head = readers;
+            s = snapshot;
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
 
+        TarWriter w = s.writer;
+        Node head = s.readers;
+
         IOException exception = null;
 
         if (w != null) {
@@ -453,37 +508,21 @@ public class TarFiles implements Closeable {
 
     @Override
     public String toString() {
+        Snapshot s = snapshot;
         String w = null;
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            if (writer != null) {
-                w = writer.toString();
-            }
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
+        if (s.writer != null) {
+            w = s.writer.toString();
         }
-
-        return String.format("TarFiles{readers=%s,writer=%s}", newArrayList(iterable(head)), w);
+        return String.format("TarFiles{readers=%s,writer=%s}", newArrayList(iterable(s.readers)), w);
     }
 
     public long size() {
+        Snapshot s = snapshot;
         long size = 0;
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            if (writer != null) {
-                size = writer.fileLength();
-            }
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
+        if (s.writer != null) {
+            size = s.writer.fileLength();
         }
-
-        for (TarReader reader : iterable(head)) {
+        for (TarReader reader : iterable(s.readers)) {
             size += reader.size();
         }
         return size;
@@ -494,106 +533,175 @@ public class TarFiles implements Closeable {
     }
 
     public int readerCount() {
-        Node head;
+        return getSize(snapshot.readers);
+    }
 
-        lock.readLock().lock();
-        try {
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * @return the number of segments in the segment store
+     */
+    public int segmentCount() {
+        Snapshot s = snapshot;
+        int count = 0;
+        if (s.writer != null) {
+            count = s.writer.getEntryCount();
+        }
+        for (TarReader reader : iterable(s.readers)) {
+            count += getSegmentCount(reader);
         }
+        return count;
+    }
+
+    public void flush() throws IOException {
+        // Flushing a TAR writer closed by a concurrent rotation is a no-op,
+        // exactly as if the rotation had happened before this call.
+        Snapshot s = snapshot;
+        s.writer.flush();
 
-        return getSize(head);
+        if (getUnindexedCount(s.readers, indexedReaders) > LOCATION_INDEX_REBUILD_THRESHOLD) {
+            updateLocationIndex(s.readers);
+        }
     }
 
     /**
-     * @return the number of segments in the segment store
+     * @return the number of TAR readers in the list starting at {@code head}
+     * not covered by {@code indexed} or {@code Integer.MAX_VALUE} if {@code
+     * indexed} does not cover any of them.
      */
-    public int segmentCount() {
+    private static int getUnindexedCount(Node head, IndexedReaders indexed) {
         int count = 0;
-        Node head;
+        for (Node n = head; n != null; n = n.next) {
+            if (indexed != null && n == indexed.head) {
+                return count;
+            }
+            count++;
+        }
+        return indexed != null && indexed.head == null ? count : Integer.MAX_VALUE;
+    }
 
-        lock.readLock().lock();
+    /**
+     * Rebuild the segment location index for the TAR readers starting at
+     * {@code head}. The new index is discarded if the list of TAR readers
+     * changed in the meanwhile.
+     */
+    private void updateLocationIndex(Node head) {
+        IndexedReaders updated = new IndexedReaders(head, SegmentLocationIndex.build(iterable(head)));
+        lock.lock();
         try {
-            if (writer != null) {
-                count = writer.getEntryCount();
+            if (snapshot.readers == head) {
+                indexedReaders = updated;
             }
-            head = readers;
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
+    }
 
-        for (TarReader reader : iterable(head)) {
-            count += getSegmentCount(reader);
+    /**
+     * Locate the TAR reader containing a segment by probing the TAR readers
+     * not covered by the location index first and the location index
+     * afterwards.
+     */
+    private TarReader findReader(Node head, long msb, long lsb) {
+        IndexedReaders indexed = indexedReaders;
+        for (Node n = head; n != null; n = n.next) {
+            if (indexed != null && n == indexed.head) {
+                return indexed.index.find(msb, lsb);
+            }
+            if (n.reader.containsEntry(msb, lsb)) {
+                return n.reader;
+            }
         }
-        return count;
+        return null;
     }
 
-    public void flush() throws IOException {
-        lock.readLock().lock();
+    /**
+     * @return the current snapshot once no operation replacing it is in
+     * progress.
+     */
+    private Snapshot awaitSnapshot() {
+        lock.lock();
         try {
-            writer.flush();
+            return snapshot;
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
     }
 
     public boolean containsSegment(long msb, long lsb) {
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            if (writer != null) {
-                if (writer.containsEntry(msb, lsb)) {
-                    return true;
+        Snapshot s = snapshot;
+        while (true) {
+            try {
+                return containsSegment(s, msb, lsb);
+            } catch (IllegalStateException e) {
+                Snapshot current = awaitSnapshot();
+                if (current == s) {
+                    throw e;
                 }
+                s = current;
             }
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
         }
+    }
 
-        for (TarReader reader : iterable(head)) {
-            if (reader.containsEntry(msb, lsb)) {
-                return true;
-            }
+    private boolean containsSegment(Snapshot s, long msb, long lsb) {
+        if (s.writer != null && s.writer.containsEntry(msb, lsb)) {
+            return true;
         }
-        return false;
+        return findReader(s.readers, msb, lsb) != null;
     }
 
+    /**
+     * Read a segment without holding any lock. The TAR writer or the TAR
+     * readers of the snapshot used for reading might be closed concurrently by
+     * a rotation of the TAR writer or by a cleanup. In this case, the read is
+     * retried with the snapshot published by that operation.
+     */
     public Buffer readSegment(long msb, long lsb) {
-        try {
-            Node head;
-
-            lock.readLock().lock();
+        Snapshot s = snapshot;
+        while (true) {
             try {
-                if (writer != null) {
-                    Buffer b = writer.readEntry(msb, lsb);
-                    if (b != null) {
-                        return b;
-                    }
+                return readSegment(s, msb, lsb);
+            } catch (IllegalStateException e) {
+                Snapshot current = awaitSnapshot();
+                if (current == s) {
+                    throw e;
                 }
-                head = readers;
-            } finally {
-                lock.readLock().unlock();
+                s = current;
+            } catch (IOException e) {
+                Snapshot current = awaitSnapshot();
+                if (current == s) {
+                    log.warn("Unable to read from TAR file", e);
+                    return null;
+                }
+                s = current;
             }
+        }
+    }
 
-            for (TarReader reader : iterable(head)) {
-                Buffer b = reader.readEntry(msb, lsb);
-                if (b != null) {
-                    return b;
-                }
+    private Buffer readSegment(Snapshot s, long msb, long lsb) throws IOException {
+        if (s.writer != null) {
+            Buffer b = s.writer.readEntry(msb, lsb);
+            if (b != null) {
+                return b;
             }
-        } catch (IOException e) {
-            log.warn("Unable to read from TAR file", e);
         }
 
+        IndexedReaders indexed = indexedReaders;
+        for (Node n = s.readers; n != null; n = n.next) {
+            if (indexed != null && n == indexed.head) {
+                TarReader reader = indexed.index.find(msb, lsb);
+                return reader != null ? reader.readEntry(msb, lsb) : null;
+            }
+            Buffer b = n.reader.readEntry(msb, lsb);
+            if (b != null) {
+                return b;
+            }
+        }
         return null;
     }
 
     public void writeSegment(UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
-        lock.writeLock().lock();
+        lock.lock();
         try {
+            TarWriter writer = snapshot.writer;
             long size = writer.writeEntry(
                     id.getMostSignificantBits(),
                     id.getLeastSignificantBits(),
@@ -616,7 +724,7 @@ public class TarFiles implements Closeable {
                 internalNewWriter();
             }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -624,30 +732,30 @@ public class TarFiles implements Closeable {
      * Creates a new TAR writer with a higher index number, reopens the previous
      * TAR writer as a TAR reader, and adds the TAR reader to the linked list.
      * <p>
-     * This method must be invoked while holding {@link #lock} in write mode,
-     * because it modifies the references {@link #writer} and {@link #readers}.
+     * This method must be invoked while holding {@link #lock}, because it
+     * replaces {@link #snapshot}.
      *
      * @throws IOException If an error occurs while operating on the TAR readers
      *                     or the TAR writer.
      */
     private void internalNewWriter() throws IOException {
-        TarWriter newWriter = writer.createNextGeneration();
-        if (newWriter == writer) {
+        Snapshot s = snapshot;
+        TarWriter newWriter = s.writer.createNextGeneration();
+        if (newWriter == s.writer) {
             return;
         }
-        TarReader reader = TarReader.open(writer.getFileName(), archiveManager);
-        readers = new Node(reader, readers);
+        TarReader reader = TarReader.open(s.writer.getFileName(), archiveManager);
         segmentCount.inc(getSegmentCount(reader));
         readerCount.inc();
-        writer = newWriter;
+        snapshot = new Snapshot(newWriter, new Node(reader, s.readers));
     }
 
     void newWriter() throws IOException {
-        lock.writeLock().lock();
+        lock.lock();
         try {
             internalNewWriter();
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -659,18 +767,13 @@ public class TarFiles implements Closeable {
         Set<UUID> references;
         Node head;
 
-        lock.writeLock().lock();
-        lock.readLock().lock();
+        lock.lock();
         try {
-            try {
-                internalNewWriter();
-            } finally {
-                lock.writeLock().unlock();
-            }
-            head = readers;
+            internalNewWriter();
+            head = snapshot.readers;
             references = new HashSet<>(context.initialReferences());
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
 
         Map<TarReader, TarReader> cleaned = new LinkedHashMap<>();
@@ -765,18 +868,20 @@ public class TarFiles implements Closeable {
             // update `readers` and exit from the loop. Otherwise, we read the
             // value of `readers` and recompute `swept` based on this value.
 
-            lock.writeLock().lock();
+            lock.lock();
             try {
-                if (readers == head) {
-                    readers = swept;
+                Snapshot s = snapshot;
+                if (s.readers == head) {
+                    snapshot = new Snapshot(s.writer, swept);
                     break;
                 } else {
-                    head = readers;
+                    head = s.readers;
                 }
             } finally {
-                lock.writeLock().unlock();
+                lock.unlock();
             }
         }
+        updateLocationIndex(swept);
         readerCount.dec(getSize(head) - getSize(swept));
         segmentCount.dec(getSegmentCount(head) - getSegmentCount(swept));
 
@@ -804,14 +909,14 @@ public class TarFiles implements Closeable {
 
     public void collectBlobReferences(Consumer<String> collector, Predicate<GCGeneration> reclaim) throws IOException {
         Node head;
-        lock.writeLock().lock();
+        lock.lock();
         try {
-            if (writer != null) {
+            if (snapshot.writer != null) {
                 internalNewWriter();
             }
-            head = readers;
+            head = snapshot.readers;
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
 
         for (TarReader reader : iterable(head)) {
@@ -820,14 +925,7 @@ public class TarFiles implements Closeable {
     }
 
     public Iterable<UUID> getSegmentIds() {
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
-        }
+        Node head = snapshot.readers;
 
         List<UUID> ids = new ArrayList<>();
         for (TarReader reader : iterable(head)) {
@@ -837,14 +935,7 @@ public class TarFiles implements Closeable {
     }
 
     public Map<UUID, Set<UUID>> getGraph(String fileName) throws IOException {
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
-        }
+        Node head = snapshot.readers;
 
         Set<UUID> index = null;
         Map<UUID, List<UUID>> graph = null;
@@ -872,14 +963,7 @@ public class TarFiles implements Closeable {
     }
 
     public Map<String, Set<UUID>> getIndices() {
-        Node head;
-
-        lock.readLock().lock();
-        try {
-            head = readers;
-        } finally {
-            lock.readLock().unlock();
-        }
+        Node head = snapshot.readers;
 
         Map<String, Set<UUID>> index = new HashMap<>();
         for (TarReader reader : iterable(head)) {
@@ -71,6 +71,8 @@ public class LockBasedScheduler implements Scheduler {
 
         private boolean dispatchChanges = true;
 
+        private boolean optimisticCommits = OPTIMISTIC_COMMITS;
+
         private LockBasedSchedulerBuilder(@NotNull Revisions revisions, @NotNull SegmentReader reader,
                 @NotNull SegmentNodeStoreStats stats) {
             this.revisions = revisions;
@@ -84,9 +86,22 @@ public class LockBasedScheduler implements Scheduler {
             return this;
         }
 
+        /**
+         * Enable or disable optimistic commits. When enabled, commit hooks of
+         * concurrent commits are processed in parallel and only the final
+         * update of the head state is serialized. See {@link OptimisticScheduler}.
+         */
+        @NotNull
+        public LockBasedSchedulerBuilder optimisticCommits(boolean optimisticCommits) {
+            this.optimisticCommits = optimisticCommits;
+            return this;
+        }
+
         @NotNull
         public LockBasedScheduler build() {
-            if (dispatchChanges) {
+            if (optimisticCommits) {
+                return new OptimisticScheduler(this, dispatchChanges);
+            } else if (dispatchChanges) {
                 return new ObservableLockBasedScheduler(this);
             } else {
                 return new LockBasedScheduler(this);
@@ -108,6 +123,13 @@ public class LockBasedScheduler implements Scheduler {
     private static final boolean COMMIT_FAIR_LOCK = Boolean
             .parseBoolean(System.getProperty("oak.segmentNodeStore.commitFairLock", "true"));
 
+    /**
+     * Flag controlling whether commit hooks are processed optimistically
+     * outside of the commit lock by default.
+     */
+    private static final boolean OPTIMISTIC_COMMITS = Boolean
+            .getBoolean("oak.segmentNodeStore.optimisticCommits");
+
     /**
      * Flag controlling the commit time quantile to wait for the lock in order
      * to increase chances of returning an up to date state.
@@ -141,19 +163,19 @@ public class LockBasedScheduler implements Scheduler {
      * single local commit is allowed at a time. When such a commit is in
      * progress, no external updates will be seen.
      */
-    private final Semaphore commitSemaphore = new Semaphore(1, COMMIT_FAIR_LOCK);
+    protected final Semaphore commitSemaphore = new Semaphore(1, COMMIT_FAIR_LOCK);
 
     @NotNull
-    private final SegmentReader reader;
+    protected final SegmentReader reader;
 
     @NotNull
-    private final Revisions revisions;
+    protected final Revisions revisions;
 
     protected final AtomicReference<SegmentNodeState> head;
 
-    private final SegmentNodeStoreStats stats;
+    protected final SegmentNodeStoreStats stats;
     
-    private final Histogram commitTimeHistogram = new Histogram(new UniformReservoir());
+    protected final Histogram commitTimeHistogram = new Histogram(new UniformReservoir());
     
     private final Random random = new Random();
 
@@ -236,7 +258,7 @@ public class LockBasedScheduler implements Scheduler {
      * @param dispatchChanges
      *            if set to true the changes would also be dispatched
      */
-    private void refreshHead(boolean dispatchChanges) {
+    protected void refreshHead(boolean dispatchChanges) {
         SegmentNodeState state = reader.readHeadState(revisions);
         if (!state.getRecordId().equals(head.get().getRecordId())) {
             head.set(state);
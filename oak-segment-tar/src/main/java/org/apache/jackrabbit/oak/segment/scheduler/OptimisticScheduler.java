@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.scheduler;
+
+import static java.lang.Thread.currentThread;
+
+import java.io.Closeable;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.segment.SegmentOverflowException;
+import org.apache.jackrabbit.oak.segment.scheduler.LockBasedScheduler.LockBasedSchedulerBuilder;
+import org.apache.jackrabbit.oak.spi.commit.ChangeDispatcher;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.Observable;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Scheduler} that applies commits optimistically. The commit hooks
+ * of a commit are processed against the current head state without holding
+ * the commit lock, so that hooks of concurrent commits run in parallel. Only
+ * the final compare-and-set of the head state in the underlying
+ * {@link org.apache.jackrabbit.oak.segment.Revisions} is serialized. If the
+ * head state moved in the meantime, the commit is rebased on the new head
+ * and its hooks are processed again.
+ * <p>
+ * To guarantee progress of commits that keep losing the race (e.g. because
+ * their hooks are slow), a commit falls back to the pessimistic strategy of
+ * the {@link LockBasedScheduler} after {@link #OPTIMISTIC_RETRIES} failed
+ * attempts.
+ */
+public class OptimisticScheduler extends LockBasedScheduler implements Observable {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticScheduler.class);
+
+    /**
+     * Number of optimistic attempts of a single commit before falling back
+     * to processing the commit while holding the commit lock.
+     */
+    static final int OPTIMISTIC_RETRIES = Integer
+            .getInteger("oak.segmentNodeStore.optimisticRetries", 5);
+
+    @Nullable
+    private final ChangeDispatcher changeDispatcher;
+
+    OptimisticScheduler(LockBasedSchedulerBuilder builder, boolean dispatchChanges) {
+        super(builder);
+        this.changeDispatcher = dispatchChanges
+                ? new ChangeDispatcher(head.get().getChildNode(ROOT))
+                : null;
+    }
+
+    @Override
+    public NodeState schedule(@NotNull Commit commit, SchedulerOption... schedulingOptions)
+            throws CommitFailedException {
+        if (!commit.hasChanges()) {
+            return super.schedule(commit, schedulingOptions);
+        }
+
+        try {
+            for (int attempt = 0; attempt < OPTIMISTIC_RETRIES; attempt++) {
+                SegmentNodeState before = reader.readHeadState(revisions);
+                SegmentNodeState after = commit.apply(before);
+                if (compareAndSetHead(commit, before, after)) {
+                    commit.applied(after);
+                    return after.getChildNode(ROOT);
+                }
+                log.debug("Head state changed while processing commit hooks, rebasing (attempt {})", attempt + 1);
+            }
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+            throw new CommitFailedException("Segment", 2, "Merge interrupted", e);
+        } catch (SegmentOverflowException e) {
+            throw new CommitFailedException("Segment", 3, "Merge failed", e);
+        }
+
+        log.info("Commit could not be applied optimistically after {} attempts, falling back to exclusive commit",
+                OPTIMISTIC_RETRIES);
+        return super.schedule(commit, schedulingOptions);
+    }
+
+    /**
+     * Atomically replace the head state {@code before} with {@code after}
+     * and dispatch the change. This is the only part of an optimistic commit
+     * that is serialized with other commits.
+     *
+     * @return {@code true} if the head was updated, {@code false} if the head
+     * state is not {@code before} any more and the commit needs to be rebased.
+     */
+    private boolean compareAndSetHead(Commit commit, SegmentNodeState before, SegmentNodeState after)
+            throws InterruptedException {
+        long queuedTime = System.nanoTime();
+        stats.onCommitQueued(currentThread(), commit::getGCGeneration);
+
+        commitSemaphore.acquire();
+        try {
+            long dequeuedTime = System.nanoTime();
+            stats.onCommitDequeued(currentThread(), dequeuedTime - queuedTime);
+
+            // dispatch external changes, if any, before the changes of this commit
+            refreshHead(true);
+            if (!head.get().getRecordId().equals(before.getRecordId())
+                    || !revisions.setHead(before.getRecordId(), after.getRecordId())) {
+                return false;
+            }
+            head.set(after);
+            contentChanged(after.getChildNode(ROOT), commit.info());
+
+            long commitTime = System.nanoTime() - dequeuedTime;
+            commitTimeHistogram.update(commitTime);
+            stats.onCommit(currentThread(), commitTime);
+            return true;
+        } finally {
+            commitSemaphore.release();
+        }
+    }
+
+    @Override
+    protected void contentChanged(NodeState root, CommitInfo info) {
+        if (changeDispatcher != null) {
+            changeDispatcher.contentChanged(root, info);
+        }
+    }
+
+    @Override
+    public Closeable addObserver(Observer observer) {
+        if (changeDispatcher != null) {
+            return changeDispatcher.addObserver(observer);
+        }
+        return () -> {};
+    }
+}
@@ -17,8 +17,13 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import static java.util.Arrays.asList;
+
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -34,16 +39,19 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.compression.SnappyFrameDecoder;
 import io.netty.handler.codec.string.StringEncoder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.util.CharsetUtil;
+import org.apache.jackrabbit.oak.segment.standby.codec.Compression;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetBlobRequest;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetBlobRequestEncoder;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetBlobResponse;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionRequest;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionRequestEncoder;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionResponse;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadRequest;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadRequestEncoder;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadResponse;
@@ -62,6 +70,15 @@ class StandbyClient implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(StandbyClient.class);
 
+    /**
+     * Maximum time to wait for the primary to answer the negotiation of the
+     * compression. Primaries which don't support the negotiation never
+     * answer, so this is kept well below the read timeout.
+     */
+    private static final int NEGOTIATION_TIMEOUT_MS = Integer.getInteger("oak.standby.compressionNegotiationTimeoutMs", 2000);
+
+    private static final String READ_TIMEOUT_HANDLER_NAME = "readTimeout";
+
     private final BlockingQueue<GetHeadResponse> headQueue = new LinkedBlockingDeque<>();
 
     private final BlockingQueue<GetSegmentResponse> segmentQueue = new LinkedBlockingDeque<>();
@@ -70,16 +87,42 @@ class StandbyClient implements AutoCloseable {
 
     private final BlockingQueue<GetReferencesResponse> referencesQueue = new LinkedBlockingDeque<>();
 
+    private final BlockingQueue<GetCompressionResponse> compressionQueue = new LinkedBlockingDeque<>();
+
+    private final ByteCountingHandler compressedBytes = new ByteCountingHandler();
+
+    private final ByteCountingHandler uncompressedBytes = new ByteCountingHandler();
+
+    private Compression compression = Compression.SNAPPY;
+
     private final int readTimeoutMs;
 
     private final String clientId;
 
+    private boolean negotiationFailed;
+
     private Channel channel;
 
     StandbyClient(String host, int port, NioEventLoopGroup group, String clientId, boolean secure, int readTimeoutMs, File spoolFolder) throws InterruptedException {
+        this(host, port, group, clientId, secure, readTimeoutMs, spoolFolder, Compression.SNAPPY);
+    }
+
+    /**
+     * Create a new client and connect it to the primary.
+     *
+     * @param compression the preferred compression of the responses. If
+     *                    different from {@link Compression#SNAPPY}, it is
+     *                    negotiated with the primary before any other request
+     *                    is sent. If the primary doesn't answer the
+     *                    negotiation, the client reconnects and uses
+     *                    {@link Compression#SNAPPY}.
+     */
+    StandbyClient(String host, int port, NioEventLoopGroup group, String clientId, boolean secure, int readTimeoutMs, File spoolFolder, Compression compression) throws InterruptedException {
         this.clientId = clientId;
         this.readTimeoutMs = readTimeoutMs;
 
+        boolean negotiate = compression != Compression.SNAPPY;
+
         Bootstrap b = new Bootstrap()
             .group(group)
             .channel(NioSocketChannel.class)
@@ -97,11 +140,18 @@ class StandbyClient implements AutoCloseable {
                         p.addLast(SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build().newHandler(ch.alloc()));
                     }
 
-                    p.addLast(new ReadTimeoutHandler(readTimeoutMs, TimeUnit.MILLISECONDS));
+                    // The read timeout is suspended while the compression
+                    // is negotiated, see negotiateCompression()
+
+                    if (!negotiate || negotiationFailed) {
+                        p.addLast(READ_TIMEOUT_HANDLER_NAME, newReadTimeoutHandler());
+                    }
 
                     // Decoders
 
-                    p.addLast(new SnappyFrameDecoder(true));
+                    p.addLast(compressedBytes);
+                    p.addLast(Compression.HANDLER_NAME, Compression.SNAPPY.newDecoder());
+                    p.addLast(uncompressedBytes);
 
                     // The frame length limits the chunk size to max. 2.2GB
 
@@ -115,6 +165,7 @@ class StandbyClient implements AutoCloseable {
                     p.addLast(new GetSegmentRequestEncoder());
                     p.addLast(new GetBlobRequestEncoder());
                     p.addLast(new GetReferencesRequestEncoder());
+                    p.addLast(new GetCompressionRequestEncoder());
 
                     // Handlers
 
@@ -122,6 +173,7 @@ class StandbyClient implements AutoCloseable {
                     p.addLast(new GetSegmentResponseHandler(segmentQueue));
                     p.addLast(new GetBlobResponseHandler(blobQueue));
                     p.addLast(new GetReferencesResponseHandler(referencesQueue));
+                    p.addLast(new GetCompressionResponseHandler(compressionQueue));
 
                     // Exception handler
 
@@ -131,6 +183,58 @@ class StandbyClient implements AutoCloseable {
             });
 
         channel = b.connect(host, port).sync().channel();
+
+        if (negotiate && !negotiateCompression(compression)) {
+            // A late answer of the primary would switch the compression of
+            // the response stream at an unknown point, so the channel is not
+            // reused.
+            negotiationFailed = true;
+            close();
+            channel = b.connect(host, port).sync().channel();
+        }
+    }
+
+    private ReadTimeoutHandler newReadTimeoutHandler() {
+        return new ReadTimeoutHandler(readTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ask the primary to switch to the preferred compression. The read
+     * timeout is suspended during the negotiation and only installed once it
+     * succeeded, so that waiting for a primary which doesn't support the
+     * negotiation doesn't count towards the read timeout of the following
+     * requests.
+     *
+     * @return {@code false} if the primary doesn't answer in time, e.g.
+     * because it doesn't support the negotiation of the compression.
+     */
+    private boolean negotiateCompression(Compression preferred) throws InterruptedException {
+        channel.writeAndFlush(new GetCompressionRequest(clientId, asList(preferred.getName(), Compression.SNAPPY.getName())));
+
+        GetCompressionResponse response = compressionQueue.poll(Math.min(NEGOTIATION_TIMEOUT_MS, readTimeoutMs), TimeUnit.MILLISECONDS);
+
+        if (response == null) {
+            log.warn("Primary did not negotiate compression {}, using {}", preferred.getName(), compression.getName());
+            return false;
+        }
+
+        Compression negotiated = Compression.fromName(response.getCompression());
+
+        if (negotiated == null) {
+            throw new IllegalStateException("Primary chose unsupported compression " + response.getCompression());
+        }
+
+        if (negotiated != compression) {
+            // The primary doesn't send anything before the next request, so
+            // the decoder can safely be replaced from this thread.
+            channel.pipeline().replace(Compression.HANDLER_NAME, Compression.HANDLER_NAME, negotiated.newDecoder());
+            compression = negotiated;
+        }
+
+        channel.pipeline().addBefore(Compression.HANDLER_NAME, READ_TIMEOUT_HANDLER_NAME, newReadTimeoutHandler());
+
+        log.info("Using compression {} for responses from primary", compression.getName());
+        return true;
     }
 
     @Override
@@ -158,17 +262,39 @@ class StandbyClient implements AutoCloseable {
         return response.getHeadRecordId();
     }
 
+    /**
+     * Request multiple segments at once. All requests are written to the
+     * channel before waiting for the first response, so that up to {@code
+     * segmentIds.size()} requests are in flight concurrently.
+     *
+     * @param segmentIds the identifiers of the segments to request.
+     * @return a map from segment identifier to segment data, or {@code null}
+     * if not all segments could be read before the read timeout expired.
+     */
     @Nullable
-    byte[] getSegment(String segmentId) throws InterruptedException {
-        channel.writeAndFlush(new GetSegmentRequest(clientId, segmentId));
+    Map<String, byte[]> getSegments(Collection<String> segmentIds) throws InterruptedException {
+        for (String segmentId : segmentIds) {
+            channel.write(new GetSegmentRequest(clientId, segmentId));
+        }
+        channel.flush();
 
-        GetSegmentResponse response = segmentQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+        Map<String, byte[]> segments = new HashMap<>(segmentIds.size());
 
-        if (response == null) {
-            return null;
+        while (segments.size() < segmentIds.size()) {
+            GetSegmentResponse response = segmentQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+
+            if (response == null) {
+                return null;
+            }
+
+            if (segmentIds.contains(response.getSegmentId())) {
+                segments.put(response.getSegmentId(), response.getSegmentData());
+            } else {
+                log.debug("Discarding unexpected response for segment {}", response.getSegmentId());
+            }
         }
 
-        return response.getSegmentData();
+        return segments;
     }
 
     @Nullable
@@ -184,17 +310,68 @@ class StandbyClient implements AutoCloseable {
         return response.getInputStream();
     }
 
+    /**
+     * Request the references of multiple segments at once. All requests are
+     * written to the channel before waiting for the first response.
+     *
+     * @param segmentIds the identifiers of the segments whose references to
+     *                   request.
+     * @return a map from segment identifier to the identifiers of the segments
+     * it references, or {@code null} if not all references could be read
+     * before the read timeout expired.
+     */
     @Nullable
-    Iterable<String> getReferences(String segmentId) throws InterruptedException {
-        channel.writeAndFlush(new GetReferencesRequest(clientId, segmentId));
+    Map<String, Iterable<String>> getReferences(Collection<String> segmentIds) throws InterruptedException {
+        for (String segmentId : segmentIds) {
+            channel.write(new GetReferencesRequest(clientId, segmentId));
+        }
+        channel.flush();
 
-        GetReferencesResponse response = referencesQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+        Map<String, Iterable<String>> references = new HashMap<>(segmentIds.size());
 
-        if (response == null) {
-            return null;
+        while (references.size() < segmentIds.size()) {
+            GetReferencesResponse response = referencesQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+
+            if (response == null) {
+                return null;
+            }
+
+            if (segmentIds.contains(response.getSegmentId())) {
+                references.put(response.getSegmentId(), response.getReferences());
+            } else {
+                log.debug("Discarding unexpected references response for segment {}", response.getSegmentId());
+            }
         }
 
-        return response.getReferences();
+        return references;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return {@code true} if the primary didn't answer the negotiation of
+     * the compression, which is the case for primaries not supporting it.
+     */
+    boolean isCompressionNegotiationFailed() {
+        return negotiationFailed;
+    }
+
+    /**
+     * @return the number of bytes received from the primary before
+     * decompression.
+     */
+    long getCompressedBytes() {
+        return compressedBytes.getBytes();
+    }
+
+    /**
+     * @return the number of bytes received from the primary after
+     * decompression.
+     */
+    long getUncompressedBytes() {
+        return uncompressedBytes.getBytes();
     }
 
     public int getReadTimeoutMs() {
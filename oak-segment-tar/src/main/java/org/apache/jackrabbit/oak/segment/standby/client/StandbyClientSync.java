@@ -27,6 +27,7 @@ import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -36,6 +37,7 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
 import org.apache.jackrabbit.oak.segment.file.FileStore;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+import org.apache.jackrabbit.oak.segment.standby.codec.Compression;
 import org.apache.jackrabbit.oak.segment.standby.jmx.ClientStandbyStatusMBean;
 import org.apache.jackrabbit.oak.segment.standby.jmx.StandbyStatusMBean;
 import org.apache.jackrabbit.oak.segment.standby.store.CommunicationObserver;
@@ -51,6 +53,12 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     private static final AtomicInteger standbyRunCounter = new AtomicInteger();
 
+    /**
+     * Compression of the responses requested from the primary. Snappy is
+     * always supported, other algorithms are negotiated with the primary.
+     */
+    private static final Compression COMPRESSION = compression();
+
     private final String host;
 
     private final int port;
@@ -85,6 +93,23 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     private long syncEndTimestamp;
 
+    private volatile long lastSyncTransferRate;
+
+    private volatile String compression = COMPRESSION.getName();
+
+    /**
+     * Compression requested from this primary. Falls back to Snappy once the
+     * primary failed to negotiate the compression, so that the negotiation
+     * is not attempted again in every sync cycle.
+     */
+    private volatile Compression preferredCompression = COMPRESSION;
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    private volatile double lastSyncCompressionRatio;
+
     private static String clientId() {
         String s = System.getProperty(CLIENT_ID_PROPERTY_NAME);
 
@@ -95,6 +120,18 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         return s;
     }
 
+    private static Compression compression() {
+        String name = System.getProperty("oak.standby.compression", Compression.SNAPPY.getName());
+        Compression compression = Compression.fromName(name);
+
+        if (compression == null) {
+            log.warn("Unsupported compression {}, using {}", name, Compression.SNAPPY.getName());
+            return Compression.SNAPPY;
+        }
+
+        return compression;
+    }
+
     public StandbyClientSync(String host, int port, FileStore store, boolean secure, int readTimeoutMs, boolean autoClean, File spoolFolder) {
         this.state = STATUS_INITIALIZING;
         this.lastSuccessfulRequest = -1;
@@ -158,11 +195,16 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
             try {
                 long startTimestamp = System.currentTimeMillis();
+                long bytesBefore = execution.getTransferredSegmentBytes();
 
                 GCGeneration genBefore = headGeneration(fileStore);
 
-                try (StandbyClient client = new StandbyClient(host, port, group, observer.getID(), secure, readTimeoutMs, spoolFolder)) {
-                    execution.execute(client);
+                try (StandbyClient client = new StandbyClient(host, port, group, observer.getID(), secure, readTimeoutMs, spoolFolder, preferredCompression)) {
+                    try {
+                        execution.execute(client);
+                    } finally {
+                        onCompressionStats(client);
+                    }
                 }
 
                 fileStore.flush();
@@ -178,6 +220,8 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
                 this.syncStartTimestamp = startTimestamp;
                 this.syncEndTimestamp = System.currentTimeMillis();
                 this.lastSuccessfulRequest = syncEndTimestamp / 1000;
+                this.lastSyncTransferRate = (execution.getTransferredSegmentBytes() - bytesBefore) * 1000
+                        / Math.max(1, syncEndTimestamp - startTimestamp);
             } catch (Exception e) {
                 this.failedRequests++;
                 log.error("Failed synchronizing state.", e);
@@ -189,6 +233,24 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         }
     }
 
+    private void onCompressionStats(StandbyClient client) {
+        long compressed = client.getCompressedBytes();
+        long uncompressed = client.getUncompressedBytes();
+
+        compression = client.getCompression().getName();
+
+        if (client.isCompressionNegotiationFailed()) {
+            log.info("Primary {}:{} doesn't support the negotiation of the compression, using {} from now on", host, port, compression);
+            preferredCompression = client.getCompression();
+        }
+        compressedBytes.addAndGet(compressed);
+        uncompressedBytes.addAndGet(uncompressed);
+
+        if (compressed > 0) {
+            lastSyncCompressionRatio = (double) uncompressed / compressed;
+        }
+    }
+
     @NotNull
     private static GCGeneration headGeneration(FileStore fileStore) {
         return fileStore.getHead().getRecordId().getSegment().getGcGeneration();
@@ -268,6 +330,41 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         return syncEndTimestamp;
     }
 
+    @Override
+    public long getTransferredSegments() {
+        return execution.getTransferredSegments();
+    }
+
+    @Override
+    public long getTransferredSegmentBytes() {
+        return execution.getTransferredSegmentBytes();
+    }
+
+    @Override
+    public long getLastSyncTransferRate() {
+        return lastSyncTransferRate;
+    }
+
+    @Override
+    public String getCompression() {
+        return compression;
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    @Override
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    @Override
+    public double getLastSyncCompressionRatio() {
+        return lastSyncCompressionRatio;
+    }
+
     private void closeGroup() {
         if (group == null) {
             return;
@@ -17,14 +17,31 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
 import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.SegmentId;
 import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
@@ -46,12 +63,22 @@ class StandbyClientSyncExecution {
 
     private static final Logger log = LoggerFactory.getLogger(StandbyClientSyncExecution.class);
 
+    /**
+     * Maximum number of segment or reference requests that are in flight
+     * concurrently. A value of 1 disables pipelining.
+     */
+    private static final int PIPELINE_WINDOW = Math.max(1, Integer.getInteger("oak.standby.pipelineWindow", 32));
+
     private final FileStore store;
 
     private final SegmentIdProvider idProvider;
 
     private final Supplier<Boolean> running;
 
+    private final AtomicLong transferredSegments = new AtomicLong();
+
+    private final AtomicLong transferredSegmentBytes = new AtomicLong();
+
     StandbyClientSyncExecution(FileStore store, Supplier<Boolean> running) {
         this.store = store;
         this.idProvider = store.getSegmentIdProvider();
@@ -106,55 +133,193 @@ class StandbyClientSyncExecution {
 
     private void copySegmentHierarchyFromPrimary(StandbyClient client, UUID segmentId) throws Exception {
         Set<UUID> visited = new HashSet<>();
+        Map<UUID, List<UUID>> references = new HashMap<>();
         List<UUID> bulk = new LinkedList<>();
-        List<UUID> data = new LinkedList<>();
 
-        deriveTopologicalOrder(client, segmentId, visited, data, bulk);
+        discoverMissingSegments(client, segmentId, visited, references, bulk);
+        List<UUID> data = deriveTopologicalOrder(segmentId, references);
 
-        for (UUID id : bulk) {
-            log.info("Copying bulk segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
+        ExecutorService writer = Executors.newSingleThreadExecutor(new NamedThreadFactory("standby-segment-writer"));
+        try {
+            copySegmentsFromPrimary(client, bulk, "bulk", writer);
+            copySegmentsFromPrimary(client, data, "data", writer);
+        } finally {
+            writer.shutdown();
+            awaitTermination(writer);
         }
+    }
 
-        for (UUID id : data) {
-            log.info("Copying data segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
+    /**
+     * Wait for the segments still being written, so that a failed transfer
+     * does not return while its last window is written concurrently with
+     * the next attempt.
+     */
+    private static void awaitTermination(ExecutorService writer) {
+        boolean interrupted = false;
+        while (!writer.isTerminated()) {
+            try {
+                writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void deriveTopologicalOrder(StandbyClient client, UUID id, Set<UUID> visited, List<UUID> data, List<UUID> bulk) throws Exception {
-        if (visited.contains(id) || isLocal(id)) {
-            return;
+    /**
+     * Breadth first traversal of the segment graph starting at {@code id},
+     * requesting the references of up to {@link #PIPELINE_WINDOW} data
+     * segments concurrently. Segments already present in the local store are
+     * not traversed.
+     */
+    private void discoverMissingSegments(StandbyClient client, UUID id, Set<UUID> visited, Map<UUID, List<UUID>> references, List<UUID> bulk) throws Exception {
+        Deque<UUID> frontier = new ArrayDeque<>();
+        frontier.add(id);
+
+        while (!frontier.isEmpty()) {
+            Set<UUID> batch = new LinkedHashSet<>();
+
+            while (!frontier.isEmpty() && batch.size() < PIPELINE_WINDOW) {
+                UUID candidate = frontier.poll();
+
+                if (visited.contains(candidate) || isLocal(candidate)) {
+                    continue;
+                }
+
+                log.debug("Inspecting segment {}", candidate);
+                visited.add(candidate);
+
+                if (SegmentId.isDataSegmentId(candidate.getLeastSignificantBits())) {
+                    batch.add(candidate);
+                } else {
+                    bulk.add(candidate);
+                }
+            }
+
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            for (Map.Entry<UUID, List<UUID>> entry : readReferences(client, batch).entrySet()) {
+                for (UUID referenced : entry.getValue()) {
+                    log.debug("Found reference from {} to {}", entry.getKey(), referenced);
+                }
+                references.put(entry.getKey(), entry.getValue());
+                frontier.addAll(entry.getValue());
+            }
         }
+    }
 
-        // Use DFS to traverse segment graph and make sure
-        // to add each data segment to the data list only
-        // after all its references were already added
+    /**
+     * Use DFS to traverse the graph of missing data segments and make sure to
+     * add each data segment to the returned list only after all its references
+     * were already added.
+     */
+    private static List<UUID> deriveTopologicalOrder(UUID id, Map<UUID, List<UUID>> references) {
+        List<UUID> data = new LinkedList<>();
 
-        log.debug("Inspecting segment {}", id);
-        visited.add(id);
+        if (!references.containsKey(id)) {
+            return data;
+        }
 
-        if (SegmentId.isDataSegmentId(id.getLeastSignificantBits())) {
-            for (String s : readReferences(client, id)) {
-                UUID referenced = UUID.fromString(s);
-                log.debug("Found reference from {} to {}", id, referenced);
-                deriveTopologicalOrder(client, referenced, visited, data, bulk);
-            }
+        Set<UUID> visited = new HashSet<>();
+        Deque<Iterator<UUID>> stack = new ArrayDeque<>();
+        Deque<UUID> path = new ArrayDeque<>();
 
-            data.add(id);
-        } else {
-            bulk.add(id);
+        visited.add(id);
+        path.push(id);
+        stack.push(references.get(id).iterator());
+
+        while (!stack.isEmpty()) {
+            Iterator<UUID> children = stack.peek();
+
+            if (children.hasNext()) {
+                UUID child = children.next();
+
+                if (references.containsKey(child) && visited.add(child)) {
+                    path.push(child);
+                    stack.push(references.get(child).iterator());
+                }
+            } else {
+                stack.pop();
+                data.add(path.pop());
+            }
         }
+
+        return data;
     }
 
-    private Iterable<String> readReferences(StandbyClient client, UUID id) throws InterruptedException {
-        Iterable<String> references = client.getReferences(id.toString());
+    private Map<UUID, List<UUID>> readReferences(StandbyClient client, Set<UUID> ids) throws InterruptedException {
+        Map<String, Iterable<String>> references = client.getReferences(toStrings(ids));
 
         if (references == null) {
-            throw new IllegalStateException(String.format("Unable to read references of segment %s from primary", id));
+            throw new IllegalStateException(String.format("Unable to read references of segments %s from primary", ids));
+        }
+
+        Map<UUID, List<UUID>> result = new LinkedHashMap<>();
+
+        for (UUID id : ids) {
+            List<UUID> referenced = new ArrayList<>();
+            for (String s : references.get(id.toString())) {
+                referenced.add(UUID.fromString(s));
+            }
+            result.put(id, referenced);
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy the given segments from the primary in the given order. Up to
+     * {@link #PIPELINE_WINDOW} segments are requested concurrently, and
+     * segments are written to the local store by {@code writer} while the
+     * next batch is being transferred.
+     */
+    private void copySegmentsFromPrimary(StandbyClient client, List<UUID> ids, String type, ExecutorService writer) throws Exception {
+        Future<?> pendingWrite = null;
+
+        try {
+            for (List<UUID> batch : Lists.partition(ids, PIPELINE_WINDOW)) {
+                Map<String, byte[]> segments = client.getSegments(toStrings(batch));
+
+                if (segments == null) {
+                    throw new IllegalStateException("Unable to read segments " + batch);
+                }
+
+                if (pendingWrite != null) {
+                    pendingWrite.get();
+                }
+
+                pendingWrite = writer.submit(() -> {
+                    for (UUID id : batch) {
+                        log.info("Copying {} segment {} from primary", type, id);
+                        writeSegment(id, segments.get(id.toString()));
+                    }
+                    return null;
+                });
+            }
+
+            if (pendingWrite != null) {
+                pendingWrite.get();
+            }
+        } finally {
+            // Don't start writing a window after a failure. A window already
+            // being written is not interrupted, as an interrupt closes the
+            // channel of the tar file, and is awaited by the caller instead.
+            if (pendingWrite != null) {
+                pendingWrite.cancel(false);
+            }
         }
+    }
 
-        return references;
+    private static Set<String> toStrings(Collection<UUID> ids) {
+        Set<String> strings = new LinkedHashSet<>();
+        for (UUID id : ids) {
+            strings.add(id.toString());
+        }
+        return strings;
     }
 
     private boolean isLocal(UUID id) {
@@ -164,17 +329,21 @@ class StandbyClientSyncExecution {
         ));
     }
 
-    private void copySegmentFromPrimary(StandbyClient client, UUID uuid) throws Exception {
-        byte[] data = client.getSegment(uuid.toString());
-
-        if (data == null) {
-            throw new IllegalStateException("Unable to read segment " + uuid);
-        }
-
+    private void writeSegment(UUID uuid, byte[] data) throws IOException {
         long msb = uuid.getMostSignificantBits();
         long lsb = uuid.getLeastSignificantBits();
         SegmentId segmentId = idProvider.newSegmentId(msb, lsb);
         store.writeSegment(segmentId, data, 0, data.length);
+        transferredSegments.incrementAndGet();
+        transferredSegmentBytes.addAndGet(data.length);
+    }
+
+    long getTransferredSegments() {
+        return transferredSegments.get();
+    }
+
+    long getTransferredSegmentBytes() {
+        return transferredSegmentBytes.get();
     }
 
 }
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.standby.codec;
+
+import java.util.List;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.JdkZlibEncoder;
+import io.netty.handler.codec.compression.SnappyFrameDecoder;
+import io.netty.handler.codec.compression.SnappyFrameEncoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+/**
+ * Compression algorithms applied to the response stream sent from the
+ * primary to the standby. {@link #SNAPPY} is used when a connection is
+ * established. The standby can negotiate a different algorithm by sending a
+ * {@link GetCompressionRequest} before any other request.
+ */
+public enum Compression {
+
+    /**
+     * Fast compression with a moderate ratio. This is the default and the
+     * only algorithm understood by standby instances that don't negotiate
+     * the compression.
+     */
+    SNAPPY("snappy") {
+        @Override
+        public ChannelHandler newEncoder() {
+            return new SnappyFrameEncoder();
+        }
+
+        @Override
+        public ChannelHandler newDecoder() {
+            return new SnappyFrameDecoder(true);
+        }
+    },
+
+    /**
+     * Slower compression with a better ratio, for standby instances
+     * connected to the primary over links with limited bandwidth.
+     */
+    DEFLATE("deflate") {
+        @Override
+        public ChannelHandler newEncoder() {
+            return new JdkZlibEncoder(ZlibWrapper.ZLIB, 6);
+        }
+
+        @Override
+        public ChannelHandler newDecoder() {
+            return new JdkZlibDecoder(ZlibWrapper.ZLIB);
+        }
+    };
+
+    /**
+     * Name of the compression handlers in the channel pipelines of the
+     * primary and the standby.
+     */
+    public static final String HANDLER_NAME = "compression";
+
+    private final String name;
+
+    Compression(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public abstract ChannelHandler newEncoder();
+
+    public abstract ChannelHandler newDecoder();
+
+    /**
+     * Look up a compression algorithm by name.
+     *
+     * @param name the name of the compression algorithm.
+     * @return the compression algorithm or {@code null} if no algorithm with
+     * this name is supported.
+     */
+    public static Compression fromName(String name) {
+        for (Compression compression : values()) {
+            if (compression.name.equalsIgnoreCase(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Choose the first supported algorithm from the list of algorithms
+     * offered by the standby, in order of preference.
+     *
+     * @param offered the names of the compression algorithms supported by
+     *                the standby.
+     * @return the chosen compression algorithm, {@link #SNAPPY} if none of
+     * the offered algorithms is supported.
+     */
+    public static Compression negotiate(List<String> offered) {
+        for (String name : offered) {
+            Compression compression = fromName(name);
+            if (compression != null) {
+                return compression;
+            }
+        }
+        return SNAPPY;
+    }
+
+}
@@ -19,6 +19,10 @@
 
 package org.apache.jackrabbit.oak.segment.standby.codec;
 
+import java.util.List;
+
+import com.google.common.base.Joiner;
+
 final class Messages {
 
     static final byte HEADER_RECORD = 0x00;
@@ -29,6 +33,8 @@ final class Messages {
 
     static final byte HEADER_REFERENCES = 0x03;
 
+    static final byte HEADER_COMPRESSION = 0x04;
+
     static final String GET_HEAD = "h";
 
     static final String GET_SEGMENT = "s.";
@@ -37,6 +43,8 @@ final class Messages {
 
     static final String GET_REFERENCES = "r.";
 
+    static final String GET_COMPRESSION = "c.";
+
     private static final String MAGIC = "Standby-CMD@";
 
     private static final String SEPARATOR = ":";
@@ -92,6 +100,14 @@ final class Messages {
         return newGetBlobRequest(clientId, blobId, true);
     }
 
+    static String newGetCompressionRequest(String clientId, List<String> compressions, boolean delimited) {
+        return newRequest(clientId, GET_COMPRESSION + Joiner.on(",").join(compressions), delimited);
+    }
+
+    static String newGetCompressionRequest(String clientId, List<String> compressions) {
+        return newGetCompressionRequest(clientId, compressions, true);
+    }
+
     static String extractMessageFrom(String payload) {
         if (payload.startsWith(MAGIC) && payload.length() > MAGIC.length()) {
             int i = payload.indexOf(SEPARATOR);
@@ -17,6 +17,8 @@
 
 package org.apache.jackrabbit.oak.segment.standby.codec;
 
+import static java.util.Arrays.asList;
+
 import java.util.List;
 
 import io.netty.channel.ChannelHandlerContext;
@@ -47,6 +49,9 @@ public class RequestDecoder extends MessageToMessageDecoder<String> {
         } else if (request.startsWith(Messages.GET_REFERENCES)) {
             log.debug("Parsed 'get references' message");
             out.add(new GetReferencesRequest(Messages.extractClientFrom(msg), request.substring(Messages.GET_REFERENCES.length())));
+        } else if (request.startsWith(Messages.GET_COMPRESSION)) {
+            log.debug("Parsed 'get compression' message");
+            out.add(new GetCompressionRequest(Messages.extractClientFrom(msg), asList(request.substring(Messages.GET_COMPRESSION.length()).split(","))));
         } else {
             log.debug("Received unrecognizable message {}, dropping", msg);
         }
@@ -96,6 +96,10 @@ public class ResponseDecoder extends ByteToMessageDecoder {
                 log.debug("Decoding 'get references' response");
                 decodeGetReferencesResponse(length, in, out);
                 break;
+            case Messages.HEADER_COMPRESSION:
+                log.debug("Decoding 'get compression' response");
+                decodeGetCompressionResponse(length, in, out);
+                break;
             default:
                 log.debug("Invalid type, dropping message");
         }
@@ -202,6 +206,12 @@ public class ResponseDecoder extends ByteToMessageDecoder {
         out.add(new GetReferencesResponse(null, segmentId, references));
     }
 
+    private static void decodeGetCompressionResponse(int length, ByteBuf in, List<Object> out) {
+        byte[] data = new byte[length - 1];
+        in.readBytes(data);
+        out.add(new GetCompressionResponse(null, new String(data, Charsets.UTF_8)));
+    }
+
     private static long hash(byte[] data) {
         return Hashing.murmur3_32().newHasher().putBytes(data).hash().padToLong();
     }
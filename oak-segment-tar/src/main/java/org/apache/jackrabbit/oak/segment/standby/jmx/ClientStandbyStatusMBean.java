@@ -33,6 +33,27 @@ public interface ClientStandbyStatusMBean extends StandbyStatusMBean {
     @Description("Local timestamp of the moment when the last sync cycle ended")
     long getSyncEndTimestamp();
 
+    @Description("number of segments transferred from the primary since the client was started")
+    long getTransferredSegments();
+
+    @Description("number of segment bytes transferred from the primary since the client was started")
+    long getTransferredSegmentBytes();
+
+    @Description("segment bytes per second transferred from the primary during the last sync cycle")
+    long getLastSyncTransferRate();
+
+    @Description("compression of the responses sent by the primary during the last sync cycle")
+    String getCompression();
+
+    @Description("number of bytes received from the primary before decompression since the client was started")
+    long getCompressedBytes();
+
+    @Description("number of bytes received from the primary after decompression since the client was started")
+    long getUncompressedBytes();
+
+    @Description("ratio between uncompressed and compressed bytes received from the primary during the last sync cycle")
+    double getLastSyncCompressionRatio();
+
     // expose the informations as operations, too
 
     @Description("number of consecutive failed requests")
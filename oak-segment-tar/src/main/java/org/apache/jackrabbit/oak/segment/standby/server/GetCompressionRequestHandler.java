@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.standby.server;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.apache.jackrabbit.oak.segment.standby.codec.Compression;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionRequest;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the compression of the response stream among the algorithms
+ * offered by the client. The response is still sent with the current
+ * compression, the chosen one is applied to all responses that follow.
+ */
+class GetCompressionRequestHandler extends SimpleChannelInboundHandler<GetCompressionRequest> {
+
+    private static final Logger log = LoggerFactory.getLogger(GetCompressionRequestHandler.class);
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, GetCompressionRequest msg) throws Exception {
+        Compression compression = Compression.negotiate(msg.getCompressions());
+
+        log.debug("Using compression {} for client {}", compression.getName(), msg.getClientId());
+
+        ctx.writeAndFlush(new GetCompressionResponse(msg.getClientId(), compression.getName())).addListener((ChannelFutureListener) future -> {
+            if (future.isSuccess()) {
+                future.channel().pipeline().replace(Compression.HANDLER_NAME, Compression.HANDLER_NAME, compression.newEncoder());
+            }
+        });
+    }
+
+}
@@ -36,7 +36,6 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LineBasedFrameDecoder;
-import io.netty.handler.codec.compression.SnappyFrameEncoder;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
@@ -45,7 +44,9 @@ import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.CharsetUtil;
 import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
 import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.standby.codec.Compression;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetBlobResponseEncoder;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetCompressionResponseEncoder;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadResponseEncoder;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetReferencesResponseEncoder;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentResponseEncoder;
@@ -216,9 +217,9 @@ class StandbyServer implements AutoCloseable {
                 p.addLast(new StateHandler(builder.stateConsumer));
                 p.addLast(new RequestObserverHandler(builder.observer));
 
-                // Snappy Encoder
+                // Compression, Snappy unless negotiated differently by the client
 
-                p.addLast(new SnappyFrameEncoder());
+                p.addLast(Compression.HANDLER_NAME, Compression.SNAPPY.newEncoder());
 
                 // Use chunking transparently 
                 
@@ -230,6 +231,7 @@ class StandbyServer implements AutoCloseable {
                 p.addLast(new GetSegmentResponseEncoder());
                 p.addLast(new GetBlobResponseEncoder(builder.blobChunkSize));
                 p.addLast(new GetReferencesResponseEncoder());
+                p.addLast(new GetCompressionResponseEncoder());
                 p.addLast(new ResponseObserverHandler(builder.observer));
 
                 // Handlers
@@ -238,6 +240,7 @@ class StandbyServer implements AutoCloseable {
                 p.addLast(new GetSegmentRequestHandler(builder.standbySegmentReader));
                 p.addLast(new GetBlobRequestHandler(builder.standbyBlobReader));
                 p.addLast(new GetReferencesRequestHandler(builder.standbyReferencesReader));
+                p.addLast(new GetCompressionRequestHandler());
 
                 // Exception handler
 
@@ -21,20 +21,40 @@ package org.apache.jackrabbit.oak.segment;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.newSegmentCache;
 import static org.apache.jackrabbit.oak.segment.SegmentStore.EMPTY_STORE;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
+import com.google.common.base.Strings;
 import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class SegmentCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
     private final SegmentCache cache = newSegmentCache(DEFAULT_SEGMENT_CACHE_MB);
 
     private final SegmentId id1 = new SegmentId(EMPTY_STORE, 0x0000000000000001L, 0xa000000000000001L, cache::recordHit);
@@ -240,6 +260,161 @@ public class SegmentCacheTest {
         assertEquals(0, stats.getEvictionCount());
     }
 
+    @Test
+    public void offHeapCacheTest() throws Exception {
+        SegmentCache cache = newSegmentCache(DEFAULT_SEGMENT_CACHE_MB, 1);
+        AbstractCacheStats stats = cache.getOffHeapCacheStats();
+        assertNotNull(stats);
+
+        Segment offHeap = mock(Segment.class);
+        Segment onHeap = mock(Segment.class);
+        when(segment3.size()).thenReturn(42);
+        when(segment3.copy(any())).thenReturn(offHeap);
+        when(offHeap.copy(any())).thenReturn(onHeap);
+
+        // Eviction from the segment cache moves the segment to the off-heap cache
+        cache.putSegment(segment3);
+        awaitElementCount(stats, 1);
+        assertEquals(42, stats.estimateCurrentWeight());
+        assertEquals(0, stats.getEvictionCount());
+
+        // Off-heap cache hit copies the segment back to the heap
+        assertEquals(onHeap, cache.getSegment(id3, () -> failToLoad(id3)));
+        assertEquals(1, stats.getHitCount());
+        assertEquals(0, stats.getMissCount());
+        assertEquals(onHeap, id3.getSegment());
+
+        // Off-heap cache miss loads the segment
+        assertEquals(segment1, cache.getSegment(id1, () -> segment1));
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+
+        cache.clear();
+        assertEquals(0, stats.getElementCount());
+        assertEquals(0, stats.estimateCurrentWeight());
+    }
+
+    @Test
+    public void offHeapCacheIsBounded() throws Exception {
+        SegmentCache cache = newSegmentCache(DEFAULT_SEGMENT_CACHE_MB, 1);
+        AbstractCacheStats stats = cache.getOffHeapCacheStats();
+        assertNotNull(stats);
+
+        for (int k = 0; k < 10; k++) {
+            SegmentId id = new SegmentId(EMPTY_STORE, k, 0xa000000000000000L, cache::recordHit);
+            Segment segment = mock(Segment.class);
+            when(segment.getSegmentId()).thenReturn(id);
+            when(segment.estimateMemoryUsage()).thenReturn(DEFAULT_SEGMENT_CACHE_MB * 1024 * 1024);
+            when(segment.size()).thenReturn(300 * 1024);
+            when(segment.copy(any())).thenReturn(mock(Segment.class));
+            cache.putSegment(segment);
+            if (k < 3) {
+                await(stats::getElementCount, k + 1);
+            } else {
+                await(stats::getEvictionCount, k - 2);
+            }
+        }
+
+        // Only three segments fit into the pre-allocated memory, the oldest
+        // ones are evicted
+        assertEquals(3, stats.getElementCount());
+        assertEquals(3 * 300 * 1024, stats.estimateCurrentWeight());
+        assertEquals(7, stats.getEvictionCount());
+    }
+
+    @Test
+    public void offHeapCacheWrapsAtEndOfFullSlab() throws Exception {
+        // A single slab of 1 MB that is filled exactly by four segments
+        SegmentCache cache = newSegmentCache(DEFAULT_SEGMENT_CACHE_MB, 1, 1024 * 1024);
+        AbstractCacheStats stats = cache.getOffHeapCacheStats();
+        assertNotNull(stats);
+
+        for (int k = 0; k < 10; k++) {
+            SegmentId id = new SegmentId(EMPTY_STORE, k, 0xa000000000000000L, cache::recordHit);
+            Segment segment = mock(Segment.class);
+            when(segment.getSegmentId()).thenReturn(id);
+            when(segment.estimateMemoryUsage()).thenReturn(DEFAULT_SEGMENT_CACHE_MB * 1024 * 1024);
+            when(segment.size()).thenReturn(256 * 1024);
+            when(segment.copy(any())).thenReturn(mock(Segment.class));
+            cache.putSegment(segment);
+            if (k < 4) {
+                await(stats::getElementCount, k + 1);
+            } else {
+                await(stats::getEvictionCount, k - 3);
+            }
+        }
+
+        assertEquals(4, stats.getElementCount());
+        assertEquals(4 * 256 * 1024, stats.estimateCurrentWeight());
+        assertEquals(6, stats.getEvictionCount());
+        assertEquals(0, stats.getLoadExceptionCount());
+    }
+
+    @Test
+    public void offHeapCacheIgnoresDirectSegments() throws Exception {
+        SegmentCache cache = newSegmentCache(DEFAULT_SEGMENT_CACHE_MB, 1);
+        AbstractCacheStats stats = cache.getOffHeapCacheStats();
+        assertNotNull(stats);
+
+        when(segment3.isDirect()).thenReturn(true);
+        cache.putSegment(segment3);
+        assertEquals(0, stats.getElementCount());
+        verify(segment3, never()).copy(any());
+    }
+
+    @Test
+    public void offHeapCacheWithFileStore() throws Exception {
+        try (FileStore store = fileStoreBuilder(folder.getRoot())
+                .withMemoryMapping(false)
+                .withSegmentCacheSize(1)
+                .withSegmentOffHeapCacheSize(64)
+                .build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            for (int k = 0; k < 100; k++) {
+                builder.setChildNode("n-" + k).setProperty("p", Strings.repeat("v" + k, 5000));
+            }
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.flush();
+
+            AbstractCacheStats stats = (AbstractCacheStats) store.getSegmentOffHeapCacheStats();
+            assertNotNull(stats);
+
+            NodeState root = nodeStore.getRoot();
+            for (int i = 0; i < 2; i++) {
+                for (int k = 0; k < 100; k++) {
+                    assertEquals(
+                            Strings.repeat("v" + k, 5000),
+                            root.getChildNode("n-" + k).getString("p"));
+                }
+                // Segments are copied into the off-heap cache in the background
+                for (int k = 0; k < 1000 && stats.getElementCount() == 0; k++) {
+                    Thread.sleep(10);
+                }
+            }
+
+            assertTrue(stats.getElementCount() > 0);
+            assertTrue(stats.getHitCount() > 0);
+        }
+    }
+
+    @Test
+    public void noOffHeapCacheStats() {
+        assertNull(cache.getOffHeapCacheStats());
+        assertNull(newSegmentCache(0).getOffHeapCacheStats());
+    }
+
+    private static void awaitElementCount(AbstractCacheStats stats, long count) throws InterruptedException {
+        await(stats::getElementCount, count);
+    }
+
+    private static void await(Supplier<Long> actual, long expected) throws InterruptedException {
+        for (int k = 0; k < 1000 && actual.get() != expected; k++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, (long) actual.get());
+    }
+
     private static void expect(Class<? extends Throwable> exceptionType, Callable<?> thunk) {
         try {
             thunk.call();
@@ -19,8 +19,14 @@
 package org.apache.jackrabbit.oak.segment;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.lang.ref.WeakReference;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
 import org.jetbrains.annotations.NotNull;
@@ -39,13 +45,70 @@ public class SegmentIdTableBenchmark {
         };
     }
 
-    public static void main(String... args) throws IOException {
+    public static void main(String... args) throws Exception {
         test();
         test();
         test();
         test();
         test();
         test();
+
+        int maxThreads = Math.max(32, Runtime.getRuntime().availableProcessors());
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            testConcurrent(threads);
+        }
+    }
+
+    /**
+     * Measures the lookup throughput of already tracked segment ids with
+     * the given number of concurrent readers.
+     */
+    private static void testConcurrent(int threads) throws Exception {
+        final int repeat = 1000;
+        final int count = 10000;
+
+        final long[] array = new long[count];
+        Random r = new Random(1);
+        for (int i = 0; i < array.length; i++) {
+            array[i] = r.nextLong();
+        }
+
+        MemoryStore store = new MemoryStore();
+        final SegmentIdFactory maker = newSegmentIdMaker(store);
+        final SegmentIdTable tbl = new SegmentIdTable();
+        final SegmentId[] ids = new SegmentId[count];
+        for (int j = 0; j < count; j++) {
+            ids[j] = tbl.newSegmentId(j, array[j], maker);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            long time = System.currentTimeMillis();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < repeat; i++) {
+                            for (int j = 0; j < count; j++) {
+                                tbl.newSegmentId(j, array[j], maker);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            time = System.currentTimeMillis() - time;
+            long ops = (long) threads * repeat * count;
+            System.out.println("SegmentIdTable, " + threads + " threads: " + time + " ms, "
+                    + (ops / Math.max(1, time)) + " lookups/ms");
+        } finally {
+            executor.shutdown();
+        }
     }
 
     private static void test() throws IOException {
@@ -32,6 +32,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -216,4 +218,45 @@ public class SegmentIdTableTest {
         }
         assertEquals(2, tbl.getMapRebuildCount());
     }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        final SegmentIdFactory maker = newSegmentIdMaker();
+        final SegmentIdTable tbl = new SegmentIdTable();
+        final int count = 16 * 1024;
+        final int threads = 8;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SegmentId[]>> futures = new ArrayList<Future<SegmentId[]>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<SegmentId[]>() {
+
+                    @Override
+                    public SegmentId[] call() throws Exception {
+                        SegmentId[] ids = new SegmentId[count];
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            ids[i] = tbl.newSegmentId(i, i, maker);
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            start.countDown();
+
+            SegmentId[] first = futures.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<SegmentId[]> future : futures) {
+                SegmentId[] ids = future.get(30, TimeUnit.SECONDS);
+                for (int i = 0; i < count; i++) {
+                    // all threads must see the very same instance
+                    assertTrue(first[i] == ids[i]);
+                }
+            }
+            assertEquals(count, tbl.getEntryCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
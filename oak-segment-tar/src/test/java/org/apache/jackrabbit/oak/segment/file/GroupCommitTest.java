@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GroupCommitTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void coalesceFlushes() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        try (GroupCommit groupCommit = new GroupCommit(flushes::incrementAndGet, 500, StatisticsProvider.NOOP)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int k = 0; k < 10; k++) {
+                futures.add(groupCommit.flush());
+            }
+            for (CompletableFuture<Void> future : futures) {
+                future.get();
+            }
+            assertEquals(1, flushes.get());
+        }
+    }
+
+    @Test
+    public void requestsDuringFlushFormNextBatch() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger flushes = new AtomicInteger();
+        Flusher flusher = () -> {
+            if (flushes.incrementAndGet() == 1) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        try (GroupCommit groupCommit = new GroupCommit(flusher, 0, StatisticsProvider.NOOP)) {
+            CompletableFuture<Void> first = groupCommit.flush();
+            started.await();
+            CompletableFuture<Void> second = groupCommit.flush();
+            assertSame(second, groupCommit.flush());
+            assertFalse(first.isDone());
+            release.countDown();
+            first.get();
+            second.get();
+            assertEquals(2, flushes.get());
+        }
+    }
+
+    @Test
+    public void failedFlush() throws Exception {
+        IOException failure = new IOException("fail");
+        try (GroupCommit groupCommit = new GroupCommit(() -> { throw failure; }, 0, StatisticsProvider.NOOP)) {
+            try {
+                groupCommit.flush().get();
+                fail("Expected failed flush");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void closeCompletesPendingFlushes() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        GroupCommit groupCommit = new GroupCommit(flushes::incrementAndGet, 200, StatisticsProvider.NOOP);
+        CompletableFuture<Void> pending = groupCommit.flush();
+        groupCommit.close();
+        assertTrue(pending.isDone());
+        assertEquals(1, flushes.get());
+        assertTrue(groupCommit.flush().isCompletedExceptionally());
+    }
+
+    @Test
+    public void fileStoreWithGroupCommit() throws Exception {
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).withGroupCommit(10).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            builder.setChildNode("a").setProperty("p", 42);
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.flushAsync().get();
+            assertEquals(store.getRevisions().getHead(), store.getRevisions().getPersistedHead());
+
+            builder = nodeStore.getRoot().builder();
+            builder.setChildNode("b");
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            store.flush();
+            assertEquals(store.getRevisions().getHead(), store.getRevisions().getPersistedHead());
+        }
+
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            assertEquals(42, nodeStore.getRoot().getChildNode("a").getLong("p"));
+            assertTrue(nodeStore.getRoot().hasChildNode("b"));
+        }
+    }
+
+}
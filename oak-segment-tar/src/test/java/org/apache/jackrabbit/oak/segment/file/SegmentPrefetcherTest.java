@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static com.google.common.base.Strings.repeat;
+import static org.apache.jackrabbit.oak.segment.SegmentStore.EMPTY_STORE;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.segment.SegmentTracker;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentPrefetcherTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private final SegmentTracker tracker = new SegmentTracker((msb, lsb) -> new SegmentId(EMPTY_STORE, msb, lsb));
+
+    private final Map<SegmentId, Segment> segments = new ConcurrentHashMap<>();
+
+    private final Map<SegmentId, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Prefetches of this segment block until {@link #unblock} is released.
+     */
+    private volatile SegmentId blocked;
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private Segment load(SegmentId id) {
+        loads.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+        if (id.equals(blocked) && Thread.currentThread().getName().startsWith("segment-prefetch")) {
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return segments.get(id);
+    }
+
+    private int loadCount(SegmentId id) {
+        AtomicInteger count = loads.get(id);
+        return count == null ? 0 : count.get();
+    }
+
+    private SegmentId addSegment(SegmentId... references) {
+        SegmentId id = tracker.newDataSegmentId();
+        Segment segment = mock(Segment.class);
+        when(segment.getSegmentId()).thenReturn(id);
+        when(segment.size()).thenReturn(SEGMENT_SIZE);
+        when(segment.getReferencedSegmentIdCount()).thenReturn(references.length);
+        for (int i = 0; i < references.length; i++) {
+            when(segment.getReferencedSegmentId(i)).thenReturn(references[i].asUUID());
+        }
+        segments.put(id, segment);
+        return id;
+    }
+
+    private void awaitLoaded(SegmentId... ids) throws InterruptedException {
+        for (SegmentId id : ids) {
+            for (int k = 0; k < 500 && loadCount(id) == 0; k++) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private SegmentPrefetcher newPrefetcher(int capacity, int maxDepth, int maxBreadth) {
+        return newPrefetcher(2, capacity, maxDepth, maxBreadth);
+    }
+
+    private SegmentPrefetcher newPrefetcher(int threads, int capacity, int maxDepth, int maxBreadth) {
+        return new SegmentPrefetcher(threads, capacity, (long) capacity * SEGMENT_SIZE,
+                maxDepth, maxBreadth, tracker, this::load, StatisticsProvider.NOOP);
+    }
+
+    @Test
+    public void prefetchReferences() throws Exception {
+        SegmentId leaf = addSegment();
+        SegmentId a = addSegment(leaf);
+        SegmentId b = addSegment();
+        SegmentId root = addSegment(a, b);
+
+        try (SegmentPrefetcher prefetcher = newPrefetcher(16, 1, 16)) {
+            assertEquals(segments.get(root), prefetcher.load(root));
+            awaitLoaded(a, b);
+            assertEquals(1, loadCount(a));
+            assertEquals(1, loadCount(b));
+
+            // Prefetched segments are not loaded again
+            assertEquals(segments.get(a), prefetcher.load(a));
+            assertEquals(segments.get(b), prefetcher.load(b));
+            assertEquals(1, loadCount(a));
+            assertEquals(1, loadCount(b));
+
+            // Loading a prefetched segment prefetches its references in turn
+            awaitLoaded(leaf);
+            assertEquals(segments.get(leaf), prefetcher.load(leaf));
+            assertEquals(1, loadCount(leaf));
+        }
+    }
+
+    @Test
+    public void prefetchBreadth() throws Exception {
+        SegmentId[] children = new SegmentId[8];
+        for (int k = 0; k < children.length; k++) {
+            children[k] = addSegment();
+        }
+        SegmentId root = addSegment(children);
+
+        try (SegmentPrefetcher prefetcher = newPrefetcher(16, 1, 3)) {
+            prefetcher.load(root);
+            assertEquals(3, prefetcher.getPendingCount());
+        }
+    }
+
+    @Test
+    public void pendingBoundedByWeight() throws Exception {
+        SegmentId[] children = new SegmentId[8];
+        for (int k = 0; k < children.length; k++) {
+            children[k] = addSegment();
+        }
+        SegmentId root = addSegment(children);
+
+        // The weight is bounded per cache segment, so at most one segment
+        // of each of the four cache segments is kept
+        try (SegmentPrefetcher prefetcher = new SegmentPrefetcher(1, 16, 4 * SEGMENT_SIZE,
+                1, 16, tracker, this::load, StatisticsProvider.NOOP)) {
+            prefetcher.load(root);
+            awaitLoaded(children);
+            for (int k = 0; k < 500 && prefetcher.getPendingCount() > 4; k++) {
+                Thread.sleep(10);
+            }
+            assertTrue(prefetcher.getPendingCount() <= 4);
+        }
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        SegmentId a = addSegment();
+        SegmentId root = addSegment(a);
+
+        try (SegmentPrefetcher prefetcher = newPrefetcher(16, 1, 16)) {
+            prefetcher.load(root);
+            awaitLoaded(a);
+            prefetcher.invalidate();
+            assertEquals(0, prefetcher.getPendingCount());
+
+            // Invalidated segments are loaded again
+            assertEquals(segments.get(a), prefetcher.load(a));
+            assertEquals(2, loadCount(a));
+        }
+    }
+
+    @Test
+    public void adaptToWastedPrefetches() throws Exception {
+        try (SegmentPrefetcher prefetcher = newPrefetcher(1, 4, 16)) {
+            assertEquals(16, prefetcher.getBreadth());
+
+            // Never request any of the prefetched segments
+            for (int k = 0; k < 2 * SegmentPrefetcher.ADAPT_WINDOW; k++) {
+                SegmentId child = addSegment();
+                prefetcher.load(addSegment(child));
+                awaitLoaded(child);
+            }
+
+            assertTrue(prefetcher.getHitRatio() < SegmentPrefetcher.LOW_HIT_RATIO);
+            assertTrue(prefetcher.getBreadth() < 16);
+            assertEquals(1, prefetcher.getDepth());
+        }
+    }
+
+    @Test
+    public void adaptToUsedPrefetches() throws Exception {
+        try (SegmentPrefetcher prefetcher = newPrefetcher(16, 4, 16)) {
+            assertEquals(1, prefetcher.getDepth());
+
+            // Request all of the prefetched segments
+            for (int k = 0; k < SegmentPrefetcher.ADAPT_WINDOW; k++) {
+                SegmentId child = addSegment();
+                prefetcher.load(addSegment(child));
+                awaitLoaded(child);
+                prefetcher.load(child);
+            }
+
+            assertEquals(1.0, prefetcher.getHitRatio(), 0);
+            assertEquals(2, prefetcher.getDepth());
+        }
+    }
+
+    @Test
+    public void loadQueuedPrefetchDirectly() throws Exception {
+        SegmentId a = addSegment();
+        SegmentId b = addSegment();
+        SegmentId root = addSegment(a, b);
+        blocked = a;
+
+        try (SegmentPrefetcher prefetcher = newPrefetcher(1, 16, 1, 16)) {
+            prefetcher.load(root);
+            awaitLoaded(a);
+
+            // The prefetch of b is queued behind the blocked prefetch of a
+            assertEquals(segments.get(b), prefetcher.load(b));
+            assertEquals(1, loadCount(b));
+            unblock.countDown();
+            assertEquals(segments.get(a), prefetcher.load(a));
+        }
+        assertEquals(1, loadCount(b));
+    }
+
+    @Test
+    public void closeWhileLoading() throws Exception {
+        SegmentId a = addSegment();
+        SegmentId root = addSegment(a);
+        blocked = a;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SegmentPrefetcher prefetcher = newPrefetcher(1, 16, 1, 16);
+            prefetcher.load(root);
+            awaitLoaded(a);
+
+            // Wait for the blocked prefetch of a
+            Future<Segment> segment = executor.submit(() -> prefetcher.load(a));
+            Thread.sleep(100);
+            assertFalse(segment.isDone());
+
+            prefetcher.close();
+            assertEquals(segments.get(a), segment.get(10, TimeUnit.SECONDS));
+        } finally {
+            unblock.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void fileStoreWithPrefetch() throws Exception {
+        try (FileStore store = fileStoreBuilder(folder.getRoot()).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(store).build();
+            NodeBuilder builder = nodeStore.getRoot().builder();
+            for (int k = 0; k < 100; k++) {
+                builder.setChildNode("n-" + k).setProperty("p", repeat("v" + k, 5000));
+            }
+            nodeStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+
+        try (FileStore store = fileStoreBuilder(folder.getRoot())
+                .withSegmentCacheSize(1)
+                .withSegmentPrefetch(2, 2, 8)
+                .build()) {
+            NodeState root = SegmentNodeStoreBuilders.builder(store).build().getRoot();
+            for (int k = 0; k < 100; k++) {
+                assertEquals(repeat("v" + k, 5000), root.getChildNode("n-" + k).getString("p"));
+            }
+        }
+    }
+
+}
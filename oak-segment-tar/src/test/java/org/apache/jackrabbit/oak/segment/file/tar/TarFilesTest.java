@@ -27,6 +27,7 @@ import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGener
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -35,10 +36,14 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles.CleanupResult;
@@ -221,6 +226,86 @@ public class TarFilesTest {
         assertArrayEquals(data, readSegment(id));
     }
 
+    @Test
+    public void testReadSegmentFromManyReaders() throws Exception {
+        Map<UUID, byte[]> segments = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 5; j++) {
+                UUID id = randomUUID();
+                byte[] data = randomData();
+                writeSegment(id, data);
+                segments.put(id, data);
+            }
+            tarFiles.newWriter();
+            if (i % 3 == 0) {
+                tarFiles.flush();
+            }
+        }
+
+        for (Map.Entry<UUID, byte[]> e : segments.entrySet()) {
+            assertTrue(containsSegment(e.getKey()));
+            assertArrayEquals(e.getValue(), readSegment(e.getKey()));
+        }
+        assertFalse(containsSegment(randomUUID()));
+        assertNull(readSegment(randomUUID()));
+
+        tarFiles.close();
+        setUp();
+
+        for (Map.Entry<UUID, byte[]> e : segments.entrySet()) {
+            assertTrue(containsSegment(e.getKey()));
+            assertArrayEquals(e.getValue(), readSegment(e.getKey()));
+        }
+        assertFalse(containsSegment(randomUUID()));
+    }
+
+    @Test
+    public void testReadSegmentDuringNewWriter() throws Exception {
+        List<UUID> written = new CopyOnWriteArrayList<>();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable read = () -> {
+            Random r = new Random();
+            try {
+                while (!done.get()) {
+                    if (written.isEmpty()) {
+                        continue;
+                    }
+                    UUID id = written.get(r.nextInt(written.size()));
+                    assertTrue(containsSegment(id));
+                    assertNotNull(readSegment(id));
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        };
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(read);
+            readers[i].start();
+        }
+
+        try {
+            for (int i = 0; i < 1000; i++) {
+                UUID id = randomUUID();
+                writeSegment(id);
+                written.add(id);
+                if (i % 10 == 0) {
+                    tarFiles.newWriter();
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        assertNull(failure.get());
+    }
+
     @Test
     public void testGetIndices() throws Exception {
         UUID a = randomUUID();
@@ -347,6 +432,12 @@ public class TarFilesTest {
         assertFalse(result.getRemovableFiles().isEmpty());
         assertEquals(new HashSet<>(asList(c, b)), result.getReclaimedSegmentIds());
         assertTrue(result.getReclaimedSize() > 0);
+
+        assertTrue(containsSegment(a));
+        assertTrue(containsSegment(d));
+        assertTrue(containsSegment(e));
+        assertFalse(containsSegment(b));
+        assertFalse(containsSegment(c));
     }
 
     @Test
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment.scheduler;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats;
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitHook;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class OptimisticSchedulerTest {
+
+    private static LockBasedScheduler newScheduler(MemoryStore ms) {
+        SegmentNodeStoreStats stats = new SegmentNodeStoreStats(StatisticsProvider.NOOP);
+        return LockBasedScheduler.builder(ms.getRevisions(), ms.getReader(), stats)
+                .optimisticCommits(true)
+                .build();
+    }
+
+    private static NodeState getRoot(Scheduler scheduler) {
+        return scheduler.getHeadNodeState().getChildNode("root");
+    }
+
+    private static Commit createCommit(Scheduler scheduler, String property, CommitHook hook) {
+        NodeBuilder builder = getRoot(scheduler).builder();
+        builder.setProperty(property, "value");
+        return new Commit(builder, hook, CommitInfo.EMPTY);
+    }
+
+    @Test
+    public void builderCreatesOptimisticScheduler() throws Exception {
+        assertTrue(newScheduler(new MemoryStore()) instanceof OptimisticScheduler);
+    }
+
+    @Test
+    public void concurrentCommitsAreNotLost() throws Exception {
+        final LockBasedScheduler scheduler = newScheduler(new MemoryStore());
+        ExecutorService executorService = newFixedThreadPool(10);
+        final AtomicInteger count = new AtomicInteger();
+
+        try {
+            List<Future<String>> results = newArrayList();
+            for (int i = 0; i < 100; i++) {
+                results.add(executorService.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        String property = "prop" + count.incrementAndGet();
+                        SegmentNodeState result = (SegmentNodeState) scheduler.schedule(
+                                createCommit(scheduler, property, EmptyHook.INSTANCE));
+                        assertNotNull(result.getProperty(property));
+                        return property;
+                    }
+                }));
+            }
+
+            NodeState root = null;
+            for (Future<String> result : results) {
+                String property = result.get();
+                root = getRoot(scheduler);
+                assertNotNull(root.getProperty(property));
+            }
+            assertEquals(100, root.getPropertyCount());
+        } finally {
+            new ExecutorCloser(executorService).close();
+        }
+    }
+
+    @Test
+    public void commitHooksRunInParallel() throws Exception {
+        final LockBasedScheduler scheduler = newScheduler(new MemoryStore());
+        final CountDownLatch inHook = new CountDownLatch(2);
+        final AtomicInteger hookInvocations = new AtomicInteger();
+        final CommitHook hook = new CommitHook() {
+            @NotNull
+            @Override
+            public NodeState processCommit(NodeState before, NodeState after, CommitInfo info)
+                    throws CommitFailedException {
+                hookInvocations.incrementAndGet();
+                inHook.countDown();
+                try {
+                    // only completes if both hooks are processed concurrently
+                    assertTrue(inHook.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return after;
+            }
+        };
+
+        ExecutorService executorService = newFixedThreadPool(2);
+        try {
+            List<Future<PropertyState>> results = newArrayList();
+            for (final String property : new String[] {"a", "b"}) {
+                results.add(executorService.submit(new Callable<PropertyState>() {
+                    @Override
+                    public PropertyState call() throws Exception {
+                        return scheduler.schedule(createCommit(scheduler, property, hook)).getProperty(property);
+                    }
+                }));
+            }
+            for (Future<PropertyState> result : results) {
+                assertNotNull(result.get(30, TimeUnit.SECONDS));
+            }
+
+            NodeState root = getRoot(scheduler);
+            assertNotNull(root.getProperty("a"));
+            assertNotNull(root.getProperty("b"));
+            // one of the commits lost the race and was rebased
+            assertEquals(3, hookInvocations.get());
+        } finally {
+            new ExecutorCloser(executorService).close();
+        }
+    }
+}
@@ -149,6 +149,11 @@ public class MBeanIT extends TestBase {
 
             assertEquals("1", jmxServer.invoke(status, "calcFailedRequests", null, null).toString());
             assertEquals("-1", jmxServer.invoke(status, "calcSecondsSinceLastSuccess", null, null).toString());
+
+            assertEquals("0", jmxServer.getAttribute(status, "TransferredSegments").toString());
+            assertEquals("0", jmxServer.getAttribute(status, "TransferredSegmentBytes").toString());
+            assertEquals("0", jmxServer.getAttribute(status, "LastSyncTransferRate").toString());
+            assertEquals("snappy", jmxServer.getAttribute(status, "Compression"));
         }
         assertTrue(!jmxServer.isRegistered(status));
     }
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.standby.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.CharsetUtil;
+import org.apache.jackrabbit.oak.commons.junit.TemporaryPort;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.standby.codec.Compression;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadRequest;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadResponse;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetHeadResponseEncoder;
+import org.apache.jackrabbit.oak.segment.standby.codec.RequestDecoder;
+import org.apache.jackrabbit.oak.segment.standby.server.StandbyServerSync;
+import org.apache.jackrabbit.oak.segment.test.TemporaryFileStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TemporaryFolder;
+
+public class StandbyClientCompressionTest {
+
+    private static final int TIMEOUT = 5000;
+
+    private TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private TemporaryFileStore serverFileStore = new TemporaryFileStore(folder, false);
+
+    @Rule
+    public TemporaryPort serverPort = new TemporaryPort();
+
+    @Rule
+    public RuleChain chain = RuleChain.outerRule(folder)
+            .around(serverFileStore);
+
+    private NioEventLoopGroup group;
+
+    @Before
+    public void setUp() {
+        group = new NioEventLoopGroup();
+    }
+
+    @After
+    public void tearDown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).awaitUninterruptibly();
+    }
+
+    @Test
+    public void defaultCompression() throws Exception {
+        assertTransfer(Compression.SNAPPY);
+    }
+
+    @Test
+    public void negotiatedCompression() throws Exception {
+        assertTransfer(Compression.DEFLATE);
+    }
+
+    @Test
+    public void primaryWithoutNegotiation() throws Exception {
+        Channel server = new ServerBootstrap()
+            .group(group)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+
+                @Override
+                public void initChannel(SocketChannel ch) {
+                    ChannelPipeline p = ch.pipeline();
+
+                    // Like a primary not supporting the negotiation of the
+                    // compression, never answer a 'get compression' request
+
+                    p.addLast(new LineBasedFrameDecoder(8192));
+                    p.addLast(new StringDecoder(CharsetUtil.UTF_8));
+                    p.addLast(new RequestDecoder());
+                    p.addLast(Compression.SNAPPY.newEncoder());
+                    p.addLast(new GetHeadResponseEncoder());
+                    p.addLast(new SimpleChannelInboundHandler<GetHeadRequest>() {
+
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, GetHeadRequest msg) {
+                            ctx.writeAndFlush(new GetHeadResponse(msg.getClientId(), "head"));
+                        }
+
+                    });
+                }
+
+            })
+            .bind(serverPort.getPort())
+            .sync()
+            .channel();
+
+        try (StandbyClient client = new StandbyClient("127.0.0.1", serverPort.getPort(), group, "client", false, TIMEOUT, folder.newFolder(), Compression.DEFLATE)) {
+            assertTrue(client.isCompressionNegotiationFailed());
+            assertEquals(Compression.SNAPPY, client.getCompression());
+
+            assertEquals("head", client.getHead());
+        } finally {
+            server.close().sync();
+        }
+    }
+
+    private void assertTransfer(Compression compression) throws Exception {
+        FileStore primary = serverFileStore.fileStore();
+        primary.flush();
+        String head = primary.getHead().getRecordId().toString();
+        String segmentId = primary.getHead().getRecordId().getSegmentId().asUUID().toString();
+
+        try (
+            StandbyServerSync serverSync = StandbyServerSync.builder()
+                .withPort(serverPort.getPort())
+                .withFileStore(primary)
+                .withBlobChunkSize(1024 * 1024)
+                .build()
+        ) {
+            serverSync.start();
+
+            try (StandbyClient client = new StandbyClient("127.0.0.1", serverPort.getPort(), group, "client", false, TIMEOUT, folder.newFolder(), compression)) {
+                assertEquals(compression, client.getCompression());
+                assertFalse(client.isCompressionNegotiationFailed());
+                assertEquals(head, client.getHead());
+
+                Map<String, byte[]> segments = client.getSegments(Collections.singleton(segmentId));
+                assertNotNull(segments);
+                assertNotNull(segments.get(segmentId));
+
+                assertTrue(client.getCompressedBytes() > 0);
+                assertTrue(client.getUncompressedBytes() > client.getCompressedBytes());
+            }
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 
 package org.apache.jackrabbit.oak.segment.standby.codec;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -60,6 +61,15 @@ public class RequestDecoderTest {
         assertEquals("segmentId", request.getSegmentId());
     }
 
+    @Test
+    public void shouldDecodeValidGetCompressionRequests() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new RequestDecoder());
+        channel.writeInbound(Messages.newGetCompressionRequest("clientId", asList("deflate", "snappy"), false));
+        GetCompressionRequest request = (GetCompressionRequest) channel.readInbound();
+        assertEquals("clientId", request.getClientId());
+        assertEquals(asList("deflate", "snappy"), request.getCompressions());
+    }
+
     @Test
     public void shouldDropInvalidMessages() throws Exception {
         EmbeddedChannel channel = new EmbeddedChannel(new RequestDecoder());
@@ -143,6 +143,21 @@ public class ResponseDecoderTest {
         assertEquals(recordId, response.getHeadRecordId());
     }
 
+    @Test
+    public void shouldDecodeValidGetCompressionResponses() throws Exception {
+        byte[] compression = "deflate".getBytes(Charsets.UTF_8);
+
+        ByteBuf in = Unpooled.buffer();
+        in.writeInt(compression.length + 1);
+        in.writeByte(Messages.HEADER_COMPRESSION);
+        in.writeBytes(compression);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new ResponseDecoder(folder.newFolder()));
+        channel.writeInbound(in);
+        GetCompressionResponse response = (GetCompressionResponse) channel.readInbound();
+        assertEquals("deflate", response.getCompression());
+    }
+
     @Test
     public void shouldDecodeValidGetSegmentResponses() throws Exception {
         UUID uuid = new UUID(1, 2);
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A non-blocking view on a {@link DocumentStore}. Each method issues the
+ * corresponding {@link DocumentStore} operation and immediately returns a
+ * future for its result. This allows callers to have multiple operations in
+ * flight at the same time instead of waiting for each round trip to the
+ * backend.
+ * <p>
+ * There are no ordering guarantees between operations that are in flight at
+ * the same time. Callers that depend on the outcome of an operation must wait
+ * for its future to complete before they issue the dependent operation. A
+ * future completes exceptionally with a {@link DocumentStoreException} when
+ * the underlying operation fails.
+ */
+public interface AsyncDocumentStore extends Closeable {
+
+    /**
+     * Asynchronous variant of {@link DocumentStore#find(Collection, String)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param key the key
+     * @return a future for the document, which may be {@code null}.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                        String key);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#find(Collection, java.util.Collection)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param keys the keys of the documents to read.
+     * @return a future for the documents found.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<List<T>> findAsync(Collection<T> collection,
+                                                              java.util.Collection<String> keys);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#query(Collection, String, String, int)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @param limit the maximum number of entries to return
+     * @return a future for the list of documents.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                               String fromKey,
+                                                               String toKey,
+                                                               int limit);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#createOrUpdate(Collection, UpdateOp)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param update the update operation
+     * @return a future for the old document or {@code null} if it didn't
+     *          exist before.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<T> createOrUpdateAsync(Collection<T> collection,
+                                                                  UpdateOp update);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#createOrUpdate(Collection, List)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param updateOps the update operation list
+     * @return a future for the list of old documents.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<List<T>> createOrUpdateAsync(Collection<T> collection,
+                                                                        List<UpdateOp> updateOps);
+
+    /**
+     * Asynchronous variant of
+     * {@link DocumentStore#findAndUpdate(Collection, UpdateOp)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param update the update operation with the condition
+     * @return a future for the old document or {@code null} if the condition
+     *          is not met or if the document wasn't found.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<T> findAndUpdateAsync(Collection<T> collection,
+                                                                 UpdateOp update);
+
+    /**
+     * Asynchronous variant of {@link DocumentStore#remove(Collection, List)}.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param keys list of keys
+     * @return a future completing when the documents were removed.
+     */
+    @NotNull
+    <T extends Document> CompletableFuture<Void> removeAsync(Collection<T> collection,
+                                                             List<String> keys);
+
+    /**
+     * Waits for the operations in flight to complete and releases resources
+     * held by this instance. Operations issued after this method was called
+     * fail. This method does not dispose the underlying {@link DocumentStore}.
+     */
+    @Override
+    void close();
+}
@@ -23,6 +23,7 @@ class BackgroundWriteStats {
 
     long clean;
     long split;
+    long splitNum;
     long refresh;
     long sweep;
     long lock;
@@ -35,6 +36,7 @@ class BackgroundWriteStats {
     public String toString() {
         return "clean:" + clean +
                 ", split:" + split +
+                ", splitNum:" + splitNum +
                 ", refresh:" + refresh +
                 ", sweep:" + sweep +
                 ", lock:" + lock +
@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A versioned binary serialization of the data of a {@link Document}. It is
+ * an alternative to the JSON serialization, which is considerably more
+ * expensive to parse.
+ * <p>
+ * Layout of version 1:
+ * <pre>
+ * document  := MAGIC version:byte count:varint (name value)*
+ * name      := 0 length:varint utf8    (inline name)
+ *            | index:varint            (index + 1 into the name dictionary)
+ * value     := NULL | TRUE | FALSE
+ *            | LONG zigzag:varlong
+ *            | DOUBLE ieee754:8 bytes
+ *            | STRING length:varint utf8
+ *            | MAP count:varint (revision value)*
+ * revision  := timestamp:varlong counter:varint (clusterId << 1 | branch):varint
+ * </pre>
+ * The timestamp of a revision in a map is the zig-zag encoded delta to the
+ * timestamp of the previous revision in the map. Maps are serialized in the
+ * {@link StableRevisionComparator#REVERSE} order of the revision maps of a
+ * {@link NodeDocument} and read back into maps with that order.
+ * <p>
+ * The name dictionary contains the names of the system properties of a
+ * {@link NodeDocument}. It is part of the format version and must only be
+ * extended together with a new version.
+ */
+public final class BinaryDocumentSerializer {
+
+    /**
+     * The leading bytes of a binary serialized document. A JSON serialization
+     * never starts with a zero byte and a GZIP stream starts with 0x1f 0x8b.
+     */
+    private static final byte[] MAGIC = { 0, 'O', 'D' };
+
+    /**
+     * The current version of the format.
+     */
+    public static final int VERSION = 1;
+
+    private static final String[] DICTIONARY_V1 = {
+            Document.ID,
+            Document.MOD_COUNT,
+            NodeDocument.MODIFIED_IN_SECS,
+            NodeDocument.DELETED_ONCE,
+            NodeDocument.HAS_BINARY_FLAG,
+            NodeDocument.SD_TYPE,
+            NodeDocument.SD_MAX_REV_TIME_IN_SECS,
+            NodeDocument.PATH,
+            NodeDocument.COLLISIONS,
+            NodeDocument.COMMIT_ROOT,
+            NodeDocument.REVISIONS,
+            "_prev",
+            "_deleted",
+            "_lastRev",
+            "_children",
+            "_stalePrev",
+            "_bc",
+            "_sweepRev",
+            "_collisionsModCount",
+    };
+
+    private static final Map<String, Integer> DICTIONARY_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < DICTIONARY_V1.length; i++) {
+            DICTIONARY_INDEX.put(DICTIONARY_V1[i], i);
+        }
+    }
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte MAP = 6;
+
+    private BinaryDocumentSerializer() {
+    }
+
+    /**
+     * Checks whether the given data starts with the header of a binary
+     * serialized document.
+     *
+     * @param data the serialized data.
+     * @return {@code true} if the data is in the binary format.
+     */
+    public static boolean isBinary(@NotNull byte[] data) {
+        if (data.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serializes the entries of a document, except for the given excluded
+     * properties.
+     *
+     * @param doc the document.
+     * @param excluded names of properties not to serialize.
+     * @return the serialized document.
+     */
+    @NotNull
+    public static byte[] toBytes(@NotNull Document doc, @NotNull Set<String> excluded) {
+        Output out = new Output(1024);
+        out.put(MAGIC);
+        out.put((byte) VERSION);
+        int count = 0;
+        for (String key : doc.keySet()) {
+            if (!excluded.contains(key)) {
+                count++;
+            }
+        }
+        out.putVarInt(count);
+        for (Map.Entry<String, Object> e : doc.entrySet()) {
+            if (excluded.contains(e.getKey())) {
+                continue;
+            }
+            writeName(out, e.getKey());
+            writeValue(out, e.getValue());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serializes all entries of a document.
+     *
+     * @param doc the document.
+     * @return the serialized document.
+     */
+    @NotNull
+    public static byte[] toBytes(@NotNull Document doc) {
+        return toBytes(doc, Collections.<String>emptySet());
+    }
+
+    /**
+     * Reads a binary serialized document and puts its entries into the
+     * target document.
+     *
+     * @param data the serialized document.
+     * @param target the document to populate.
+     * @throws DocumentStoreException if the data is not a valid binary
+     *          serialized document.
+     */
+    public static void fromBytes(@NotNull byte[] data, @NotNull Document target)
+            throws DocumentStoreException {
+        if (!isBinary(data)) {
+            throw new DocumentStoreException("Not a binary serialized document");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(MAGIC.length);
+        try {
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new DocumentStoreException("Unsupported binary document format version: " + version);
+            }
+            int count = readVarInt(buffer);
+            for (int i = 0; i < count; i++) {
+                String name = readName(buffer);
+                target.put(name, readValue(buffer));
+            }
+            if (buffer.hasRemaining()) {
+                throw new DocumentStoreException("Unexpected " + buffer.remaining()
+                        + " bytes after binary serialized document");
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new DocumentStoreException("Truncated or corrupt binary serialized document", e);
+        }
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    private static void writeName(Output out, String name) {
+        Integer idx = DICTIONARY_INDEX.get(name);
+        if (idx != null) {
+            out.putVarInt(idx + 1);
+        } else {
+            out.putVarInt(0);
+            writeString(out, name);
+        }
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        int idx = readVarInt(buffer);
+        if (idx == 0) {
+            return readString(buffer);
+        } else if (idx <= DICTIONARY_V1.length) {
+            return DICTIONARY_V1[idx - 1];
+        } else {
+            throw new IllegalArgumentException("Invalid name index: " + idx);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.put(NULL);
+        } else if (value instanceof Boolean) {
+            out.put((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            out.put(LONG);
+            out.putVarLong(zigZag(((Number) value).longValue()));
+        } else if (value instanceof Number) {
+            out.put(DOUBLE);
+            out.putLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof String) {
+            out.put(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Map) {
+            out.put(MAP);
+            writeMap(out, (Map<Object, Object>) value);
+        } else if (value instanceof Revision) {
+            out.put(STRING);
+            writeString(out, value.toString());
+        } else {
+            throw new IllegalArgumentException("unexpected type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case LONG:
+                return unZigZag(readVarLong(buffer));
+            case DOUBLE:
+                return Double.longBitsToDouble(buffer.getLong());
+            case STRING:
+                return readString(buffer);
+            case MAP:
+                return readMap(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown value type: " + type);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeMap(Output out, Map<Object, Object> map) {
+        Map<Revision, ?> sorted;
+        if (map instanceof SortedMap
+                && ((SortedMap<?, ?>) map).comparator() == StableRevisionComparator.REVERSE) {
+            sorted = (Map<Revision, ?>) (Map<?, ?>) map;
+        } else {
+            TreeMap<Revision, Object> m = new TreeMap<>(StableRevisionComparator.REVERSE);
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                Object k = e.getKey();
+                m.put(k instanceof Revision ? (Revision) k : Revision.fromString(k.toString()), e.getValue());
+            }
+            sorted = m;
+        }
+        out.putVarInt(sorted.size());
+        long previous = 0;
+        for (Map.Entry<Revision, ?> e : sorted.entrySet()) {
+            Revision r = e.getKey();
+            out.putVarLong(zigZag(r.getTimestamp() - previous));
+            previous = r.getTimestamp();
+            out.putVarInt(r.getCounter());
+            out.putVarInt((r.getClusterId() << 1) | (r.isBranch() ? 1 : 0));
+            writeValue(out, e.getValue());
+        }
+    }
+
+    private static Map<Revision, Object> readMap(ByteBuffer buffer) {
+        int size = readVarInt(buffer);
+        Map<Revision, Object> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+        long timestamp = 0;
+        for (int i = 0; i < size; i++) {
+            timestamp += unZigZag(readVarLong(buffer));
+            int counter = readVarInt(buffer);
+            int clusterAndBranch = readVarInt(buffer);
+            Revision r = new Revision(timestamp, counter,
+                    clusterAndBranch >>> 1, (clusterAndBranch & 1) != 0);
+            map.put(r, readValue(buffer));
+        }
+        return map;
+    }
+
+    private static void writeString(Output out, String s) {
+        byte[] bytes = s.getBytes(UTF_8);
+        out.putVarInt(bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int len = readVarInt(buffer);
+        if (len > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), len, UTF_8);
+        buffer.position(buffer.position() + len);
+        return s;
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length int");
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            long b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length long");
+    }
+
+    /**
+     * A minimal growable byte array output. Unlike a
+     * {@link java.io.ByteArrayOutputStream} it is not synchronized.
+     */
+    private static final class Output {
+
+        private byte[] buf;
+
+        private int pos;
+
+        Output(int initialSize) {
+            this.buf = new byte[initialSize];
+        }
+
+        private void ensure(int len) {
+            if (pos + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + len));
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void putLong(long v) {
+            ensure(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buf[pos++] = (byte) (v >>> i);
+            }
+        }
+
+        void putVarInt(int v) {
+            ensure(5);
+            while ((v & ~0x7f) != 0) {
+                buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void putVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7fL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+}
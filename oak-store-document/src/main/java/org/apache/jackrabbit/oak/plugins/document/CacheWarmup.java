@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCache;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.Iterables;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Warms up the node and node children cache of a {@link DocumentNodeStore}
+ * after a restart. The paths of the entries currently in those caches are
+ * periodically recorded to a local file by a background thread of the
+ * node store. On startup the recorded paths are
+ * read again at the current head revision by a number of background threads.
+ * The regular read path is used, which means the persistent cache is
+ * consulted and only provides entries still valid at the head revision.
+ */
+final class CacheWarmup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheWarmup.class);
+
+    /**
+     * The maximum number of paths recorded per cache.
+     */
+    static final int MAX_PATHS = Integer.getInteger("oak.documentMK.cacheWarmup.maxPaths", 100000);
+
+    /**
+     * The interval in milliseconds at which the paths are recorded.
+     */
+    static final int RECORD_INTERVAL_MILLIS = Integer.getInteger(
+            "oak.documentMK.cacheWarmup.recordIntervalMillis", (int) TimeUnit.MINUTES.toMillis(10));
+
+    /**
+     * The number of child node names read for a path recorded from the node
+     * children cache.
+     */
+    private static final int CHILDREN_LIMIT = 100;
+
+    private static final String NODE_PREFIX = "n ";
+
+    private static final String CHILDREN_PREFIX = "c ";
+
+    private final DocumentNodeStore nodeStore;
+
+    private final File file;
+
+    private final int numThreads;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private long warmupStart;
+
+    private volatile long warmupTime = -1;
+
+    CacheWarmup(@NotNull DocumentNodeStore nodeStore,
+                @NotNull File file,
+                int numThreads) {
+        checkArgument(numThreads > 0, "numThreads must be positive: %s", numThreads);
+        this.nodeStore = checkNotNull(nodeStore);
+        this.file = checkNotNull(file);
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Starts the warmup with the paths recorded in the file. This method
+     * returns immediately and the paths are loaded by background threads.
+     */
+    void start() {
+        List<WarmupEntry> entries = read();
+        if (entries.isEmpty()) {
+            warmupTime = 0;
+            return;
+        }
+        // load ancestors first, children of a node are then read
+        // through the cached parent
+        Collections.sort(entries, new Comparator<WarmupEntry>() {
+            @Override
+            public int compare(WarmupEntry e1, WarmupEntry e2) {
+                return Integer.compare(e1.path.getDepth(), e2.path.getDepth());
+            }
+        });
+        final Queue<WarmupEntry> queue = new ConcurrentLinkedQueue<>(entries);
+        total.set(entries.size());
+        running.set(numThreads);
+        warmupStart = System.currentTimeMillis();
+        LOG.info("Starting cache warmup with {} paths from {}", entries.size(), file);
+        for (int i = 0; i < numThreads; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WarmupEntry e;
+                        while (!closed.get() && (e = queue.poll()) != null) {
+                            load(e);
+                        }
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            warmupTime = System.currentTimeMillis() - warmupStart;
+                            LOG.info("Cache warmup finished: {}", getStatus());
+                        }
+                    }
+                }
+            }, "DocumentNodeStore cache warmup thread " + i);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Records the paths of the current entries in the node and node children
+     * cache to the file. If there are more entries than the maximum number
+     * of paths, the hot entries are recorded first, the most recently used
+     * first.
+     */
+    void record() {
+        Set<Path> nodes = new LinkedHashSet<>();
+        for (PathRev key : getKeysByHotness(nodeStore.getNodeCache())) {
+            if (nodes.size() >= MAX_PATHS) {
+                break;
+            }
+            nodes.add(key.getPath());
+        }
+        Set<Path> children = new LinkedHashSet<>();
+        for (NamePathRev key : getKeysByHotness(nodeStore.getNodeChildrenCache())) {
+            if (children.size() >= MAX_PATHS) {
+                break;
+            }
+            children.add(key.getPath());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            try (BufferedWriter w = Files.newBufferedWriter(tmp.toPath(), UTF_8)) {
+                for (Path p : nodes) {
+                    w.write(NODE_PREFIX);
+                    w.write(p.toString());
+                    w.newLine();
+                }
+                for (Path p : children) {
+                    w.write(CHILDREN_PREFIX);
+                    w.write(p.toString());
+                    w.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LOG.debug("Recorded {} node and {} children paths to {}",
+                    nodes.size(), children.size(), file);
+        } catch (IOException e) {
+            LOG.warn("Unable to record cache warmup paths to {}", file, e);
+        }
+    }
+
+    /**
+     * Stops a warmup still in progress and records the paths of the current
+     * cache entries a last time.
+     */
+    void close() {
+        if (closed.getAndSet(true)) {
+            return;
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        record();
+    }
+
+    /**
+     * @return a human readable status of the warmup.
+     */
+    @NotNull
+    String getStatus() {
+        StringBuilder sb = new StringBuilder();
+        long time = warmupTime;
+        if (total.get() == 0) {
+            sb.append(time < 0 ? "not started" : "no paths recorded");
+            return sb.toString();
+        }
+        if (time < 0) {
+            sb.append(closed.get() ? "stopped" : "running");
+            time = System.currentTimeMillis() - warmupStart;
+        } else {
+            sb.append(closed.get() && loaded.get() + failed.get() < total.get() ? "stopped" : "done");
+        }
+        sb.append(", loaded: ").append(loaded.get());
+        sb.append(" of ").append(total.get());
+        sb.append(", failed: ").append(failed.get());
+        sb.append(", time: ").append(time).append(" ms");
+        return sb.toString();
+    }
+
+    int getLoaded() {
+        return loaded.get();
+    }
+
+    int getTotal() {
+        return total.get();
+    }
+
+    //------------------------< internal >--------------------------------------
+
+    /**
+     * Get the keys of the resident entries of a cache. For a
+     * {@link CacheLIRS}, the keys of the hot entries are returned first,
+     * the most recently used first, followed by the keys of the cold
+     * entries. For other caches, the keys are returned in no particular
+     * order.
+     *
+     * @param cache the cache, possibly wrapped by the persistent cache
+     * @return the keys
+     */
+    static <K> Iterable<K> getKeysByHotness(Cache<K, ?> cache) {
+        Cache<K, ?> mem = PersistentCache.getMemoryCache(cache);
+        if (!(mem instanceof CacheLIRS)) {
+            return mem.asMap().keySet();
+        }
+        CacheLIRS<K, ?> lirs = (CacheLIRS<K, ?>) mem;
+        List<K> keys = new ArrayList<>();
+        // the stack also contains cold and non-resident entries
+        for (K key : lirs.keys(false, false)) {
+            if (lirs.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        keys.addAll(lirs.keys(true, false));
+        return keys;
+    }
+
+    private void load(WarmupEntry entry) {
+        try {
+            NodeState state = nodeStore.getRoot();
+            for (String name : entry.path.elements()) {
+                state = state.getChildNode(name);
+                if (!state.exists()) {
+                    break;
+                }
+            }
+            if (entry.children && state.exists()) {
+                Iterables.size(Iterables.limit(state.getChildNodeNames(), CHILDREN_LIMIT));
+            }
+            loaded.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LOG.debug("Unable to warm up cache with {}", entry.path, e);
+        }
+    }
+
+    private List<WarmupEntry> read() {
+        List<WarmupEntry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                boolean children;
+                if (line.startsWith(NODE_PREFIX)) {
+                    children = false;
+                } else if (line.startsWith(CHILDREN_PREFIX)) {
+                    children = true;
+                } else {
+                    continue;
+                }
+                try {
+                    Path p = Path.fromString(line.substring(NODE_PREFIX.length()));
+                    if (p.isAbsolute()) {
+                        entries.add(new WarmupEntry(p, children));
+                    }
+                } catch (IllegalArgumentException e) {
+                    LOG.debug("Ignoring invalid path in {}: {}", file, line);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to read cache warmup paths from {}", file, e);
+        }
+        return entries;
+    }
+
+    private static final class WarmupEntry {
+
+        final Path path;
+
+        final boolean children;
+
+        WarmupEntry(Path path, boolean children) {
+            this.path = path;
+            this.children = children;
+        }
+    }
+}
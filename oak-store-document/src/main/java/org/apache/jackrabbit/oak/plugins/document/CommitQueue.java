@@ -256,9 +256,11 @@ final class CommitQueue {
         assert !commits.isEmpty();
 
         boolean isHead;
+        int numAhead;
         Entry commitEntry;
         synchronized (this) {
             isHead = commits.firstKey().equals(rev);
+            numAhead = isHead ? 0 : commits.headMap(rev).size();
             commitEntry = commits.get(rev);
         }
         if (isHead) {
@@ -267,9 +269,12 @@ final class CommitQueue {
             LOG.debug("not head: {}, waiting...", rev);
             statsCollector.doneWaitUntilHead(commitEntry.await());
         }
+        long start = System.nanoTime();
         try {
             c.headOfQueue(rev);
         } finally {
+            statsCollector.doneHeadOfQueue(numAhead,
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
             synchronized (this) {
                 commits.remove(rev);
                 try {
@@ -0,0 +1,818 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An immutable, array backed {@code NavigableMap<Revision, String>} ordered
+ * by {@link StableRevisionComparator#REVERSE}, i.e. newest revision first.
+ * This is the order of the revision maps of a {@link NodeDocument}.
+ * <p>
+ * The components of the revisions are kept in parallel primitive arrays and
+ * the values are kept UTF-8 encoded in a single byte array. Compared to a
+ * {@link TreeMap} this avoids an entry object per entry, and a
+ * {@link Revision} and a {@code String} instance for entries that are never
+ * read. The keys and values of the {@link #DECODED_ENTRIES} newest entries
+ * are decoded when first read and then kept, so repeated lookups of recent
+ * revisions return the same instances; older entries are decoded on every
+ * read. Lookups are binary searches on
+ * the arrays. Sub map, descending map and key set views share the arrays of
+ * the map they were created from.
+ */
+public final class CompactRevisionMap extends AbstractMap<Revision, String>
+        implements NavigableMap<Revision, String> {
+
+    /**
+     * Flag in {@link Data#clusterIds} marking a branch revision.
+     */
+    private static final int BRANCH_FLAG = 0x80000000;
+
+    /**
+     * The number of newest entries whose decoded keys and values are kept.
+     * Their worst case size is included in {@link #getMemory()}, which is
+     * computed once when a document is put into the cache.
+     */
+    static final int DECODED_ENTRIES = 16;
+
+    /**
+     * The entries, shared by a map and all its views.
+     */
+    private final Data data;
+
+    /**
+     * Index of the first entry of this map (inclusive).
+     */
+    private final int from;
+
+    /**
+     * Index of the last entry of this map (exclusive).
+     */
+    private final int to;
+
+    /**
+     * Whether this is a descending view, iterating the entries from
+     * {@code to - 1} down to {@code from}.
+     */
+    private final boolean descending;
+
+    private Set<Map.Entry<Revision, String>> entrySet;
+
+    private KeySet keySet;
+
+    private CompactRevisionMap(Data data, int from, int to, boolean descending) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * Creates a compact copy of the given map if possible. This is the case
+     * when the map is a {@link SortedMap} ordered by
+     * {@link StableRevisionComparator#REVERSE} with {@link Revision} keys and
+     * {@code String} or {@code null} values.
+     *
+     * @param map the map to copy.
+     * @return a compact copy of the map or {@code null} if the map cannot be
+     *          represented as a {@code CompactRevisionMap}.
+     */
+    @Nullable
+    static CompactRevisionMap fromMap(@NotNull Map<?, ?> map) {
+        if (map instanceof CompactRevisionMap
+                && !((CompactRevisionMap) map).descending) {
+            return (CompactRevisionMap) map;
+        }
+        if (!(map instanceof SortedMap)
+                || ((SortedMap<?, ?>) map).comparator() != StableRevisionComparator.REVERSE) {
+            return null;
+        }
+        int size = map.size();
+        long[] timestamps = new long[size];
+        int[] counters = new int[size];
+        int[] clusterIds = new int[size];
+        int[] offsets = new int[size + 1];
+        byte[][] encoded = new byte[size][];
+        BitSet nulls = null;
+        int length = 0;
+        int i = 0;
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            Object k = e.getKey();
+            Object v = e.getValue();
+            if (!(k instanceof Revision)
+                    || (v != null && !(v instanceof String))) {
+                return null;
+            }
+            Revision r = (Revision) k;
+            timestamps[i] = r.getTimestamp();
+            counters[i] = r.getCounter();
+            clusterIds[i] = r.getClusterId() | (r.isBranch() ? BRANCH_FLAG : 0);
+            offsets[i] = length;
+            if (v == null) {
+                if (nulls == null) {
+                    nulls = new BitSet(size);
+                }
+                nulls.set(i);
+            } else {
+                encoded[i] = ((String) v).getBytes(UTF_8);
+                length += encoded[i].length;
+            }
+            i++;
+        }
+        offsets[size] = length;
+        byte[] values = new byte[length];
+        for (i = 0; i < size; i++) {
+            if (encoded[i] != null) {
+                System.arraycopy(encoded[i], 0, values, offsets[i], encoded[i].length);
+            }
+        }
+        return new CompactRevisionMap(new Data(timestamps, counters,
+                clusterIds, values, offsets, nulls), 0, size, false);
+    }
+
+    /**
+     * Returns the estimated memory used by the entries of this map in bytes.
+     * This includes the keys and values of the entries that are kept once
+     * decoded, as if they were all decoded. For a view this is the share of
+     * the entries in its range.
+     *
+     * @return the estimated memory used by this map in bytes.
+     */
+    public int getMemory() {
+        int n = to - from;
+        // map and data object headers and fields, eight arrays with headers
+        long size = 40 + 48 + 8 * 16;
+        // primitive arrays
+        size += (long) n * (8 + 4 + 4 + 4) + 4;
+        size += data.offsets[to] - data.offsets[from];
+        if (data.nulls != null) {
+            size += 16 + n / 8;
+        }
+        // references to and size of the decoded keys and values
+        for (int i = from; i < Math.min(to, DECODED_ENTRIES); i++) {
+            size += 4 + 4 + 32;
+            if (!data.isNull(i)) {
+                size += 48 + 2L * (data.offsets[i + 1] - data.offsets[i]);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated memory this map would use if it was kept as a
+     *          {@link TreeMap}, as estimated by
+     *          {@link org.apache.jackrabbit.oak.plugins.document.util.Utils#estimateMemoryUsage(Map)}.
+     */
+    public int getExpandedMemory() {
+        // TreeMap and unmodifiable wrapper
+        long size = 112;
+        for (int i = from; i < to; i++) {
+            // entry and revision key
+            size += 64 + 32;
+            if (!data.isNull(i)) {
+                size += 48 + 2L * (data.offsets[i + 1] - data.offsets[i]);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    //------------------------------< Map >-------------------------------------
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return from == to;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Revision && indexOf((Revision) key) >= 0;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof Revision)) {
+            return null;
+        }
+        int idx = indexOf((Revision) key);
+        return idx < 0 ? null : data.valueAt(idx);
+    }
+
+    @NotNull
+    @Override
+    public Set<Revision> keySet() {
+        return navigableKeySet();
+    }
+
+    @NotNull
+    @Override
+    public Set<Map.Entry<Revision, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<Revision, String>>() {
+                @NotNull
+                @Override
+                public Iterator<Map.Entry<Revision, String>> iterator() {
+                    return new IndexIterator<Map.Entry<Revision, String>>(descending) {
+                        @Override
+                        Map.Entry<Revision, String> get(int idx) {
+                            return entryAt(idx);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return to - from;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    //----------------------------< SortedMap >---------------------------------
+
+    @Override
+    public Comparator<? super Revision> comparator() {
+        return descending ? StableRevisionComparator.INSTANCE : StableRevisionComparator.REVERSE;
+    }
+
+    @Override
+    public Revision firstKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return data.revisionAt(descending ? to - 1 : from);
+    }
+
+    @Override
+    public Revision lastKey() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return data.revisionAt(descending ? from : to - 1);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> subMap(Revision fromKey, Revision toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> headMap(Revision toKey) {
+        return headMap(toKey, false);
+    }
+
+    @NotNull
+    @Override
+    public SortedMap<Revision, String> tailMap(Revision fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    //--------------------------< NavigableMap >--------------------------------
+
+    @Override
+    public Map.Entry<Revision, String> lowerEntry(Revision key) {
+        return entryOrNull(lowerIndex(key));
+    }
+
+    @Override
+    public Revision lowerKey(Revision key) {
+        return keyOrNull(lowerIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Revision, String> floorEntry(Revision key) {
+        return entryOrNull(floorIndex(key));
+    }
+
+    @Override
+    public Revision floorKey(Revision key) {
+        return keyOrNull(floorIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Revision, String> ceilingEntry(Revision key) {
+        return entryOrNull(ceilingIndex(key));
+    }
+
+    @Override
+    public Revision ceilingKey(Revision key) {
+        return keyOrNull(ceilingIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Revision, String> higherEntry(Revision key) {
+        return entryOrNull(higherIndex(key));
+    }
+
+    @Override
+    public Revision higherKey(Revision key) {
+        return keyOrNull(higherIndex(key));
+    }
+
+    @Override
+    public Map.Entry<Revision, String> firstEntry() {
+        return entryOrNull(descending ? to - 1 : from);
+    }
+
+    @Override
+    public Map.Entry<Revision, String> lastEntry() {
+        return entryOrNull(descending ? from : to - 1);
+    }
+
+    @Override
+    public Map.Entry<Revision, String> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<Revision, String> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableMap<Revision, String> descendingMap() {
+        return new CompactRevisionMap(data, from, to, !descending);
+    }
+
+    @Override
+    public NavigableSet<Revision> navigableKeySet() {
+        if (keySet == null) {
+            keySet = new KeySet();
+        }
+        return keySet;
+    }
+
+    @Override
+    public NavigableSet<Revision> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<Revision, String> subMap(Revision fromKey,
+                                                 boolean fromInclusive,
+                                                 Revision toKey,
+                                                 boolean toInclusive) {
+        if (comparator().compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        if (descending) {
+            return range(toKey, toInclusive, fromKey, fromInclusive);
+        }
+        return range(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<Revision, String> headMap(Revision toKey,
+                                                  boolean inclusive) {
+        if (descending) {
+            return range(toKey, inclusive, null, false);
+        }
+        return range(null, false, toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<Revision, String> tailMap(Revision fromKey,
+                                                  boolean inclusive) {
+        if (descending) {
+            return range(null, false, fromKey, inclusive);
+        }
+        return range(fromKey, inclusive, null, false);
+    }
+
+    //------------------------------< internal >--------------------------------
+
+    /**
+     * Returns a view of the entries between the given keys in the order of
+     * {@link StableRevisionComparator#REVERSE}, in the same direction as this
+     * map. A {@code null} key means the range is unbounded on that side.
+     */
+    private CompactRevisionMap range(@Nullable Revision low, boolean lowInclusive,
+                                     @Nullable Revision high, boolean highInclusive) {
+        int start = from;
+        if (low != null) {
+            start = lowInclusive ? ceilingPosition(low) : higherPosition(low);
+        }
+        int end = to;
+        if (high != null) {
+            end = highInclusive ? higherPosition(high) : ceilingPosition(high);
+        }
+        end = Math.max(start, end);
+        if (start == from && end == to) {
+            return this;
+        }
+        return new CompactRevisionMap(data, start, end, descending);
+    }
+
+    private Map.Entry<Revision, String> entryAt(int idx) {
+        return new SimpleImmutableEntry<>(data.revisionAt(idx), data.valueAt(idx));
+    }
+
+    private Map.Entry<Revision, String> entryOrNull(int idx) {
+        return idx >= from && idx < to ? entryAt(idx) : null;
+    }
+
+    private Revision keyOrNull(int idx) {
+        return idx >= from && idx < to ? data.revisionAt(idx) : null;
+    }
+
+    private int indexOf(Revision r) {
+        int idx = ceilingPosition(r);
+        return idx < to && data.compareAt(idx, r) == 0 ? idx : -1;
+    }
+
+    // the navigation methods in the order of this map, which is the reverse
+    // of the order of the arrays for a descending view
+
+    private int lowerIndex(Revision r) {
+        return descending ? higherPosition(r) : ceilingPosition(r) - 1;
+    }
+
+    private int floorIndex(Revision r) {
+        return descending ? ceilingPosition(r) : higherPosition(r) - 1;
+    }
+
+    private int ceilingIndex(Revision r) {
+        return descending ? higherPosition(r) - 1 : ceilingPosition(r);
+    }
+
+    private int higherIndex(Revision r) {
+        return descending ? ceilingPosition(r) - 1 : higherPosition(r);
+    }
+
+    /**
+     * @return the index of the first entry with a key greater than or equal
+     *          to the given revision in the order of the arrays or
+     *          {@link #to} if there is none.
+     */
+    private int ceilingPosition(Revision r) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data.compareAt(mid, r) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first entry with a key strictly greater than
+     *          the given revision in the order of the arrays or {@link #to}
+     *          if there is none.
+     */
+    private int higherPosition(Revision r) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (data.compareAt(mid, r) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Iterates over the indexes of this map in the given direction.
+     */
+    private abstract class IndexIterator<T> implements Iterator<T> {
+
+        private final boolean reverse;
+
+        private int next;
+
+        IndexIterator(boolean reverse) {
+            this.reverse = reverse;
+            this.next = reverse ? to - 1 : from;
+        }
+
+        abstract T get(int idx);
+
+        @Override
+        public boolean hasNext() {
+            return next >= from && next < to;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int idx = next;
+            next += reverse ? -1 : 1;
+            return get(idx);
+        }
+    }
+
+    /**
+     * The key set view of this map.
+     */
+    private final class KeySet extends AbstractSet<Revision>
+            implements NavigableSet<Revision> {
+
+        @NotNull
+        @Override
+        public Iterator<Revision> iterator() {
+            return new KeyIterator(descending);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Revision> descendingIterator() {
+            return new KeyIterator(!descending);
+        }
+
+        @Override
+        public int size() {
+            return CompactRevisionMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public Comparator<? super Revision> comparator() {
+            return CompactRevisionMap.this.comparator();
+        }
+
+        @Override
+        public Revision first() {
+            return firstKey();
+        }
+
+        @Override
+        public Revision last() {
+            return lastKey();
+        }
+
+        @Override
+        public Revision lower(Revision r) {
+            return lowerKey(r);
+        }
+
+        @Override
+        public Revision floor(Revision r) {
+            return floorKey(r);
+        }
+
+        @Override
+        public Revision ceiling(Revision r) {
+            return ceilingKey(r);
+        }
+
+        @Override
+        public Revision higher(Revision r) {
+            return higherKey(r);
+        }
+
+        @Override
+        public Revision pollFirst() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Revision pollLast() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NavigableSet<Revision> descendingSet() {
+            return descendingKeySet();
+        }
+
+        @Override
+        public NavigableSet<Revision> subSet(Revision fromElement,
+                                             boolean fromInclusive,
+                                             Revision toElement,
+                                             boolean toInclusive) {
+            return subMap(fromElement, fromInclusive,
+                    toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Revision> headSet(Revision toElement,
+                                              boolean inclusive) {
+            return headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<Revision> tailSet(Revision fromElement,
+                                              boolean inclusive) {
+            return tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @NotNull
+        @Override
+        public SortedSet<Revision> subSet(Revision fromElement,
+                                          Revision toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @NotNull
+        @Override
+        public SortedSet<Revision> headSet(Revision toElement) {
+            return headSet(toElement, false);
+        }
+
+        @NotNull
+        @Override
+        public SortedSet<Revision> tailSet(Revision fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+
+    private final class KeyIterator extends IndexIterator<Revision> {
+
+        KeyIterator(boolean reverse) {
+            super(reverse);
+        }
+
+        @Override
+        Revision get(int idx) {
+            return data.revisionAt(idx);
+        }
+    }
+
+    /**
+     * The packed entries of a map, ordered by
+     * {@link StableRevisionComparator#REVERSE}, and the keys and values of
+     * the newest entries decoded so far.
+     */
+    private static final class Data {
+
+        private final long[] timestamps;
+
+        private final int[] counters;
+
+        /**
+         * The cluster ids of the revisions with {@link #BRANCH_FLAG} set for
+         * branch revisions.
+         */
+        private final int[] clusterIds;
+
+        /**
+         * The UTF-8 encoded values.
+         */
+        private final byte[] values;
+
+        /**
+         * The offset of each value in {@link #values}. The value at index
+         * {@code i} ends at {@code offsets[i + 1]}.
+         */
+        private final int[] offsets;
+
+        /**
+         * Indexes of {@code null} values or {@code null} if there are none.
+         */
+        @Nullable
+        private final BitSet nulls;
+
+        /**
+         * The decoded revisions of the first {@link #DECODED_ENTRIES}
+         * entries, allocated when the first one is read. Threads may race
+         * decoding the same entry, which is harmless because {@link Revision}
+         * and {@code String} are immutable.
+         */
+        private Revision[] revisions;
+
+        /**
+         * The decoded values of the first {@link #DECODED_ENTRIES} entries,
+         * allocated when the first one is read.
+         */
+        private String[] strings;
+
+        Data(long[] timestamps, int[] counters, int[] clusterIds,
+             byte[] values, int[] offsets, @Nullable BitSet nulls) {
+            this.timestamps = timestamps;
+            this.counters = counters;
+            this.clusterIds = clusterIds;
+            this.values = values;
+            this.offsets = offsets;
+            this.nulls = nulls;
+        }
+
+        boolean isNull(int idx) {
+            return nulls != null && nulls.get(idx);
+        }
+
+        Revision revisionAt(int idx) {
+            if (idx >= DECODED_ENTRIES) {
+                return decodeRevision(idx);
+            }
+            Revision[] cache = revisions;
+            if (cache == null) {
+                cache = new Revision[Math.min(timestamps.length, DECODED_ENTRIES)];
+                revisions = cache;
+            }
+            Revision r = cache[idx];
+            if (r == null) {
+                r = decodeRevision(idx);
+                cache[idx] = r;
+            }
+            return r;
+        }
+
+        String valueAt(int idx) {
+            if (isNull(idx)) {
+                return null;
+            }
+            if (idx >= DECODED_ENTRIES) {
+                return decodeValue(idx);
+            }
+            String[] cache = strings;
+            if (cache == null) {
+                cache = new String[Math.min(timestamps.length, DECODED_ENTRIES)];
+                strings = cache;
+            }
+            String s = cache[idx];
+            if (s == null) {
+                s = decodeValue(idx);
+                cache[idx] = s;
+            }
+            return s;
+        }
+
+        private Revision decodeRevision(int idx) {
+            int c = clusterIds[idx];
+            return new Revision(timestamps[idx], counters[idx],
+                    c & ~BRANCH_FLAG, (c & BRANCH_FLAG) != 0);
+        }
+
+        private String decodeValue(int idx) {
+            int start = offsets[idx];
+            return new String(values, start, offsets[idx + 1] - start, UTF_8);
+        }
+
+        /**
+         * Compares the revision at the given index with the given revision in
+         * the order of {@link StableRevisionComparator#REVERSE}. This is the
+         * reverse of {@link Revision#compareTo(Revision)}.
+         */
+        int compareAt(int idx, Revision r) {
+            long ts = timestamps[idx];
+            if (ts != r.getTimestamp()) {
+                return ts < r.getTimestamp() ? 1 : -1;
+            }
+            int counter = counters[idx];
+            if (counter != r.getCounter()) {
+                return counter < r.getCounter() ? 1 : -1;
+            }
+            int c = clusterIds[idx];
+            int clusterId = c & ~BRANCH_FLAG;
+            if (clusterId != r.getClusterId()) {
+                return clusterId < r.getClusterId() ? 1 : -1;
+            }
+            boolean branch = (c & BRANCH_FLAG) != 0;
+            if (branch != r.isBranch()) {
+                // a branch revision is less than the trunk revision
+                return branch ? 1 : -1;
+            }
+            return 0;
+        }
+    }
+}
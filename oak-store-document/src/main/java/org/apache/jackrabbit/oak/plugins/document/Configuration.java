@@ -151,6 +151,40 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     "be pre-fetched in a background thread.")
     boolean prefetchExternalChanges() default DocumentNodeStoreService.DEFAULT_PREFETCH_EXTERNAL_CHANGES;
 
+    @AttributeDefinition(
+            name = "Child node prefetch size",
+            description = "Number of child node documents read in bulk from the " +
+                    "DocumentStore while iterating over child nodes. A value " +
+                    "less than two disables pre-fetching. Default is " +
+                    DocumentNodeStoreService.DEFAULT_CHILD_PREFETCH_SIZE)
+    int childPrefetchSize() default DocumentNodeStoreService.DEFAULT_CHILD_PREFETCH_SIZE;
+
+    @AttributeDefinition(
+            name = "Asynchronous DocumentStore threads",
+            description = "Number of threads issuing DocumentStore operations " +
+                    "of background tasks asynchronously, which allows to have " +
+                    "multiple operations in flight. A value of zero issues " +
+                    "the operations one after the other in the background " +
+                    "thread. Default is " +
+                    DocumentNodeStoreService.DEFAULT_ASYNC_STORE_THREADS)
+    int asyncStoreThreads() default DocumentNodeStoreService.DEFAULT_ASYNC_STORE_THREADS;
+
+    @AttributeDefinition(
+            name = "Cache Warmup File",
+            description = "File where the paths of the entries in the node " +
+                    "and node children cache are periodically recorded. The " +
+                    "recorded paths are loaded again when the DocumentNodeStore " +
+                    "starts. A relative path is resolved against repository.home. " +
+                    "Default is empty (disabled).")
+    String cacheWarmup() default DocumentNodeStoreService.DEFAULT_CACHE_WARMUP;
+
+    @AttributeDefinition(
+            name = "Cache Warmup Threads",
+            description = "Number of threads loading the recorded paths when " +
+                    "the cache is warmed up on startup. Default is " +
+                    DocumentNodeStoreService.DEFAULT_CACHE_WARMUP_THREADS)
+    int cacheWarmupThreads() default DocumentNodeStoreService.DEFAULT_CACHE_WARMUP_THREADS;
+
     @AttributeDefinition(
             name = "NodeStoreProvider role",
             description = "Property indicating that this component will not register as a NodeStore but as a " +
@@ -183,6 +217,22 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     " seconds.")
     long versionGCTimeLimitInSecs() default DocumentNodeStoreService.DEFAULT_RGC_TIME_LIMIT_SECS;
 
+    @AttributeDefinition(
+            name = "Incremental Version GC slice (in sec)",
+            description = "When set to a positive value, each scheduled Version GC run only looks at " +
+                    "documents modified within a time slice of at most this duration and continues " +
+                    "with the next slice on the next run. Intended for frequent runs with the " +
+                    "continuous scheduler expression. The default value is " +
+                    DocumentNodeStoreService.DEFAULT_RGC_SLICE_SECS + " (disabled).")
+    long versionGCSliceInSecs() default DocumentNodeStoreService.DEFAULT_RGC_SLICE_SECS;
+
+    @AttributeDefinition(
+            name = "Version GC target batch latency (in ms)",
+            description = "When set to a positive value, the Version GC adjusts the number of documents " +
+                    "removed in one batch, so that a batch takes about this time. The default value is " +
+                    DocumentNodeStoreService.DEFAULT_RGC_TARGET_BATCH_LATENCY_MILLIS + " (fixed batch size).")
+    long versionGCTargetBatchLatencyInMillis() default DocumentNodeStoreService.DEFAULT_RGC_TARGET_BATCH_LATENCY_MILLIS;
+
     @AttributeDefinition(
             name = "Blob GC Max Age (in secs)",
             description = "Blob Garbage Collector (GC) logic will only consider those blobs for GC which " +
@@ -64,6 +64,11 @@ public class Document implements CacheValue {
      */
     private AtomicBoolean sealed = new AtomicBoolean(false);
 
+    /**
+     * The estimated size of this document, computed once it is sealed, or -1.
+     */
+    private volatile int estimatedSize = -1;
+
     /**
      * Get the id (the primary key) of this document.
      * 
@@ -177,6 +182,27 @@ public class Document implements CacheValue {
         return data.toString().replaceAll(", _", ",\n_").replaceAll("}, ", "},\n");
     }
 
+    /**
+     * Returns an estimate of the size of this document, which does not depend
+     * on the in-memory representation of its data. In contrast to
+     * {@link #getMemory()}, this value does not shrink when the document is
+     * sealed and is used to decide whether a document should be split. The
+     * size of a sealed document is only estimated once.
+     *
+     * @return the estimated size of this document.
+     */
+    int getEstimatedSize() {
+        int size = estimatedSize;
+        if (size < 0) {
+            boolean immutable = isSealed();
+            size = Utils.estimateSize(this.data);
+            if (immutable) {
+                estimatedSize = size;
+            }
+        }
+        return size;
+    }
+
     //-----------------------------< CacheValue >-------------------------------
 
     @Override
@@ -208,6 +234,13 @@ public class Document implements CacheValue {
                         childMap, entry.getKey().toString(), level + 1));
             }
         }
+        if (level == 1) {
+            // use a compact representation for revision maps
+            CompactRevisionMap compact = CompactRevisionMap.fromMap(map);
+            if (compact != null) {
+                return compact;
+            }
+        }
         if (map instanceof NavigableMap) {
             return Maps.unmodifiableNavigableMap((NavigableMap<Object, Object>) map);
         } else {
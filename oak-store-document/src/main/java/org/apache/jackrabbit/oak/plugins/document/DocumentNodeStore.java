@@ -41,18 +41,23 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.pathToId;
 import static org.apache.jackrabbit.oak.spi.observation.ChangeSet.COMMIT_CONTEXT_OBSERVATION_CHANGESET;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -211,6 +216,12 @@ public final class DocumentNodeStore
      */
     private final DocumentStore store;
 
+    /**
+     * Asynchronous view on {@link #store} used by background operations to
+     * have multiple requests in flight.
+     */
+    private final AsyncDocumentStore asyncStore;
+
     /**
      * Marker node, indicating a node does not exist at a given revision.
      */
@@ -298,6 +309,11 @@ public final class DocumentNodeStore
      */
     private final Map<String, String> splitCandidates = Maps.newConcurrentMap();
 
+    /**
+     * The number of split candidates read and split with bulk calls.
+     */
+    private static final int SPLIT_BATCH_SIZE = 100;
+
     /**
      * Summary of changes done by this cluster node to persist by the background
      * update thread.
@@ -348,6 +364,11 @@ public final class DocumentNodeStore
      */
     private Thread backgroundSweepThread;
 
+    /**
+     * Background thread recording the paths for the cache warmup.
+     */
+    private Thread cacheWarmupRecordThread;
+
     /**
      * The sweep revision vector. Revisions for trunk commits older than this
      * can safely be considered committed without looking up the commit value
@@ -488,6 +509,12 @@ public final class DocumentNodeStore
 
     private PersistentCache journalCache;
 
+    /**
+     * Warms up the node and node children cache on startup. {@code null} if
+     * the cache warmup is disabled.
+     */
+    private volatile CacheWarmup cacheWarmup;
+
     private final DocumentNodeStoreMBean mbean;
 
     private final boolean readOnlyMode;
@@ -521,8 +548,15 @@ public final class DocumentNodeStore
 
     private final Predicate<Path> nodeCachePredicate;
 
+    /**
+     * The number of child node documents read with a single bulk call to the
+     * DocumentStore while iterating over child nodes.
+     */
+    private final int childPrefetchSize;
+
     public DocumentNodeStore(DocumentNodeStoreBuilder<?> builder) {
         this.nodeCachePredicate = builder.getNodeCachePathPredicate();
+        this.childPrefetchSize = builder.getChildPrefetchSize();
         this.updateLimit = builder.getUpdateLimit();
         this.commitValueResolver = new CachingCommitValueResolver(
                 builder.getCommitValueCacheSize(), this::getSweepRevisions);
@@ -585,6 +619,7 @@ public final class DocumentNodeStore
 
         this.journalPropertyHandlerFactory = builder.getJournalPropertyHandlerFactory();
         this.store = s;
+        this.asyncStore = new ExecutorAsyncDocumentStore(s, builder.getAsyncStoreThreads());
         this.changes = newJournalEntry();
         this.branches = new UnmergedBranches();
         this.asyncDelay = builder.getAsyncDelay();
@@ -735,6 +770,19 @@ public final class DocumentNodeStore
         if (!builder.isBundlingDisabled()) {
             bundlingConfigHandler.initialize(this, executor);
         }
+
+        String cacheWarmupFile = builder.getCacheWarmupFile();
+        if (!Strings.isNullOrEmpty(cacheWarmupFile)) {
+            CacheWarmup warmup = new CacheWarmup(this, new File(cacheWarmupFile),
+                    builder.getCacheWarmupThreads());
+            warmup.start();
+            cacheWarmup = warmup;
+            cacheWarmupRecordThread = new Thread(
+                    new BackgroundCacheWarmupRecord(this, isDisposed),
+                    "DocumentNodeStore cache warmup record thread " + threadNamePostfix);
+            cacheWarmupRecordThread.setDaemon(true);
+            cacheWarmupRecordThread.start();
+        }
     }
 
     public void dispose() {
@@ -755,6 +803,16 @@ public final class DocumentNodeStore
                 backgroundUpdateThread,
                 backgroundSweepThread);
 
+        // stop a cache warmup still in progress and record
+        // the paths of the current cache entries
+        if (cacheWarmupRecordThread != null) {
+            Utils.joinQuietly(cacheWarmupRecordThread);
+        }
+        CacheWarmup warmup = cacheWarmup;
+        if (warmup != null) {
+            warmup.close();
+        }
+
         DocumentStoreException ex = null;
 
         // create a tombstone commit revision after isDisposed is set to true.
@@ -808,6 +866,9 @@ public final class DocumentNodeStore
 
         Utils.joinQuietly(clusterUpdateThread);
 
+        // wait for asynchronous operations still in flight
+        asyncStore.close();
+
         // Stop lease update thread once no further document store operations
         // are required
         LOG.debug("Stopping LeaseUpdate thread...");
@@ -864,6 +925,11 @@ public final class DocumentNodeStore
         return store;
     }
 
+    @NotNull
+    AsyncDocumentStore getAsyncDocumentStore() {
+        return asyncStore;
+    }
+
     /**
      * Creates a new commit. The caller must acknowledge the commit either with
      * {@link #done(Commit, boolean, CommitInfo)} or {@link #canceled(Commit)},
@@ -924,6 +990,15 @@ public final class DocumentNodeStore
         if (commitQueue.contains(c.getRevision())) {
             try {
                 inDoubtTrunkCommits.remove(c.getRevision());
+                // _lastRev updates do not depend on the order in which
+                // commits become visible. Apply them before waiting for
+                // the head of the queue, which keeps the section where
+                // commits are processed one after another short
+                try {
+                    c.applyLastRevUpdates(false);
+                } catch (Throwable e) {
+                    LOG.error("Applying _lastRev updates at {} failed", c.getRevision(), e);
+                }
                 final RevisionVector[] newHead = new RevisionVector[1];
                 commitQueue.done(c.getRevision(), new CommitQueue.Callback() {
                     @Override
@@ -937,9 +1012,6 @@ public final class DocumentNodeStore
                         boolean success = false;
                         boolean cacheUpdated = false;
                         try {
-                            // apply lastRev updates
-                            c.applyLastRevUpdates(false);
-
                             // track modified paths
                             changes.modified(c.getModifiedPaths());
                             changes.readFrom(info);
@@ -1337,7 +1409,8 @@ public final class DocumentNodeStore
         }
 
         final RevisionVector readRevision = parent.getLastRevision();
-        return transform(getChildren(parent, name, limit).children, new Function<String, DocumentNodeState>() {
+        List<String> names = getChildren(parent, name, limit).children;
+        return transform(prefetching(parent.getPath(), readRevision, names), new Function<String, DocumentNodeState>() {
             @Override
             public DocumentNodeState apply(String input) {
                 Path p = new Path(parent.getPath(), input);
@@ -1383,6 +1456,62 @@ public final class DocumentNodeStore
         });
     }
 
+    /**
+     * Returns the given child node names, pre-fetching the documents of the
+     * next {@link #childPrefetchSize} child nodes with a single bulk call to
+     * the DocumentStore while the names are iterated. Pre-fetching starts with
+     * the second name, i.e. once the caller is actually traversing the child
+     * nodes rather than looking at the first one only.
+     */
+    private Iterable<String> prefetching(final Path parentPath,
+                                         final RevisionVector readRevision,
+                                         final List<String> names) {
+        if (childPrefetchSize < 2 || names.size() < 2) {
+            return names;
+        }
+        return () -> new Iterator<String>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < names.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (index % childPrefetchSize == 1) {
+                    prefetchNodes(parentPath, readRevision, names.subList(index,
+                            Math.min(index + childPrefetchSize, names.size())));
+                }
+                return names.get(index++);
+            }
+        };
+    }
+
+    /**
+     * Reads the documents of the given child nodes not yet present in the node
+     * cache with a single bulk call to the DocumentStore, which puts them into
+     * its document cache.
+     */
+    private void prefetchNodes(Path parentPath,
+                               RevisionVector readRevision,
+                               List<String> names) {
+        List<String> ids = new ArrayList<>(names.size());
+        for (String name : names) {
+            Path p = new Path(parentPath, name);
+            if (nodeCache.getIfPresent(new PathRev(p, readRevision)) == null) {
+                ids.add(Utils.getIdFromPath(p));
+            }
+        }
+        if (ids.size() > 1) {
+            store.find(Collection.NODES, ids);
+        }
+    }
+
     @Nullable
     private DocumentNodeState readNode(Path path, RevisionVector readRevision) {
         final long start = PERFLOG.start();
@@ -2045,6 +2174,21 @@ public final class DocumentNodeStore
         return r;
     }
 
+    /**
+     * @return the status of the cache warmup or {@code null} if the cache
+     *          warmup is disabled.
+     */
+    @Nullable
+    String getCacheWarmupStatus() {
+        CacheWarmup warmup = cacheWarmup;
+        return warmup != null ? warmup.getStatus() : null;
+    }
+
+    @Nullable
+    CacheWarmup getCacheWarmup() {
+        return cacheWarmup;
+    }
+
     @Override
     @NotNull
     public Clock getClock() {
@@ -2093,13 +2237,15 @@ public final class DocumentNodeStore
             long cleanTime = clock.getTime() - time;
             time = clock.getTime();
             // split documents (does not create new revisions)
-            backgroundSplit();
+            BackgroundWriteStats splitStats = new BackgroundWriteStats();
+            backgroundSplit(splitStats);
             long splitTime = clock.getTime() - time;
             time = clock.getTime();
             maybeRefreshHeadRevision();
             long refreshTime = clock.getTime() - time;
             // write back pending updates to _lastRev
             stats = backgroundWrite();
+            stats.splitNum = splitStats.splitNum;
             stats.refresh = refreshTime;
             stats.split = splitTime;
             stats.clean = cleanTime;
@@ -2350,6 +2496,18 @@ public final class DocumentNodeStore
     }
 
     private void cleanCollisions(NodeDocument doc, int limit) {
+        UpdateOp op = newCollisionsCleanup(doc, limit);
+        if (op != null) {
+            store.findAndUpdate(NODES, op);
+        }
+    }
+
+    /**
+     * Returns an update operation removing collision markers from the given
+     * document or {@code null} if there are none to remove.
+     */
+    @Nullable
+    private UpdateOp newCollisionsCleanup(NodeDocument doc, int limit) {
         RevisionVector head = getHeadRevision();
         Map<Revision, String> map = doc.getLocalMap(NodeDocument.COLLISIONS);
         UpdateOp op = new UpdateOp(doc.getId(), false);
@@ -2371,66 +2529,141 @@ public final class DocumentNodeStore
         if (op.hasChanges()) {
             LOG.debug("Removing collisions {} on {}",
                     op.getChanges().keySet(), doc.getId());
-            store.findAndUpdate(NODES, op);
+            return op;
         }
+        return null;
     }
 
-    private void backgroundSplit() {
+    /**
+     * Splits the candidate documents in batches of {@link #SPLIT_BATCH_SIZE}.
+     * The documents of a batch are read with a single call while the previous
+     * batch is processed. The collision cleanups and split operations of a
+     * batch are issued with bulk calls through the {@link AsyncDocumentStore}
+     * in three phases: first the new previous documents are created, then
+     * intermediate documents are updated and finally the main documents are
+     * updated. A single journal entry invalidates all documents of a batch
+     * before any of them is updated.
+     *
+     * @param stats the stats to update with the number of split documents.
+     */
+    private void backgroundSplit(BackgroundWriteStats stats) {
         Set<Path> invalidatedPaths = new HashSet<>();
         RevisionVector head = getHeadRevision();
-        for (Iterator<String> it = splitCandidates.keySet().iterator(); it.hasNext();) {
-            String id = it.next();
-            NodeDocument doc = store.find(Collection.NODES, id);
-            if (doc == null) {
-                continue;
-            }
-            cleanCollisions(doc, collisionGarbageBatchSize);
-            for (UpdateOp op : doc.split(this, head, binarySize)) {
+        List<List<String>> batches = Lists.partition(
+                new ArrayList<>(splitCandidates.keySet()), SPLIT_BATCH_SIZE);
+        if (batches.isEmpty()) {
+            return;
+        }
+        CompletableFuture<List<NodeDocument>> next = asyncStore.findAsync(NODES, batches.get(0));
+        for (int i = 0; i < batches.size(); i++) {
+            List<NodeDocument> docs;
+            try {
+                docs = next.join();
+            } catch (CompletionException e) {
+                throw DocumentStoreException.convert(e.getCause());
+            }
+            if (i + 1 < batches.size()) {
+                next = asyncStore.findAsync(NODES, batches.get(i + 1));
+            }
+            List<CompletableFuture<?>> cleanups = new ArrayList<>();
+            List<UpdateOp> newDocs = new ArrayList<>();
+            List<UpdateOp> intermediateUpdates = new ArrayList<>();
+            List<UpdateOp> mainUpdates = new ArrayList<>();
+            List<Path> toInvalidate = new ArrayList<>();
+            for (NodeDocument doc : docs) {
+                UpdateOp cleanup = newCollisionsCleanup(doc, collisionGarbageBatchSize);
+                if (cleanup != null) {
+                    cleanups.add(asyncStore.findAndUpdateAsync(NODES, cleanup));
+                }
+                boolean split = false;
+                for (UpdateOp op : doc.split(this, head, binarySize)) {
+                    split = true;
+                    if (op.isNew()) {
+                        newDocs.add(op);
+                    } else if (op.getId().equals(doc.getId())) {
+                        mainUpdates.add(op);
+                    } else {
+                        intermediateUpdates.add(op);
+                    }
+                }
                 Path path = doc.getPath();
                 // add an invalidation journal entry, unless the path
                 // already has a pending _lastRev update or an invalidation
                 // entry was already added in this backgroundSplit() call
-                if (unsavedLastRevisions.get(path) == null
+                if (split && unsavedLastRevisions.get(path) == null
                         && invalidatedPaths.add(path)) {
-                    // create journal entry for cache invalidation
-                    JournalEntry entry = JOURNAL.newDocument(getDocumentStore());
-                    entry.modified(path);
-                    Revision r = newRevision().asBranchRevision();
-                    UpdateOp journalOp = entry.asUpdateOp(r);
-                    if (store.create(JOURNAL, singletonList(journalOp))) {
-                        changes.invalidate(singletonList(r));
-                        LOG.debug("Journal entry {} created for split of document {}",
-                                journalOp.getId(), path);
-                    } else {
-                        String msg = "Unable to create journal entry " +
-                                journalOp.getId() + " for document invalidation. " +
-                                "Will be retried with next background split " +
-                                "operation.";
-                        throw new DocumentStoreException(msg);
-                    }
+                    toInvalidate.add(path);
                 }
-                // apply the split operations
-                NodeDocument before = null;
-                if (!op.isNew() ||
-                        !store.create(Collection.NODES, Collections.singletonList(op))) {
-                    before = store.createOrUpdate(Collection.NODES, op);
+                if (split) {
+                    stats.splitNum++;
                 }
-                if (before != null) {
-                    if (LOG.isDebugEnabled()) {
-                        NodeDocument after = store.find(Collection.NODES, op.getId());
-                        if (after != null) {
-                            LOG.debug("Split operation on {}. Size before: {}, after: {}",
-                                    id, before.getMemory(), after.getMemory());
-                        }
-                    }
+            }
+            if (!toInvalidate.isEmpty()) {
+                // create journal entry for cache invalidation
+                JournalEntry entry = JOURNAL.newDocument(getDocumentStore());
+                entry.modified(toInvalidate);
+                Revision r = newRevision().asBranchRevision();
+                UpdateOp journalOp = entry.asUpdateOp(r);
+                if (store.create(JOURNAL, singletonList(journalOp))) {
+                    changes.invalidate(singletonList(r));
+                    LOG.debug("Journal entry {} created for split of {} documents",
+                            journalOp.getId(), toInvalidate.size());
                 } else {
-                    LOG.debug("Split operation created {}", op.getId());
+                    Utils.awaitAll(cleanups);
+                    String msg = "Unable to create journal entry " +
+                            journalOp.getId() + " for document invalidation. " +
+                            "Will be retried with next background split " +
+                            "operation.";
+                    throw new DocumentStoreException(msg);
                 }
             }
-            it.remove();
+            // apply the split operations, main documents last
+            applySplitOperations(newDocs);
+            for (List<UpdateOp> ops : partitionByUniqueId(intermediateUpdates)) {
+                applySplitOperations(ops);
+            }
+            Utils.awaitAll(cleanups);
+            applySplitOperations(mainUpdates);
+            for (NodeDocument doc : docs) {
+                LOG.debug("Split operation on {} done", doc.getId());
+                splitCandidates.remove(doc.getId());
+            }
         }
     }
 
+    /**
+     * Applies the given operations with bulk calls of up to
+     * {@link #createOrUpdateBatchSize} operations, which are in flight at the
+     * same time, and waits for them to complete. The given operations must
+     * have distinct ids.
+     */
+    private void applySplitOperations(List<UpdateOp> ops) {
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (List<UpdateOp> batch : Lists.partition(ops, createOrUpdateBatchSize)) {
+            inFlight.add(asyncStore.createOrUpdateAsync(NODES, batch));
+        }
+        Utils.awaitAll(inFlight);
+    }
+
+    /**
+     * Partitions the given operations into lists where each list contains
+     * at most one operation per id. Operations with the same id end up in
+     * lists in the same order as given.
+     */
+    private static List<List<UpdateOp>> partitionByUniqueId(List<UpdateOp> ops) {
+        List<List<UpdateOp>> partitions = new ArrayList<>();
+        Map<String, Integer> nextPartition = new HashMap<>();
+        for (UpdateOp op : ops) {
+            int idx = nextPartition.getOrDefault(op.getId(), 0);
+            if (idx == partitions.size()) {
+                partitions.add(new ArrayList<>());
+            }
+            partitions.get(idx).add(op);
+            nextPartition.put(op.getId(), idx + 1);
+        }
+        return partitions;
+    }
+
     @NotNull
     Set<String> getSplitCandidates() {
         return Collections.unmodifiableSet(splitCandidates.keySet());
@@ -2448,7 +2681,7 @@ public final class DocumentNodeStore
     //-----------------------------< internal >---------------------------------
 
     private BackgroundWriteStats backgroundWrite() {
-        return unsavedLastRevisions.persist(getDocumentStore(),
+        return unsavedLastRevisions.persist(getDocumentStore(), asyncStore,
                 new Supplier<Revision>() {
             @Override
             public Revision get() {
@@ -3347,6 +3580,33 @@ public final class DocumentNodeStore
         }
     }
 
+    /**
+     * Background operation recording the paths for the cache warmup.
+     */
+    private static class BackgroundCacheWarmupRecord extends NodeStoreTask {
+
+        BackgroundCacheWarmupRecord(DocumentNodeStore nodeStore,
+                                    AtomicBoolean isDisposed) {
+            super(nodeStore, isDisposed, getDelay(nodeStore));
+        }
+
+        @Override
+        protected void execute(@NotNull DocumentNodeStore nodeStore) {
+            CacheWarmup warmup = nodeStore.getCacheWarmup();
+            if (warmup != null) {
+                warmup.record();
+            }
+        }
+
+        private static Supplier<Integer> getDelay(DocumentNodeStore ns) {
+            int delay = 0;
+            if (ns.getAsyncDelay() != 0) {
+                delay = CacheWarmup.RECORD_INTERVAL_MILLIS;
+            }
+            return Suppliers.ofInstance(delay);
+        }
+    }
+
     public BlobStore getBlobStore() {
         return blobStore;
     }
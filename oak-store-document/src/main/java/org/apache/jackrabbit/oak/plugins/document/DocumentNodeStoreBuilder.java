@@ -128,6 +128,10 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
     private boolean useSimpleRevision;
     private boolean disableBranches;
     private boolean prefetchExternalChanges;
+    private int childPrefetchSize = Integer.getInteger("oak.documentMK.childPrefetchSize", 0);
+    private int asyncStoreThreads = Integer.getInteger("oak.documentMK.asyncStoreThreads", 0);
+    private String cacheWarmupFile;
+    private int cacheWarmupThreads = Integer.getInteger("oak.documentMK.cacheWarmupThreads", 4);
     private Clock clock = Clock.SIMPLE;
     private Executor executor;
     private String persistentCacheURI = DEFAULT_PERSISTENT_CACHE_URI;
@@ -546,6 +550,77 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return prefetchExternalChanges;
     }
 
+    /**
+     * Sets the number of child node documents read from the
+     * {@link DocumentStore} with a single bulk call while iterating over the
+     * child nodes of a node. Values less than two disable pre-fetching.
+     *
+     * @param childPrefetchSize the number of child node documents to pre-fetch.
+     * @return this
+     */
+    public T setChildPrefetchSize(int childPrefetchSize) {
+        this.childPrefetchSize = childPrefetchSize;
+        return thisBuilder();
+    }
+
+    public int getChildPrefetchSize() {
+        return childPrefetchSize;
+    }
+
+    /**
+     * Sets the number of threads issuing {@link DocumentStore} operations of
+     * background tasks through an {@link AsyncDocumentStore}. With zero
+     * threads the operations are issued one after the other by the
+     * background thread.
+     *
+     * @param asyncStoreThreads the number of threads.
+     * @return this
+     */
+    public T setAsyncStoreThreads(int asyncStoreThreads) {
+        this.asyncStoreThreads = asyncStoreThreads;
+        return thisBuilder();
+    }
+
+    public int getAsyncStoreThreads() {
+        return asyncStoreThreads;
+    }
+
+    /**
+     * Sets the file where the paths of the entries in the node and node
+     * children cache are recorded. When set, the recorded paths are used to
+     * warm up those caches when the {@link DocumentNodeStore} starts. By
+     * default no paths are recorded.
+     *
+     * @param cacheWarmupFile the path of the file or {@code null} to disable
+     *          the cache warmup.
+     * @return this
+     */
+    public T setCacheWarmupFile(@Nullable String cacheWarmupFile) {
+        this.cacheWarmupFile = cacheWarmupFile;
+        return thisBuilder();
+    }
+
+    @Nullable
+    public String getCacheWarmupFile() {
+        return cacheWarmupFile;
+    }
+
+    /**
+     * Sets the number of threads loading the recorded paths when the cache
+     * is warmed up on startup.
+     *
+     * @param cacheWarmupThreads the number of threads.
+     * @return this
+     */
+    public T setCacheWarmupThreads(int cacheWarmupThreads) {
+        this.cacheWarmupThreads = cacheWarmupThreads;
+        return thisBuilder();
+    }
+
+    public int getCacheWarmupThreads() {
+        return cacheWarmupThreads;
+    }
+
     public T setJournalPropertyHandlerFactory(JournalPropertyHandlerFactory factory) {
         journalPropertyHandlerFactory = factory;
         return thisBuilder();
@@ -53,6 +53,11 @@ public interface DocumentNodeStoreMBean {
         "and typically requires a round-trip to the server (but that is not a requirement).")
     long determineServerTimeDifferenceMillis();
 
+    @Description("Returns the status of the cache warmup on startup with " +
+            "the number of paths loaded so far. Returns null when the cache " +
+            "warmup is disabled.")
+    String getCacheWarmupStatus();
+
     CompositeData getMergeSuccessHistory();
 
     CompositeData getMergeFailureHistory();
@@ -147,6 +147,11 @@ final class DocumentNodeStoreMBeanImpl extends AnnotatedStandardMBean implements
         return nodeStore.getDocumentStore().determineServerTimeDifferenceMillis();
     }
 
+    @Override
+    public String getCacheWarmupStatus() {
+        return nodeStore.getCacheWarmupStatus();
+    }
+
     @Override
     public CompositeData getMergeSuccessHistory() {
         return getTimeSeriesData(DocumentNodeStoreStats.MERGE_SUCCESS_COUNT,
@@ -139,10 +139,16 @@ public class DocumentNodeStoreService {
     public static final String CONTINUOUS_RGC_EXPR = "*/5 * * * * ?";
     public static final String CLASSIC_RGC_EXPR = "0 0 2 * * ?";
     public static final long DEFAULT_RGC_TIME_LIMIT_SECS = 3*60*60; // default is 3 hours
+    public static final long DEFAULT_RGC_SLICE_SECS = 0; // default is disabled
+    public static final long DEFAULT_RGC_TARGET_BATCH_LATENCY_MILLIS = 0; // default is disabled
     private static final String DESCRIPTION = "oak.nodestore.description";
     static final long DEFAULT_JOURNAL_GC_INTERVAL_MILLIS = 5*60*1000; // default is 5min
     static final long DEFAULT_JOURNAL_GC_MAX_AGE_MILLIS = 24*60*60*1000; // default is 24hours
     static final boolean DEFAULT_PREFETCH_EXTERNAL_CHANGES = false;
+    static final int DEFAULT_CHILD_PREFETCH_SIZE = 0;
+    static final int DEFAULT_ASYNC_STORE_THREADS = 0;
+    static final String DEFAULT_CACHE_WARMUP = ""; // default is disabled
+    static final int DEFAULT_CACHE_WARMUP_THREADS = 4;
     private static final String DEFAULT_PROP_HOME = "./repository";
     static final long DEFAULT_MAX_REPLICATION_LAG = 6 * 60 * 60;
     static final boolean DEFAULT_BUNDLING_DISABLED = false;
@@ -455,6 +461,8 @@ public class DocumentNodeStoreService {
                     }
                 }).
                 setPrefetchExternalChanges(config.prefetchExternalChanges()).
+                setChildPrefetchSize(config.childPrefetchSize()).
+                setAsyncStoreThreads(config.asyncStoreThreads()).
                 setUpdateLimit(config.updateLimit()).
                 setJournalGCMaxAge(config.journalGCMaxAge()).
                 setNodeCachePathPredicate(createCachePredicate());
@@ -465,6 +473,13 @@ public class DocumentNodeStoreService {
         if (!Strings.isNullOrEmpty(journalCache)) {
             builder.setJournalCache(journalCache);
         }
+        if (!Strings.isNullOrEmpty(config.cacheWarmup())) {
+            String cacheWarmup = resolvePath(config.cacheWarmup(), DEFAULT_CACHE_WARMUP);
+            if (!Strings.isNullOrEmpty(cacheWarmup)) {
+                builder.setCacheWarmupFile(cacheWarmup);
+                builder.setCacheWarmupThreads(config.cacheWarmupThreads());
+            }
+        }
 
         //Set blobstore before setting the document store
         if (customBlobStore && !isWrappingCustomBlobStore()) {
@@ -758,7 +773,7 @@ public class DocumentNodeStoreService {
                     BlobGCMBean.TYPE, "Document node store blob garbage collection"));
         }
 
-        Runnable startGC = new RevisionGCJob(store, versionGcMaxAgeInSecs, 0);
+        Runnable startGC = new RevisionGCJob(store, versionGcMaxAgeInSecs, 0, 0, 0);
         Runnable cancelGC = () -> store.getVersionGarbageCollector().cancel();
         Supplier<String> status = () -> store.getVersionGarbageCollector().getStatus();
         RevisionGC revisionGC = new RevisionGC(startGC, cancelGC, status, executor);
@@ -820,7 +835,8 @@ public class DocumentNodeStoreService {
         long versionGCTimeLimitInSecs = config.versionGCTimeLimitInSecs();
         addRegistration(scheduleWithFixedDelay(whiteboard,
                 new RevisionGCJob(nodeStore, versionGcMaxAgeInSecs,
-                        versionGCTimeLimitInSecs),
+                        versionGCTimeLimitInSecs, config.versionGCSliceInSecs(),
+                        config.versionGCTargetBatchLatencyInMillis()),
                 props, MODIFIED_IN_SECS_RESOLUTION, true, true));
     }
 
@@ -900,23 +916,32 @@ public class DocumentNodeStoreService {
         private final DocumentNodeStore nodeStore;
         private final long versionGCMaxAgeInSecs;
         private final long versionGCTimeLimitInSecs;
+        private final long versionGCSliceInSecs;
+        private final long versionGCTargetBatchLatencyInMillis;
         private volatile Object lastResult = "";
         private long lastLogTime;
         private VersionGCStats stats;
 
         RevisionGCJob(DocumentNodeStore ns,
                       long versionGcMaxAgeInSecs,
-                      long versionGCTimeLimitInSecs) {
+                      long versionGCTimeLimitInSecs,
+                      long versionGCSliceInSecs,
+                      long versionGCTargetBatchLatencyInMillis) {
             this.nodeStore = ns;
             this.versionGCMaxAgeInSecs = versionGcMaxAgeInSecs;
             this.versionGCTimeLimitInSecs = versionGCTimeLimitInSecs;
+            this.versionGCSliceInSecs = versionGCSliceInSecs;
+            this.versionGCTargetBatchLatencyInMillis = versionGCTargetBatchLatencyInMillis;
             resetStats();
         }
 
         @Override
         public void run() {
             VersionGarbageCollector gc = nodeStore.getVersionGarbageCollector();
-            gc.setOptions(gc.getOptions().withMaxDuration(TimeUnit.SECONDS, versionGCTimeLimitInSecs));
+            gc.setOptions(gc.getOptions()
+                    .withMaxDuration(TimeUnit.SECONDS, versionGCTimeLimitInSecs)
+                    .withSlice(TimeUnit.SECONDS, versionGCSliceInSecs)
+                    .withTargetBatchLatency(TimeUnit.MILLISECONDS, versionGCTargetBatchLatencyInMillis));
             try {
                 VersionGCStats s = gc.gc(versionGCMaxAgeInSecs, TimeUnit.SECONDS);
                 stats.addRun(s);
@@ -40,10 +40,12 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
     private static final String BGW_CLEAN = "DOCUMENT_NS_BGW_CLEAN";
     private static final String BGW_SPLIT = "DOCUMENT_NS_BGW_SPLIT";
+    static final String BGW_SPLIT_NUM = "DOCUMENT_NS_BGW_SPLIT_NUM";
     private static final String BGW_WRITE = "DOCUMENT_NS_BGW_LOCK";
     private static final String BGW_SWEEP = "DOCUMENT_NS_BGW_SWEEP";
     static final String BGW_NUM = "DOCUMENT_NS_BGW_NUM";
     static final String BGW_NUM_WRITES_RATE = "DOCUMENT_NS_BGW_NUM_WRITE_RATE";
+    static final String BGW_CALLS = "DOCUMENT_NS_BGW_CALLS";
     private static final String BGW_TOTAL = "DOCUMENT_NS_BGW_TOTAL_TIME";
 
     static final String LEASE_UPDATE = "DOCUMENT_NS_LEASE_UPDATE";
@@ -56,6 +58,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private static final String MERGE_SUCCESS_EXCLUSIVE = "DOCUMENT_NS_MERGE_SUCCESS_EXCLUSIVE";
     static final String MERGE_FAILED_EXCLUSIVE = "DOCUMENT_NS_MERGE_FAILED_EXCLUSIVE";
     private static final String HEAD_OF_QUEUE_WAIT_TIME = "DOCUMENT_NS_HEAD_OF_QUEUE_WAIT_TIME";
+    static final String HEAD_OF_QUEUE_NUM_AHEAD = "DOCUMENT_NS_HEAD_OF_QUEUE_NUM_AHEAD";
+    static final String HEAD_OF_QUEUE_TIME = "DOCUMENT_NS_HEAD_OF_QUEUE_TIME";
     private static final String MERGE_SUSPEND_TIME = "DOCUMENT_NS_MERGE_SUSPEND_TIME";
     private static final String MERGE_LOCK_TIME = "DOCUMENT_NS_MERGE_LOCK_TIME";
     private static final String MERGE_COMMIT_HOOK_TIME = "DOCUMENT_NS_MERGE_COMMIT_HOOK_TIME";
@@ -79,11 +83,13 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     // background update
     private final TimerStats writeClean;
     private final TimerStats writeSplit;
+    private final HistogramStats writeSplitNum;
     private final TimerStats writeSweep;
     private final HistogramStats writeNum;
     private final TimerStats writeWrite;
     private final TimerStats writeTotal;
     private final MeterStats numWritesRate;
+    private final HistogramStats writeCalls;
 
     // lease update
     private final TimerStats leaseUpdate;
@@ -97,6 +103,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final MeterStats mergeSuccessSuspended;
     private final MeterStats mergeFailedExclusive;
     private final TimerStats headOfQueueWaitTime;
+    private final HistogramStats headOfQueueNumAhead;
+    private final TimerStats headOfQueueTime;
     private final TimerStats mergeSuspendTime;
     private final TimerStats mergeLockTime;
     private final TimerStats mergeCommitHookTime;
@@ -121,11 +129,13 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
         writeClean = sp.getTimer(BGW_CLEAN, StatsOptions.METRICS_ONLY);
         writeSplit = sp.getTimer(BGW_SPLIT, StatsOptions.METRICS_ONLY);
+        writeSplitNum = sp.getHistogram(BGW_SPLIT_NUM, StatsOptions.METRICS_ONLY);
         writeSweep = sp.getTimer(BGW_SWEEP, StatsOptions.METRICS_ONLY);
         writeWrite = sp.getTimer(BGW_WRITE, StatsOptions.METRICS_ONLY);
         writeTotal = sp.getTimer(BGW_TOTAL, StatsOptions.METRICS_ONLY);
         writeNum = sp.getHistogram(BGW_NUM, StatsOptions.METRICS_ONLY);
         numWritesRate = sp.getMeter(BGW_NUM_WRITES_RATE, StatsOptions.DEFAULT); //Enable time series
+        writeCalls = sp.getHistogram(BGW_CALLS, StatsOptions.METRICS_ONLY);
 
         leaseUpdate = sp.getTimer(LEASE_UPDATE, StatsOptions.METRICS_ONLY);
 
@@ -137,6 +147,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         mergeSuccessSuspended = sp.getMeter(MERGE_SUCCESS_SUSPENDED, StatsOptions.METRICS_ONLY);
         mergeFailedExclusive = sp.getMeter(MERGE_FAILED_EXCLUSIVE, StatsOptions.DEFAULT); //Enable time series
         headOfQueueWaitTime = sp.getTimer(HEAD_OF_QUEUE_WAIT_TIME, StatsOptions.METRICS_ONLY);
+        headOfQueueNumAhead = sp.getHistogram(HEAD_OF_QUEUE_NUM_AHEAD, StatsOptions.METRICS_ONLY);
+        headOfQueueTime = sp.getTimer(HEAD_OF_QUEUE_TIME, StatsOptions.METRICS_ONLY);
         mergeSuspendTime = sp.getTimer(MERGE_SUSPEND_TIME, StatsOptions.METRICS_ONLY);
         mergeLockTime = sp.getTimer(MERGE_LOCK_TIME, StatsOptions.METRICS_ONLY);
         mergeCommitHookTime = sp.getTimer(MERGE_COMMIT_HOOK_TIME, StatsOptions.METRICS_ONLY);
@@ -173,6 +185,8 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         writeTotal.update(stats.totalWriteTime, TimeUnit.MILLISECONDS);
 
         writeNum.update(stats.num);
+        writeSplitNum.update(stats.splitNum);
+        writeCalls.update(stats.calls);
 
         //Record rate of num of bg writes pushed per second
         numWritesRate.mark(stats.num);
@@ -231,6 +245,12 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
         headOfQueueWaitTime.update(waitMicros, TimeUnit.MICROSECONDS);
     }
 
+    @Override
+    public void doneHeadOfQueue(int numAhead, long timeMicros) {
+        headOfQueueNumAhead.update(numAhead);
+        headOfQueueTime.update(timeMicros, TimeUnit.MICROSECONDS);
+    }
+
     @Override
     public void doneMergeLockAcquired(long timeMicros) {
         mergeLockTime.update(timeMicros, TimeUnit.MICROSECONDS);
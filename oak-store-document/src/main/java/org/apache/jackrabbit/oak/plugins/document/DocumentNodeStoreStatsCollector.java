@@ -91,6 +91,17 @@ public interface DocumentNodeStoreStatsCollector {
      */
     void doneWaitUntilHead(long waitMicros);
 
+    /**
+     * Reports to the collector that a commit was processed at the head of the
+     * commit queue.
+     *
+     * @param numAhead the number of commits that were ahead of this commit in
+     *          the queue when it was done.
+     * @param timeMicros the time in microseconds it took to process the
+     *          commit at the head of the queue.
+     */
+    void doneHeadOfQueue(int numAhead, long timeMicros);
+
     /**
      * Reports to the collector that the commit acquired the merge lock in the
      * given time.
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -81,6 +83,38 @@ public interface DocumentStore {
     <T extends Document> T find(Collection<T> collection, String key, int maxCacheAge)
             throws DocumentStoreException;
 
+    /**
+     * Get the documents with the given {@code keys}. This is equivalent to
+     * calling {@link #find(Collection, String)} for each of the keys, but
+     * an implementation should read the documents not served from its cache
+     * with as few round trips to the underlying storage as possible and put
+     * them into its cache.
+     * <p>
+     * The returned documents are immutable and in the iteration order of
+     * {@code keys}, each document at most once. Documents that do not exist
+     * are omitted.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param keys the keys
+     * @return the list of existing documents (possibly empty)
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    @NotNull
+    default <T extends Document> List<T> find(Collection<T> collection,
+                                              java.util.Collection<String> keys)
+            throws DocumentStoreException {
+        List<T> docs = new ArrayList<>(keys.size());
+        for (String key : new LinkedHashSet<>(keys)) {
+            T doc = find(collection, key);
+            if (doc != null) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
     /**
      * Get a list of documents where the key is greater than a start value and
      * less than an end value.
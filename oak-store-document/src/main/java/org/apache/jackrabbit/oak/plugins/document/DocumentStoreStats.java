@@ -69,6 +69,9 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
     static final String NODES_UPDATE_FAILURE = "DOCUMENT_NODES_UPDATE_FAILURE";
     static final String NODES_UPDATE_RETRY_COUNT = "DOCUMENT_NODES_UPDATE_RETRY";
     static final String NODES_UPDATE_TIMER = "DOCUMENT_NODES_UPDATE_TIMER";
+    static final String NODES_BULK_UPDATE = "DOCUMENT_NODES_BULK_UPDATE";
+    static final String NODES_BULK_UPDATE_FAILURE = "DOCUMENT_NODES_BULK_UPDATE_FAILURE";
+    static final String NODES_BULK_UPDATE_TIMER = "DOCUMENT_NODES_BULK_UPDATE_TIMER";
 
     static final String NODES_REMOVE = "DOCUMENT_NODES_REMOVE";
     static final String NODES_REMOVE_TIMER = "DOCUMENT_NODES_REMOVE_TIMER";
@@ -107,6 +110,9 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
     private final MeterStats createSplitNodeMeter;
     private final MeterStats updateNodeFailureMeter;
     private final MeterStats updateNodeRetryCountMeter;
+    private final MeterStats bulkUpdateNodesMeter;
+    private final MeterStats bulkUpdateNodesFailureMeter;
+    private final TimerStats bulkUpdateNodesTimer;
     private final MeterStats removeNodes;
     private final TimerStats removeNodesTimer;
 
@@ -142,6 +148,9 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
         updateNodeMeter = provider.getMeter(NODES_UPDATE, StatsOptions.DEFAULT);
         updateNodeFailureMeter = provider.getMeter(NODES_UPDATE_FAILURE, StatsOptions.DEFAULT);
         updateNodeRetryCountMeter = provider.getMeter(NODES_UPDATE_RETRY_COUNT, StatsOptions.DEFAULT);
+        bulkUpdateNodesMeter = provider.getMeter(NODES_BULK_UPDATE, StatsOptions.DEFAULT);
+        bulkUpdateNodesFailureMeter = provider.getMeter(NODES_BULK_UPDATE_FAILURE, StatsOptions.DEFAULT);
+        bulkUpdateNodesTimer = provider.getTimer(NODES_BULK_UPDATE_TIMER, StatsOptions.METRICS_ONLY);
 
         queryNodesLock = provider.getMeter(NODES_QUERY_LOCK, StatsOptions.DEFAULT);
         queryNodesLockTimer = provider.getTimer(NODES_QUERY_LOCK_TIMER, StatsOptions.METRICS_ONLY);
@@ -255,6 +264,21 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
         perfLog(timeTakenNanos, "createOrUpdate {}", ids);
     }
 
+    @Override
+    public void doneBulkUpdate(long timeTakenNanos,
+                               Collection<? extends Document> collection,
+                               int updateCount,
+                               int failureCount) {
+        if (collection == Collection.NODES) {
+            bulkUpdateNodesMeter.mark(updateCount);
+            if (failureCount > 0) {
+                bulkUpdateNodesFailureMeter.mark(failureCount);
+            }
+            bulkUpdateNodesTimer.update(timeTakenNanos, TimeUnit.NANOSECONDS);
+        }
+        perfLog(timeTakenNanos, "bulkUpdate [{}], {} failed", updateCount, failureCount);
+    }
+
     @Override
     public void doneFindAndModify(long timeTakenNanos, Collection<? extends Document> collection, String key, boolean newEntry,
                                   boolean success, int retryCount) {
@@ -72,6 +72,18 @@ public interface DocumentStoreStatsCollector {
      */
     void doneCreateOrUpdate(long timeTakenNanos, Collection<? extends Document> collection, List<String> ids);
 
+    /**
+     * Called when a batch of a bulk update was sent to the backend, as part
+     * of a multi document create or update.
+     *
+     * @param timeTakenNanos time taken
+     * @param collection the collection
+     * @param updateCount number of documents in the batch
+     * @param failureCount number of documents which could not be updated in
+     *                     the batch and need to be retried
+     */
+    void doneBulkUpdate(long timeTakenNanos, Collection<? extends Document> collection, int updateCount, int failureCount);
+
     /**
      * Called when a update operation was completed which affected single
      * document.
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An {@link AsyncDocumentStore} issuing the blocking calls of a
+ * {@link DocumentStore} from a bounded pool of threads. The number of
+ * operations waiting for a thread is bounded as well. When this limit is
+ * reached, the caller runs the operation itself and therefore is throttled
+ * to the rate at which the backend completes operations.
+ * <p>
+ * With zero threads all operations run in the calling thread and the
+ * returned futures are already completed. This is the same behaviour as
+ * using the {@link DocumentStore} directly.
+ */
+public class ExecutorAsyncDocumentStore implements AsyncDocumentStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorAsyncDocumentStore.class);
+
+    /**
+     * The number of operations per thread that may wait for execution.
+     */
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+    private final DocumentStore store;
+
+    @Nullable
+    private final ThreadPoolExecutor executor;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param store the underlying document store.
+     * @param numThreads the number of threads issuing operations on the
+     *          underlying store. Zero runs operations in the calling thread.
+     */
+    public ExecutorAsyncDocumentStore(@NotNull DocumentStore store,
+                                      int numThreads) {
+        checkArgument(numThreads >= 0, "numThreads must not be negative: %s", numThreads);
+        this.store = checkNotNull(store);
+        if (numThreads == 0) {
+            this.executor = null;
+        } else {
+            this.executor = new ThreadPoolExecutor(numThreads, numThreads,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(numThreads * QUEUE_SIZE_PER_THREAD),
+                    new AsyncThreadFactory(),
+                    (r, e) -> {
+                        if (e.isShutdown()) {
+                            throw new RejectedExecutionException(
+                                    "AsyncDocumentStore is closed");
+                        }
+                        r.run();
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<T> findAsync(Collection<T> collection,
+                                                               String key) {
+        return submit(() -> store.find(collection, key));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<List<T>> findAsync(Collection<T> collection,
+                                                                     java.util.Collection<String> keys) {
+        return submit(() -> store.find(collection, keys));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<List<T>> queryAsync(Collection<T> collection,
+                                                                      String fromKey,
+                                                                      String toKey,
+                                                                      int limit) {
+        return submit(() -> store.query(collection, fromKey, toKey, limit));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<T> createOrUpdateAsync(Collection<T> collection,
+                                                                         UpdateOp update) {
+        return submit(() -> store.createOrUpdate(collection, update));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<List<T>> createOrUpdateAsync(Collection<T> collection,
+                                                                               List<UpdateOp> updateOps) {
+        return submit(() -> store.createOrUpdate(collection, updateOps));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<T> findAndUpdateAsync(Collection<T> collection,
+                                                                        UpdateOp update) {
+        return submit(() -> store.findAndUpdate(collection, update));
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> CompletableFuture<Void> removeAsync(Collection<T> collection,
+                                                                    List<String> keys) {
+        return submit(() -> {
+            store.remove(collection, keys);
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.warn("Timed out waiting for pending DocumentStore operations");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //------------------------------< internal >--------------------------------
+
+    private <R> CompletableFuture<R> submit(Supplier<R> operation) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(operation.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(DocumentStoreException.convert(t));
+            }
+        };
+        if (closed) {
+            future.completeExceptionally(
+                    new DocumentStoreException("AsyncDocumentStore is closed"));
+        } else if (executor == null) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(DocumentStoreException.convert(e));
+            }
+        }
+        return future;
+    }
+
+    private static final class AsyncThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread t = new Thread(r, "Oak DocumentStore async " + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
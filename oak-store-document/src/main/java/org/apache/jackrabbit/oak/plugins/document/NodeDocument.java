@@ -2233,6 +2233,24 @@ public final class NodeDocument extends Document {
         }
     }
     
+    /**
+     * @return the data of this document in the format of
+     *          {@link BinaryDocumentSerializer}.
+     */
+    public byte[] asBytes() {
+        return BinaryDocumentSerializer.toBytes(this);
+    }
+
+    /**
+     * Reads a sealed document from data written by {@link #asBytes()}.
+     */
+    public static NodeDocument fromBytes(DocumentStore store, byte[] data) {
+        NodeDocument doc = new NodeDocument(store);
+        BinaryDocumentSerializer.fromBytes(data, doc);
+        doc.seal();
+        return doc;
+    }
+
     public static NodeDocument fromString(DocumentStore store, String s) {
         JsopTokenizer json = new JsopTokenizer(s);
         NodeDocument doc = new NodeDocument(store);
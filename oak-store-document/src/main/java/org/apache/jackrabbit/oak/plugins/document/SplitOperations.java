@@ -200,7 +200,7 @@ class SplitOperations {
         // only consider if there are enough commits,
         // unless document is really big
         return doc.getLocalRevisions().size() + doc.getLocalCommitRoot().size() > numRevsThreshold
-                || doc.getMemory() >= DOC_SIZE_THRESHOLD
+                || doc.getEstimatedSize() >= DOC_SIZE_THRESHOLD
                 || previous.size() >= PREV_SPLIT_FACTOR
                 || !doc.getStalePrev().isEmpty()
                 || doc.hasBinary();
@@ -345,7 +345,7 @@ class SplitOperations {
         // check if we have enough data to split off
         if (high != null && low != null
                 && (numValues >= numRevsThreshold
-                || doc.getMemory() > DOC_SIZE_THRESHOLD
+                || doc.getEstimatedSize() > DOC_SIZE_THRESHOLD
                 || hasBinaryToSplit)) {
             // enough changes to split off
             // move to another document
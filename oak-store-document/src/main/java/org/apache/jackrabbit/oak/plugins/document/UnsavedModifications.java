@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -146,11 +147,36 @@ class UnsavedModifications {
                                         @NotNull Supplier<Revision> sweepRevision,
                                         @NotNull Snapshot snapshot,
                                         @NotNull Lock lock) {
+        return persist(store, new ExecutorAsyncDocumentStore(store, 0),
+                sweepRevision, snapshot, lock);
+    }
+
+    /**
+     * Persist the pending changes to _lastRev to the given store. The updates
+     * of the documents other than the root document are issued in batches
+     * through the {@code asyncStore}, with multiple batches in flight at the
+     * same time. The root document is updated once all batches completed.
+     *
+     * @param store the document store.
+     * @param asyncStore the asynchronous view on the document store.
+     * @param sweepRevision supplier for the current sweep revision.
+     * @param snapshot callback when the snapshot of the pending changes is
+     *                 acquired.
+     * @param lock the lock to acquire to get a consistent snapshot of the
+     *             revisions to write back.
+     * @return stats about the write operation.
+     */
+    public BackgroundWriteStats persist(@NotNull DocumentStore store,
+                                        @NotNull AsyncDocumentStore asyncStore,
+                                        @NotNull Supplier<Revision> sweepRevision,
+                                        @NotNull Snapshot snapshot,
+                                        @NotNull Lock lock) {
         BackgroundWriteStats stats = new BackgroundWriteStats();
         if (map.size() == 0) {
             return stats;
         }
         checkNotNull(store);
+        checkNotNull(asyncStore);
         checkNotNull(sweepRevision);
         checkNotNull(snapshot);
         checkNotNull(lock);
@@ -161,20 +187,23 @@ class UnsavedModifications {
         stats.lock = sw.elapsed(TimeUnit.MILLISECONDS);
         sw.reset().start();
         Revision sweepRev;
-        Map<Path, Revision> pending;
+        Map<Path, Revision> copy;
         try {
             snapshot.acquiring(getMostRecentRevision());
-            pending = Maps.newTreeMap(PathComparator.INSTANCE);
-            pending.putAll(map);
+            // only copy while holding the lock, sorting is done afterwards
+            copy = Maps.newHashMap(map);
             sweepRev = sweepRevision.get();
         } finally {
             lock.unlock();
         }
+        Map<Path, Revision> pending = Maps.newTreeMap(PathComparator.INSTANCE);
+        pending.putAll(copy);
         stats.num = pending.size();
-        List<UpdateOp> updates = Lists.newArrayList();
-        Map<Path, Revision> pathToRevision = Maps.newHashMap();
+        List<CompletableFuture<Void>> inFlight = Lists.newArrayList();
         for (Iterable<Map.Entry<Path, Revision>> batch : Iterables.partition(
                 pending.entrySet(), BACKGROUND_MULTI_UPDATE_LIMIT)) {
+            List<UpdateOp> updates = Lists.newArrayList();
+            Map<Path, Revision> pathToRevision = Maps.newHashMap();
             for (Map.Entry<Path, Revision> entry : batch) {
                 Path p = entry.getKey();
                 Revision r = entry.getValue();
@@ -186,17 +215,17 @@ class UnsavedModifications {
                 pathToRevision.put(entry.getKey(), r);
             }
             if (!updates.isEmpty()) {
-                store.createOrUpdate(NODES, updates);
+                inFlight.add(asyncStore.createOrUpdateAsync(NODES, updates).thenRun(() -> {
+                    for (Map.Entry<Path, Revision> entry : pathToRevision.entrySet()) {
+                        map.remove(entry.getKey(), entry.getValue());
+                        LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
+                    }
+                }));
                 stats.calls++;
-                for (Map.Entry<Path, Revision> entry : pathToRevision.entrySet()) {
-                    map.remove(entry.getKey(), entry.getValue());
-                    LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
-                }
-                // clean up for next batch
-                updates.clear();
-                pathToRevision.clear();
             }
         }
+        // all other documents must be updated before the root document
+        Utils.awaitAll(inFlight);
         // finally update remaining root document
         Revision rootRev = pending.get(Path.ROOT);
         if (rootRev != null) {
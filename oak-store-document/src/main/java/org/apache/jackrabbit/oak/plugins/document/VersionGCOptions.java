@@ -29,20 +29,25 @@ public class VersionGCOptions {
     public final int maxIterations;
     public final long maxDurationMs;
     public final double delayFactor;
+    public final long sliceMs;
+    public final long targetBatchLatencyMs;
 
     public VersionGCOptions() {
         this(100000, 100000, TimeUnit.MINUTES.toMillis(1),
-                0, TimeUnit.HOURS.toMillis(0), 0);
+                0, TimeUnit.HOURS.toMillis(0), 0, 0, 0);
     }
 
     private VersionGCOptions(int overflow, long collectLimit, long precisionMs,
-                             int maxIterations, long maxDurationMs, double delayFactor) {
+                             int maxIterations, long maxDurationMs, double delayFactor,
+                             long sliceMs, long targetBatchLatencyMs) {
         this.overflowToDiskThreshold = overflow;
         this.collectLimit = collectLimit;
         this.precisionMs = precisionMs;
         this.maxIterations = maxIterations;
         this.maxDurationMs = maxDurationMs;
         this.delayFactor = delayFactor;
+        this.sliceMs = sliceMs;
+        this.targetBatchLatencyMs = targetBatchLatencyMs;
     }
 
     /**
@@ -52,7 +57,8 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withOverflowToDiskThreshold(int overflowToDiskThreshold) {
         return new VersionGCOptions(overflowToDiskThreshold, this.collectLimit,
-                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor);
+                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
     /**
@@ -65,7 +71,8 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withCollectLimit(long limit) {
         return new VersionGCOptions(this.overflowToDiskThreshold, limit,
-                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor);
+                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
     /**
@@ -79,7 +86,8 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withPrecisionMs(TimeUnit unit, long t) {
         return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
-                unit.toMillis(t), this.maxIterations, this.maxDurationMs, this.delayFactor);
+                unit.toMillis(t), this.maxIterations, this.maxDurationMs, this.delayFactor,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
     /**
@@ -93,7 +101,8 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withMaxDuration(TimeUnit unit, long t) {
         return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
-                this.precisionMs, this.maxIterations, unit.toMillis(t), this.delayFactor);
+                this.precisionMs, this.maxIterations, unit.toMillis(t), this.delayFactor,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
     /**
@@ -106,7 +115,8 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withMaxIterations(int max) {
         return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
-                this.precisionMs, this.maxIterations, max, this.delayFactor);
+                this.precisionMs, this.maxIterations, max, this.delayFactor,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
     /**
@@ -122,8 +132,45 @@ public class VersionGCOptions {
      */
     public VersionGCOptions withDelayFactor(double f) {
         return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
-                this.precisionMs, this.maxIterations, this.maxDurationMs, f);
+                this.precisionMs, this.maxIterations, this.maxDurationMs, f,
+                this.sliceMs, this.targetBatchLatencyMs);
     }
 
-}
+    /**
+     * Set the maximum duration of the time interval of modified documents a
+     * single garbage collection run looks at. A positive value enables the
+     * incremental mode: each call to
+     * {@link VersionGarbageCollector#gc(long, TimeUnit)} performs only a single
+     * iteration over a slice of at most this duration and then returns. The
+     * position of the collector is persisted in the settings collection, so
+     * that the next call continues with the next slice. This mode is meant for
+     * frequent invocations, e.g. every few seconds, while the repository is in
+     * use. A value of 0, the default, disables the incremental mode.
+     *
+     * @param unit time unit used for duration
+     * @param t    the number of units in the duration
+     */
+    public VersionGCOptions withSlice(TimeUnit unit, long t) {
+        return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
+                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor,
+                unit.toMillis(t), this.targetBatchLatencyMs);
+    }
 
+    /**
+     * Set the desired duration of a batch modification of the garbage
+     * collector. With a positive value the number of documents removed in one
+     * batch is adjusted to the observed latency of the store: it is reduced
+     * when a batch takes longer than this duration and increased (up to the
+     * default batch size) when it takes less than half of it. The batch size is
+     * persisted in the settings collection and used as the initial batch size
+     * of the next run. A value of 0, the default, uses a fixed batch size.
+     *
+     * @param unit time unit used for duration
+     * @param t    the number of units in the duration
+     */
+    public VersionGCOptions withTargetBatchLatency(TimeUnit unit, long t) {
+        return new VersionGCOptions(this.overflowToDiskThreshold, this.collectLimit,
+                this.precisionMs, this.maxIterations, this.maxDurationMs, this.delayFactor,
+                this.sliceMs, unit.toMillis(t));
+    }
+}
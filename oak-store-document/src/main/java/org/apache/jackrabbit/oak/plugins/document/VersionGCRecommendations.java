@@ -47,6 +47,8 @@ public class VersionGCRecommendations {
     final long deleteCandidateCount;
     final long lastOldestTimestamp;
     final long originalCollectLimit;
+    final int batchSize;
+    private final boolean adaptiveBatchSize;
 
     private final long precisionMs;
     final long suggestedIntervalMs;
@@ -135,6 +137,16 @@ public class VersionGCRecommendations {
             }
         }
 
+        if (options.sliceMs > 0) {
+            // incremental mode: never look at more than a slice
+            long sliceMs = Math.max(options.sliceMs, options.precisionMs);
+            if (sliceMs < scope.getDurationMs()) {
+                scope = scope.startAndDuration(sliceMs);
+                log.debug("incremental mode with {} sec slices, scope now {}",
+                        TimeUnit.MILLISECONDS.toSeconds(sliceMs), scope);
+            }
+        }
+
         //Check for any registered checkpoint which prevent the GC from running
         Revision checkpoint = checkpoints.getOldestRevisionToKeep();
         if (checkpoint != null && scope.endsAfter(checkpoint.getTimestamp())) {
@@ -163,6 +175,8 @@ public class VersionGCRecommendations {
         this.maxCollect = collectLimit;
         this.suggestedIntervalMs = suggestedIntervalMs;
         this.deleteCandidateCount = deletedOnceCount;
+        this.batchSize = settings.get(VersionGarbageCollector.SETTINGS_COLLECTION_BATCH_SIZE_PROP).intValue();
+        this.adaptiveBatchSize = options.targetBatchLatencyMs > 0;
     }
 
     /**
@@ -173,6 +187,10 @@ public class VersionGCRecommendations {
      * @param stats the statistics from the last run
      */
     public void evaluate(VersionGCStats stats) {
+        if (adaptiveBatchSize && stats.deleteBatchSize > 0 && stats.deleteBatchSize != batchSize) {
+            // remember the batch size adjusted to the store latency
+            setLongSetting(VersionGarbageCollector.SETTINGS_COLLECTION_BATCH_SIZE_PROP, stats.deleteBatchSize);
+        }
         if (stats.limitExceeded) {
             // if the limit was exceeded, slash the recommended interval in half.
             long nextDuration = Math.max(precisionMs, scope.getDurationMs() / 2);
@@ -217,6 +235,7 @@ public class VersionGCRecommendations {
         // default values
         settings.put(VersionGarbageCollector.SETTINGS_COLLECTION_OLDEST_TIMESTAMP_PROP, 0L);
         settings.put(VersionGarbageCollector.SETTINGS_COLLECTION_REC_INTERVAL_PROP, 0L);
+        settings.put(VersionGarbageCollector.SETTINGS_COLLECTION_BATCH_SIZE_PROP, 0L);
         if (versionGCDoc != null) {
             for (String k : versionGCDoc.keySet()) {
                 Object value = versionGCDoc.get(k);
@@ -57,7 +57,6 @@ import org.slf4j.LoggerFactory;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.StandardSystemProperty.LINE_SEPARATOR;
 import static com.google.common.collect.Iterables.all;
-import static com.google.common.collect.Iterators.partition;
 import static com.google.common.util.concurrent.Atomics.newReference;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
@@ -72,6 +71,8 @@ public class VersionGarbageCollector {
 
     //Kept less than MongoDocumentStore.IN_CLAUSE_BATCH_SIZE to avoid re-partitioning
     private static final int DELETE_BATCH_SIZE = 450;
+    // lower bound for the delete batch size when adjusted to the store latency
+    private static final int MIN_DELETE_BATCH_SIZE = 10;
     private static final int UPDATE_BATCH_SIZE = 450;
     private static final int PROGRESS_BATCH_SIZE = 10000;
     private static final String STATUS_IDLE = "IDLE";
@@ -99,6 +100,11 @@ public class VersionGarbageCollector {
      */
     static final String SETTINGS_COLLECTION_REC_INTERVAL_PROP = "recommendedIntervalMs";
 
+    /**
+     * Property name to the delete batch size adjusted to the store latency
+     */
+    static final String SETTINGS_COLLECTION_BATCH_SIZE_PROP = "deleteBatchSize";
+
     private final DocumentNodeStore nodeStore;
     private final DocumentStore ds;
     private final VersionGCSupport versionStore;
@@ -144,6 +150,11 @@ public class VersionGarbageCollector {
                     VersionGCStats stats = job.run();
 
                     overall.addRun(stats);
+                    if (options.sliceMs > 0) {
+                        // incremental mode: a single slice per call,
+                        // the next call continues where this one stopped
+                        break;
+                    }
                     if (options.maxIterations > 0 && overall.iterationCount >= options.maxIterations) {
                         break;
                     }
@@ -256,6 +267,9 @@ public class VersionGarbageCollector {
         int splitDocGCCount;
         int intermediateSplitDocGCCount;
         int updateResurrectedGCCount;
+        int deleteBatchSize;
+        int deleteBatchCount;
+        long deleteBatchElapsed;
         final TimeDurationFormatter df = TimeDurationFormatter.forLogging();
         final Stopwatch active = Stopwatch.createUnstarted();
         final Stopwatch collectDeletedDocs = Stopwatch.createUnstarted();
@@ -309,12 +323,31 @@ public class VersionGarbageCollector {
                     ", splitDocGCCount=" + splitDocGCCount +
                     ", intermediateSplitDocGCCount=" + intermediateSplitDocGCCount +
                     ", iterationCount=" + iterationCount +
+                    ", deleteBatchSize=" + deleteBatchSize +
+                    ", avgDeleteBatchTime=" + df.format(getAverageDeleteBatchTime(MICROSECONDS), MICROSECONDS) +
                     ", timeActive=" + df.format(activeElapsed, MICROSECONDS) +
                     ", " + timings + "}";
         }
 
+        /**
+         * @param unit the time unit of the return value.
+         * @return the average time it took to remove a batch of documents
+         *          or zero if no batch was removed.
+         */
+        public long getAverageDeleteBatchTime(TimeUnit unit) {
+            if (deleteBatchCount == 0) {
+                return 0;
+            }
+            return unit.convert(deleteBatchElapsed / deleteBatchCount, MICROSECONDS);
+        }
+
         void addRun(VersionGCStats run) {
             ++iterationCount;
+            if (run.deleteBatchSize > 0) {
+                this.deleteBatchSize = run.deleteBatchSize;
+            }
+            this.deleteBatchCount += run.deleteBatchCount;
+            this.deleteBatchElapsed += run.deleteBatchElapsed;
             this.ignoredGCDueToCheckPoint = run.ignoredGCDueToCheckPoint;
             this.canceled = run.canceled;
             this.success = run.success;
@@ -539,7 +572,7 @@ public class VersionGarbageCollector {
                                              VersionGCRecommendations rec)
                 throws IOException, LimitExceededException {
             int docsTraversed = 0;
-            DeletedDocsGC gc = new DeletedDocsGC(headRevision, cancel, options, monitor);
+            DeletedDocsGC gc = new DeletedDocsGC(headRevision, cancel, options, monitor, rec.batchSize);
             try {
                 if (phases.start(GCPhase.COLLECTING)) {
                     Iterable<NodeDocument> itr = versionStore.getPossiblyDeletedDocs(rec.scope.fromMs, rec.scope.toMs);
@@ -627,16 +660,22 @@ public class VersionGarbageCollector {
         private final Stopwatch timer;
         private final VersionGCOptions options;
         private final GCMonitor monitor;
+        private int batchSize;
 
         public DeletedDocsGC(@NotNull RevisionVector headRevision,
                              @NotNull AtomicBoolean cancel,
                              @NotNull VersionGCOptions options,
-                             @NotNull GCMonitor monitor) {
+                             @NotNull GCMonitor monitor,
+                             int batchSize) {
             this.headRevision = checkNotNull(headRevision);
             this.cancel = checkNotNull(cancel);
             this.timer = Stopwatch.createUnstarted();
             this.options = options;
             this.monitor = monitor;
+            this.batchSize = DELETE_BATCH_SIZE;
+            if (options.targetBatchLatencyMs > 0 && batchSize > 0) {
+                this.batchSize = Math.max(MIN_DELETE_BATCH_SIZE, Math.min(DELETE_BATCH_SIZE, batchSize));
+            }
             this.docIdsToDelete = newStringSort(options);
             this.prevDocIdsToDelete = newStringSort(options);
         }
@@ -700,13 +739,13 @@ public class VersionGarbageCollector {
         void removeDocuments(VersionGCStats stats) throws IOException {
             removeLeafDocuments(stats);
             stats.deletedDocGCCount += removeDeletedDocuments(
-                    getDocIdsToDelete(), getDocIdsToDeleteSize(), false, "(other)");
+                    getDocIdsToDelete(), getDocIdsToDeleteSize(), false, "(other)", stats);
             // FIXME: this is incorrect because that method also removes intermediate docs
-            stats.splitDocGCCount += removeDeletedPreviousDocuments();
+            stats.splitDocGCCount += removeDeletedPreviousDocuments(stats);
         }
 
         boolean hasLeafBatch() {
-            return leafDocIdsToDelete.size() >= DELETE_BATCH_SIZE;
+            return leafDocIdsToDelete.size() >= batchSize;
         }
 
         boolean hasRescurrectUpdateBatch() {
@@ -715,7 +754,7 @@ public class VersionGarbageCollector {
 
         void removeLeafDocuments(VersionGCStats stats) throws IOException {
             int removeCount = removeDeletedDocuments(
-                    getLeafDocIdsToDelete(), getLeafDocIdsToDeleteSize(), true, "(leaf)");
+                    getLeafDocIdsToDelete(), getLeafDocIdsToDeleteSize(), true, "(leaf)", stats);
             leafDocIdsToDelete.clear();
             stats.deletedLeafDocGCCount += removeCount;
             stats.deletedDocGCCount += removeCount;
@@ -758,6 +797,41 @@ public class VersionGarbageCollector {
             }
         }
 
+        /**
+         * Takes the next batch of at most {@link #batchSize} ids.
+         */
+        private List<String> nextBatch(Iterator<String> ids) {
+            List<String> batch = Lists.newArrayListWithCapacity(batchSize);
+            while (ids.hasNext() && batch.size() < batchSize) {
+                batch.add(ids.next());
+            }
+            return batch;
+        }
+
+        /**
+         * Records the duration of a batch removal and adjusts the batch size
+         * to the {@link VersionGCOptions#targetBatchLatencyMs} if set.
+         */
+        private void batchRemoved(long elapsedMicros, VersionGCStats stats) {
+            stats.deleteBatchCount++;
+            stats.deleteBatchElapsed += elapsedMicros;
+            long targetMicros = TimeUnit.MILLISECONDS.toMicros(options.targetBatchLatencyMs);
+            if (targetMicros > 0) {
+                int size = batchSize;
+                if (elapsedMicros > targetMicros) {
+                    size = Math.max(MIN_DELETE_BATCH_SIZE, size / 2);
+                } else if (elapsedMicros < targetMicros / 2) {
+                    size = Math.min(DELETE_BATCH_SIZE, (int) Math.ceil(size * 1.5));
+                }
+                if (size != batchSize) {
+                    log.debug("Batch removal took {} us (target {} us), batch size now {}",
+                            elapsedMicros, targetMicros, size);
+                    batchSize = size;
+                }
+            }
+            stats.deleteBatchSize = batchSize;
+        }
+
         private Iterator<String> previousDocIdsFor(NodeDocument doc) {
             Map<Revision, Range> prevRanges = doc.getPreviousRanges(true);
             if (prevRanges.isEmpty()) {
@@ -847,19 +921,19 @@ public class VersionGarbageCollector {
         private int removeDeletedDocuments(Iterator<String> docIdsToDelete,
                                            long numDocuments,
                                            boolean leaves,
-                                           String label) throws IOException {
+                                           String label,
+                                           VersionGCStats stats) throws IOException {
             if (numDocuments == 0) {
                 return 0;
             }
             monitor.info("Proceeding to delete [{}] documents [{}]", numDocuments, label);
 
-            Iterator<List<String>> idListItr = partition(docIdsToDelete, DELETE_BATCH_SIZE);
             int deletedCount = 0;
             int lastLoggedCount = 0;
             int recreatedCount = 0;
-            while (idListItr.hasNext() && !cancel.get()) {
+            while (docIdsToDelete.hasNext() && !cancel.get()) {
                 Map<String, Long> deletionBatch = Maps.newLinkedHashMap();
-                for (String s : idListItr.next()) {
+                for (String s : nextBatch(docIdsToDelete)) {
                     Map.Entry<String, Long> parsed;
                     try {
                         parsed = parseEntry(s);
@@ -879,6 +953,7 @@ public class VersionGarbageCollector {
                 timer.reset().start();
                 try {
                     int nRemoved = ds.remove(NODES, deletionBatch);
+                    batchRemoved(timer.elapsed(MICROSECONDS), stats);
 
                     if (nRemoved < deletionBatch.size()) {
                         // some nodes were re-created while GC was running
@@ -945,7 +1020,7 @@ public class VersionGarbageCollector {
             return updateCount;
         }
 
-        private int removeDeletedPreviousDocuments() throws IOException {
+        private int removeDeletedPreviousDocuments(VersionGCStats stats) throws IOException {
             long num = getNumPreviousDocuments();
             if (num == 0) {
                 return 0;
@@ -954,10 +1029,9 @@ public class VersionGarbageCollector {
 
             int deletedCount = 0;
             int lastLoggedCount = 0;
-            Iterator<List<String>> idListItr =
-                    partition(getPrevDocIdsToDelete(), DELETE_BATCH_SIZE);
-            while (idListItr.hasNext() && !cancel.get()) {
-                List<String> deletionBatch = idListItr.next();
+            Iterator<String> prevDocIds = getPrevDocIdsToDelete();
+            while (prevDocIds.hasNext() && !cancel.get()) {
+                List<String> deletionBatch = nextBatch(prevDocIds);
                 deletedCount += deletionBatch.size();
 
                 if (log.isDebugEnabled()) {
@@ -966,7 +1040,13 @@ public class VersionGarbageCollector {
                     log.debug(sb.toString());
                 }
 
-                ds.remove(NODES, deletionBatch);
+                timer.reset().start();
+                try {
+                    ds.remove(NODES, deletionBatch);
+                    batchRemoved(timer.elapsed(MICROSECONDS), stats);
+                } finally {
+                    delayOnModifications(timer.stop().elapsed(TimeUnit.MILLISECONDS));
+                }
 
                 log.debug("Deleted [{}] previous documents so far", deletedCount);
                 gcStats.splitDocumentsDeleted(deletedCount);
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.oak.plugins.document.memory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentNavigableMap;
@@ -126,6 +127,27 @@ public class MemoryDocumentStore implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> List<T> find(Collection<T> collection,
+                                             java.util.Collection<String> keys) {
+        Lock lock = rwLock.readLock();
+        lock.lock();
+        try {
+            ConcurrentSkipListMap<String, T> map = getMap(collection);
+            List<T> docs = new ArrayList<T>(keys.size());
+            for (String key : new LinkedHashSet<String>(keys)) {
+                T doc = map.get(key);
+                if (doc != null) {
+                    docs.add(doc);
+                }
+            }
+            return docs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     @NotNull
     public <T extends Document> List<T> query(Collection<T> collection,
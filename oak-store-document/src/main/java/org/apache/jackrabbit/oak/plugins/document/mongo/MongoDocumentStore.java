@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -439,6 +440,45 @@ public class MongoDocumentStore implements DocumentStore {
         return result;
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> find(Collection<T> collection,
+                                             java.util.Collection<String> keys) {
+        final long start = PERFLOG.start();
+        Set<String> uniqueKeys = new LinkedHashSet<>(keys);
+        Map<String, T> documents = new HashMap<>();
+        List<String> documentsToRead = new ArrayList<>();
+        for (String key : uniqueKeys) {
+            NodeDocument cached = collection == Collection.NODES ? nodesCache.getIfPresent(key) : null;
+            if (cached != null) {
+                stats.doneFindCached(collection, key);
+                if (cached != NodeDocument.NULL) {
+                    documents.put(key, castAsT(cached));
+                }
+            } else {
+                documentsToRead.add(key);
+            }
+        }
+        if (!documentsToRead.isEmpty()) {
+            documents.putAll(findUncachedWithRetry(collection, documentsToRead));
+        }
+
+        List<T> result = new ArrayList<>(documents.size());
+        for (String key : uniqueKeys) {
+            T doc = documents.get(key);
+            if (doc != null) {
+                result.add(doc);
+            }
+        }
+        PERFLOG.end(start, 1, "find: keys={}, uncached={}", uniqueKeys.size(), documentsToRead.size());
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Document> T castAsT(NodeDocument doc) {
+        return (T) doc;
+    }
+
     @SuppressWarnings("unchecked")
     private <T extends Document> T find(final Collection<T> collection,
                                        final String key,
@@ -550,6 +590,97 @@ public class MongoDocumentStore implements DocumentStore {
         }
     }
 
+    /**
+     * Finds documents and performs a number of retries if the read fails with
+     * an exception.
+     *
+     * @param collection the collection to read from.
+     * @param keys the keys of the documents to find.
+     * @param <T> the document type of the given collection.
+     * @return the documents found, mapped by key.
+     */
+    @NotNull
+    private <T extends Document> Map<String, T> findUncachedWithRetry(
+            Collection<T> collection, List<String> keys) {
+        int numAttempts = queryRetries + 1;
+        MongoException ex = null;
+        for (int i = 0; i < numAttempts; i++) {
+            if (i > 0) {
+                LOG.warn("Retrying read of " + keys.size() + " documents");
+            }
+            try {
+                return findUncached(collection, keys);
+            } catch (MongoException e) {
+                ex = e;
+            }
+        }
+        throw handleException(ex, collection, keys);
+    }
+
+    /**
+     * Reads the documents with the given {@code keys} with {@code $in} queries
+     * of up to {@link #IN_CLAUSE_BATCH_SIZE} keys and puts them into the
+     * cache unless they were modified concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    protected <T extends Document> Map<String, T> findUncached(Collection<T> collection, List<String> keys) {
+        log("findUncached", keys);
+        final Stopwatch watch = startWatch();
+        boolean isSlaveOk = false;
+        Map<String, T> docs = new HashMap<>();
+        CacheChangesTracker tracker = null;
+        if (collection == Collection.NODES) {
+            tracker = nodesCache.registerTracker(new HashSet<>(keys));
+        }
+        try {
+            DocumentReadPreference docReadPref;
+            if (collection == Collection.NODES) {
+                docReadPref = getReadPreference(-1);
+            } else if (withClientSession()) {
+                docReadPref = getDefaultReadPreference(collection);
+            } else {
+                docReadPref = DocumentReadPreference.PRIMARY;
+            }
+            ReadPreference readPreference = getMongoReadPreference(collection, null, docReadPref);
+            MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection, readPreference);
+            isSlaveOk = readPreference.isSlaveOk();
+
+            for (List<String> keyBatch : Lists.partition(keys, IN_CLAUSE_BATCH_SIZE)) {
+                Bson query = Filters.in(Document.ID, keyBatch);
+                execute(session -> {
+                    FindIterable<BasicDBObject> result;
+                    if (session != null) {
+                        result = dbCollection.find(session, query);
+                    } else {
+                        result = dbCollection.find(query);
+                    }
+                    for (BasicDBObject o : result) {
+                        T doc = convertFromDBObject(collection, o);
+                        if (doc != null) {
+                            doc.seal();
+                            docs.put(doc.getId(), doc);
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            if (tracker != null) {
+                nodesCache.putNonConflictingDocs(tracker, (List<NodeDocument>) new ArrayList<>(docs.values()));
+            }
+            return docs;
+        } finally {
+            if (tracker != null) {
+                tracker.close();
+            }
+            long nanosPerDoc = watch.elapsed(TimeUnit.NANOSECONDS) / keys.size();
+            for (String key : keys) {
+                stats.doneFindUncached(nanosPerDoc, collection, key, docs.containsKey(key), isSlaveOk);
+            }
+        }
+    }
+
     @Nullable
     protected <T extends Document> T findUncached(Collection<T> collection, String key, DocumentReadPreference docReadPref) {
         log("findUncached", key, docReadPref);
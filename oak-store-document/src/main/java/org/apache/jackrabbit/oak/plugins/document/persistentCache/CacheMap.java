@@ -18,8 +18,7 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import java.util.Map;
 
-import org.h2.mvstore.MVMap;
-import org.h2.mvstore.MVMap.Builder;
+import org.h2.mvstore.type.DataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,16 +39,19 @@ public class CacheMap<K, V> {
 
     private final MapFactory factory;
     private final String name;
-    private final MVMap.Builder<K, V> builder;
+    private final DataType keyType;
+    private final DataType valueType;
     private int openCount;
     private volatile Map<K, V> map;
     private volatile boolean closed;
 
 
-    public CacheMap(MapFactory factory, String name, Builder<K, V> builder) {
+    public CacheMap(MapFactory factory, String name,
+                    DataType keyType, DataType valueType) {
         this.factory = factory;
         this.name = name;
-        this.builder = builder;
+        this.keyType = keyType;
+        this.valueType = valueType;
         openMap();
         // OAK-8051: if opening failed, immediately try to re-open,
         // until either the the map is closed, or open
@@ -145,7 +147,7 @@ public class CacheMap<K, V> {
 
     void openMap() {
         openCount = factory.reopenStoreIfNeeded(openCount);
-        Map<K, V> m2 = factory.openMap(name, builder);
+        Map<K, V> m2 = factory.openMap(name, keyType, valueType);
         if (m2 != null) {
             map = m2;
         }
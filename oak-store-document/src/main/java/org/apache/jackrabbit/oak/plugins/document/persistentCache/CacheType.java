@@ -30,6 +30,7 @@ import org.apache.jackrabbit.oak.plugins.document.PathRev;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
 import org.apache.jackrabbit.oak.plugins.document.util.RevisionsKey;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.StringDataType;
 
@@ -220,8 +221,16 @@ public enum CacheType {
 
         @Override
         public <V> void writeValue(WriteBuffer buffer, V value) {
-            String s = ((NodeDocument) value).asString();
-            StringDataType.INSTANCE.write(buffer, s);
+            NodeDocument doc = (NodeDocument) value;
+            if (BINARY_DOCUMENTS) {
+                // a negative length marks the binary format
+                byte[] data = doc.asBytes();
+                buffer.putVarInt(BINARY_MARKER);
+                buffer.putVarInt(data.length);
+                buffer.put(data);
+            } else {
+                StringDataType.INSTANCE.write(buffer, doc.asString());
+            }
         }
 
         @SuppressWarnings("unchecked")
@@ -229,7 +238,14 @@ public enum CacheType {
         public <V> V readValue(DocumentNodeStore store,
                                DocumentStore docStore,
                                ByteBuffer buffer) {
-            return (V) NodeDocument.fromString(docStore, readString(buffer));
+            int len = DataUtils.readVarInt(buffer);
+            if (len == BINARY_MARKER) {
+                byte[] data = new byte[DataUtils.readVarInt(buffer)];
+                buffer.get(data);
+                return (V) NodeDocument.fromBytes(docStore, data);
+            }
+            // JSON written by earlier versions or with the binary format disabled
+            return (V) NodeDocument.fromString(docStore, DataUtils.readString(buffer, len));
         }
 
         @Override
@@ -296,6 +312,20 @@ public enum CacheType {
             DocumentNodeStore store, DocumentStore docStore, ByteBuffer buffer);
     public abstract <K> boolean shouldCache(DocumentNodeStore store, K key);
 
+    /**
+     * Whether documents are written in the format of
+     * {@link org.apache.jackrabbit.oak.plugins.document.BinaryDocumentSerializer}.
+     * Disabled by default. Documents in JSON format can always be read.
+     */
+    static final boolean BINARY_DOCUMENTS = Boolean.getBoolean(
+            "oak.documentMK.persistentCache.binaryDocuments");
+
+    /**
+     * Written in place of the length of a JSON string before a binary
+     * serialized document. A string length is never negative.
+     */
+    private static final int BINARY_MARKER = -1;
+
     private static String readString(ByteBuffer buffer) {
         return StringDataType.INSTANCE.read(buffer);
     }
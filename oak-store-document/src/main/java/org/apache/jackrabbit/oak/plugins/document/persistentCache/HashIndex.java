@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent open addressing hash index from a 32 bit hash to the position
+ * of a record in a {@link SegmentMapFactory} file. Each slot is a single
+ * {@code long} with the hash in the upper and the position divided by
+ * {@link #ALIGNMENT} in the lower 32 bits. Slots are updated with
+ * compare-and-set, lookups and updates do not take a lock.
+ * <p>
+ * Entries are identified by their hash only. Two keys with the same hash
+ * share a slot, which means a lookup may return the position of a record
+ * with a different key. Callers must therefore verify the key of the record.
+ * An update only replaces a slot if the new position is higher than the
+ * current one, so the most recently appended record always wins, independent
+ * of the order in which concurrent updates are applied.
+ * <p>
+ * The index grows when it is half full. While the entries are copied to the
+ * new table, updates are applied to both tables.
+ */
+final class HashIndex {
+
+    /**
+     * The alignment of record positions.
+     */
+    static final int ALIGNMENT = 8;
+
+    /**
+     * The maximum position that can be indexed.
+     */
+    static final long MAX_POSITION = 0xffffffffL * ALIGNMENT;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private volatile AtomicLongArray table;
+
+    private volatile AtomicLongArray next;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    HashIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1) << 1);
+        this.table = new AtomicLongArray(Math.min(capacity, MAX_CAPACITY));
+    }
+
+    /**
+     * Returns the position of the most recent record with the given hash.
+     *
+     * @param hash the hash of the key.
+     * @return the position or zero if there is none.
+     */
+    long get(int hash) {
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        for (int i = 0, idx = hash & mask; i <= mask; i++, idx = (idx + 1) & mask) {
+            long slot = t.get(idx);
+            if (slot == 0) {
+                return 0;
+            } else if ((int) (slot >>> 32) == hash) {
+                return (slot & 0xffffffffL) * ALIGNMENT;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the position of the record with the given hash unless the index
+     * already contains a more recent record with the same hash.
+     *
+     * @param hash the hash of the key.
+     * @param position the position of the record. Must be a positive multiple
+     *          of {@link #ALIGNMENT} and at most {@link #MAX_POSITION}.
+     */
+    void put(int hash, long position) {
+        long slot = ((long) hash << 32) | (position / ALIGNMENT);
+        AtomicLongArray t = table;
+        boolean added = put(t, slot);
+        AtomicLongArray n = next;
+        if (n != null) {
+            put(n, slot);
+        }
+        AtomicLongArray current = table;
+        if (current != t && current != n) {
+            // the index grew in the meantime and the
+            // entry may have been copied before the update
+            put(current, slot);
+        }
+        if (added && size.incrementAndGet() > t.length() / 2) {
+            grow(t);
+        }
+    }
+
+    /**
+     * @return the number of distinct hashes in the index.
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of slots of the index.
+     */
+    int capacity() {
+        return table.length();
+    }
+
+    /**
+     * @return the estimated memory used by this index in bytes.
+     */
+    long getMemory() {
+        return 16 + 8L * table.length();
+    }
+
+    private static boolean put(AtomicLongArray t, long slot) {
+        int hash = (int) (slot >>> 32);
+        long position = slot & 0xffffffffL;
+        int mask = t.length() - 1;
+        for (int i = 0, idx = hash & mask; i <= mask; i++, idx = (idx + 1) & mask) {
+            long current = t.get(idx);
+            while (current == 0) {
+                if (t.compareAndSet(idx, 0, slot)) {
+                    return true;
+                }
+                current = t.get(idx);
+            }
+            if ((int) (current >>> 32) == hash) {
+                while ((current & 0xffffffffL) < position) {
+                    if (t.compareAndSet(idx, current, slot)) {
+                        break;
+                    }
+                    current = t.get(idx);
+                }
+                return false;
+            }
+        }
+        // the table is full
+        return false;
+    }
+
+    private synchronized void grow(AtomicLongArray t) {
+        if (table != t || t.length() >= MAX_CAPACITY) {
+            return;
+        }
+        AtomicLongArray n = new AtomicLongArray(t.length() * 2);
+        // from now on updates are also applied to the new table
+        next = n;
+        int count = 0;
+        for (int i = 0; i < t.length(); i++) {
+            long slot = t.get(i);
+            if (slot != 0 && put(n, slot)) {
+                count++;
+            }
+        }
+        table = n;
+        next = null;
+        size.set(count);
+    }
+}
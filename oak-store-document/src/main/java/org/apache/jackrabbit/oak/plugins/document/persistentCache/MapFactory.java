@@ -18,10 +18,15 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import java.util.Map;
 
-import org.h2.mvstore.MVMap;
+import org.h2.mvstore.type.DataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The storage backend of a persistent cache generation. A {@code MapFactory}
+ * manages the file of a single generation and provides the named maps stored
+ * in it. See {@link PersistentCache} for the available implementations.
+ */
 public abstract class MapFactory {
     
     static final Logger LOG = LoggerFactory.getLogger(MapFactory.class);
@@ -65,10 +70,11 @@ public abstract class MapFactory {
      * @param <K> the key type
      * @param <V> the value type
      * @param name the map name
-     * @param builder the map builder
-     * @return
+     * @param keyType the key type, or {@code null} for the default
+     * @param valueType the value type, or {@code null} for the default
+     * @return the map, or {@code null} if the map could not be opened
      */
-    abstract <K, V> Map<K, V> openMap(String name, MVMap.Builder<K, V> builder);
+    abstract <K, V> Map<K, V> openMap(String name, DataType keyType, DataType valueType);
     
     /**
      * Get the file size in bytes.
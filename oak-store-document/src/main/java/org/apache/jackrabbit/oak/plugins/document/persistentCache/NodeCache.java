@@ -40,7 +40,6 @@ import org.apache.jackrabbit.oak.plugins.document.persistentCache.async.CacheAct
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.async.CacheWriteQueue;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.TimerStats;
-import org.h2.mvstore.MVMap;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.DataType;
 import org.jetbrains.annotations.Nullable;
@@ -110,9 +109,8 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
     
     @Override
     public void addGeneration(int generation, boolean readOnly) {
-        MVMap.Builder<K, V> b = new MVMap.Builder<K, V>().
-                keyType(keyType).valueType(valueType);
-        CacheMap<K, V> m = cache.openMap(generation, type.getMapName(), b);
+        CacheMap<K, V> m = cache.openMap(generation, type.getMapName(),
+                keyType, valueType);
         map.addReadMap(generation, m);
         if (!readOnly) {
             map.setWriteMap(m);
@@ -386,6 +384,10 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
         return stats;
     }
 
+    Cache<K, V> getMemoryCache() {
+        return memCache;
+    }
+
     Map<K, V> getGenerationalMap() {
         return Collections.unmodifiableMap(map);
     }
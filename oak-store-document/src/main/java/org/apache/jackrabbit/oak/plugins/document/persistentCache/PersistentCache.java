@@ -38,10 +38,10 @@ import org.apache.jackrabbit.oak.plugins.document.persistentCache.broadcast.UDPB
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.h2.mvstore.FileStore;
 import org.h2.mvstore.MVMap;
-import org.h2.mvstore.MVMap.Builder;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreTool;
 import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +50,12 @@ import com.google.common.cache.Cache;
 
 /**
  * A persistent cache for the document store.
+ * <p>
+ * The storage engine of a cache generation is selected with the
+ * {@code engine} option. The default engine {@code mvstore} keeps the entries
+ * in an H2 {@link MVStore}. The engine {@code segment} appends the entries to
+ * a memory mapped file and looks them up with a lock-free hash index, see
+ * {@link SegmentMapFactory}.
  */
 public class PersistentCache implements Broadcaster.Listener {
     
@@ -58,6 +64,9 @@ public class PersistentCache implements Broadcaster.Listener {
     private static final String FILE_PREFIX = "cache-";
     private static final String FILE_SUFFIX = ".data";
     private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    static final String ENGINE_MVSTORE = "mvstore";
+    static final String ENGINE_SEGMENT = "segment";
     
     private boolean cacheNodes = true;
     private boolean cacheChildren = true;
@@ -68,6 +77,7 @@ public class PersistentCache implements Broadcaster.Listener {
     private boolean compress = true;
     private boolean asyncCache = true;
     private boolean asyncDiffCache = false;
+    private String engine = ENGINE_MVSTORE;
     private HashMap<CacheType, GenerationCache> caches = 
             new HashMap<CacheType, GenerationCache>();
     
@@ -146,8 +156,13 @@ public class PersistentCache implements Broadcaster.Listener {
                 asyncCache = false;
             } else if (p.equals("+asyncDiff")) {
                 asyncDiffCache = true;
+            } else if (p.startsWith("engine=")) {
+                engine = p.split("=")[1];
             }
         }
+        if (!ENGINE_MVSTORE.equals(engine) && !ENGINE_SEGMENT.equals(engine)) {
+            throw new IllegalArgumentException("Unknown persistent cache engine " + engine);
+        }
         this.directory = dir;
         if (dir.length() == 0) {
             readGeneration = -1;
@@ -249,6 +264,17 @@ public class PersistentCache implements Broadcaster.Listener {
     }
     
     private MapFactory createMapFactory(final int generation, final boolean readOnly) {
+        if (ENGINE_SEGMENT.equals(engine)) {
+            MapFactory f = new SegmentMapFactory(getFileName(generation), readOnly,
+                    SegmentMapFactory.DEFAULT_SEGMENT_SIZE) {
+                @Override
+                void exception(Exception e) {
+                    exceptionCount++;
+                }
+            };
+            f.openStore();
+            return f;
+        }
         MapFactory f = new MapFactory() {
             
             final String fileName = getFileName(generation);
@@ -332,11 +358,18 @@ public class PersistentCache implements Broadcaster.Listener {
             }
 
             @Override
-            <K, V> Map<K, V> openMap(String name, Builder<K, V> builder) {
+            <K, V> Map<K, V> openMap(String name, DataType keyType, DataType valueType) {
                 try {
-                    if (builder == null) {
+                    if (keyType == null && valueType == null) {
                         return store.openMap(name);
                     }
+                    MVMap.Builder<K, V> builder = new MVMap.Builder<K, V>();
+                    if (keyType != null) {
+                        builder.keyType(keyType);
+                    }
+                    if (valueType != null) {
+                        builder.valueType(valueType);
+                    }
                     return store.openMap(name, builder);
                 } catch (Exception e) {
                     exceptionCount++;
@@ -443,8 +476,8 @@ public class PersistentCache implements Broadcaster.Listener {
         c.addGeneration(writeGeneration, false);
     }
     
-    public synchronized <K, V> CacheMap<K, V> openMap(int generation, String name, 
-            MVMap.Builder<K, V> builder) {
+    public synchronized <K, V> CacheMap<K, V> openMap(int generation, String name,
+            DataType keyType, DataType valueType) {
         MapFactory s;
         if (generation == readGeneration) {
             s = readStore;
@@ -454,7 +487,7 @@ public class PersistentCache implements Broadcaster.Listener {
             exceptionCount++;
             throw new IllegalArgumentException("Unknown generation: " + generation);
         }
-        return new CacheMap<K, V>(s, name, builder);
+        return new CacheMap<K, V>(s, name, keyType, valueType);
     }
     
     public void switchGenerationIfNeeded() {
@@ -553,6 +586,21 @@ public class PersistentCache implements Broadcaster.Listener {
         }
     }
 
+    /**
+     * Get the in-memory cache of a cache that might be wrapped by the
+     * persistent cache.
+     *
+     * @param cache the cache
+     * @return the in-memory cache, or the given cache if it is not wrapped
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Cache<K, V> getMemoryCache(Cache<K, V> cache) {
+        if (cache instanceof NodeCache) {
+            return (Cache<K, V>) ((NodeCache<?, ?>) cache).getMemoryCache();
+        }
+        return cache;
+    }
+
     private void receiveMessage(ByteBuffer buff) {
         CacheType type = CacheType.VALUES[buff.get()];
         GenerationCache cache = caches.get(type);
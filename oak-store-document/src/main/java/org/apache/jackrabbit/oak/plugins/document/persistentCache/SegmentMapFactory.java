@@ -0,0 +1,613 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link MapFactory} that appends entries to a memory mapped file. The file
+ * is mapped in segments of a fixed size and a record never spans two
+ * segments. Writers reserve space for a record by advancing the write
+ * position with compare-and-set and then copy the record into the mapped
+ * segment. The position of the most recent record of a key is kept in a
+ * {@link HashIndex}. Neither reads nor writes take a lock, except when a new
+ * segment is mapped.
+ * <p>
+ * Entries are never updated in place. Removing an entry or clearing a map
+ * appends a record as well. The file is not compacted, instead
+ * {@link PersistentCache} starts a new generation when the file exceeds the
+ * maximum size.
+ * <p>
+ * When the file is opened, the records are read to rebuild the index. Reading
+ * stops at the first record with an invalid checksum, which may be the result
+ * of a crash while the file was written.
+ */
+class SegmentMapFactory extends MapFactory {
+
+    static final Logger LOG = LoggerFactory.getLogger(SegmentMapFactory.class);
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * "OakPCSeg"
+     */
+    private static final long MAGIC = 0x4f616b5043536567L;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The file header: magic (8), version (4), segment size (4).
+     */
+    private static final int FILE_HEADER_LENGTH = 16;
+
+    /**
+     * The record header: length (4), checksum (4), map id (4), type (1),
+     * key length (4). The checksum covers the record after the checksum.
+     */
+    private static final int RECORD_HEADER_LENGTH = 17;
+
+    private static final byte TYPE_PUT = 1;
+
+    private static final byte TYPE_REMOVE = 2;
+
+    private static final byte TYPE_MAP = 3;
+
+    private static final DataType DEFAULT_TYPE = new ObjectDataType();
+
+    private static final ThreadLocal<WriteBuffer> WRITE_BUFFER = new ThreadLocal<WriteBuffer>();
+
+    private final String fileName;
+
+    private final boolean readOnly;
+
+    private final int segmentSize;
+
+    private volatile Store store;
+
+    /**
+     * @param fileName the file name, or {@code null} to keep the data in
+     *          memory.
+     * @param readOnly whether the file is opened read-only.
+     * @param segmentSize the size of a segment of a new file. An existing
+     *          file keeps the segment size it was created with.
+     */
+    SegmentMapFactory(String fileName, boolean readOnly, int segmentSize) {
+        this.fileName = fileName;
+        this.readOnly = readOnly;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Called when an operation on the store fails.
+     *
+     * @param e the exception.
+     */
+    void exception(Exception e) {
+    }
+
+    @Override
+    synchronized void openStore() {
+        if (store != null) {
+            return;
+        }
+        try {
+            store = new Store();
+        } catch (Exception e) {
+            exception(e);
+            LOG.warn("Could not open the store " + fileName, e);
+        }
+    }
+
+    @Override
+    synchronized void closeStore() {
+        Store s = store;
+        if (s == null) {
+            return;
+        }
+        store = null;
+        try {
+            // clear the interrupted flag, if set
+            Thread.interrupted();
+            s.close();
+        } catch (Exception e) {
+            exception(e);
+            LOG.debug("Could not close the store", e);
+            LOG.warn("Could not close the store: " + e);
+        }
+    }
+
+    @Override
+    <K, V> Map<K, V> openMap(String name, DataType keyType, DataType valueType) {
+        Store s = store;
+        if (s == null) {
+            return null;
+        }
+        try {
+            return s.openMap(name,
+                    keyType == null ? DEFAULT_TYPE : keyType,
+                    valueType == null ? DEFAULT_TYPE : valueType);
+        } catch (Exception e) {
+            exception(e);
+            LOG.warn("Could not open the map", e);
+            return null;
+        }
+    }
+
+    @Override
+    long getFileSize() {
+        Store s = store;
+        return s == null ? 0 : s.writePosition.get();
+    }
+
+    /**
+     * @return the number of keys in the index or zero if the store is closed.
+     */
+    int getIndexSize() {
+        Store s = store;
+        return s == null ? 0 : s.index.size();
+    }
+
+    static int hash(int mapId, byte[] key) {
+        int h = mapId * 0x9e3779b9;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        // finalization step of MurmurHash3
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int align(int length) {
+        return (length + HashIndex.ALIGNMENT - 1) & -HashIndex.ALIGNMENT;
+    }
+
+    private static byte[] encode(DataType type, Object obj) {
+        WriteBuffer buff = WRITE_BUFFER.get();
+        if (buff == null) {
+            buff = new WriteBuffer();
+            WRITE_BUFFER.set(buff);
+        }
+        buff.clear();
+        type.write(buff, obj);
+        ByteBuffer b = buff.getBuffer();
+        byte[] data = new byte[b.position()];
+        ((Buffer) b).flip();
+        b.get(data);
+        return data;
+    }
+
+    /**
+     * The state of an open file.
+     */
+    private final class Store {
+
+        private final RandomAccessFile file;
+
+        private final FileChannel channel;
+
+        private final int segmentSize;
+
+        private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+        private final AtomicLong writePosition = new AtomicLong(FILE_HEADER_LENGTH);
+
+        private final HashIndex index = new HashIndex(1024);
+
+        private final ConcurrentMap<String, Integer> mapIds = new ConcurrentHashMap<String, Integer>();
+
+        private final ConcurrentMap<String, SegmentMap<?, ?>> maps = new ConcurrentHashMap<String, SegmentMap<?, ?>>();
+
+        private final AtomicInteger nextMapId = new AtomicInteger(1);
+
+        private volatile boolean closed;
+
+        Store() throws IOException {
+            if (fileName == null) {
+                file = null;
+                channel = null;
+                segmentSize = SegmentMapFactory.this.segmentSize;
+                return;
+            }
+            if (readOnly && !new File(fileName).exists()) {
+                throw new IOException("File not found: " + fileName);
+            }
+            file = new RandomAccessFile(fileName, readOnly ? "r" : "rw");
+            channel = file.getChannel();
+            try {
+                int size = readHeader();
+                if (size == 0 && !readOnly) {
+                    LOG.info("Initializing cache file {}", fileName);
+                    size = SegmentMapFactory.this.segmentSize;
+                    channel.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+                    header.putLong(MAGIC).putInt(VERSION).putInt(size);
+                    ((Buffer) header).flip();
+                    channel.write(header, 0);
+                }
+                segmentSize = size;
+                if (segmentSize > 0) {
+                    recover();
+                }
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            } catch (RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the segment size of the file or zero if the file does not
+         *          have a valid header.
+         */
+        private int readHeader() throws IOException {
+            if (channel.size() < FILE_HEADER_LENGTH) {
+                return 0;
+            }
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH);
+            channel.read(header, 0);
+            ((Buffer) header).flip();
+            long magic = header.getLong();
+            int version = header.getInt();
+            int size = header.getInt();
+            if (magic != MAGIC || version != VERSION
+                    || size < FILE_HEADER_LENGTH || size % HashIndex.ALIGNMENT != 0) {
+                LOG.info("Discarding cache file {} with unknown format", fileName);
+                return 0;
+            }
+            return size;
+        }
+
+        private void recover() throws IOException {
+            long length = channel.size();
+            long pos = FILE_HEADER_LENGTH;
+            long end = pos;
+            CRC32 crc = new CRC32();
+            while (pos < length) {
+                int segment = (int) (pos / segmentSize);
+                int offset = (int) (pos % segmentSize);
+                ByteBuffer buff = segment(segment).duplicate();
+                int recordLength = offset + 4 <= buff.limit() ? buff.getInt(offset) : 0;
+                if (recordLength == 0) {
+                    // remaining space of the segment is unused
+                    pos = (segment + 1L) * segmentSize;
+                    continue;
+                }
+                if (recordLength < RECORD_HEADER_LENGTH
+                        || offset + recordLength > buff.limit()) {
+                    break;
+                }
+                ((Buffer) buff).limit(offset + recordLength);
+                ((Buffer) buff).position(offset + 8);
+                crc.reset();
+                crc.update(buff);
+                if ((int) crc.getValue() != buff.getInt(offset + 4)) {
+                    break;
+                }
+                ((Buffer) buff).position(offset + 8);
+                int mapId = buff.getInt();
+                byte type = buff.get();
+                byte[] key = new byte[buff.getInt()];
+                buff.get(key);
+                if (type == TYPE_MAP) {
+                    mapIds.put(new String(key, StandardCharsets.UTF_8), mapId);
+                    if (mapId >= nextMapId.get()) {
+                        nextMapId.set(mapId + 1);
+                    }
+                } else {
+                    index.put(hash(mapId, key), pos);
+                }
+                pos += align(recordLength);
+                end = pos;
+            }
+            writePosition.set(end);
+            if (end < length && !readOnly) {
+                // clear the remaining data, otherwise records written
+                // before a crash may later be read again
+                byte[] zero = new byte[64 * 1024];
+                for (long p = end; p < length; ) {
+                    int segment = (int) (p / segmentSize);
+                    int offset = (int) (p % segmentSize);
+                    int len = (int) Math.min(Math.min(zero.length, segmentSize - offset), length - p);
+                    ByteBuffer buff = segment(segment).duplicate();
+                    ((Buffer) buff).position(offset);
+                    buff.put(zero, 0, len);
+                    p += len;
+                }
+            }
+            LOG.info("Opened cache file {} with {} entries and {} bytes",
+                    fileName, index.size(), end);
+        }
+
+        <K, V> SegmentMap<K, V> openMap(String name,
+                                        DataType keyType,
+                                        DataType valueType) {
+            checkOpen();
+            SegmentMap<?, ?> map = maps.get(name);
+            if (map == null) {
+                Integer id = mapIds.get(name);
+                if (id == null) {
+                    id = newMapId(name);
+                }
+                SegmentMap<K, V> m = new SegmentMap<K, V>(this, name, id, keyType, valueType);
+                map = maps.putIfAbsent(name, m);
+                if (map == null) {
+                    map = m;
+                }
+            }
+            @SuppressWarnings("unchecked")
+            SegmentMap<K, V> m = (SegmentMap<K, V>) map;
+            return m;
+        }
+
+        int newMapId(String name) {
+            int id = nextMapId.getAndIncrement();
+            append(TYPE_MAP, id, name.getBytes(StandardCharsets.UTF_8), null);
+            mapIds.put(name, id);
+            return id;
+        }
+
+        void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("This store is closed");
+            }
+        }
+
+        /**
+         * Appends a record.
+         *
+         * @return the position of the record, or zero if the record was not
+         *          written.
+         */
+        long append(byte type, int mapId, byte[] key, byte[] value) {
+            checkOpen();
+            if (readOnly) {
+                return 0;
+            }
+            int valueLength = value == null ? 0 : value.length;
+            int recordLength = RECORD_HEADER_LENGTH + key.length + valueLength;
+            byte[] record = new byte[recordLength];
+            ByteBuffer buff = ByteBuffer.wrap(record);
+            buff.putInt(recordLength).putInt(0).putInt(mapId).put(type).putInt(key.length).put(key);
+            if (value != null) {
+                buff.put(value);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(record, 8, recordLength - 8);
+            buff.putInt(4, (int) crc.getValue());
+
+            long pos = reserve(align(recordLength));
+            if (pos == 0) {
+                return 0;
+            }
+            ByteBuffer target = segment((int) (pos / segmentSize)).duplicate();
+            ((Buffer) target).position((int) (pos % segmentSize));
+            target.put(record);
+            return pos;
+        }
+
+        /**
+         * Reserves space for a record. A record that does not fit into the
+         * current segment starts at the next segment.
+         *
+         * @return the position or zero if the record is too large.
+         */
+        private long reserve(int length) {
+            if (length > segmentSize) {
+                return 0;
+            }
+            for (;;) {
+                long pos = writePosition.get();
+                long start = pos;
+                long segmentEnd = (pos / segmentSize + 1) * segmentSize;
+                if (start + length > segmentEnd) {
+                    start = segmentEnd;
+                }
+                if (start + length > HashIndex.MAX_POSITION) {
+                    return 0;
+                }
+                if (writePosition.compareAndSet(pos, start + length)) {
+                    return start;
+                }
+            }
+        }
+
+        private ByteBuffer segment(int segment) {
+            ByteBuffer[] s = segments;
+            if (segment < s.length) {
+                return s[segment];
+            }
+            return mapSegment(segment);
+        }
+
+        private synchronized ByteBuffer mapSegment(int segment) {
+            ByteBuffer[] s = segments;
+            if (segment < s.length) {
+                return s[segment];
+            }
+            s = Arrays.copyOf(s, segment + 1);
+            try {
+                for (int i = segments.length; i <= segment; i++) {
+                    if (channel == null) {
+                        s[i] = ByteBuffer.allocateDirect(segmentSize);
+                    } else if (readOnly) {
+                        // a read-only file cannot be extended
+                        long start = (long) i * segmentSize;
+                        long size = Math.max(0, Math.min(segmentSize, channel.size() - start));
+                        s[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                    } else {
+                        s[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                (long) i * segmentSize, segmentSize);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not map segment " + segment
+                        + " of " + fileName, e);
+            }
+            segments = s;
+            return s[segment];
+        }
+
+        /**
+         * Reads the value of the record at the given position.
+         *
+         * @return a buffer positioned at the value of the record, or
+         *          {@code null} if the record does not contain a value for
+         *          the given key.
+         */
+        ByteBuffer read(long pos, int mapId, byte[] key) {
+            int offset = (int) (pos % segmentSize);
+            ByteBuffer buff = segment((int) (pos / segmentSize)).duplicate();
+            ((Buffer) buff).limit(offset + buff.getInt(offset));
+            ((Buffer) buff).position(offset + 8);
+            if (buff.getInt() != mapId) {
+                return null;
+            }
+            byte type = buff.get();
+            if (buff.getInt() != key.length) {
+                return null;
+            }
+            for (byte b : key) {
+                if (buff.get() != b) {
+                    return null;
+                }
+            }
+            return type == TYPE_PUT ? buff : null;
+        }
+
+        void close() throws IOException {
+            closed = true;
+            if (channel == null) {
+                return;
+            }
+            try {
+                if (!readOnly) {
+                    for (ByteBuffer b : segments) {
+                        ((MappedByteBuffer) b).force();
+                    }
+                }
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * A map stored in a {@link SegmentMapFactory} file. The methods
+     * {@link #put(Object, Object)} and {@link #remove(Object)} do not return
+     * the previous value and always return {@code null}.
+     */
+    private static final class SegmentMap<K, V> extends AbstractMap<K, V> {
+
+        private final Store store;
+
+        private final String name;
+
+        private final DataType keyType;
+
+        private final DataType valueType;
+
+        private volatile int mapId;
+
+        SegmentMap(Store store, String name, int mapId,
+                   DataType keyType, DataType valueType) {
+            this.store = store;
+            this.name = name;
+            this.mapId = mapId;
+            this.keyType = keyType;
+            this.valueType = valueType;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(Object key) {
+            store.checkOpen();
+            int id = mapId;
+            byte[] k = encode(keyType, key);
+            long pos = store.index.get(hash(id, k));
+            if (pos == 0) {
+                return null;
+            }
+            ByteBuffer value = store.read(pos, id, k);
+            return value == null ? null : (V) valueType.read(value);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            write(key, encode(valueType, value));
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            write(key, null);
+            return null;
+        }
+
+        @Override
+        public void clear() {
+            // entries of the previous map id become unreachable
+            mapId = store.newMapId(name);
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void write(Object key, byte[] value) {
+            int id = mapId;
+            byte[] k = encode(keyType, key);
+            long pos = store.append(value == null ? TYPE_REMOVE : TYPE_PUT, id, k, value);
+            if (pos != 0) {
+                store.index.put(hash(id, k), pos);
+            }
+        }
+    }
+}
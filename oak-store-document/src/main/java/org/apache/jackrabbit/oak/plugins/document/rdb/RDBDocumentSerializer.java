@@ -24,6 +24,7 @@ import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJSONSupport.appe
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +35,7 @@ import java.util.zip.GZIPInputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.plugins.document.BinaryDocumentSerializer;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
@@ -140,6 +142,21 @@ public class RDBDocumentSerializer {
         return sb.append("]").toString();
     }
 
+    /**
+     * Serializes all non-column properties of the {@link Document} for the
+     * BDATA column. Depending on configuration this is the GZIPped JSON
+     * serialization (passed in as {@code json}) or the binary serialization
+     * of {@link BinaryDocumentSerializer}.
+     */
+    @NotNull
+    public byte[] asBytes(@NotNull Document doc, Set<String> columnProperties, @NotNull String json) {
+        if (RDBDocumentStore.BINARYBDATA) {
+            return BinaryDocumentSerializer.toBytes(doc, columnProperties);
+        } else {
+            return RDBDocumentStore.asBytes(json);
+        }
+    }
+
     /**
      * Reconstructs a {@link Document} based on the persisted {@link RDBRow}.
      */
@@ -183,15 +200,19 @@ public class RDBDocumentSerializer {
         // update operations
         try {
             if (bdata != null && bdata.length != 0) {
-                String s = fromBlobData(bdata);
-                json = new JsopTokenizer(s);
-                json.read('{');
-                readDocumentFromJson(json, doc);
-                json.read(JsopReader.END);
+                byte[] data = fromBlobData(bdata);
+                if (BinaryDocumentSerializer.isBinary(data)) {
+                    BinaryDocumentSerializer.fromBytes(data, doc);
+                } else {
+                    json = new JsopTokenizer(new String(data, StandardCharsets.UTF_8));
+                    json.read('{');
+                    readDocumentFromJson(json, doc);
+                    json.read(JsopReader.END);
+                }
                 blobInUse = true;
             }
         } catch (Exception ex) {
-            throw asDocumentStoreException(ex, "parsing blob data as JSON");
+            throw asDocumentStoreException(ex, "parsing blob data");
         }
 
         json = new JsopTokenizer(charData);
@@ -339,15 +360,15 @@ public class RDBDocumentSerializer {
 
     private static byte[] GZIPSIG = { 31, -117 };
 
-    private static String fromBlobData(byte[] bdata) {
+    private static byte[] fromBlobData(byte[] bdata) {
         try {
             if (bdata.length >= 2 && bdata[0] == GZIPSIG[0] && bdata[1] == GZIPSIG[1]) {
                 // GZIP
                 try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(bdata), 65536)) {
-                    return IOUtils.toString(gis, "UTF-8");
+                    return IOUtils.toByteArray(gis);
                 }
             } else {
-                return IOUtils.toString(bdata, "UTF-8");
+                return bdata;
             }
         } catch (IOException ex) {
             LOG.debug("Unexpected exception while processing blob data", ex);
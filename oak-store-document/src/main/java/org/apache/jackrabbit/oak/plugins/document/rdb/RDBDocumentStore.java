@@ -45,6 +45,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -280,6 +281,54 @@ public class RDBDocumentStore implements DocumentStore {
         return readDocumentCached(collection, id, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> find(Collection<T> collection, java.util.Collection<String> keys) {
+        Set<String> uniqueKeys = new LinkedHashSet<String>(keys);
+        Map<String, T> documents = new HashMap<String, T>();
+        Set<String> documentsToRead = new HashSet<String>();
+
+        for (String key : uniqueKeys) {
+            NodeDocument cached = collection == Collection.NODES ? nodesCache.getIfPresent(key) : null;
+            if (cached != null) {
+                stats.doneFindCached(collection, key);
+                if (cached != NodeDocument.NULL) {
+                    documents.put(key, castAsT(cached));
+                }
+            } else {
+                documentsToRead.add(key);
+            }
+        }
+
+        if (!documentsToRead.isEmpty()) {
+            final Stopwatch watch = startWatch();
+            Map<String, T> readDocuments;
+            try (CacheChangesTracker tracker = obtainTracker(collection, documentsToRead)) {
+                readDocuments = readDocumentsUncached(collection, documentsToRead);
+                for (T doc : readDocuments.values()) {
+                    doc.seal();
+                }
+                if (collection == Collection.NODES) {
+                    nodesCache.putNonConflictingDocs(tracker, castAsNodeDocumentList(new ArrayList<T>(readDocuments.values())));
+                }
+            }
+            documents.putAll(readDocuments);
+            long nanosPerDoc = watch.elapsed(TimeUnit.NANOSECONDS) / documentsToRead.size();
+            for (String key : documentsToRead) {
+                stats.doneFindUncached(nanosPerDoc, collection, key, readDocuments.containsKey(key), false);
+            }
+        }
+
+        List<T> result = new ArrayList<T>(documents.size());
+        for (String key : uniqueKeys) {
+            T doc = documents.get(key);
+            if (doc != null) {
+                result.add(doc);
+            }
+        }
+        return result;
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection, String fromKey, String toKey, int limit) {
@@ -541,7 +590,9 @@ public class RDBDocumentStore implements DocumentStore {
         oldDocs.putAll(freshDocs);
 
         try (CacheChangesTracker tracker = obtainTracker(collection, Sets.union(oldDocs.keySet(), missingDocs) )) {
+            RDBTableMetaData tmd = getTable(collection);
             List<T> docsToUpdate = new ArrayList<T>(updates.size());
+            Map<String, String> appendData = new HashMap<String, String>();
             Set<String> keysToUpdate = new HashSet<String>();
             for (UpdateOp update : updates) {
                 String id = update.getId();
@@ -555,17 +606,27 @@ public class RDBDocumentStore implements DocumentStore {
                     // only create if updateOp allows it
                     docsToUpdate.add(modifiedDoc);
                 }
+                // same rules as in updateDocument(): every 16th update is a
+                // full rewrite
+                Long modcount = (Long) modifiedDoc.get(MODCOUNT);
+                if (oldDoc != null && isAppendableUpdate(update) && modcount % 16 != 0) {
+                    String data = ser.asString(update, tmd.getColumnOnlyProperties());
+                    if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
+                        appendData.put(id, data);
+                    }
+                }
                 keysToUpdate.add(id);
             }
 
             Connection connection = null;
-            RDBTableMetaData tmd = getTable(collection);
             try {
+                Stopwatch watch = startWatch();
                 connection = this.ch.getRWConnection();
-                Set<String> successfulUpdates = db.update(connection, tmd, docsToUpdate, upsert);
+                Set<String> successfulUpdates = db.update(connection, tmd, docsToUpdate, appendData, upsert);
                 connection.commit();
 
                 Set<String> failedUpdates = Sets.difference(keysToUpdate, successfulUpdates);
+                stats.doneBulkUpdate(watch.elapsed(TimeUnit.NANOSECONDS), collection, keysToUpdate.size(), failedUpdates.size());
                 oldDocs.keySet().removeAll(failedUpdates);
 
                 if (LOG.isTraceEnabled()) {
@@ -2090,7 +2151,7 @@ public class RDBDocumentStore implements DocumentStore {
                 data = ser.asString(document, tmd.getColumnOnlyProperties());
                 Object m = document.get(MODIFIED);
                 long modified = (m instanceof Long) ? ((Long)m).longValue() : 0;
-                success = db.update(connection, tmd, document.getId(), modified, hasBinary, deletedOnce, modcount, cmodcount,
+                success = db.update(connection, tmd, document, modified, hasBinary, deletedOnce, modcount, cmodcount,
                         oldmodcount, data);
                 connection.commit();
             }
@@ -2191,6 +2252,10 @@ public class RDBDocumentStore implements DocumentStore {
     // Whether to use GZIP compression
     private static final boolean NOGZIP = Boolean
             .getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOGZIP");
+    // Whether to write the BDATA column in the binary document format instead of JSON
+    // (reading supports both formats regardless of this setting)
+    static final boolean BINARYBDATA = Boolean
+            .getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BINARYBDATA");
     // Whether to use append operations (string concatenation) in the DATA column
     private static final boolean NOAPPEND = Boolean
             .getBoolean("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOAPPEND");
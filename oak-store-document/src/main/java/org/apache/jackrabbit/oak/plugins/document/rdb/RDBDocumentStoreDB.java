@@ -37,6 +37,7 @@ import java.util.TreeSet;
 
 import org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.PreparedStatementComponent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -160,6 +161,11 @@ public enum RDBDocumentStoreDB {
             return "select extract(epoch from now())::integer";
         }
 
+        @Override
+        public String getInsertIgnoringConflictsClause() {
+            return "on conflict (ID) do nothing";
+        }
+
         @Override
         public String getTableCreationStatement(String tableName, int schema) {
             return ("create table " + tableName
@@ -860,6 +866,19 @@ public enum RDBDocumentStoreDB {
         };
     }
 
+    /**
+     * Clause appended to an insert statement so that rows with an already
+     * existing ID are skipped instead of failing the statement. This is used
+     * by batched upserts, where a duplicate key would otherwise abort the
+     * remainder of the batch on some databases.
+     *
+     * @return the clause, or {@code null} when the database does not support
+     *         it (in which case duplicates are reported as failed inserts)
+     */
+    public @Nullable String getInsertIgnoringConflictsClause() {
+        return null;
+    }
+
     /**
      * Query for any required initialization of the DB.
      * 
@@ -19,7 +19,6 @@ package org.apache.jackrabbit.oak.plugins.document.rdb;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Sets.newHashSet;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHAR2OCTETRATIO;
-import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.asBytes;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.asDocumentStoreException;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.closeResultSet;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.closeStatement;
@@ -250,7 +249,28 @@ public class RDBDocumentStoreJDBC {
     }
 
     public <T extends Document> Set<String> insert(Connection connection, RDBTableMetaData tmd, List<T> documents) throws SQLException {
+        return insert(connection, tmd, documents, false);
+    }
+
+    /**
+     * Insert a list of documents using a JDBC batch.
+     * <p>
+     * If {@code ignoreConflicts} is set and the database supports it (see
+     * {@link RDBDocumentStoreDB#getInsertIgnoringConflictsClause()}), rows
+     * that already exist are skipped by the database instead of failing the
+     * batch. Either way they are not contained in the result.
+     *
+     * @param connection JDBC connection
+     * @param tmd Table metadata
+     * @param documents List of documents to insert
+     * @param ignoreConflicts skip existing rows if supported
+     * @return set containing ids of successfully inserted documents
+     * @throws SQLException
+     */
+    public <T extends Document> Set<String> insert(Connection connection, RDBTableMetaData tmd, List<T> documents,
+            boolean ignoreConflicts) throws SQLException {
         int actualSchema = tmd.hasSplitDocs() ? 2 : 1;
+        String conflictClause = ignoreConflicts ? this.dbInfo.getInsertIgnoringConflictsClause() : null;
         PreparedStatement stmt = connection.prepareStatement(
                 "insert into " + tmd.getName() + "(ID, MODIFIED, HASBINARY, DELETEDONCE, MODCOUNT, CMODCOUNT, DSIZE, "
                         + (tmd.hasVersion() ? "VERSION, " : "") 
@@ -258,7 +278,8 @@ public class RDBDocumentStoreJDBC {
                         + "DATA, BDATA) " + "values (?, ?, ?, ?, ?, ?, ?, "
                         + (tmd.hasVersion() ? (" " + actualSchema + ", ") : "")
                         + (tmd.hasSplitDocs() ? "?, ?, " : "")
-                        + "?, ?)");
+                        + "?, ?)"
+                        + (conflictClause != null ? (" " + conflictClause) : ""));
 
         List<T> sortedDocs = sortDocuments(documents);
         int[] results;
@@ -287,7 +308,7 @@ public class RDBDocumentStoreJDBC {
                     stmt.setBinaryStream(si++, null, 0);
                 } else {
                     stmt.setString(si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
+                    byte[] bytes = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), data);
                     stmt.setBytes(si++, bytes);
                 }
                 stmt.addBatch();
@@ -332,8 +353,156 @@ public class RDBDocumentStoreJDBC {
      */
     public <T extends Document> Set<String> update(Connection connection, RDBTableMetaData tmd, List<T> documents, boolean upsert)
             throws SQLException {
+        return update(connection, tmd, documents, Collections.<String, String>emptyMap(), upsert);
+    }
+
+    /**
+     * Update a list of documents using JDBC batches, like
+     * {@link #update(Connection, RDBTableMetaData, List, boolean)}.
+     * <p>
+     * Documents with an entry in {@code appendData} are updated by appending
+     * the serialized changes to the DATA column instead of rewriting it, in a
+     * separate batch. If that batch fails as a whole (for instance because
+     * the DATA column would overflow), it is rolled back and these documents
+     * are rewritten like all others. New documents are inserted with a clause
+     * that skips already existing rows where the database supports one.
+     *
+     * @param connection JDBC connection
+     * @param tmd Table metadata
+     * @param documents List of documents to update
+     * @param appendData serialized changes by document id, for documents which
+     *            may be updated by appending
+     * @param upsert Insert new documents
+     * @return set containing ids of successfully updated documents
+     * @throws SQLException
+     */
+    public <T extends Document> Set<String> update(Connection connection, RDBTableMetaData tmd, List<T> documents,
+            Map<String, String> appendData, boolean upsert) throws SQLException {
         assertNoDuplicatedIds(documents);
 
+        long pstart = PERFLOG.start();
+        Set<String> successfulUpdates = new HashSet<String>();
+        List<T> toBeAppended = new ArrayList<T>();
+        List<T> toBeRewritten = new ArrayList<T>();
+        List<T> toBeInserted = new ArrayList<T>();
+        for (T document : sortDocuments(documents)) {
+            if (INITIALMODCOUNT.equals(document.get(MODCOUNT))) {
+                // This is a new document. We'll deal with the inserts later.
+                toBeInserted.add(document);
+            } else if (appendData.containsKey(document.getId())) {
+                toBeAppended.add(document);
+            } else {
+                toBeRewritten.add(document);
+            }
+        }
+
+        int appended = 0;
+        if (!toBeAppended.isEmpty()) {
+            Set<String> appendedKeys = appendingUpdate(connection, tmd, toBeAppended, appendData);
+            if (appendedKeys == null) {
+                toBeRewritten = sortDocuments(Lists.newArrayList(Iterables.concat(toBeRewritten, toBeAppended)));
+            } else {
+                appended = appendedKeys.size();
+                successfulUpdates.addAll(appendedKeys);
+            }
+        }
+
+        if (!toBeRewritten.isEmpty()) {
+            successfulUpdates.addAll(rewritingUpdate(connection, tmd, toBeRewritten));
+        }
+
+        if (upsert && !toBeInserted.isEmpty()) {
+            successfulUpdates.addAll(insert(connection, tmd, toBeInserted, true));
+        }
+
+        PERFLOG.end(pstart, 10, "update: table={}, documents={}, appended={}, rewritten={}, inserted={}, succeeded={}",
+                tmd.getName(), documents.size(), appended, toBeRewritten.size(), upsert ? toBeInserted.size() : 0,
+                successfulUpdates.size());
+        return successfulUpdates;
+    }
+
+    /**
+     * Appends serialized changes to the DATA column of existing documents in a
+     * single JDBC batch.
+     *
+     * @return the ids of the updated documents, or {@code null} if the batch
+     *         failed and was rolled back
+     */
+    @Nullable
+    private <T extends Document> Set<String> appendingUpdate(Connection connection, RDBTableMetaData tmd, List<T> documents,
+            Map<String, String> appendData) throws SQLException {
+        List<String> updatedKeys = new ArrayList<String>();
+        List<Long> modCounts = new ArrayList<Long>();
+        int[] batchResults;
+
+        PreparedStatement stmt = null;
+        try {
+            for (T document : documents) {
+                String appendDataWithComma = "," + appendData.get(document.getId());
+                // the statement component does not depend on the data to append
+                PreparedStatementComponent stringAppend = this.dbInfo.getConcatQuery(appendDataWithComma,
+                        tmd.getDataLimitInOctets());
+                if (stmt == null) {
+                    stmt = connection.prepareStatement("update " + tmd.getName()
+                            + " set MODIFIED = ?, HASBINARY = ?, DELETEDONCE = ?, MODCOUNT = ?, CMODCOUNT = ?, DSIZE = DSIZE + ?, "
+                            + (tmd.hasVersion() ? ("VERSION = " + SCHEMAVERSION + ", ") : "")
+                            + "DATA = " + stringAppend.getStatementComponent() + " where ID = ? and MODCOUNT = ?");
+                }
+
+                Long modcount = (Long) document.get(MODCOUNT);
+                Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
+                Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
+                Long cmodcount = (Long) document.get(COLLISIONSMODCOUNT);
+
+                int si = 1;
+                stmt.setObject(si++, document.get(MODIFIED), Types.BIGINT);
+                stmt.setObject(si++, hasBinaryAsNullOrInteger(hasBinary), Types.SMALLINT);
+                stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
+                stmt.setObject(si++, modcount, Types.BIGINT);
+                stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
+                stmt.setObject(si++, appendDataWithComma.length(), Types.BIGINT);
+                si = stringAppend.setParameters(stmt, si);
+                setIdInStatement(tmd, stmt, si++, document.getId());
+                stmt.setObject(si++, modcount - 1, Types.BIGINT);
+                stmt.addBatch();
+                updatedKeys.add(document.getId());
+                modCounts.add(modcount);
+            }
+            batchResults = stmt.executeBatch();
+            connection.commit();
+        } catch (BatchUpdateException ex) {
+            // likely an overflow of the DATA column; some databases abort the
+            // transaction in this case, so undo everything and let the caller
+            // rewrite the documents instead
+            LOG.debug("Batched append update failed for " + tmd.getName() + ", falling back to rewrite", ex);
+            connection.rollback();
+            return null;
+        } finally {
+            closeStatement(stmt);
+        }
+
+        traceBatchResult(tmd, updatedKeys, modCounts, batchResults);
+
+        Set<String> successfulUpdates = new HashSet<String>();
+        for (int i = 0; i < batchResults.length; i++) {
+            int result = batchResults[i];
+            if (result == 1 || result == Statement.SUCCESS_NO_INFO) {
+                successfulUpdates.add(updatedKeys.get(i));
+            } else {
+                LOG.debug("DB append update failed for {}/{} with oldmodcount={}", tmd.getName(), updatedKeys.get(i),
+                        modCounts.get(i) - 1);
+            }
+        }
+        return successfulUpdates;
+    }
+
+    /**
+     * Rewrites the complete DATA of existing documents in a single JDBC batch.
+     *
+     * @return the ids of the updated documents
+     */
+    private <T extends Document> Set<String> rewritingUpdate(Connection connection, RDBTableMetaData tmd, List<T> documents)
+            throws SQLException {
         Set<String> successfulUpdates = new HashSet<String>();
         List<String> updatedKeys = new ArrayList<String>();
         List<Long> modCounts = LOG.isTraceEnabled() ? new ArrayList<>() : null;
@@ -343,13 +512,8 @@ public class RDBDocumentStoreJDBC {
                 + " set MODIFIED = ?, HASBINARY = ?, DELETEDONCE = ?, MODCOUNT = ?, CMODCOUNT = ?, DSIZE = ?, DATA = ?, "
                 + (tmd.hasVersion() ? (" VERSION = " + SCHEMAVERSION + ", ") : "") + "BDATA = ? where ID = ? and MODCOUNT = ?");
         try {
-            boolean batchIsEmpty = true;
-            for (T document : sortDocuments(documents)) {
+            for (T document : documents) {
                 Long modcount = (Long) document.get(MODCOUNT);
-                if (INITIALMODCOUNT.equals(modcount)) {
-                    continue; // This is a new document. We'll deal with the inserts later.
-                }
-
                 String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
@@ -368,7 +532,7 @@ public class RDBDocumentStoreJDBC {
                     stmt.setBinaryStream(si++, null, 0);
                 } else {
                     stmt.setString(si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
+                    byte[] bytes = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), data);
                     stmt.setBytes(si++, bytes);
                 }
 
@@ -379,13 +543,9 @@ public class RDBDocumentStoreJDBC {
                 if (modCounts != null) {
                     modCounts.add(modcount);
                 }
-
-                batchIsEmpty = false;
-            }
-            if (!batchIsEmpty) {
-                batchResults = stmt.executeBatch();
-                connection.commit();
             }
+            batchResults = stmt.executeBatch();
+            connection.commit();
         } catch (BatchUpdateException ex) {
             LOG.debug("Some of the batch updates failed", ex);
             batchResults = ex.getUpdateCounts();
@@ -393,6 +553,18 @@ public class RDBDocumentStoreJDBC {
             stmt.close();
         }
 
+        traceBatchResult(tmd, updatedKeys, modCounts, batchResults);
+
+        for (int i = 0; i < batchResults.length; i++) {
+            int result = batchResults[i];
+            if (result == 1 || result == Statement.SUCCESS_NO_INFO) {
+                successfulUpdates.add(updatedKeys.get(i));
+            }
+        }
+        return successfulUpdates;
+    }
+
+    private static void traceBatchResult(RDBTableMetaData tmd, List<String> updatedKeys, List<Long> modCounts, int[] batchResults) {
         if (!updatedKeys.isEmpty() && LOG.isTraceEnabled()) {
             StringBuilder br = new StringBuilder(String.format("update: batch result on '%s' (sent: %d, received: %d):", tmd.getName(),
                     updatedKeys.size(), batchResults.length));
@@ -406,29 +578,6 @@ public class RDBDocumentStoreJDBC {
             }
             LOG.trace(br.toString());
         }
-
-        for (int i = 0; i < batchResults.length; i++) {
-            int result = batchResults[i];
-            if (result == 1 || result == Statement.SUCCESS_NO_INFO) {
-                successfulUpdates.add(updatedKeys.get(i));
-            }
-        }
-
-        if (upsert) {
-            List<T> toBeInserted = new ArrayList<T>(documents.size());
-            for (T doc : documents) {
-                if (INITIALMODCOUNT.equals(doc.get(MODCOUNT))) {
-                    toBeInserted.add(doc);
-                }
-            }
-
-            if (!toBeInserted.isEmpty()) {
-                for (String id : insert(connection, tmd, toBeInserted)) {
-                    successfulUpdates.add(id);
-                }
-            }
-        }
-        return successfulUpdates;
     }
 
     private static <T extends Document> void assertNoDuplicatedIds(List<T> documents) {
@@ -911,9 +1060,10 @@ public class RDBDocumentStoreJDBC {
         }
     }
 
-    public boolean update(Connection connection, RDBTableMetaData tmd, String id, Long modified, Number hasBinary,
+    public boolean update(Connection connection, RDBTableMetaData tmd, Document document, Long modified, Number hasBinary,
             Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, String data) throws SQLException {
 
+        String id = document.getId();
         StringBuilder t = new StringBuilder();
         t.append("update " + tmd.getName() + " set ");
         t.append("MODIFIED = ?, HASBINARY = ?, DELETEDONCE = ?, MODCOUNT = ?, CMODCOUNT = ?, DSIZE = ?, DATA = ?, "
@@ -937,7 +1087,7 @@ public class RDBDocumentStoreJDBC {
                 stmt.setBinaryStream(si++, null, 0);
             } else {
                 stmt.setString(si++, "\"blob\"");
-                byte[] bytes = asBytes(data);
+                byte[] bytes = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), data);
                 stmt.setBytes(si++, bytes);
             }
 
@@ -70,6 +70,14 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         return delegate.find(collection, key, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public final <T extends Document> List<T> find(Collection<T> collection,
+            java.util.Collection<String> keys) {
+        performLeaseCheck();
+        return delegate.find(collection, keys);
+    }
+
     @Override
     public final <T extends Document> List<T> query(Collection<T> collection,
             String fromKey, String toKey, int limit) {
@@ -100,6 +100,24 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> find(final Collection<T> collection,
+                                             final java.util.Collection<String> keys) {
+        try {
+            logMethod("find", collection, keys);
+            return logResult(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws Exception {
+                    return store.find(collection, keys);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(final Collection<T> collection,
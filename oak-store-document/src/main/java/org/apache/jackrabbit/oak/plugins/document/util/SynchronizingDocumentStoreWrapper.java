@@ -50,6 +50,12 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.find(collection, key, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public synchronized <T extends Document> List<T> find(final Collection<T> collection, final java.util.Collection<String> keys) {
+        return store.find(collection, keys);
+    }
+
     @Override
     @NotNull
     public synchronized <T extends Document> List<T> query(final Collection<T> collection, final String fromKey,
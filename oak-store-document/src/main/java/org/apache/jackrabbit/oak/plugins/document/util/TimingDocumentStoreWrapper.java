@@ -117,6 +117,22 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> List<T> find(Collection<T> collection, java.util.Collection<String> keys) {
+        try {
+            long start = now();
+            List<T> result = base.find(collection, keys);
+            updateAndLogTimes("findMany", start, 0, size(result));
+            if (logCommonCall()) {
+                logCommonCall(start, "findMany " + collection + " " + keys.size());
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     @NotNull
     public <T extends Document> List<T> query(Collection<T> collection,
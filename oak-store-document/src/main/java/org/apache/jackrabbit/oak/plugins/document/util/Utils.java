@@ -31,6 +31,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
@@ -42,6 +45,7 @@ import org.apache.jackrabbit.oak.commons.StringUtils;
 import org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo;
 import org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfoDocument;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.CompactRevisionMap;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
@@ -135,8 +139,25 @@ public class Utils {
         return depth;
     }
 
-    @SuppressWarnings("unchecked")
     public static int estimateMemoryUsage(Map<?, Object> map) {
+        return estimateMemoryUsage(map, false);
+    }
+
+    /**
+     * Estimates the size of the given map independent of how it is kept in
+     * memory. Unlike {@link #estimateMemoryUsage(Map)}, a nested
+     * {@link CompactRevisionMap} is estimated like a regular map with the
+     * same entries.
+     *
+     * @param map the map.
+     * @return the estimated size.
+     */
+    public static int estimateSize(Map<?, Object> map) {
+        return estimateMemoryUsage(map, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int estimateMemoryUsage(Map<?, Object> map, boolean expanded) {
         if (map == null) {
             return 0;
         }
@@ -157,8 +178,11 @@ public class Utils {
                 size += 8;
             } else if (o instanceof Integer) {
                 size += 8;
+            } else if (o instanceof CompactRevisionMap) {
+                CompactRevisionMap compact = (CompactRevisionMap) o;
+                size += 8 + (long) (expanded ? compact.getExpandedMemory() : compact.getMemory());
             } else if (o instanceof Map) {
-                size += 8 + (long)estimateMemoryUsage((Map<String, Object>) o);
+                size += 8 + (long)estimateMemoryUsage((Map<String, Object>) o, expanded);
             } else if (o == null) {
                 // zero
             } else {
@@ -990,6 +1014,32 @@ public class Utils {
         }
     }
 
+    /**
+     * Waits until all the passed futures completed and throws the first
+     * failure, if any, as a {@link DocumentStoreException}.
+     *
+     * @param futures the futures to wait for.
+     * @throws DocumentStoreException if any of the futures completed
+     *          exceptionally.
+     */
+    public static void awaitAll(Iterable<? extends CompletableFuture<?>> futures)
+            throws DocumentStoreException {
+        DocumentStoreException failure = null;
+        for (CompletableFuture<?> f : futures) {
+            try {
+                f.join();
+            } catch (CompletionException | CancellationException e) {
+                if (failure == null) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    failure = DocumentStoreException.convert(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     /**
      * Returns the version of the module that contains the DocumentNodeStore.
      *
@@ -90,6 +90,39 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
         removeMe.add(id);
     }
 
+    @Test
+    public void testFindMany() {
+        String base = this.getClass().getName() + ".testFindMany-";
+        List<UpdateOp> ops = new ArrayList<UpdateOp>();
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            String id = base + i;
+            super.ds.remove(Collection.NODES, id);
+            ops.add(new UpdateOp(id, true));
+            ids.add(id);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, ops));
+
+        // read one through the cache, the others from the store
+        super.ds.invalidateCache();
+        assertNotNull(super.ds.find(Collection.NODES, ids.get(2)));
+
+        List<String> keys = Lists.newArrayList(ids);
+        keys.add(base + "missing");
+        keys.add(ids.get(0));
+        List<NodeDocument> docs = super.ds.find(Collection.NODES, keys);
+        assertEquals(ids.size(), docs.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), docs.get(i).getId());
+        }
+
+        // subsequent reads are served from the cache
+        for (String id : ids) {
+            assertEquals(id, super.ds.getIfCached(Collection.NODES, id).getId());
+        }
+    }
+
     @Test
     public void testValuesForSystemProps() {
         String id = this.getClass().getName() + ".testValuesForSystemProps";
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares parsing documents from their JSON and binary serialization. The
+ * documents are created through a {@link DocumentNodeStore} with a history
+ * of changes, similar to documents in a repository that is in use.
+ */
+public class BinaryDocumentSerializerBenchmark {
+
+    public static void main(String... args) throws Exception {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = new DocumentMK.Builder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        try {
+            for (int i = 0; i < 200; i++) {
+                NodeBuilder builder = ns.getRoot().builder();
+                for (int j = 0; j < 20; j++) {
+                    NodeBuilder child = builder.child("node-" + j);
+                    child.setProperty("jcr:primaryType", "nt:unstructured");
+                    child.setProperty("counter", i);
+                    child.setProperty("title", "Some title " + i);
+                }
+                ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            }
+            ns.runBackgroundOperations();
+        } finally {
+            ns.dispose();
+        }
+        List<String> json = new ArrayList<>();
+        List<byte[]> binary = new ArrayList<>();
+        long jsonSize = 0, binarySize = 0;
+        for (NodeDocument doc : Utils.getAllDocuments(store)) {
+            String s = doc.asString();
+            byte[] b = doc.asBytes();
+            json.add(s);
+            binary.add(b);
+            jsonSize += s.getBytes(UTF_8).length;
+            binarySize += b.length;
+        }
+        System.out.println(json.size() + " documents, JSON: " + jsonSize
+                + " bytes, binary: " + binarySize + " bytes");
+
+        for (int run = 0; run < 5; run++) {
+            long time = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                for (String s : json) {
+                    NodeDocument.fromString(store, s);
+                }
+            }
+            long jsonTime = System.nanoTime() - time;
+            time = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                for (byte[] b : binary) {
+                    NodeDocument.fromBytes(store, b);
+                }
+            }
+            long binaryTime = System.nanoTime() - time;
+            System.out.println("parse JSON: " + jsonTime / 1000000 + " ms, binary: "
+                    + binaryTime / 1000000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryDocumentSerializerTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Test
+    public void roundTrip() {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        NodeDocument doc = new NodeDocument(store);
+        doc.put(Document.ID, "1:/foo");
+        doc.put(Document.MOD_COUNT, 3L);
+        doc.put(NodeDocument.DELETED_ONCE, Boolean.TRUE);
+        doc.put("negative", -42L);
+        doc.put("nothing", null);
+        doc.put("unicode", "ä€😀");
+        Map<Revision, Object> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+        map.put(new Revision(1000, 0, 1), "\"a\"");
+        map.put(new Revision(999, 3, 2, true), "c");
+        map.put(new Revision(1001, 0, 1), null);
+        doc.put("prop", map);
+
+        byte[] data = doc.asBytes();
+        assertTrue(BinaryDocumentSerializer.isBinary(data));
+        NodeDocument copy = NodeDocument.fromBytes(store, data);
+        assertEquals(doc.asString(), copy.asString());
+        assertEquals("1:/foo", copy.getId());
+        assertEquals(-42L, copy.get("negative"));
+        assertTrue(copy.keySet().contains("nothing"));
+        assertNull(copy.get("nothing"));
+        assertTrue(copy.isSealed());
+    }
+
+    @Test
+    public void excludedProperties() {
+        NodeDocument doc = new NodeDocument(new MemoryDocumentStore());
+        doc.put(Document.ID, "1:/foo");
+        doc.put(Document.MOD_COUNT, 3L);
+        doc.put("p", "v");
+        byte[] data = BinaryDocumentSerializer.toBytes(doc, Collections.singleton(Document.MOD_COUNT));
+        NodeDocument copy = new NodeDocument(new MemoryDocumentStore());
+        BinaryDocumentSerializer.fromBytes(data, copy);
+        assertEquals("1:/foo", copy.getId());
+        assertEquals("v", copy.get("p"));
+        assertFalse(copy.keySet().contains(Document.MOD_COUNT));
+    }
+
+    @Test
+    public void realDocuments() throws Exception {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder builder = ns.getRoot().builder();
+            builder.child("foo").child("bar").setProperty("p", i);
+            builder.child("foo").setProperty("q", "value-" + i);
+            merge(ns, builder);
+        }
+        ns.runBackgroundOperations();
+        for (String path : new String[]{"/", "/foo", "/foo/bar"}) {
+            NodeDocument doc = store.find(Collection.NODES, Utils.getIdFromPath(path));
+            assertNotNull(doc);
+            NodeDocument copy = NodeDocument.fromBytes(store, doc.asBytes());
+            assertEquals(doc.asString(), copy.asString());
+            assertEquals(doc.getLastRev(), copy.getLastRev());
+            assertEquals(doc.getLocalRevisions(), copy.getLocalRevisions());
+        }
+    }
+
+    @Test
+    public void binaryIsSmallerThanJson() {
+        NodeDocument doc = new NodeDocument(new MemoryDocumentStore());
+        Map<Revision, Object> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+        for (int i = 0; i < 100; i++) {
+            map.put(new Revision(1500000000000L + i * 10, i % 3, 1), "c");
+        }
+        doc.put(NodeDocument.REVISIONS, map);
+        assertTrue(doc.asBytes().length < doc.asString().getBytes(UTF_8).length / 2);
+    }
+
+    @Test
+    public void notBinary() {
+        assertFalse(BinaryDocumentSerializer.isBinary("{}".getBytes(UTF_8)));
+        assertFalse(BinaryDocumentSerializer.isBinary(new byte[0]));
+        try {
+            BinaryDocumentSerializer.fromBytes("{}".getBytes(UTF_8), new NodeDocument(new MemoryDocumentStore()));
+            fail("DocumentStoreException expected");
+        } catch (DocumentStoreException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void truncated() {
+        NodeDocument doc = new NodeDocument(new MemoryDocumentStore());
+        doc.put(Document.ID, "1:/foo");
+        doc.put("p", "value");
+        byte[] data = doc.asBytes();
+        byte[] truncated = new byte[data.length - 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        try {
+            BinaryDocumentSerializer.fromBytes(truncated, new NodeDocument(new MemoryDocumentStore()));
+            fail("DocumentStoreException expected");
+        } catch (DocumentStoreException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheWarmupTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void disabledByDefault() {
+        DocumentNodeStore ns = builderProvider.newBuilder().getNodeStore();
+        assertNull(ns.getCacheWarmup());
+        assertNull(ns.getCacheWarmupStatus());
+    }
+
+    @Test
+    public void recordAndWarmup() throws Exception {
+        File file = new File(temp.newFolder(), "warmup.txt");
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0)
+                .setCacheWarmupFile(file.getPath()).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            builder.child("foo").child("node-" + i).setProperty("p", i);
+        }
+        merge(ns, builder);
+        ns.runBackgroundOperations();
+        // read the nodes to get them into the cache
+        ns.getNodeCache().invalidateAll();
+        ns.getNodeChildrenCache().invalidateAll();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ns.getRoot().getChildNode("foo").getChildNode("node-" + i).exists());
+        }
+        ns.dispose();
+
+        assertTrue(file.exists());
+        String recorded = new String(Files.readAllBytes(file.toPath()), UTF_8);
+        assertTrue(recorded.contains("n /foo/node-3"));
+
+        ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0)
+                .setCacheWarmupFile(file.getPath()).getNodeStore();
+        CacheWarmup warmup = ns.getCacheWarmup();
+        assertNotNull(warmup);
+        while (warmup.getStatus().startsWith("running")) {
+            Thread.sleep(10);
+        }
+        assertTrue(warmup.getStatus(), warmup.getStatus().startsWith("done"));
+        assertTrue(warmup.getTotal() > 10);
+        assertEquals(warmup.getTotal(), warmup.getLoaded());
+
+        DocumentNodeState foo = (DocumentNodeState) ns.getRoot().getChildNode("foo");
+        Path p = new Path(foo.getPath(), "node-3");
+        assertNotNull(ns.getNodeCache().getIfPresent(new PathRev(p, foo.getLastRevision())));
+    }
+
+    @Test
+    public void hotKeysFirst() {
+        CacheLIRS<String, String> cache = CacheLIRS.<String, String>newBuilder()
+                .maximumSize(100).segmentCount(1).stackMoveDistance(0).build();
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, "v" + i);
+        }
+        cache.getIfPresent("k3");
+        cache.getIfPresent("k7");
+        List<String> keys = newArrayList(CacheWarmup.getKeysByHotness(cache));
+        assertEquals(10, keys.size());
+        assertEquals("k7", keys.get(0));
+        assertEquals("k3", keys.get(1));
+    }
+
+    @Test
+    public void invalidFile() throws Exception {
+        File file = temp.newFile();
+        Files.write(file.toPath(), "n /foo\nbogus\nn not-absolute\nc /\n".getBytes(UTF_8));
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setCacheWarmupFile(file.getPath()).getNodeStore();
+        CacheWarmup warmup = ns.getCacheWarmup();
+        assertNotNull(warmup);
+        while (warmup.getStatus().startsWith("running")) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, warmup.getTotal());
+        assertEquals(2, warmup.getLoaded());
+        assertFalse(ns.getRoot().hasChildNode("foo"));
+    }
+}
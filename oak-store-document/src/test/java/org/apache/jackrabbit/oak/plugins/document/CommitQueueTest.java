@@ -18,6 +18,7 @@ package org.apache.jackrabbit.oak.plugins.document;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +34,7 @@ import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.commit.Observer;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.Rule;
@@ -387,6 +389,40 @@ public class CommitQueueTest {
         }
     }
 
+    @Test
+    public void headOfQueueStats() throws Exception {
+        final List<Integer> numAhead = synchronizedList(new ArrayList<Integer>());
+        final CommitQueue queue = new CommitQueue(new DummyRevisionContext());
+        queue.setStatisticsCollector(new DocumentNodeStoreStats(StatisticsProvider.NOOP) {
+            @Override
+            public void doneHeadOfQueue(int ahead, long timeMicros) {
+                numAhead.add(ahead);
+            }
+        });
+        final CommitQueue.Callback c = new CommitQueue.Callback() {
+            @Override
+            public void headOfQueue(@NotNull Revision revision) {
+            }
+        };
+        Revision r1 = queue.createRevision();
+        Revision r2 = queue.createRevision();
+        final Revision r3 = queue.createRevision();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.done(r3, c);
+            }
+        });
+        t.start();
+        while (t.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        queue.done(r1, c);
+        queue.done(r2, c);
+        t.join();
+        assertEquals(Arrays.asList(0, 0, 2), numAhead);
+    }
+
     private void assertNoExceptions() throws Exception {
         if (!exceptions.isEmpty()) {
             throw exceptions.get(0);
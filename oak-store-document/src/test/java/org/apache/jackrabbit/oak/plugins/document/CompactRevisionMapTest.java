@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactRevisionMapTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void sameAsTreeMap() {
+        NavigableMap<Revision, String> expected = newRevisionMap(100);
+        NavigableMap<Revision, String> actual = CompactRevisionMap.fromMap(expected);
+        assertNotNull(actual);
+        assertSameMap(expected, actual);
+
+        List<Revision> probes = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < 20; i++) {
+            probes.add(newRevision());
+        }
+        Revision r = expected.firstKey();
+        probes.add(new Revision(r.getTimestamp(), r.getCounter(), r.getClusterId(), true));
+        for (Revision p : probes) {
+            assertEquals(expected.get(p), actual.get(p));
+            assertEquals(expected.containsKey(p), actual.containsKey(p));
+            assertEquals(expected.lowerEntry(p), actual.lowerEntry(p));
+            assertEquals(expected.floorEntry(p), actual.floorEntry(p));
+            assertEquals(expected.ceilingEntry(p), actual.ceilingEntry(p));
+            assertEquals(expected.higherEntry(p), actual.higherEntry(p));
+            assertSameMap(expected.headMap(p, true), actual.headMap(p, true));
+            assertSameMap(expected.headMap(p, false), actual.headMap(p, false));
+            assertSameMap(expected.tailMap(p, true), actual.tailMap(p, true));
+            assertSameMap(expected.tailMap(p, false), actual.tailMap(p, false));
+        }
+        Collections.sort(probes, StableRevisionComparator.REVERSE);
+        for (int i = 0; i + 10 < probes.size(); i += 7) {
+            Revision from = probes.get(i);
+            Revision to = probes.get(i + 10);
+            NavigableMap<Revision, String> sub = actual.subMap(from, true, to, false);
+            assertSameMap(expected.subMap(from, true, to, false), sub);
+            // views of views
+            assertSameMap(expected.subMap(from, true, to, false).headMap(probes.get(i + 5)),
+                    sub.headMap(probes.get(i + 5)));
+        }
+        assertSameMap(expected.descendingMap(), actual.descendingMap());
+        assertEquals(Lists.newArrayList(expected.navigableKeySet()),
+                Lists.newArrayList(actual.navigableKeySet()));
+    }
+
+    @Test
+    public void descendingAndKeySetViews() {
+        NavigableMap<Revision, String> expected = newRevisionMap(100);
+        NavigableMap<Revision, String> compact = CompactRevisionMap.fromMap(expected);
+        assertNotNull(compact);
+        NavigableMap<Revision, String> actual = compact.descendingMap();
+        assertTrue(actual instanceof CompactRevisionMap);
+        assertNull(CompactRevisionMap.fromMap(actual));
+        expected = expected.descendingMap();
+        assertSameMap(expected, actual);
+        assertSameMap(expected.descendingMap(), actual.descendingMap());
+
+        List<Revision> probes = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < 20; i++) {
+            probes.add(newRevision());
+        }
+        for (Revision p : probes) {
+            assertEquals(expected.lowerEntry(p), actual.lowerEntry(p));
+            assertEquals(expected.floorEntry(p), actual.floorEntry(p));
+            assertEquals(expected.ceilingEntry(p), actual.ceilingEntry(p));
+            assertEquals(expected.higherEntry(p), actual.higherEntry(p));
+            assertSameMap(expected.headMap(p, true), actual.headMap(p, true));
+            assertSameMap(expected.headMap(p, false), actual.headMap(p, false));
+            assertSameMap(expected.tailMap(p, true), actual.tailMap(p, true));
+            assertSameMap(expected.tailMap(p, false), actual.tailMap(p, false));
+            assertSameMap(expected.tailMap(p, false).descendingMap(),
+                    actual.tailMap(p, false).descendingMap());
+        }
+        Collections.sort(probes, StableRevisionComparator.INSTANCE);
+        for (int i = 0; i + 10 < probes.size(); i += 7) {
+            Revision from = probes.get(i);
+            Revision to = probes.get(i + 10);
+            assertSameMap(expected.subMap(from, false, to, true),
+                    actual.subMap(from, false, to, true));
+        }
+
+        NavigableSet<Revision> expectedKeys = expected.navigableKeySet();
+        NavigableSet<Revision> actualKeys = actual.navigableKeySet();
+        assertSame(actualKeys, actual.keySet());
+        assertEquals(expectedKeys, actualKeys);
+        assertEquals(Lists.newArrayList(expectedKeys), Lists.newArrayList(actualKeys));
+        assertEquals(Lists.newArrayList(expectedKeys.descendingIterator()),
+                Lists.newArrayList(actualKeys.descendingIterator()));
+        assertEquals(Lists.newArrayList(expected.descendingKeySet()),
+                Lists.newArrayList(actual.descendingKeySet()));
+        for (Revision p : probes) {
+            assertEquals(expectedKeys.contains(p), actualKeys.contains(p));
+            assertEquals(expectedKeys.lower(p), actualKeys.lower(p));
+            assertEquals(expectedKeys.floor(p), actualKeys.floor(p));
+            assertEquals(expectedKeys.ceiling(p), actualKeys.ceiling(p));
+            assertEquals(expectedKeys.higher(p), actualKeys.higher(p));
+            assertEquals(Lists.newArrayList(expectedKeys.headSet(p, true)),
+                    Lists.newArrayList(actualKeys.headSet(p, true)));
+            assertEquals(Lists.newArrayList(expectedKeys.tailSet(p, false)),
+                    Lists.newArrayList(actualKeys.tailSet(p, false)));
+        }
+        assertEquals(expectedKeys.first(), actualKeys.first());
+        assertEquals(expectedKeys.last(), actualKeys.last());
+    }
+
+    @Test
+    public void decodeNewestOnce() {
+        NavigableMap<Revision, String> map = CompactRevisionMap.fromMap(
+                newRevisionMap(CompactRevisionMap.DECODED_ENTRIES * 2));
+        assertNotNull(map);
+        Revision r = map.firstKey();
+        assertSame(r, map.firstKey());
+        assertSame(r, map.keySet().iterator().next());
+        assertSame(r, map.descendingMap().lastKey());
+        assertSame(map.get(r), map.get(r));
+        assertSame(map.get(r), map.firstEntry().getValue());
+        // older entries are decoded on every read
+        Revision last = map.lastKey();
+        assertNotSame(last, map.lastKey());
+        assertEquals(last, map.headMap(last, true).lastKey());
+        assertEquals(map.get(last), map.headMap(last, true).get(last));
+    }
+
+    @Test
+    public void subMapMemory() {
+        NavigableMap<Revision, String> expected = newRevisionMap(100);
+        CompactRevisionMap map = CompactRevisionMap.fromMap(expected);
+        assertNotNull(map);
+        Revision middle = new ArrayList<>(expected.keySet()).get(50);
+        CompactRevisionMap head = (CompactRevisionMap) map.headMap(middle, false);
+        CompactRevisionMap tail = (CompactRevisionMap) map.tailMap(middle, true);
+        assertTrue(head.getMemory() < map.getMemory());
+        assertTrue(tail.getMemory() < map.getMemory());
+        assertTrue(head.getMemory() + tail.getMemory() > map.getMemory());
+        assertTrue(head.getExpandedMemory() < map.getExpandedMemory());
+        CompactRevisionMap empty = (CompactRevisionMap) map.headMap(map.firstKey(), false);
+        assertTrue(empty.getMemory() < head.getMemory());
+    }
+
+    @Test
+    public void nullAndNonAsciiValues() {
+        NavigableMap<Revision, String> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+        Revision r1 = newRevision();
+        Revision r2 = newRevision();
+        Revision r3 = newRevision();
+        map.put(r1, null);
+        map.put(r2, "\"ä中\"");
+        map.put(r3, "");
+        NavigableMap<Revision, String> compact = CompactRevisionMap.fromMap(map);
+        assertNotNull(compact);
+        assertSameMap(map, compact);
+        assertTrue(compact.containsKey(r1));
+        assertNull(compact.get(r1));
+        assertEquals("\"ä中\"", compact.get(r2));
+        assertEquals("", compact.get(r3));
+    }
+
+    @Test
+    public void notApplicable() {
+        // wrong order
+        TreeMap<Revision, String> map = new TreeMap<>(StableRevisionComparator.INSTANCE);
+        map.put(newRevision(), "v");
+        assertNull(CompactRevisionMap.fromMap(map));
+        // other values
+        TreeMap<Revision, Object> objects = new TreeMap<>(StableRevisionComparator.REVERSE);
+        objects.put(newRevision(), 1L);
+        assertNull(CompactRevisionMap.fromMap(objects));
+        // other keys
+        TreeMap<String, String> strings = new TreeMap<>();
+        strings.put("k", "v");
+        assertNull(CompactRevisionMap.fromMap(strings));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        NavigableMap<Revision, String> map = CompactRevisionMap.fromMap(newRevisionMap(3));
+        assertNotNull(map);
+        map.put(newRevision(), "v");
+    }
+
+    @Test
+    public void sealedDocument() {
+        NodeDocument doc = new NodeDocument(new MemoryDocumentStore());
+        doc.put(Document.ID, Utils.getIdFromPath("/test"));
+        doc.put("p", newRevisionMap(200));
+        doc.put(NodeDocument.REVISIONS, newRevisionMap(200));
+        int before = doc.getMemory();
+        int estimated = doc.getEstimatedSize();
+        doc.seal();
+        assertEquals(estimated, doc.getEstimatedSize());
+        assertEquals(estimated, doc.getEstimatedSize());
+        assertTrue(doc.get("p") instanceof CompactRevisionMap);
+        assertTrue(doc.get(NodeDocument.REVISIONS) instanceof CompactRevisionMap);
+        assertFalse(doc.getLocalMap("p").isEmpty());
+        int after = doc.getMemory();
+        assertTrue("expected " + after + " < " + before, after < before / 2);
+    }
+
+    private static void assertSameMap(SortedMap<Revision, String> expected,
+                                      SortedMap<Revision, String> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(Lists.newArrayList(expected.entrySet()),
+                Lists.newArrayList(actual.entrySet()));
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        if (!expected.isEmpty()) {
+            assertEquals(expected.firstKey(), actual.firstKey());
+            assertEquals(expected.lastKey(), actual.lastKey());
+        }
+    }
+
+    private NavigableMap<Revision, String> newRevisionMap(int size) {
+        NavigableMap<Revision, String> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+        while (map.size() < size) {
+            map.put(newRevision(), "\"value-" + random.nextInt(1000) + "\"");
+        }
+        return map;
+    }
+
+    private Revision newRevision() {
+        return new Revision(1500000000000L + random.nextInt(100),
+                random.nextInt(3), random.nextInt(4) + 1);
+    }
+}
@@ -64,10 +64,14 @@ public class DocumentNodeStoreServiceConfigurationTest {
         assertEquals(DocumentNodeStoreService.DEFAULT_JOURNAL_GC_INTERVAL_MILLIS, config.journalGCInterval());
         assertEquals(DocumentNodeStoreService.DEFAULT_JOURNAL_GC_MAX_AGE_MILLIS, config.journalGCMaxAge());
         assertEquals(DocumentNodeStoreService.DEFAULT_PREFETCH_EXTERNAL_CHANGES, config.prefetchExternalChanges());
+        assertEquals(DocumentNodeStoreService.DEFAULT_CACHE_WARMUP, config.cacheWarmup());
+        assertEquals(DocumentNodeStoreService.DEFAULT_CACHE_WARMUP_THREADS, config.cacheWarmupThreads());
         assertEquals(null, config.role());
         assertEquals(DocumentNodeStoreService.DEFAULT_VER_GC_MAX_AGE, config.versionGcMaxAgeInSecs());
         assertEquals(DocumentNodeStoreService.DEFAULT_VER_GC_EXPRESSION, config.versionGCExpression());
         assertEquals(DocumentNodeStoreService.DEFAULT_RGC_TIME_LIMIT_SECS, config.versionGCTimeLimitInSecs());
+        assertEquals(DocumentNodeStoreService.DEFAULT_RGC_SLICE_SECS, config.versionGCSliceInSecs());
+        assertEquals(DocumentNodeStoreService.DEFAULT_RGC_TARGET_BATCH_LATENCY_MILLIS, config.versionGCTargetBatchLatencyInMillis());
         assertEquals(DocumentNodeStoreService.DEFAULT_BLOB_GC_MAX_AGE, config.blobGcMaxAgeInSecs());
         assertEquals(DocumentNodeStoreService.DEFAULT_BLOB_SNAPSHOT_INTERVAL, config.blobTrackSnapshotIntervalInSecs());
         assertEquals(null, config.repository_home());
@@ -23,6 +23,7 @@ import java.lang.management.ManagementFactory;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
@@ -86,6 +87,32 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(105, m.getCount());
     }
 
+    @Test
+    public void headOfQueue() {
+        stats.doneHeadOfQueue(3, 20);
+        stats.doneHeadOfQueue(0, 10);
+        Snapshot numAhead = getHistogram(DocumentNodeStoreStats.HEAD_OF_QUEUE_NUM_AHEAD).getSnapshot();
+        assertEquals(0, numAhead.getMin());
+        assertEquals(3, numAhead.getMax());
+        Timer t = getTimer(DocumentNodeStoreStats.HEAD_OF_QUEUE_TIME);
+        assertEquals(2, t.getCount());
+        assertEquals(MICROSECONDS.toNanos(20), t.getSnapshot().getMax());
+    }
+
+    @Test
+    public void backgroundWriteCalls() {
+        BackgroundWriteStats writeStats = new BackgroundWriteStats();
+        writeStats.calls = 4;
+        stats.doneBackgroundUpdate(writeStats);
+        Histogram h = getHistogram(DocumentNodeStoreStats.BGW_CALLS);
+        assertEquals(1, h.getCount());
+        assertEquals(4, h.getSnapshot().getMax());
+    }
+
+    private Histogram getHistogram(String name) {
+        return statsProvider.getRegistry().getHistograms().get(name);
+    }
+
     private Meter getMeter(String name) {
         return statsProvider.getRegistry().getMeters().get(name);
     }
@@ -3790,6 +3790,49 @@ public class DocumentNodeStoreTest {
         assertEquals(1, store.getNumQueryCalls(NODES));
     }
 
+    @Test
+    public void prefetchChildNodes() throws Exception {
+        final List<List<String>> bulkReads = Lists.newArrayList();
+        DocumentStore store = new DocumentStoreWrapper(new MemoryDocumentStore()) {
+            @NotNull
+            @Override
+            public <T extends Document> List<T> find(Collection<T> collection,
+                                                     java.util.Collection<String> keys) {
+                if (collection == NODES) {
+                    bulkReads.add(Lists.newArrayList(keys));
+                }
+                return super.find(collection, keys);
+            }
+        };
+        DocumentNodeStore ns = builderProvider.newBuilder().setAsyncDelay(0)
+                .setChildPrefetchSize(10).setDocumentStore(store).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 25; i++) {
+            builder.child("test").child("node-" + i);
+        }
+        merge(ns, builder);
+
+        NodeState test = ns.getRoot().getChildNode("test");
+        // populate the children cache
+        assertEquals(25, Iterables.size(test.getChildNodeNames()));
+        ns.getNodeCache().invalidateAll();
+        bulkReads.clear();
+        int count = 0;
+        for (ChildNodeEntry entry : test.getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+            count++;
+        }
+        assertEquals(25, count);
+        // the first child is read on its own, the others in batches of 10
+        assertEquals(3, bulkReads.size());
+        Set<String> prefetched = Sets.newHashSet();
+        for (List<String> ids : bulkReads) {
+            assertTrue(ids.size() <= 10);
+            prefetched.addAll(ids);
+        }
+        assertEquals(24, prefetched.size());
+    }
+
     @Test
     public void getChildNodeCountTest() throws Exception {
         final long UL = Long.MAX_VALUE; // unknown
@@ -530,7 +530,7 @@ public class DocumentSplitTest extends BaseDocumentMKTest {
         store.findAndUpdate(NODES, op);
         NodeDocument doc = store.find(NODES, id);
         assertNotNull(doc);
-        assertTrue(doc.getMemory() > DOC_SIZE_THRESHOLD);
+        assertTrue(doc.getEstimatedSize() > DOC_SIZE_THRESHOLD);
 
         // some fake previous doc references to trigger UpdateOp
         // for an intermediate document
@@ -752,6 +752,34 @@ public class DocumentSplitTest extends BaseDocumentMKTest {
         assertTrue(doc.getLocalCommitRoot().size() < NUM_REVS_THRESHOLD);
     }
 
+    @Test
+    public void splitManyCandidatesInParallel() throws Exception {
+        int numNodes = 150;
+        DocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = new DocumentMK.Builder().setAsyncStoreThreads(2)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        for (int i = 0; i <= NUM_REVS_THRESHOLD; i++) {
+            NodeBuilder builder = ns.getRoot().builder();
+            for (int j = 0; j < numNodes; j++) {
+                builder.child("test").child("node-" + j).setProperty("p", i);
+            }
+            merge(ns, builder);
+        }
+        assertEquals(numNodes + 1, ns.getSplitCandidates().size());
+
+        ns.runBackgroundOperations();
+        assertTrue(ns.getSplitCandidates().isEmpty());
+        for (int j = 0; j < numNodes; j++) {
+            NodeDocument doc = store.find(NODES, Utils.getIdFromPath("/test/node-" + j));
+            assertNotNull(doc);
+            assertTrue(doc.getLocalCommitRoot().size() < NUM_REVS_THRESHOLD);
+            assertEquals(1, Iterators.size(doc.getAllPreviousDocs()));
+            assertEquals(NUM_REVS_THRESHOLD,
+                    ns.getRoot().getChildNode("test").getChildNode("node-" + j).getLong("p"));
+        }
+        ns.dispose();
+    }
+
     // OAK-3333
     @Test
     public void purgeAllButMostRecentCommitRoot() throws Exception {
@@ -995,7 +1023,7 @@ public class DocumentSplitTest extends BaseDocumentMKTest {
 
         String id = Utils.getIdFromPath("/foo");
         int num = 0;
-        while (store.find(NODES, id).getMemory() < DOC_SIZE_THRESHOLD) {
+        while (store.find(NODES, id).getEstimatedSize() < DOC_SIZE_THRESHOLD) {
             builder = ns.getRoot().builder();
             for (int i = 0; i < 50; i++) {
                 builder.child("foo").setProperty("p" + num++,
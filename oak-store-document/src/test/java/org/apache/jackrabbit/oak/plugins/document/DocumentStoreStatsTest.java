@@ -129,6 +129,19 @@ public class DocumentStoreStatsTest {
         assertEquals(5, getMeter(DocumentStoreStats.NODES_UPDATE_RETRY_COUNT).getCount());
     }
 
+    @Test
+    public void doneBulkUpdate() throws Exception {
+        stats.doneBulkUpdate(100, Collection.NODES, 64, 0);
+        assertEquals(64, getMeter(DocumentStoreStats.NODES_BULK_UPDATE).getCount());
+        assertEquals(0, getMeter(DocumentStoreStats.NODES_BULK_UPDATE_FAILURE).getCount());
+        assertEquals(100, getTimer(DocumentStoreStats.NODES_BULK_UPDATE_TIMER).getSnapshot().getMax());
+
+        stats.doneBulkUpdate(100, Collection.NODES, 10, 3);
+        assertEquals(74, getMeter(DocumentStoreStats.NODES_BULK_UPDATE).getCount());
+        assertEquals(3, getMeter(DocumentStoreStats.NODES_BULK_UPDATE_FAILURE).getCount());
+        assertEquals(2, getTimer(DocumentStoreStats.NODES_BULK_UPDATE_TIMER).getCount());
+    }
+
     @Test
     public void doneRemove() throws Exception {
         stats.doneRemove(100, Collection.NODES, 42);
@@ -47,6 +47,13 @@ public class DocumentStoreWrapper implements DocumentStore {
         return store.find(collection, key, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> find(Collection<T> collection,
+                                             java.util.Collection<String> keys) {
+        return store.find(collection, keys);
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection,
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExecutorAsyncDocumentStoreTest {
+
+    private final MemoryDocumentStore store = new MemoryDocumentStore();
+
+    @Test
+    public void operations() throws Exception {
+        try (AsyncDocumentStore async = new ExecutorAsyncDocumentStore(store, 2)) {
+            List<CompletableFuture<List<NodeDocument>>> updates = Lists.newArrayList();
+            for (int i = 0; i < 10; i++) {
+                UpdateOp op = new UpdateOp("1:/node-" + i, true);
+                updates.add(async.createOrUpdateAsync(NODES, Collections.singletonList(op)));
+            }
+            for (CompletableFuture<List<NodeDocument>> f : updates) {
+                f.get();
+            }
+            assertNotNull(async.findAsync(NODES, "1:/node-3").get());
+            assertEquals(2, async.findAsync(NODES,
+                    Lists.newArrayList("1:/node-1", "1:/node-2", "1:/missing")).get().size());
+            assertEquals(10, async.queryAsync(NODES, "1:/", "1:0", 100).get().size());
+
+            async.removeAsync(NODES, Lists.newArrayList("1:/node-3")).get();
+            assertNull(async.findAsync(NODES, "1:/node-3").get());
+            assertNull(store.find(NODES, "1:/node-3"));
+        }
+    }
+
+    @Test
+    public void callerThread() {
+        try (AsyncDocumentStore async = new ExecutorAsyncDocumentStore(store, 0)) {
+            UpdateOp op = new UpdateOp("1:/foo", true);
+            CompletableFuture<NodeDocument> f = async.createOrUpdateAsync(NODES, op);
+            assertTrue(f.isDone());
+            assertNotNull(store.find(NODES, "1:/foo"));
+        }
+    }
+
+    @Test
+    public void inFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        DocumentStore blocking = new DocumentStoreWrapper(store) {
+            @Override
+            public <T extends Document> T find(Collection<T> collection, String key) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new DocumentStoreException(e);
+                }
+                return super.find(collection, key);
+            }
+        };
+        try (AsyncDocumentStore async = new ExecutorAsyncDocumentStore(blocking, 2)) {
+            CompletableFuture<NodeDocument> f1 = async.findAsync(NODES, "1:/a");
+            CompletableFuture<NodeDocument> f2 = async.findAsync(NODES, "1:/b");
+            // both reads must be in flight at the same time
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            assertNull(f1.get());
+            assertNull(f2.get());
+        }
+    }
+
+    @Test
+    public void failure() throws Exception {
+        DocumentStore failing = new DocumentStoreWrapper(store) {
+            @NotNull
+            @Override
+            public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                               List<UpdateOp> updateOps) {
+                throw new IllegalStateException("failure");
+            }
+        };
+        try (AsyncDocumentStore async = new ExecutorAsyncDocumentStore(failing, 1)) {
+            UpdateOp op = new UpdateOp("1:/foo", true);
+            try {
+                async.createOrUpdateAsync(NODES, Collections.singletonList(op)).get();
+                fail("must fail with DocumentStoreException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DocumentStoreException);
+            }
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+        AsyncDocumentStore async = new ExecutorAsyncDocumentStore(store, 1);
+        async.close();
+        try {
+            async.findAsync(NODES, "1:/foo").get();
+            fail("must fail with DocumentStoreException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DocumentStoreException);
+        }
+    }
+}
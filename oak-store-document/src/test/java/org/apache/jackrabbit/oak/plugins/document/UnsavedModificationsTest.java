@@ -17,12 +17,14 @@
 package org.apache.jackrabbit.oak.plugins.document;
 
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 public class UnsavedModificationsTest {
 
@@ -41,4 +43,37 @@ public class UnsavedModificationsTest {
         ns.runBackgroundUpdateOperations();
         assertEquals(0, store.getNumFindCalls(Collection.CLUSTER_NODES));
     }
+
+    @Test
+    public void persistPipelined() throws Exception {
+        int numNodes = UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT * 3 + 1;
+        DocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = builderProvider.newBuilder().setAsyncStoreThreads(2)
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < numNodes; i++) {
+            builder.child("node-" + i).child("child");
+        }
+        merge(ns, builder);
+        ns.runBackgroundUpdateOperations();
+
+        // modify the children only, which leaves a pending _lastRev
+        // update for each of the parents
+        builder = ns.getRoot().builder();
+        for (int i = 0; i < numNodes; i++) {
+            builder.child("node-" + i).child("child").setProperty("p", i);
+        }
+        merge(ns, builder);
+        Revision head = ns.getHeadRevision().getRevision(ns.getClusterId());
+        assertEquals(numNodes + 1, ns.getPendingWriteCount());
+
+        ns.runBackgroundUpdateOperations();
+        assertEquals(0, ns.getPendingWriteCount());
+        for (int i = 0; i < numNodes; i++) {
+            NodeDocument doc = store.find(Collection.NODES,
+                    Utils.getIdFromPath(Path.fromString("/node-" + i)));
+            assertNotNull(doc);
+            assertEquals(head, doc.getLastRev().get(ns.getClusterId()));
+        }
+    }
 }
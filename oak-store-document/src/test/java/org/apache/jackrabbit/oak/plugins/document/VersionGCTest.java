@@ -20,6 +20,7 @@ package org.apache.jackrabbit.oak.plugins.document;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -338,6 +339,52 @@ public class VersionGCTest {
         }
     }
 
+    @Test
+    public void incrementalSlices() throws Exception {
+        gc.setOptions(gc.getOptions().withSlice(MINUTES, 10));
+
+        VersionGCStats stats = gc.gc(30, MINUTES);
+        // a single slice per call
+        assertEquals(1, stats.iterationCount);
+        assertTrue(stats.needRepeat);
+        assertEquals(1, stats.deletedDocGCCount);
+        Document settings = store.find(Collection.SETTINGS, VersionGarbageCollector.SETTINGS_COLLECTION_ID);
+        assertNotNull(settings);
+        long cursor = (Long) settings.get(VersionGarbageCollector.SETTINGS_COLLECTION_OLDEST_TIMESTAMP_PROP);
+
+        int calls = 1;
+        while (stats.needRepeat && calls < 10) {
+            stats = gc.gc(30, MINUTES);
+            assertEquals(1, stats.iterationCount);
+            calls++;
+            settings = store.find(Collection.SETTINGS, VersionGarbageCollector.SETTINGS_COLLECTION_ID);
+            long next = (Long) settings.get(VersionGarbageCollector.SETTINGS_COLLECTION_OLDEST_TIMESTAMP_PROP);
+            // the persisted cursor moves forward
+            assertTrue(next > cursor);
+            cursor = next;
+        }
+        assertTrue(!stats.needRepeat);
+        assertTrue(calls > 1);
+    }
+
+    @Test
+    public void adaptiveBatchSize() throws Exception {
+        store.removeDelayMs = 20;
+        gc.setOptions(gc.getOptions().withTargetBatchLatency(TimeUnit.MILLISECONDS, 5));
+
+        VersionGCStats stats = gc.gc(30, MINUTES);
+        assertEquals(1, stats.deletedDocGCCount);
+        assertEquals(1, stats.deleteBatchCount);
+        assertTrue(stats.getAverageDeleteBatchTime(TimeUnit.MILLISECONDS) >= 20);
+        // batch took longer than the target -> smaller batches
+        assertTrue(stats.deleteBatchSize < 450);
+
+        Document settings = store.find(Collection.SETTINGS, VersionGarbageCollector.SETTINGS_COLLECTION_ID);
+        assertNotNull(settings);
+        assertEquals((long) stats.deleteBatchSize,
+                settings.get(VersionGarbageCollector.SETTINGS_COLLECTION_BATCH_SIZE_PROP));
+    }
+
     private Future<VersionGCStats> gc() {
         // run gc in a separate thread
         return execService.submit(new Callable<VersionGCStats>() {
@@ -377,6 +424,8 @@ public class VersionGCTest {
 
         AtomicLong findVersionGC = new AtomicLong();
 
+        volatile long removeDelayMs;
+
         @NotNull
         @Override
         public <T extends Document> List<T> query(Collection<T> collection,
@@ -402,6 +451,19 @@ public class VersionGCTest {
             }
             return super.find(collection, key);
         }
+
+        @Override
+        public <T extends Document> int remove(Collection<T> collection,
+                                               Map<String, Long> toRemove) {
+            if (removeDelayMs > 0) {
+                try {
+                    Thread.sleep(removeDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.remove(collection, toRemove);
+        }
     }
 
     private class TestGCMonitor implements GCMonitor {
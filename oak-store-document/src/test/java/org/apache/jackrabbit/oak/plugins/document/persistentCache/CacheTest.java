@@ -83,7 +83,7 @@ public class CacheTest {
     public void closeAlways() throws Exception {
         FileUtils.deleteDirectory(new File("target/cacheTest"));
         PersistentCache cache = new PersistentCache("target/cacheTest,manualCommit");
-        CacheMap<String, String> map = cache.openMap(0, "test", null);
+        CacheMap<String, String> map = cache.openMap(0, "test", null, null);
         // break the map by calling interrupt
         Thread.currentThread().interrupt();
         map.put("hello", "world");
@@ -112,8 +112,8 @@ public class CacheTest {
         FileUtils.deleteDirectory(new File("target/cacheTest"));
         PersistentCache cache = new PersistentCache("target/cacheTest,size=1,-compress");
         try {
-            CacheMap<String, String> m1 = cache.openMap(0, "m1", null);
-            CacheMap<String, String> m2 = cache.openMap(0, "test", null);
+            CacheMap<String, String> m1 = cache.openMap(0, "m1", null, null);
+            CacheMap<String, String> m2 = cache.openMap(0, "test", null, null);
             
             // the cache file was opened once so far
             assertEquals(1, cache.getOpenCount());
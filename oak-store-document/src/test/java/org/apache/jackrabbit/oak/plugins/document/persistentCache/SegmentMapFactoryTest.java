@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.Lists;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.MemoryDiffCache;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentMapFactoryTest {
+
+    private static final File DIRECTORY = new File("target/segmentCacheTest");
+
+    private static final String FILE_NAME = DIRECTORY.getPath() + "/cache-0.data";
+
+    private static final int SEGMENT_SIZE = 4 * 1024;
+
+    private SegmentMapFactory factory;
+
+    @Before
+    public void before() throws Exception {
+        FileUtils.deleteDirectory(DIRECTORY);
+        DIRECTORY.mkdirs();
+    }
+
+    @After
+    public void after() {
+        if (factory != null) {
+            factory.closeStore();
+        }
+    }
+
+    @Test
+    public void putGetRemove() {
+        Map<String, String> map = open().openMap("test", null, null);
+        assertNotNull(map);
+        for (int i = 0; i < 1000; i++) {
+            map.put("key-" + i, "value-" + i);
+        }
+        // the data spans multiple segments
+        assertTrue(factory.getFileSize() > 5 * SEGMENT_SIZE);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value-" + i, map.get("key-" + i));
+        }
+        assertNull(map.get("key-1000"));
+        map.put("key-1", "updated");
+        assertEquals("updated", map.get("key-1"));
+        map.remove("key-2");
+        assertNull(map.get("key-2"));
+        assertFalse(map.containsKey("key-2"));
+        assertTrue(map.containsKey("key-3"));
+
+        Map<String, String> other = factory.openMap("other", null, null);
+        assertNull(other.get("key-3"));
+        other.put("key-3", "other");
+        assertEquals("other", other.get("key-3"));
+        assertEquals("value-3", map.get("key-3"));
+
+        map.clear();
+        assertNull(map.get("key-3"));
+        assertEquals("other", other.get("key-3"));
+    }
+
+    @Test
+    public void reopen() {
+        Map<String, String> map = open().openMap("test", null, null);
+        Map<String, String> other = factory.openMap("other", null, null);
+        for (int i = 0; i < 500; i++) {
+            map.put("key-" + i, "value-" + i);
+            other.put("key-" + i, "other-" + i);
+        }
+        map.put("key-1", "updated");
+        map.remove("key-2");
+        other.clear();
+        other.put("key-4", "new");
+        factory.closeStore();
+
+        map = open().openMap("test", null, null);
+        other = factory.openMap("other", null, null);
+        assertEquals("updated", map.get("key-1"));
+        assertNull(map.get("key-2"));
+        for (int i = 3; i < 500; i++) {
+            assertEquals("value-" + i, map.get("key-" + i));
+        }
+        assertNull(other.get("key-3"));
+        assertEquals("new", other.get("key-4"));
+    }
+
+    @Test
+    public void corruptRecord() throws Exception {
+        // use a single segment
+        Map<String, String> map = open(1024 * 1024).openMap("test", null, null);
+        for (int i = 0; i < 100; i++) {
+            map.put("key-" + i, "value-" + i);
+        }
+        long size = factory.getFileSize();
+        map.put("key-100", "value-100");
+        map.put("key-101", "value-101");
+        factory.closeStore();
+
+        // corrupt the value of key-100
+        RandomAccessFile f = new RandomAccessFile(FILE_NAME, "rw");
+        try {
+            f.seek(size + 30);
+            f.write(0x55);
+        } finally {
+            f.close();
+        }
+
+        map = open().openMap("test", null, null);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value-" + i, map.get("key-" + i));
+        }
+        assertNull(map.get("key-100"));
+        // records after the corrupt one are discarded as well
+        assertNull(map.get("key-101"));
+        assertEquals(size, factory.getFileSize());
+        map.put("key-102", "value-102");
+        factory.closeStore();
+
+        map = open().openMap("test", null, null);
+        assertEquals("value-102", map.get("key-102"));
+        assertNull(map.get("key-101"));
+    }
+
+    @Test
+    public void unknownFormat() throws Exception {
+        FileOutputStream out = new FileOutputStream(FILE_NAME);
+        try {
+            out.write("corrupt data that is not a cache file".getBytes());
+        } finally {
+            out.close();
+        }
+        Map<String, String> map = open().openMap("test", null, null);
+        assertNotNull(map);
+        assertNull(map.get("key"));
+        map.put("key", "value");
+        assertEquals("value", map.get("key"));
+    }
+
+    @Test
+    public void recordLargerThanSegment() {
+        Map<String, String> map = open().openMap("test", null, null);
+        map.put("large", new String(new char[SEGMENT_SIZE]));
+        assertNull(map.get("large"));
+        map.put("small", "value");
+        assertEquals("value", map.get("small"));
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final Map<String, String> map = open().openMap("test", null, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = Lists.newArrayList();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 5000; i++) {
+                            map.put("key-" + thread + "-" + i, "value-" + i);
+                            map.put("shared-" + (i % 100), "shared");
+                            assertEquals("value-" + i, map.get("key-" + thread + "-" + i));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 5000; i++) {
+                assertEquals("value-" + i, map.get("key-" + t + "-" + i));
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("shared", map.get("shared-" + i));
+        }
+        // keys with the same hash share an entry
+        assertTrue(factory.getIndexSize() > 4 * 5000);
+    }
+
+    @Test
+    public void persistentCache() throws Exception {
+        FileUtils.deleteDirectory(DIRECTORY);
+        PersistentCache pCache = new PersistentCache(DIRECTORY.getPath() + ",engine=segment,size=1,-async");
+        try {
+            CacheLIRS<MemoryDiffCache.Key, StringValue> cache = new CacheLIRS.Builder<MemoryDiffCache.Key, StringValue>().
+                    maximumSize(1).build();
+            Cache<MemoryDiffCache.Key, StringValue> map = pCache.wrap(null, null, cache, CacheType.DIFF);
+            String value = new String(new char[100 * 1024]);
+            RevisionVector from = new RevisionVector(new Revision(0, 0, 1));
+            RevisionVector to = new RevisionVector(new Revision(1, 0, 1));
+            List<MemoryDiffCache.Key> keys = Lists.newArrayList();
+            for (int i = 0; i < 30; i++) {
+                MemoryDiffCache.Key k = new MemoryDiffCache.Key(Path.fromString("/" + i), from, to);
+                keys.add(k);
+                map.put(k, new StringValue(value + i));
+                // trigger a switch of the generation
+                map.getIfPresent(keys.get(0));
+            }
+            // entries of the current and the previous generation are available
+            MemoryDiffCache.Key last = keys.get(keys.size() - 1);
+            cache.invalidateAll();
+            StringValue v = map.getIfPresent(last);
+            assertNotNull(v);
+            assertEquals(value + 29, v.toString());
+            assertEquals(0, pCache.getExceptionCount());
+        } finally {
+            pCache.close();
+        }
+        String[] files = DIRECTORY.list();
+        assertNotNull(files);
+        assertEquals(2, files.length);
+    }
+
+    private SegmentMapFactory open() {
+        return open(SEGMENT_SIZE);
+    }
+
+    private SegmentMapFactory open(int segmentSize) {
+        factory = new SegmentMapFactory(FILE_NAME, false, segmentSize);
+        factory.openStore();
+        return factory;
+    }
+}
@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.zip.GZIPOutputStream;
 
+import org.apache.jackrabbit.oak.plugins.document.BinaryDocumentSerializer;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
@@ -134,6 +135,31 @@ public class RDBDocumentSerializerTest {
         assertEquals(3L, doc.get("m2"));
     }
 
+    @Test
+    public void testBinaryBlobAndDiff() throws IOException {
+        NodeDocument base = Collection.NODES.newDocument(store);
+        base.put("m1", 2L);
+        base.put("m2", 2L);
+        base.put("s", "string");
+        byte[] bdata = BinaryDocumentSerializer.toBytes(base);
+        RDBRow row = new RDBRow("_foo", 1L, false, 1l, 2l, 3l, 0L, 0L, 0L,
+                "\"blob\", [[\"=\", \"foo\", \"bar\"],[\"M\", \"m1\", 1],[\"M\", \"m2\", 3]]", bdata);
+        NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+        assertEquals("bar", doc.get("foo"));
+        assertEquals("string", doc.get("s"));
+        assertEquals(2L, doc.get("m1"));
+        assertEquals(3L, doc.get("m2"));
+
+        // binary format wrapped in GZIP
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        GZIPOutputStream gos = new GZIPOutputStream(bos);
+        gos.write(bdata);
+        gos.close();
+        row = new RDBRow("_foo", 1L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bos.toByteArray());
+        doc = this.ser.fromRow(Collection.NODES, row);
+        assertEquals("string", doc.get("s"));
+    }
+
     @Test
     public void testBlobAndDiffBorked() throws UnsupportedEncodingException {
         try {
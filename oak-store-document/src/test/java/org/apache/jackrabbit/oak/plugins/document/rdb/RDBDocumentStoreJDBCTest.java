@@ -37,9 +37,11 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -52,6 +54,7 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.UpdateUtils;
 import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.QueryCondition;
 import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.RDBTableMetaData;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
@@ -70,6 +73,7 @@ public class RDBDocumentStoreJDBCTest extends AbstractDocumentStoreTest {
 
     private RDBDocumentStoreJDBC jdbc;
     private RDBDocumentStoreDB dbInfo;
+    private RDBDocumentSerializer ser;
     private static final Logger LOG = LoggerFactory.getLogger(RDBDocumentStoreJDBCTest.class);
 
     @Rule
@@ -80,7 +84,7 @@ public class RDBDocumentStoreJDBCTest extends AbstractDocumentStoreTest {
         assumeTrue(super.rdbDataSource != null);
 
         dbInfo = RDBDocumentStoreDB.getValue(((RDBDocumentStore) super.ds).getMetadata().get("db"));
-        RDBDocumentSerializer ser = new RDBDocumentSerializer(super.ds);
+        ser = new RDBDocumentSerializer(super.ds);
         jdbc = new RDBDocumentStoreJDBC(dbInfo, ser, 100, 10000);
     }
 
@@ -261,6 +265,65 @@ public class RDBDocumentStoreJDBCTest extends AbstractDocumentStoreTest {
         }
     }
 
+    @Test
+    public void batchAppendingUpdate() throws SQLException {
+        RDBTableMetaData tmd = ((RDBDocumentStore) super.ds).getTable(Collection.NODES);
+        String prefix = this.getClass().getName() + ".batchAppendingUpdate-";
+        List<UpdateOp> ops = new ArrayList<UpdateOp>();
+        for (int i = 0; i < 4; i++) {
+            String id = prefix + i;
+            super.ds.remove(Collection.NODES, id);
+            UpdateOp op = new UpdateOp(id, true);
+            op.set("_modified", 1L);
+            op.set("p", "old");
+            ops.add(op);
+            removeMe.add(id);
+        }
+        assertTrue(super.ds.create(Collection.NODES, ops));
+
+        List<NodeDocument> docs = new ArrayList<NodeDocument>();
+        Map<String, String> appendData = new HashMap<String, String>();
+        for (int i = 0; i < 4; i++) {
+            String id = prefix + i;
+            NodeDocument doc = super.ds.find(Collection.NODES, id);
+            assertNotNull(doc);
+            UpdateOp op = new UpdateOp(id, false);
+            op.set("_modified", 2L);
+            op.set("p", "new-" + i);
+            op.increment("_modCount", 1);
+            NodeDocument modified = Collection.NODES.newDocument(super.ds);
+            doc.deepCopy(modified);
+            UpdateUtils.applyChanges(modified, op);
+            if (i == 3) {
+                // conflicting concurrent change
+                modified.put("_modCount", modified.getModCount() + 1);
+            }
+            docs.add(modified);
+            if (i != 0) {
+                // the first document is rewritten
+                appendData.put(id, ser.asString(op, tmd.getColumnOnlyProperties()));
+            }
+        }
+
+        Connection con = super.rdbDataSource.getConnection();
+        con.setReadOnly(false);
+        try {
+            Set<String> updated = jdbc.update(con, tmd, docs, appendData, false);
+            con.commit();
+            assertEquals(of(prefix + 0, prefix + 1, prefix + 2), updated);
+        } finally {
+            con.close();
+        }
+
+        super.ds.invalidateCache();
+        for (int i = 0; i < 4; i++) {
+            NodeDocument doc = super.ds.find(Collection.NODES, prefix + i);
+            assertNotNull(doc);
+            assertEquals(i == 3 ? "old" : "new-" + i, doc.get("p"));
+            assertEquals(i == 3 ? 1L : 2L, doc.get("_modified"));
+        }
+    }
+
     @Test
     public void statementCloseTest() throws SQLException {
 